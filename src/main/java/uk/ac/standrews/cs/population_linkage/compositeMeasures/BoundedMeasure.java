@@ -0,0 +1,39 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.compositeMeasures;
+
+import uk.ac.standrews.cs.utilities.measures.coreConcepts.Measure;
+
+/**
+ * A measure that can abandon a distance calculation once the distance is known to exceed a bound.
+ */
+public interface BoundedMeasure<T> {
+
+    /**
+     * @return the distance between x and y if it is no more than the upper bound, otherwise some value greater than the bound
+     */
+    double distance(T x, T y, double upper_bound);
+
+    /**
+     * @return the distance between x and y as given by the measure, using a bounded calculation if the measure supports it
+     */
+    @SuppressWarnings("unchecked")
+    static <T> double boundedDistance(final Measure<T> measure, final T x, final T y, final double upper_bound) {
+
+        return measure instanceof BoundedMeasure ? ((BoundedMeasure<T>) measure).distance(x, y, upper_bound) : measure.distance(x, y);
+    }
+}
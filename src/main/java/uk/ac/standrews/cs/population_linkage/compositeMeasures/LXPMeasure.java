@@ -23,14 +23,26 @@ import uk.ac.standrews.cs.population_records.record_types.Death;
 import uk.ac.standrews.cs.utilities.measures.coreConcepts.Measure;
 import uk.ac.standrews.cs.utilities.measures.coreConcepts.StringMeasure;
 
+import java.util.Comparator;
 import java.util.List;
+import java.util.stream.IntStream;
 
-public abstract class LXPMeasure extends Measure<LXP> {
+public abstract class LXPMeasure extends Measure<LXP> implements BoundedMeasure<LXP> {
+
+    // One in this number of bounded distance calculations compares all fields, to gather the statistics used to order them.
+    private static final int FIELD_ORDER_SAMPLE_INTERVAL = 1000;
 
     protected StringMeasure base_measure;
     protected List<Integer> field_list1;
     protected List<Integer> field_list2;
 
+    private double[] field_distance_totals;
+    private long[] field_time_totals;
+    private volatile int[] field_order;
+
+    // Per-thread buffers for the bounded calculations, so that a distance calculation doesn't allocate.
+    private final ThreadLocal<FieldScratch> field_scratch = ThreadLocal.withInitial(() -> new FieldScratch(field_list1.size()));
+
     public LXPMeasure(final StringMeasure base_measure, final List<Integer> field_list1, final List<Integer> field_list2) {
 
         if (field_list1.size() != field_list2.size()) {
@@ -39,11 +51,23 @@ public abstract class LXPMeasure extends Measure<LXP> {
         this.base_measure = base_measure;
         this.field_list1 = field_list1;
         this.field_list2 = field_list2;
+
+        field_distance_totals = new double[field_list1.size()];
+        field_time_totals = new long[field_list1.size()];
+        field_order = IntStream.range(0, field_list1.size()).toArray();
     }
     
     protected LXPMeasure() {
     }
 
+    /**
+     * @return true if the same fields are compared in both records, so that the distance from x to y is the same as
+     * from y to x
+     */
+    public boolean isSymmetric() {
+        return field_list1 != null && field_list1.equals(field_list2);
+    }
+
     protected double sumOfFieldDistances(LXP x, LXP y) {
 
         double total_distance = 0.0d;
@@ -65,6 +89,124 @@ public abstract class LXPMeasure extends Measure<LXP> {
         return total_distance;
     }
 
+    /**
+     * Gives the distance between the records if it is no more than the upper bound. Otherwise gives a value greater
+     * than the bound, possibly without comparing all the fields. By default all the fields are compared.
+     */
+    @Override
+    public double distance(final LXP x, final LXP y, final double upper_bound) {
+
+        return distance(x, y);
+    }
+
+    /**
+     * Sums the field distances, comparing the fields in the order most likely to exceed the bound soonest for the least
+     * work, and abandoning the sum as soon as it exceeds the bound.
+     *
+     * @param substitute_missing_fields whether fields missing from either record are given distance_for_missing_fields
+     *                                  rather than compared
+     * @return the same sum as if all the fields were compared in turn, or positive infinity if the sum exceeds the bound
+     */
+    protected double boundedSumOfFieldDistances(final LXP x, final LXP y, final double sum_bound, final boolean substitute_missing_fields, final double distance_for_missing_fields) {
+
+        final FieldScratch scratch = field_scratch.get();
+        final double[] field_distances = scratch.field_distances;
+
+        if (scratch.sampleDue()) {
+            sampleFieldDistances(x, y, scratch, substitute_missing_fields, distance_for_missing_fields);
+        }
+        else {
+            double partial_sum = 0.0d;
+
+            for (int i : field_order) {
+
+                field_distances[i] = fieldDistance(x, y, i, substitute_missing_fields, distance_for_missing_fields);
+                partial_sum += field_distances[i];
+
+                if (partial_sum > sum_bound) return Double.POSITIVE_INFINITY;
+            }
+        }
+
+        // Summed in field order so that the result is identical to that of the unbounded calculation.
+        double total_distance = 0.0d;
+        for (double field_distance : field_distances) {
+            total_distance += field_distance;
+        }
+        return total_distance;
+    }
+
+    /**
+     * @return the maximum of the field distances, or the first field distance found to exceed the bound
+     */
+    protected double boundedMaximumOfFieldDistances(final LXP x, final LXP y, final double upper_bound) {
+
+        final FieldScratch scratch = field_scratch.get();
+        final double[] field_distances = scratch.field_distances;
+
+        if (scratch.sampleDue()) {
+            sampleFieldDistances(x, y, scratch, false, 0d);
+        }
+        else {
+            for (int i : field_order) {
+
+                field_distances[i] = fieldDistance(x, y, i, false, 0d);
+                if (field_distances[i] > upper_bound) return field_distances[i];
+            }
+        }
+
+        double max = 0.0d;
+        for (double field_distance : field_distances) {
+            max = Math.max(max, field_distance);
+        }
+        return max;
+    }
+
+    private double fieldDistance(final LXP x, final LXP y, final int i, final boolean substitute_missing_fields, final double distance_for_missing_fields) {
+
+        try {
+            final String field_value1 = x.getString(field_list1.get(i));
+            final String field_value2 = y.getString(field_list2.get(i));
+
+            if (substitute_missing_fields && (RecordFiltering.isMissing(field_value1) || RecordFiltering.isMissing(field_value2))) {
+                return distance_for_missing_fields;
+            }
+            return base_measure.distance(field_value1, field_value2);
+
+        } catch (Exception e) {
+            throwExceptionWithDebug(x, y, i, e);
+            return 0.0d;
+        }
+    }
+
+    /**
+     * Compares all the fields, timing each, and reorders the fields so that those with the greatest distance per unit
+     * of time taken are compared first.
+     */
+    private void sampleFieldDistances(final LXP x, final LXP y, final FieldScratch scratch, final boolean substitute_missing_fields, final double distance_for_missing_fields) {
+
+        final double[] field_distances = scratch.field_distances;
+        final long[] field_times = scratch.field_times;
+
+        for (int i = 0; i < field_distances.length; i++) {
+
+            final long start_time = System.nanoTime();
+            field_distances[i] = fieldDistance(x, y, i, substitute_missing_fields, distance_for_missing_fields);
+            field_times[i] = System.nanoTime() - start_time;
+        }
+
+        synchronized (this) {
+
+            for (int i = 0; i < field_distances.length; i++) {
+                field_distance_totals[i] += field_distances[i];
+                field_time_totals[i] += field_times[i];
+            }
+
+            field_order = IntStream.range(0, field_distances.length).boxed()
+                    .sorted(Comparator.comparingDouble(i -> -field_distance_totals[i] / (field_time_totals[i] + 1)))
+                    .mapToInt(i -> i).toArray();
+        }
+    }
+
     protected double calculateMeanDistance(LXP x, LXP y, double distance_for_missing_fields) {
 
         double total_distance = 0.0d;
@@ -93,6 +235,29 @@ public abstract class LXPMeasure extends Measure<LXP> {
         return total_distance / field_list1.size();
     }
 
+    private static class FieldScratch {
+
+        final double[] field_distances;
+        final long[] field_times;
+        int calls_until_sample;
+
+        FieldScratch(final int number_of_fields) {
+
+            field_distances = new double[number_of_fields];
+            field_times = new long[number_of_fields];
+
+            // Staggered so that threads don't all sample on the same calls.
+            calls_until_sample = (int) (Thread.currentThread().getId() % FIELD_ORDER_SAMPLE_INTERVAL);
+        }
+
+        boolean sampleDue() {
+
+            if (calls_until_sample-- > 0) return false;
+            calls_until_sample = FIELD_ORDER_SAMPLE_INTERVAL - 1;
+            return true;
+        }
+    }
+
     protected void throwExceptionWithDebug(LXP x, LXP y, int field_index, Exception e) {
         throw new RuntimeException("exception comparing fields " + x.getMetaData().getFieldName(field_list1.get(field_index)) + " and " + y.getMetaData().getFieldName(field_list2.get(field_index)) + " in records \n" + x + "\n and \n" + y, e);
     }
@@ -72,6 +72,12 @@ public class MaximumOfFieldDistances extends LXPMeasure {
         return max;
     }
 
+    @Override
+    public double distance(final LXP x, final LXP y, final double upper_bound) {
+
+        return boundedMaximumOfFieldDistances(x, y, upper_bound);
+    }
+
     public static void main(String[] args) {
 
         final MaximumOfFieldDistances birth_birth_measure1 = new MaximumOfFieldDistances(Constants.LEVENSHTEIN, BirthSiblingLinkageRecipe.LINKAGE_FIELDS);
@@ -55,6 +55,12 @@ public class MeanOfFieldDistances extends LXPMeasure {
         return sumOfFieldDistances(x, y) / field_list1.size();
     }
 
+    @Override
+    public double distance(final LXP x, final LXP y, final double upper_bound) {
+
+        return boundedSumOfFieldDistances(x, y, upper_bound * field_list1.size(), false, 0d) / field_list1.size();
+    }
+
     public static void main(String[] args) {
 
         final MeanOfFieldDistances birth_birth_measure1 = new MeanOfFieldDistances(Constants.LEVENSHTEIN, BirthSiblingLinkageRecipe.LINKAGE_FIELDS);
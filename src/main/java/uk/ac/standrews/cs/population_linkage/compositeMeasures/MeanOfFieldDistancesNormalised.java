@@ -74,11 +74,35 @@ public class MeanOfFieldDistancesNormalised extends LXPMeasure {
         return base_measure.maxDistanceIsOne() ? mean : normalise(mean);
     }
 
+    @Override
+    public double distance(final LXP x, final LXP y, final double upper_bound) {
+
+        // The bound on the normalised distance is converted to a bound on the sum, since normalisation doesn't decrease the distance.
+        final double mean_bound = base_measure.maxDistanceIsOne() ? upper_bound : denormalise(upper_bound);
+
+        final double sum = boundedSumOfFieldDistances(x, y, mean_bound * field_list1.size(), false, 0d);
+
+        // An abandoned sum is returned as is, rather than normalised.
+        if (sum == Double.POSITIVE_INFINITY) return Double.POSITIVE_INFINITY;
+
+        final double mean = sum / field_list1.size();
+        return base_measure.maxDistanceIsOne() ? mean : normalise(mean);
+    }
+
     private double normalise(final double d) {
 
         return normalisation_cutoff > 0d ? Math.min(d, normalisation_cutoff) / normalisation_cutoff : normaliseArbitraryPositiveDistance(d);
     }
 
+    /**
+     * @return the greatest distance that normalises to no more than the given value
+     */
+    private double denormalise(final double normalised) {
+
+        if (normalised >= 1d) return Double.POSITIVE_INFINITY;
+        return normalisation_cutoff > 0d ? normalised * normalisation_cutoff : 1d / (1d - normalised) - 1d;
+    }
+
     public static void main(String[] args) {
 
         final MeanOfFieldDistancesNormalised birth_birth_measure1 = new MeanOfFieldDistancesNormalised(Constants.LEVENSHTEIN, BirthSiblingLinkageRecipe.LINKAGE_FIELDS);
@@ -63,6 +63,12 @@ public class MeanOfFieldDistancesWithMaxForMissingFields extends LXPMeasure {
         return calculateMeanDistance(x, y, max_field_distance);
     }
 
+    @Override
+    public double distance(final LXP x, final LXP y, final double upper_bound) {
+
+        return boundedSumOfFieldDistances(x, y, upper_bound * field_list1.size(), true, max_field_distance) / field_list1.size();
+    }
+
     public static void main(String[] args) {
 
         final MeanOfFieldDistancesWithMaxForMissingFields birth_birth_measure1 = new MeanOfFieldDistancesWithMaxForMissingFields(Constants.LEVENSHTEIN, BirthSiblingLinkageRecipe.LINKAGE_FIELDS, 100d);
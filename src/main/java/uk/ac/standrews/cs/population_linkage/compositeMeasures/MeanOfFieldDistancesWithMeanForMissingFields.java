@@ -62,6 +62,12 @@ public class MeanOfFieldDistancesWithMeanForMissingFields extends LXPMeasure {
         return calculateMeanDistance(x, y, mean_field_distance);
     }
 
+    @Override
+    public double distance(final LXP x, final LXP y, final double upper_bound) {
+
+        return boundedSumOfFieldDistances(x, y, upper_bound * field_list1.size(), true, mean_field_distance) / field_list1.size();
+    }
+
     public static void main(String[] args) {
 
         final var birth_birth_measure1 = new MeanOfFieldDistancesWithMeanForMissingFields(Constants.LEVENSHTEIN, BirthSiblingLinkageRecipe.LINKAGE_FIELDS, 50d);
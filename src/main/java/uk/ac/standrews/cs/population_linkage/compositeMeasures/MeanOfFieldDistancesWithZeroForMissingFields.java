@@ -56,6 +56,12 @@ public class MeanOfFieldDistancesWithZeroForMissingFields extends LXPMeasure {
         return calculateMeanDistance(x, y, 0d);
     }
 
+    @Override
+    public double distance(final LXP x, final LXP y, final double upper_bound) {
+
+        return boundedSumOfFieldDistances(x, y, upper_bound * field_list1.size(), true, 0d) / field_list1.size();
+    }
+
     public static void main(String[] args) {
 
         final var birth_birth_measure1 = new MeanOfFieldDistancesWithZeroForMissingFields(Constants.LEVENSHTEIN, BirthSiblingLinkageRecipe.LINKAGE_FIELDS);
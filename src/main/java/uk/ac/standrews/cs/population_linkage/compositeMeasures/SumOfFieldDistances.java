@@ -55,6 +55,12 @@ public class SumOfFieldDistances extends LXPMeasure {
         return sumOfFieldDistances(x, y);
     }
 
+    @Override
+    public double distance(final LXP x, final LXP y, final double upper_bound) {
+
+        return boundedSumOfFieldDistances(x, y, upper_bound, false, 0d);
+    }
+
     public static void main(String[] args) {
 
         final SumOfFieldDistances birth_birth_measure1 = new SumOfFieldDistances(Constants.LEVENSHTEIN, BirthSiblingLinkageRecipe.LINKAGE_FIELDS);
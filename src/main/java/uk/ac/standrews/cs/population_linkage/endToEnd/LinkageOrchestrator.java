@@ -0,0 +1,420 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.endToEnd;
+
+import uk.ac.standrews.cs.population_linkage.endToEnd.builders.*;
+import uk.ac.standrews.cs.population_linkage.linkageRecipes.*;
+import uk.ac.standrews.cs.population_linkage.supportClasses.LinkageConfig;
+import uk.ac.standrews.cs.population_linkage.supportClasses.SharedRecords;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs linkage stages, such as the end-to-end builders, as a DAG in a single process. Each type of record is read
+ * once into memory and shared by the recipes of all stages, as are the search structures built over the same stored
+ * records with the same measure. Stages whose dependencies have completed are run concurrently, up to a limit, and
+ * a stage is skipped if any stage it depends on fails. The time each stage waited and ran is reported at the end.
+ *
+ * Since concurrent stages all read the static settings in {@link LinkageConfig}, and in the recipe classes, those
+ * settings must not change during a run. This is checked before and after each stage, which fails if a setting differs
+ * from the value it had when first checked. The settings are read by the stages' threads after they start, so they
+ * may be set freely before {@link #run()} is called.
+ */
+public class LinkageOrchestrator implements AutoCloseable {
+
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    public interface RecipeMaker<R extends LinkageRecipe> {
+        R make() throws Exception;
+    }
+
+    public interface RecipeTask<R extends LinkageRecipe> {
+        void run(R linkage_recipe) throws Exception;
+    }
+
+    public enum Status {NOT_RUN, RUNNING, SUCCEEDED, FAILED, SKIPPED}
+
+    private final SharedRecords shared_records;
+    private final int max_concurrent_stages;
+
+    private final Map<String, Stage> stages = new LinkedHashMap<>();
+    private final List<LinkageRecipe> recipes = Collections.synchronizedList(new ArrayList<>());
+    private final Map<String, Optional<Object>> fixed_settings = new ConcurrentHashMap<>();
+
+    public LinkageOrchestrator(final String source_repository_name, final int max_concurrent_stages) {
+
+        this.shared_records = new SharedRecords(source_repository_name);
+        this.max_concurrent_stages = max_concurrent_stages;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        String sourceRepo = args[0]; // e.g. umea
+        String number_of_records = args[1]; // e.g. EVERYTHING or 10000 etc.
+
+        try (LinkageOrchestrator orchestrator = new LinkageOrchestrator(sourceRepo, LinkageConfig.ORCHESTRATOR_MAX_CONCURRENT_STAGES)) {
+
+            addBuilders(orchestrator, sourceRepo, number_of_records);
+            if (!orchestrator.run()) System.exit(1);
+        }
+    }
+
+    /**
+     * Adds a stage for each of the end-to-end builders. The stages that make links between the same types of record
+     * are run one after another, so that they don't contend for the same nodes in Neo4J; the chains for different
+     * types of record run concurrently.
+     */
+    public static void addBuilders(final LinkageOrchestrator orchestrator, final String sourceRepo, final String number_of_records) {
+
+        // Births.
+        orchestrator.addStage("BirthSibling",
+                () -> new BirthSiblingLinkageRecipe(sourceRepo, number_of_records, BirthSiblingBundleBuilder.class.getName()),
+                recipe -> BirthSiblingBundleBuilder.runBuilder(recipe, 1));
+        orchestrator.addStage("BirthHalfSibling",
+                () -> new BirthHalfSiblingLinkageRecipe(sourceRepo, number_of_records, BirthHalfSiblingBundleBuilder.class.getName()),
+                BirthHalfSiblingBundleBuilder::runBuilder, "BirthSibling");
+
+        // Births and deaths.
+        orchestrator.addStage("BirthOwnDeath",
+                () -> new BirthDeathIdentityLinkageRecipe(sourceRepo, number_of_records, BirthOwnDeathBuilder.class.getName()),
+                BirthOwnDeathBuilder::runBuilder);
+        orchestrator.addStage("BirthDeathSibling",
+                () -> new BirthDeathSiblingLinkageRecipe(sourceRepo, number_of_records, BirthDeathSiblingBundleBuilder.class.getName(), null),
+                BirthDeathSiblingBundleBuilder::runBuilder, "BirthOwnDeath");
+
+        // Births and marriages.
+        orchestrator.addStage("BirthBrideOwnMarriage",
+                () -> new BirthBrideIdentityLinkageRecipe(sourceRepo, number_of_records, BirthBrideOwnMarriageBuilder.class.getName(), null),
+                BirthBrideOwnMarriageBuilder::runBuilder);
+        orchestrator.addStage("BirthGroomOwnMarriage",
+                () -> new BirthGroomIdentityLinkageRecipe(sourceRepo, number_of_records, BirthGroomOwnMarriageBuilder.class.getName(), null),
+                BirthGroomOwnMarriageBuilder::runBuilder, "BirthBrideOwnMarriage");
+        orchestrator.addStage("BirthParentsMarriage",
+                () -> new BirthParentsMarriageIdentityLinkageRecipe(sourceRepo, number_of_records, BirthParentsMarriageBuilder.class.getName()),
+                BirthParentsMarriageBuilder::runBuilder, "BirthGroomOwnMarriage");
+        orchestrator.addStage("BirthBrideSibling",
+                () -> new BirthBrideSiblingLinkageRecipe(sourceRepo, number_of_records, BirthBrideSiblingBundleBuilder.class.getName(), null),
+                BirthBrideSiblingBundleBuilder::runBuilder, "BirthParentsMarriage");
+        orchestrator.addStage("BirthGroomSibling",
+                () -> new BirthGroomSiblingLinkageRecipe(sourceRepo, number_of_records, BirthGroomSiblingBundleBuilder.class.getName()),
+                BirthGroomSiblingBundleBuilder::runBuilder, "BirthBrideSibling");
+
+        // Deaths.
+        orchestrator.addStage("DeathSibling",
+                () -> new DeathSiblingLinkageRecipe(sourceRepo, number_of_records, DeathSiblingBundleBuilder.class.getName()),
+                DeathSiblingBundleBuilder::runBuilder);
+
+        // Deaths and marriages.
+        orchestrator.addStage("DeathBrideOwnMarriage",
+                () -> new DeathBrideIdentityLinkageRecipe(sourceRepo, number_of_records, DeathBrideOwnMarriageBuilder.class.getName()),
+                DeathBrideOwnMarriageBuilder::runBuilder);
+        orchestrator.addStage("DeathGroomOwnMarriage",
+                () -> new DeathGroomIdentityLinkageRecipe(sourceRepo, number_of_records, DeathGroomOwnMarriageBuilder.class.getName()),
+                DeathGroomOwnMarriageBuilder::runBuilder, "DeathBrideOwnMarriage");
+        orchestrator.addStage("DeathBrideSibling",
+                () -> new DeathBrideSiblingLinkageRecipe(sourceRepo, number_of_records, DeathBrideSiblingBundleBuilder.class.getName()),
+                DeathBrideSiblingBundleBuilder::runBuilder, "DeathGroomOwnMarriage");
+        orchestrator.addStage("DeathGroomSibling",
+                () -> new DeathGroomSiblingLinkageRecipe(sourceRepo, number_of_records, DeathGroomSiblingBundleBuilder.class.getName()),
+                DeathGroomSiblingBundleBuilder::runBuilder, "DeathBrideSibling");
+
+        // Marriages.
+        orchestrator.addStage("BrideBrideIdentity",
+                () -> new BrideBrideIdentityLinkageRecipe(sourceRepo, BrideBrideIdentityBuilder.class.getName()),
+                BrideBrideIdentityBuilder::runBuilder);
+        orchestrator.addStage("GroomGroomIdentity",
+                () -> new GroomGroomIdentityLinkageRecipe(sourceRepo, GroomGroomIdentityBuilder.class.getName()),
+                GroomGroomIdentityBuilder::runBuilder, "BrideBrideIdentity");
+        orchestrator.addStage("BrideMarriageParentsMarriage",
+                () -> new BrideMarriageParentsMarriageIdentityLinkageRecipe(sourceRepo, number_of_records, BrideMarriageParentsMarriageBuilder.class.getName()),
+                BrideMarriageParentsMarriageBuilder::runBuilder, "GroomGroomIdentity");
+        orchestrator.addStage("GroomMarriageParentsMarriage",
+                () -> new GroomMarriageParentsMarriageIdentityLinkageRecipe(sourceRepo, number_of_records, GroomMarriageParentsMarriageBuilder.class.getName()),
+                GroomMarriageParentsMarriageBuilder::runBuilder, "BrideMarriageParentsMarriage");
+        orchestrator.addStage("BrideBrideSibling",
+                () -> new BrideBrideSiblingLinkageRecipe(sourceRepo, number_of_records, BrideBrideSiblingBuilder.class.getName()),
+                BrideBrideSiblingBuilder::runBuilder, "GroomMarriageParentsMarriage");
+        orchestrator.addStage("GroomGroomSibling",
+                () -> new GroomGroomSiblingLinkageRecipe(sourceRepo, number_of_records, GroomGroomSiblingBuilder.class.getName()),
+                GroomGroomSiblingBuilder::runBuilder, "BrideBrideSibling");
+        orchestrator.addStage("BrideGroomSibling",
+                () -> new BrideGroomSiblingLinkageRecipe(sourceRepo, number_of_records, BrideGroomSiblingBuilder.class.getName()),
+                BrideGroomSiblingBuilder::runBuilder, "GroomGroomSibling");
+    }
+
+    /**
+     * Adds a stage that runs once all the stages it depends on have succeeded.
+     *
+     * @param depends_on the names of stages that must be added before this one is run
+     */
+    public void addTask(final String name, final Task task, final String... depends_on) {
+
+        if (stages.containsKey(name)) throw new IllegalArgumentException("duplicate stage: " + name);
+        stages.put(name, new Stage(name, task, Arrays.asList(depends_on)));
+    }
+
+    /**
+     * Adds a stage that makes a recipe taking its records from those shared by all stages, and runs the task with it.
+     * The recipe is closed when the orchestrator is closed, since its Neo4J bridge is shared too.
+     */
+    public <R extends LinkageRecipe> void addStage(final String name, final RecipeMaker<R> make_recipe, final RecipeTask<R> task, final String... depends_on) {
+
+        addTask(name, () -> {
+            final R linkage_recipe = make_recipe.make();
+            recipes.add(linkage_recipe);
+            linkage_recipe.shareRecords(shared_records);
+            task.run(linkage_recipe);
+        }, depends_on);
+    }
+
+    /**
+     * Runs all the stages, each after those it depends on.
+     *
+     * @return true if all the stages succeeded
+     */
+    public boolean run() {
+
+        final List<Stage> order = getRunOrder();
+        final Map<String, CompletableFuture<Void>> completions = new HashMap<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(max_concurrent_stages);
+
+        fixed_settings.clear();
+        checkSettingsFixed();
+
+        final LocalDateTime start = LocalDateTime.now();
+        System.out.println("Running " + order.size() + " stages, at most " + max_concurrent_stages + " at once @ " + start);
+
+        try {
+            for (Stage stage : order) {
+
+                final CompletableFuture<?>[] dependencies = stage.depends_on.stream().map(completions::get).toArray(CompletableFuture[]::new);
+
+                // Dependencies are added first, since the stages are in run order.
+                completions.put(stage.name, CompletableFuture.allOf(dependencies).whenComplete((ignored, failure) -> stage.ready = System.nanoTime()).handleAsync((ignored, failure) -> {
+
+                    if (failure != null) {
+                        stage.status = Status.SKIPPED;
+                        System.out.println("Skipping stage " + stage.name + " since a stage it depends on failed");
+                        throw new CompletionException(failure);
+                    }
+                    stage.run(this::checkSettingsFixed);
+                    return null;
+
+                }, executor));
+            }
+
+            for (CompletableFuture<Void> completion : completions.values()) {
+                try {
+                    completion.join();
+                } catch (CompletionException e) {
+                    // Reported with the stage.
+                }
+            }
+
+        } finally {
+            executor.shutdown();
+        }
+
+        System.out.println("Finished stages in " + Duration.between(start, LocalDateTime.now()).getSeconds() + "s");
+        writeTimingReport();
+
+        return stages.values().stream().allMatch(stage -> stage.status == Status.SUCCEEDED);
+    }
+
+    public Status getStatus(final String stage_name) {
+        return stages.get(stage_name).status;
+    }
+
+    /**
+     * @return the time each stage waited to run after its dependencies completed, and ran for, followed by the time
+     * taken to read each type of record and build each shared search structure
+     */
+    public String getTimingReport() {
+
+        final StringBuilder report = new StringBuilder();
+        report.append("stage\tstatus\twaited_ms\tduration_ms\n");
+
+        for (Stage stage : stages.values()) {
+            report.append(stage.name).append('\t').append(stage.status).append('\t')
+                    .append(stage.waited.toMillis()).append('\t').append(stage.duration.toMillis()).append('\n');
+        }
+
+        for (Map.Entry<String, Duration> timing : shared_records.getTimings().entrySet()) {
+            report.append(timing.getKey()).append('\t').append("SHARED").append('\t')
+                    .append(0).append('\t').append(timing.getValue().toMillis()).append('\n');
+        }
+
+        return report.toString();
+    }
+
+    @Override
+    public void close() {
+
+        for (LinkageRecipe linkage_recipe : recipes) {
+            try {
+                linkage_recipe.close();
+            } catch (RuntimeException e) {
+                System.out.println("Error closing recipe: " + e.getMessage());
+            }
+        }
+        recipes.clear();
+        shared_records.close();
+    }
+
+    private void writeTimingReport() {
+
+        final String report = getTimingReport();
+        System.out.print(report);
+
+        if (LinkageConfig.ORCHESTRATOR_REPORT_FILE != null) {
+            try {
+                Files.write(Paths.get(LinkageConfig.ORCHESTRATOR_REPORT_FILE), report.getBytes());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Checks that each non-final static field of {@link LinkageConfig}, and of the classes of the recipes made so far,
+     * has the same value as when it was first checked in this run.
+     */
+    private void checkSettingsFixed() {
+
+        final Set<Class<?>> classes = new LinkedHashSet<>();
+        classes.add(LinkageConfig.class);
+
+        synchronized (recipes) {
+            for (LinkageRecipe linkage_recipe : recipes) {
+                for (Class<?> c = linkage_recipe.getClass(); c != Object.class; c = c.getSuperclass()) classes.add(c);
+            }
+        }
+
+        for (Class<?> c : classes) {
+            for (Field field : c.getDeclaredFields()) {
+
+                final int modifiers = field.getModifiers();
+                if (!Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers) || field.isSynthetic()) continue;
+
+                final String name = c.getSimpleName() + "." + field.getName();
+                final Optional<Object> value;
+                try {
+                    field.setAccessible(true);
+                    value = Optional.ofNullable(field.get(null));
+                } catch (IllegalAccessException e) {
+                    throw new RuntimeException(e);
+                }
+
+                final Optional<Object> fixed_value = fixed_settings.putIfAbsent(name, value);
+                if (fixed_value != null && !fixed_value.equals(value)) {
+                    throw new IllegalStateException("setting " + name + " changed from " + fixed_value.orElse(null) + " to " + value.orElse(null) + " during run");
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the stages in an order in which each comes after those it depends on
+     */
+    private List<Stage> getRunOrder() {
+
+        final List<Stage> order = new ArrayList<>();
+        final Set<String> added = new HashSet<>();
+
+        while (order.size() < stages.size()) {
+
+            final int previous_size = order.size();
+
+            for (Stage stage : stages.values()) {
+
+                for (String dependency : stage.depends_on) {
+                    if (!stages.containsKey(dependency)) throw new IllegalArgumentException("stage " + stage.name + " depends on unknown stage " + dependency);
+                }
+
+                if (!added.contains(stage.name) && added.containsAll(stage.depends_on)) {
+                    order.add(stage);
+                    added.add(stage.name);
+                }
+            }
+
+            if (order.size() == previous_size) throw new IllegalArgumentException("cycle in stage dependencies");
+        }
+        return order;
+    }
+
+    private static class Stage {
+
+        final String name;
+        final Task task;
+        final List<String> depends_on;
+
+        volatile long ready;
+        volatile Status status = Status.NOT_RUN;
+        volatile Duration waited = Duration.ZERO;
+        volatile Duration duration = Duration.ZERO;
+
+        Stage(final String name, final Task task, final List<String> depends_on) {
+
+            this.name = name;
+            this.task = task;
+            this.depends_on = depends_on;
+        }
+
+        /**
+         * @param check_settings run before and after the task, to check that the settings it reads haven't changed
+         */
+        void run(final Runnable check_settings) {
+
+            final long start = System.nanoTime();
+            waited = Duration.ofNanos(start - ready);
+            status = Status.RUNNING;
+            System.out.println("Starting stage " + name + " @ " + LocalDateTime.now());
+
+            try {
+                check_settings.run();
+                task.run();
+                check_settings.run();
+                status = Status.SUCCEEDED;
+
+            } catch (Throwable e) {
+                status = Status.FAILED;
+                System.out.println("Stage " + name + " failed: " + e);
+                e.printStackTrace(System.out);
+                throw new CompletionException(e);
+
+            } finally {
+                duration = Duration.ofNanos(System.nanoTime() - start);
+                System.out.println("Finished stage " + name + " (" + status + ") in " + duration.getSeconds() + "s @ " + LocalDateTime.now());
+            }
+        }
+    }
+}
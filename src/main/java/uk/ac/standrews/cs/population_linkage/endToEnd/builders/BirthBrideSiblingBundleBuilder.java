@@ -24,8 +24,6 @@ import uk.ac.standrews.cs.population_linkage.linkageRecipes.LinkageRecipe;
 import uk.ac.standrews.cs.population_linkage.linkageRunners.BitBlasterLinkageRunner;
 import uk.ac.standrews.cs.population_linkage.linkageRunners.MakePersistent;
 import uk.ac.standrews.cs.population_linkage.supportClasses.Link;
-import uk.ac.standrews.cs.population_linkage.supportClasses.LinkageQuality;
-import uk.ac.standrews.cs.population_linkage.supportClasses.LinkageResult;
 import uk.ac.standrews.cs.population_records.record_types.Birth;
 import uk.ac.standrews.cs.population_records.record_types.Death;
 import uk.ac.standrews.cs.population_records.record_types.Marriage;
@@ -42,19 +40,17 @@ public class BirthBrideSiblingBundleBuilder implements MakePersistent {
 
         try(BirthBrideSiblingLinkageRecipe linkageRecipe = new BirthBrideSiblingLinkageRecipe(sourceRepo, number_of_records, BirthBrideSiblingBundleBuilder.class.getName(), null); ) {
 
-            BitBlasterLinkageRunner runner = new BitBlasterLinkageRunner();
+            runBuilder(linkageRecipe);
+        }
+    }
 
-            int linkage_fields = linkageRecipe.ALL_LINKAGE_FIELDS;
-            int half_fields = linkage_fields - (linkage_fields / 2);
+    public static void runBuilder(BirthBrideSiblingLinkageRecipe linkageRecipe) throws Exception {
+        BitBlasterLinkageRunner runner = new BitBlasterLinkageRunner();
 
-            while (linkage_fields >= half_fields) {
-                linkageRecipe.setNumberLinkageFieldsRequired(linkage_fields);
-                LinkageResult lr = runner.run(linkageRecipe, new BirthBrideSiblingBundleBuilder(), false, true);
-                LinkageQuality quality = lr.getLinkageQuality();
-                quality.print(System.out);
-                linkage_fields--;
-            }
-        }
+        int linkage_fields = linkageRecipe.ALL_LINKAGE_FIELDS;
+        int half_fields = linkage_fields - (linkage_fields / 2);
+
+        runner.runForRequiredFields(linkageRecipe, new BirthBrideSiblingBundleBuilder(), linkage_fields, half_fields);
     }
 
     public void makePersistent(LinkageRecipe recipe, Link link) {
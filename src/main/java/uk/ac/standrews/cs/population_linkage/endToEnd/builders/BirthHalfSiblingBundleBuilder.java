@@ -18,35 +18,44 @@ package uk.ac.standrews.cs.population_linkage.endToEnd.builders;
 
 import uk.ac.standrews.cs.neoStorr.impl.exceptions.BucketException;
 import uk.ac.standrews.cs.neoStorr.impl.exceptions.RepositoryException;
+import uk.ac.standrews.cs.population_linkage.graph.BatchedLinkWriter;
 import uk.ac.standrews.cs.population_linkage.graph.Query;
 import uk.ac.standrews.cs.population_linkage.linkageRecipes.BirthHalfSiblingLinkageRecipe;
 import uk.ac.standrews.cs.population_linkage.linkageRecipes.LinkageRecipe;
 import uk.ac.standrews.cs.population_linkage.linkageRunners.BitBlasterLinkageRunner;
 import uk.ac.standrews.cs.population_linkage.linkageRunners.MakePersistent;
 import uk.ac.standrews.cs.population_linkage.supportClasses.Link;
+import uk.ac.standrews.cs.population_linkage.supportClasses.LinkageConfig;
 import uk.ac.standrews.cs.population_linkage.supportClasses.LinkageQuality;
 import uk.ac.standrews.cs.population_linkage.supportClasses.LinkageResult;
 import uk.ac.standrews.cs.population_records.record_types.Birth;
 
-public class BirthHalfSiblingBundleBuilder implements MakePersistent {
+public class BirthHalfSiblingBundleBuilder implements MakePersistent, AutoCloseable {
+
+    private BatchedLinkWriter link_writer = null;
+
     public static void main(String[] args) throws Exception {
 
         String sourceRepo = args[0];  // e.g. umea
         String number_of_records = args[1]; // e.g. EVERYTHING or 10000 etc.
 
-        int count = 1;
-
         try (BirthHalfSiblingLinkageRecipe linkageRecipe = new BirthHalfSiblingLinkageRecipe(sourceRepo, number_of_records, BirthHalfSiblingBundleBuilder.class.getName())) {
 
-            BitBlasterLinkageRunner runner = new BitBlasterLinkageRunner();
+            runBuilder(linkageRecipe);
+        }
+    }
+
+    public static void runBuilder(BirthHalfSiblingLinkageRecipe linkageRecipe) throws Exception {
+        BitBlasterLinkageRunner runner = new BitBlasterLinkageRunner();
 
-            int linkage_fields = linkageRecipe.ALL_LINKAGE_FIELDS;
-            linkageRecipe.setNumberLinkageFieldsRequired(linkage_fields);
-            LinkageResult lr = runner.run(linkageRecipe, new BirthHalfSiblingBundleBuilder(), false, true);
-            LinkageQuality quality = lr.getLinkageQuality();
-            quality.print(System.out);
-            count++;
+        int linkage_fields = linkageRecipe.ALL_LINKAGE_FIELDS;
+        linkageRecipe.setNumberLinkageFieldsRequired(linkage_fields);
+        LinkageResult lr;
+        try (BirthHalfSiblingBundleBuilder builder = new BirthHalfSiblingBundleBuilder()) {
+            lr = runner.run(linkageRecipe, builder, false, true);
         }
+        LinkageQuality quality = lr.getLinkageQuality();
+        quality.print(System.out);
     }
 
     @Override
@@ -56,7 +65,17 @@ public class BirthHalfSiblingBundleBuilder implements MakePersistent {
             String std_id1 = link.getRecord1().getReferend(Birth.class).getString(Birth.STANDARDISED_ID);
             String std_id2 = link.getRecord2().getReferend(Birth.class).getString( Birth.STANDARDISED_ID );
 
-            if( !std_id1.equals(std_id2 ) ) {
+            if( !std_id1.equals(std_id2 ) && LinkageConfig.LINK_WRITER_BATCH_SIZE > 1 ) {
+
+                getLinkWriter(recipe).add(
+                        BatchedLinkWriter.BIRTH_BIRTH_HALF_SIBLING,
+                        std_id1,
+                        std_id2,
+                        recipe.getLinksPersistentName(),
+                        recipe.getNumberOfLinkageFieldsRequired(),
+                        link.getDistance());
+
+            } else if( !std_id1.equals(std_id2 ) ) {
 
                 if (!Query.BBBirthHalfSiblingReferenceExists(recipe.getBridge(), std_id1, std_id2, recipe.getLinksPersistentName())) {
                     Query.createBBHalfSiblingReference(
@@ -72,4 +91,21 @@ public class BirthHalfSiblingBundleBuilder implements MakePersistent {
             throw new RuntimeException(e);
         }
     }
+
+    private synchronized BatchedLinkWriter getLinkWriter(LinkageRecipe recipe) {
+        if (link_writer == null) {
+            link_writer = new BatchedLinkWriter(recipe.getBridge(), LinkageConfig.LINK_WRITER_BATCH_SIZE);
+        }
+        return link_writer;
+    }
+
+    /**
+     * Writes any links still buffered.
+     */
+    @Override
+    public synchronized void close() {
+        if (link_writer != null) {
+            link_writer.close();
+        }
+    }
 }
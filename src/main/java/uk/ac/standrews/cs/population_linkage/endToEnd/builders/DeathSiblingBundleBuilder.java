@@ -18,21 +18,23 @@ package uk.ac.standrews.cs.population_linkage.endToEnd.builders;
 
 import uk.ac.standrews.cs.neoStorr.impl.exceptions.BucketException;
 import uk.ac.standrews.cs.neoStorr.impl.exceptions.RepositoryException;
+import uk.ac.standrews.cs.population_linkage.graph.BatchedLinkWriter;
 import uk.ac.standrews.cs.population_linkage.graph.Query;
 import uk.ac.standrews.cs.population_linkage.linkageRecipes.DeathSiblingLinkageRecipe;
 import uk.ac.standrews.cs.population_linkage.linkageRecipes.LinkageRecipe;
 import uk.ac.standrews.cs.population_linkage.linkageRunners.BitBlasterLinkageRunner;
 import uk.ac.standrews.cs.population_linkage.linkageRunners.MakePersistent;
 import uk.ac.standrews.cs.population_linkage.supportClasses.Link;
-import uk.ac.standrews.cs.population_linkage.supportClasses.LinkageQuality;
-import uk.ac.standrews.cs.population_linkage.supportClasses.LinkageResult;
+import uk.ac.standrews.cs.population_linkage.supportClasses.LinkageConfig;
 import uk.ac.standrews.cs.population_records.record_types.Death;
 
 /**
  * This class attempts to perform birth-birth sibling linkage.
  * It creates a Map of families indexed (at the momement) from birth ids to families
  */
-public class DeathSiblingBundleBuilder implements MakePersistent {
+public class DeathSiblingBundleBuilder implements MakePersistent, AutoCloseable {
+
+    private BatchedLinkWriter link_writer = null;
 
     public static void main(String[] args) throws Exception {
 
@@ -52,12 +54,8 @@ public class DeathSiblingBundleBuilder implements MakePersistent {
         int linkage_fields = linkageRecipe.ALL_LINKAGE_FIELDS;
         int half_fields = linkage_fields - (linkage_fields / 2 );
 
-        while( linkage_fields >= half_fields) {
-            linkageRecipe.setNumberLinkageFieldsRequired(linkage_fields);
-            LinkageResult lr = runner.run(linkageRecipe, new DeathSiblingBundleBuilder(), false, true);
-            LinkageQuality quality = lr.getLinkageQuality();
-            quality.print(System.out);
-            linkage_fields--;
+        try (DeathSiblingBundleBuilder builder = new DeathSiblingBundleBuilder()) {
+            runner.runForRequiredFields(linkageRecipe, builder, linkage_fields, half_fields);
         }
     }
 
@@ -67,7 +65,17 @@ public class DeathSiblingBundleBuilder implements MakePersistent {
             String std_id1 = link.getRecord1().getReferend(Death.class).getString(Death.STANDARDISED_ID);
             String std_id2 = link.getRecord2().getReferend(Death.class).getString( Death.STANDARDISED_ID );
 
-            if (!std_id1.equals(std_id2)) {
+            if (!std_id1.equals(std_id2) && LinkageConfig.LINK_WRITER_BATCH_SIZE > 1) {
+
+                getLinkWriter(recipe).add(
+                        BatchedLinkWriter.DEATH_DEATH_SIBLING,
+                        std_id1,
+                        std_id2,
+                        recipe.getLinksPersistentName(),
+                        recipe.getNumberOfLinkageFieldsRequired(),
+                        link.getDistance());
+
+            } else if (!std_id1.equals(std_id2)) {
                 if( ! Query.DDSiblingReferenceExists(recipe.getBridge(), std_id1, std_id2, recipe.getLinksPersistentName())) {
 
                     Query.createDDSiblingReference(
@@ -83,4 +91,21 @@ public class DeathSiblingBundleBuilder implements MakePersistent {
             throw new RuntimeException(e);
         }
     }
+
+    private synchronized BatchedLinkWriter getLinkWriter(LinkageRecipe recipe) {
+        if (link_writer == null) {
+            link_writer = new BatchedLinkWriter(recipe.getBridge(), LinkageConfig.LINK_WRITER_BATCH_SIZE);
+        }
+        return link_writer;
+    }
+
+    /**
+     * Writes any links still buffered.
+     */
+    @Override
+    public synchronized void close() {
+        if (link_writer != null) {
+            link_writer.close();
+        }
+    }
 }
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.graph;
+
+import org.neo4j.driver.Session;
+import org.neo4j.driver.Transaction;
+import uk.ac.standrews.cs.neoStorr.util.NeoDbCypherBridge;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes links to Neo4J in batches rather than one at a time. Links are buffered for each type of relationship, and
+ * each full buffer is written by a single UNWIND query in a single transaction. Remaining links are written on close.
+ *
+ * As with the queries in {@link Query}, a link isn't created if a relationship of the same type and actors, with the
+ * same provenance, already exists between the nodes in either direction.
+ */
+public class BatchedLinkWriter implements AutoCloseable {
+
+    public static final RelationshipType BIRTH_BIRTH_SIBLING = new RelationshipType("Birth", "SIBLING", "Child-Child", "Birth");
+    public static final RelationshipType BIRTH_BIRTH_HALF_SIBLING = new RelationshipType("Birth", "HALF_SIBLING", "Child-Child", "Birth");
+    public static final RelationshipType DEATH_DEATH_SIBLING = new RelationshipType("Death", "SIBLING", "Deceased-Deceased", "Death");
+
+    private final NeoDbCypherBridge bridge;
+    private final int batch_size;
+
+    private final Map<RelationshipType, List<Map<String, Object>>> buffers = new LinkedHashMap<>();
+    private final Map<RelationshipType, Set<String>> buffered_pairs = new HashMap<>();
+
+    private long number_of_links_written = 0;
+    private long number_of_batches_written = 0;
+    private long write_nanos = 0;
+
+    public BatchedLinkWriter(final NeoDbCypherBridge bridge, final int batch_size) {
+
+        this.bridge = bridge;
+        this.batch_size = batch_size;
+    }
+
+    /**
+     * Adds a link to be written, writing the buffered links of its type if the buffer is full.
+     */
+    public synchronized void add(final RelationshipType type, final String standard_id_from, final String standard_id_to, final String provenance, final int fields_populated, final double distance) {
+
+        // Links between the same nodes in the same batch aren't seen by the query's check for existing relationships.
+        final String pair = standard_id_from.compareTo(standard_id_to) <= 0 ?
+                standard_id_from + "|" + standard_id_to + "|" + provenance :
+                standard_id_to + "|" + standard_id_from + "|" + provenance;
+
+        if (!buffered_pairs.computeIfAbsent(type, t -> new HashSet<>()).add(pair)) return;
+
+        final Map<String, Object> row = new HashMap<>();
+        row.put("standard_id_from", standard_id_from);
+        row.put("standard_id_to", standard_id_to);
+        row.put("prov", provenance);
+        row.put("fields", fields_populated);
+        row.put("distance", distance);
+
+        final List<Map<String, Object>> buffer = buffers.computeIfAbsent(type, t -> new ArrayList<>());
+        buffer.add(row);
+
+        if (buffer.size() >= batch_size) write(type);
+    }
+
+    public synchronized void flush() {
+
+        for (RelationshipType type : buffers.keySet()) {
+            write(type);
+        }
+    }
+
+    public synchronized double getLinksWrittenPerSecond() {
+        return write_nanos == 0 ? 0d : number_of_links_written / (write_nanos / 1e9);
+    }
+
+    @Override
+    public synchronized void close() {
+
+        flush();
+        System.out.println("Batched link writer: " + this);
+    }
+
+    @Override
+    public synchronized String toString() {
+
+        return String.format("%d links in %d batches, %.1f links/s while writing", number_of_links_written, number_of_batches_written, getLinksWrittenPerSecond());
+    }
+
+    private void write(final RelationshipType type) {
+
+        final List<Map<String, Object>> rows = buffers.get(type);
+        if (rows == null || rows.isEmpty()) return;
+
+        final long start = System.nanoTime();
+
+        try (Session session = bridge.getNewSession(); Transaction tx = session.beginTransaction();) {
+            Map<String, Object> parameters = new HashMap<>();
+            parameters.put("rows", rows);
+            tx.run(type.batch_query, parameters);
+            tx.commit();
+        }
+
+        write_nanos += System.nanoTime() - start;
+        number_of_links_written += rows.size();
+        number_of_batches_written++;
+
+        buffers.put(type, new ArrayList<>());
+        buffered_pairs.get(type).clear();
+    }
+
+    /**
+     * A type of relationship between two labels of node, distinguished by the actors on the linked certificates.
+     */
+    public static class RelationshipType {
+
+        private final String batch_query;
+
+        public RelationshipType(final String from_label, final String relationship, final String actors, final String to_label) {
+
+            batch_query = "UNWIND $rows AS row " +
+                    "MATCH (a:" + from_label + " { STANDARDISED_ID: row.standard_id_from }), (b:" + to_label + " { STANDARDISED_ID: row.standard_id_to }) " +
+                    "WHERE NOT (a)-[:" + relationship + " { actors: \"" + actors + "\", provenance: row.prov }]-(b) " +
+                    "CREATE (a)-[r:" + relationship + " { provenance: row.prov, fields_populated: row.fields, distance: row.distance, actors: \"" + actors + "\" } ]->(b)";
+        }
+    }
+}
@@ -39,8 +39,9 @@ import java.util.List;
  */
 public class NNs {
 
-    public static final double DISTANCE_THRESHOLD = 0.45;
-    public static final double THRESHOLD_DELTA = 0.05;
+    // The largest threshold tried by the widening range searches previously used to find neighbours.
+    public static final double MAX_DISTANCE = 0.65;
+
     private final BitBlasterSearchStructure<Birth> birth_bb;
     private final BitBlasterSearchStructure<Death> death_bb;
 
@@ -62,17 +63,9 @@ public class NNs {
 
     private <T extends LXP> List<T> getNNs(BitBlasterSearchStructure<T> bb, T search_record, int number_nns) {
 
-        List<DataDistance<T>> nns = new ArrayList<>();
-        double distance = DISTANCE_THRESHOLD;
-        int tries = 0;
-        while (nns.size() < number_nns + 1 && tries < 5) { // +1 is because the search record is returned too
-            nns = bb.findWithinThreshold(search_record, distance); // Finds matching births
-            distance += THRESHOLD_DELTA;
-            tries++;
-        }
         List<T> result = new ArrayList<>();
-        // filter out the search record
-        for (DataDistance<T> dd : nns) {
+        // +1 is because the search record is returned too; filter it out
+        for (DataDistance<T> dd : bb.findNearest(search_record, number_nns + 1, MAX_DISTANCE)) {
             if (dd.value.getId() != search_record.getId()) {
                 result.add(dd.value);
             }
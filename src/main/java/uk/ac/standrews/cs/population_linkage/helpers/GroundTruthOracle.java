@@ -0,0 +1,214 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.helpers;
+
+import uk.ac.standrews.cs.neoStorr.impl.LXP;
+import uk.ac.standrews.cs.population_linkage.linkageRecipes.LinkageRecipe;
+import uk.ac.standrews.cs.population_linkage.supportClasses.Link;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.LongStream;
+
+/**
+ * Says whether links are true, from the identity fields of the stored and query records, read once when the oracle
+ * is made. This gives the same answers as {@link LinkageRecipe#trueMatch(LXP, LXP, List)} for true matches, without
+ * retrieving the records of each link or comparing strings.
+ *
+ * Each distinct non-empty identity value is encoded as a long, with zero for an empty value, and the codes are held
+ * for each record in an array found by binary search on its storr id. The oracle isn't changed once made, so can be
+ * used from any number of threads.
+ */
+public class GroundTruthOracle {
+
+    private static final long EMPTY = 0;
+
+    private final List<List<LinkageRecipe.Pair>> true_match_alternatives;
+    private final boolean symmetric;
+
+    private final long[] record_ids;
+
+    // Codes of the values of the identity fields, in the order they appear in the alternatives, for each record;
+    // those as the first record of a pair only for stored records, and as the second only for query records.
+    private final long[][] codes_as_record1;
+    private final long[][] codes_as_record2;
+
+    // The codes for alternative i are those from offsets[i] up to offsets[i+1].
+    private final int[] offsets;
+
+    private final int[] stored_rows;
+    private final int[] query_rows;
+
+    /**
+     * @return an oracle for the recipe, or null if the recipe doesn't decide true matches from alternative identity fields
+     */
+    public static GroundTruthOracle forRecipe(final LinkageRecipe linkage_recipe) {
+
+        final List<List<LinkageRecipe.Pair>> true_match_alternatives = linkage_recipe.getTrueMatchAlternatives();
+        if (true_match_alternatives == null) return null;
+
+        return new GroundTruthOracle(true_match_alternatives, linkage_recipe.getStoredRecords(), linkage_recipe.getQueryRecords(), linkage_recipe.isSymmetric());
+    }
+
+    /**
+     * @param symmetric whether the stored and query records are the same, in which case each pair of records is counted once
+     */
+    public GroundTruthOracle(final List<List<LinkageRecipe.Pair>> true_match_alternatives, final Iterable<LXP> stored_records, final Iterable<LXP> query_records, final boolean symmetric) {
+
+        this.true_match_alternatives = true_match_alternatives;
+        this.symmetric = symmetric;
+
+        offsets = new int[true_match_alternatives.size() + 1];
+        for (int i = 0; i < true_match_alternatives.size(); i++) {
+            offsets[i + 1] = offsets[i] + true_match_alternatives.get(i).size();
+        }
+
+        final Map<Long, LXP> stored = new HashMap<>();
+        final Map<Long, LXP> query = new HashMap<>();
+
+        for (LXP record : stored_records) stored.put(record.getId(), record);
+        for (LXP record : query_records) query.put(record.getId(), record);
+
+        record_ids = LongStream.concat(stored.keySet().stream().mapToLong(Long::longValue), query.keySet().stream().mapToLong(Long::longValue))
+                .sorted().distinct().toArray();
+
+        codes_as_record1 = new long[record_ids.length][];
+        codes_as_record2 = new long[record_ids.length][];
+
+        final Map<String, Long> codes = new HashMap<>();
+
+        for (LXP record : stored.values()) codes_as_record1[rowOf(record.getId())] = encode(record, true, codes);
+        for (LXP record : query.values()) codes_as_record2[rowOf(record.getId())] = encode(record, false, codes);
+
+        stored_rows = stored.keySet().stream().mapToInt(this::rowOf).sorted().toArray();
+        query_rows = query.keySet().stream().mapToInt(this::rowOf).sorted().toArray();
+    }
+
+    /**
+     * @return whether the link is a true match, or null if its first record isn't a stored record or its second a
+     * query record known to the oracle
+     */
+    public Boolean isTrueLink(final Link link) {
+
+        final int row1 = rowOf(link.getRecord1().getObjectId());
+        final int row2 = rowOf(link.getRecord2().getObjectId());
+
+        if (row1 < 0 || row2 < 0 || codes_as_record1[row1] == null || codes_as_record2[row2] == null) return null;
+
+        return isTrueMatch(row1, row2);
+    }
+
+    /**
+     * @return the number of true matches between the stored and query records, each pair of records being counted
+     * once if the oracle is symmetric
+     */
+    public long getNumberOfTrueLinks() {
+
+        // For each alternative, the stored records with each combination of its identity values.
+        final List<Map<List<Long>, List<Integer>>> stored_rows_by_values = new ArrayList<>();
+        for (int alternative = 0; alternative < true_match_alternatives.size(); alternative++) {
+
+            final Map<List<Long>, List<Integer>> rows_by_values = new HashMap<>();
+            for (int row : stored_rows) {
+                final List<Long> values = values(codes_as_record1[row], alternative);
+                if (values != null) rows_by_values.computeIfAbsent(values, v -> new ArrayList<>()).add(row);
+            }
+            stored_rows_by_values.add(rows_by_values);
+        }
+
+        long count = 0;
+        for (int query_row : query_rows) {
+            for (int alternative = 0; alternative < true_match_alternatives.size(); alternative++) {
+
+                final List<Long> values = values(codes_as_record2[query_row], alternative);
+                if (values == null) continue;
+
+                for (int stored_row : stored_rows_by_values.get(alternative).getOrDefault(values, List.of())) {
+
+                    // Records matching on more than one alternative are counted for the first.
+                    if ((!symmetric || stored_row < query_row) && !matchesEarlierAlternative(stored_row, query_row, alternative)) count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private boolean isTrueMatch(final int row1, final int row2) {
+
+        for (int alternative = 0; alternative < true_match_alternatives.size(); alternative++) {
+            if (matches(row1, row2, alternative)) return true;
+        }
+        return false;
+    }
+
+    private boolean matchesEarlierAlternative(final int row1, final int row2, final int alternative) {
+
+        for (int earlier = 0; earlier < alternative; earlier++) {
+            if (matches(row1, row2, earlier)) return true;
+        }
+        return false;
+    }
+
+    private boolean matches(final int row1, final int row2, final int alternative) {
+
+        final long[] codes1 = codes_as_record1[row1];
+        final long[] codes2 = codes_as_record2[row2];
+
+        for (int i = offsets[alternative]; i < offsets[alternative + 1]; i++) {
+            if (codes1[i] == EMPTY || codes1[i] != codes2[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the codes for the alternative, or null if any is empty, since such a record can't match on it
+     */
+    private List<Long> values(final long[] record_codes, final int alternative) {
+
+        final List<Long> values = new ArrayList<>();
+        for (int i = offsets[alternative]; i < offsets[alternative + 1]; i++) {
+            if (record_codes[i] == EMPTY) return null;
+            values.add(record_codes[i]);
+        }
+        return values;
+    }
+
+    private long[] encode(final LXP record, final boolean as_record1, final Map<String, Long> codes) {
+
+        final List<Long> record_codes = new ArrayList<>();
+
+        for (List<LinkageRecipe.Pair> true_match_fields : true_match_alternatives) {
+            for (LinkageRecipe.Pair fields : true_match_fields) {
+
+                final int field = as_record1 ? fields.first : fields.second;
+                final String value = record.getString(field);
+
+                record_codes.add(value.isEmpty() ? EMPTY : codes.computeIfAbsent(value, v -> (long) codes.size() + 1));
+            }
+        }
+        return record_codes.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private int rowOf(final long record_id) {
+
+        final int row = Arrays.binarySearch(record_ids, record_id);
+        return row >= 0 ? row : -1;
+    }
+}
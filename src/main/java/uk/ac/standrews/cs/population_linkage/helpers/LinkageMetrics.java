@@ -0,0 +1,460 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.helpers;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+import uk.ac.standrews.cs.population_linkage.compositeMeasures.BoundedMeasure;
+import uk.ac.standrews.cs.utilities.measures.coreConcepts.Measure;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the throughput of a linkage run, to show whether a slow run is limited by the search index, the distance
+ * measure or persistence. Records:
+ *
+ * - the number of query records linked, and the rate;
+ * - the number of distance evaluations, counted by a measure wrapped with {@link #countDistances(Measure)};
+ * - histograms of the numbers of candidates (distance evaluations) and results for each query record;
+ * - the time spent converting query records, searching, checking viability and persisting links;
+ * - heap use and garbage collection at the boundaries between the phases of the run.
+ *
+ * A sample can be written periodically to a file, as CSV or as one JSON object per line, and is also committed as a
+ * JFR event, which is recorded only while a flight recording is running.
+ */
+public class LinkageMetrics implements AutoCloseable {
+
+    public enum Format {CSV, JSON}
+
+    public enum Phase {CONVERSION, SEARCH, VIABILITY, PERSISTENCE}
+
+    private static final String[] CSV_COLUMNS = {"time", "phase", "elapsed_seconds", "queries", "queries_per_second",
+            "distance_evaluations", "distance_evaluations_per_query", "conversion_seconds", "search_seconds",
+            "viability_seconds", "persistence_seconds", "heap_used_mb", "heap_committed_mb", "gc_count", "gc_seconds",
+            "candidates_histogram", "results_histogram"};
+
+    private final long start_time = System.nanoTime();
+
+    private final LongAdder number_of_queries = new LongAdder();
+    private final LongAdder number_of_distance_evaluations = new LongAdder();
+    private final LongAdder[] phase_nanos = new LongAdder[Phase.values().length];
+    private final Histogram candidates_per_query = new Histogram();
+    private final Histogram results_per_query = new Histogram();
+
+    // The query record, if any, whose matches are being searched for in each thread.
+    private final ThreadLocal<QueryCounts> active_query = new ThreadLocal<>();
+
+    private PrintWriter writer = null;
+    private Format format;
+    private ScheduledExecutorService reporter = null;
+
+    public LinkageMetrics() {
+
+        for (Phase phase : Phase.values()) {
+            phase_nanos[phase.ordinal()] = new LongAdder();
+        }
+    }
+
+    /**
+     * Writes a sample to the given file at the given interval, and at each phase boundary, until closed.
+     */
+    public synchronized void startReporting(final Path file, final Format format, final long interval_seconds) {
+
+        try {
+            if (file.toAbsolutePath().getParent() != null) Files.createDirectories(file.toAbsolutePath().getParent());
+            writer = new PrintWriter(Files.newBufferedWriter(file));
+            this.format = format;
+
+            if (format == Format.CSV) {
+                writer.println(String.join(",", CSV_COLUMNS));
+                writer.flush();
+            }
+
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "linkage metrics reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> report(""), interval_seconds, interval_seconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @return a measure giving the same distances as the given measure, counting each distance evaluation
+     */
+    public <T> Measure<T> countDistances(final Measure<T> measure) {
+        return new CountingMeasure<>(measure);
+    }
+
+    /**
+     * Starts counting the work done for a query record in this thread: the distance evaluations and conversion time
+     * until {@link #stopQuery(QueryCounts)} is called are charged to the query record. Work done in other threads,
+     * or outside any query record's search, such as building the index, is only included in the totals.
+     */
+    public QueryCounts startQuery() {
+
+        final QueryCounts counts = new QueryCounts();
+        active_query.set(counts);
+        return counts;
+    }
+
+    public void stopQuery(final QueryCounts counts) {
+
+        if (active_query.get() == counts) active_query.remove();
+    }
+
+    /**
+     * Records the linking of a query record. The number of candidates is the number of distance evaluations charged
+     * to it.
+     */
+    public void recordQuery(final QueryCounts counts, final long number_of_results) {
+
+        number_of_queries.increment();
+        candidates_per_query.add(counts.distance_evaluations);
+        results_per_query.add(number_of_results);
+    }
+
+    public void recordTime(final Phase phase, final long nanos) {
+
+        phase_nanos[phase.ordinal()].add(nanos);
+
+        final QueryCounts counts = active_query.get();
+        if (phase == Phase.CONVERSION && counts != null) counts.conversion_nanos += nanos;
+    }
+
+    /**
+     * Records the time spent searching for a query record's matches, excluding any time spent converting the query
+     * record during the search.
+     */
+    public void recordSearchTime(final QueryCounts counts, final long nanos_including_conversion) {
+
+        phase_nanos[Phase.SEARCH.ordinal()].add(Math.max(nanos_including_conversion - counts.conversion_nanos, 0));
+    }
+
+    /**
+     * Records heap use and garbage collection at the end of a phase of the run.
+     */
+    public void phaseBoundary(final String phase_name) {
+
+        System.out.println("Metrics at end of " + phase_name + ": " + this);
+        report(phase_name);
+    }
+
+    public long getNumberOfQueries() {
+        return number_of_queries.sum();
+    }
+
+    public double getQueriesPerSecond() {
+        return number_of_queries.sum() / Math.max(getElapsedSeconds(), Double.MIN_VALUE);
+    }
+
+    public double getDistanceEvaluationsPerQuery() {
+
+        final long queries = number_of_queries.sum();
+        return queries == 0 ? 0d : (double) number_of_distance_evaluations.sum() / queries;
+    }
+
+    public double getSeconds(final Phase phase) {
+        return phase_nanos[phase.ordinal()].sum() / 1e9;
+    }
+
+    public Histogram getCandidatesPerQuery() {
+        return candidates_per_query;
+    }
+
+    public Histogram getResultsPerQuery() {
+        return results_per_query;
+    }
+
+    @Override
+    public synchronized void close() {
+
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+        report("end");
+
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+
+        final MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+
+        return String.format("%d queries, %.1f queries/s, %.1f distance evaluations/query, conversion %.1fs, search %.1fs, viability %.1fs, persistence %.1fs, heap %dMB of %dMB, %d GCs taking %.1fs",
+                number_of_queries.sum(), getQueriesPerSecond(), getDistanceEvaluationsPerQuery(),
+                getSeconds(Phase.CONVERSION), getSeconds(Phase.SEARCH), getSeconds(Phase.VIABILITY), getSeconds(Phase.PERSISTENCE),
+                toMegabytes(heap.getUsed()), toMegabytes(heap.getCommitted()), getGCCount(), getGCMillis() / 1e3);
+    }
+
+    private synchronized void report(final String phase_name) {
+
+        final MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        final long gc_count = getGCCount();
+        final long gc_millis = getGCMillis();
+
+        final ThroughputEvent event = new ThroughputEvent();
+        event.phase = phase_name;
+        event.queries = number_of_queries.sum();
+        event.queries_per_second = getQueriesPerSecond();
+        event.distance_evaluations_per_query = getDistanceEvaluationsPerQuery();
+        event.conversion_time = phase_nanos[Phase.CONVERSION.ordinal()].sum();
+        event.search_time = phase_nanos[Phase.SEARCH.ordinal()].sum();
+        event.viability_time = phase_nanos[Phase.VIABILITY.ordinal()].sum();
+        event.persistence_time = phase_nanos[Phase.PERSISTENCE.ordinal()].sum();
+        event.heap_used = heap.getUsed();
+        event.heap_committed = heap.getCommitted();
+        event.gc_count = gc_count;
+        event.commit();
+
+        if (writer == null) return;
+
+        final Object[] values = {LocalDateTime.now(), phase_name, getElapsedSeconds(), number_of_queries.sum(), getQueriesPerSecond(),
+                number_of_distance_evaluations.sum(), getDistanceEvaluationsPerQuery(),
+                getSeconds(Phase.CONVERSION), getSeconds(Phase.SEARCH), getSeconds(Phase.VIABILITY), getSeconds(Phase.PERSISTENCE),
+                toMegabytes(heap.getUsed()), toMegabytes(heap.getCommitted()), gc_count, gc_millis / 1e3,
+                candidates_per_query, results_per_query};
+
+        final StringBuilder builder = new StringBuilder();
+
+        if (format == Format.CSV) {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) builder.append(',');
+                builder.append(values[i] instanceof Histogram ? ((Histogram) values[i]).toCsv() : values[i]);
+            }
+
+        } else {
+            builder.append('{');
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) builder.append(',');
+                builder.append('"').append(CSV_COLUMNS[i]).append("\":");
+                if (values[i] instanceof Histogram) builder.append(((Histogram) values[i]).toJson());
+                else if (values[i] instanceof Number) builder.append(values[i]);
+                else builder.append('"').append(values[i]).append('"');
+            }
+            builder.append('}');
+        }
+
+        writer.println(builder);
+        writer.flush();
+    }
+
+    private double getElapsedSeconds() {
+        return (System.nanoTime() - start_time) / 1e9;
+    }
+
+    private static long getGCCount() {
+
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(collector.getCollectionCount(), 0);
+        }
+        return count;
+    }
+
+    private static long getGCMillis() {
+
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(collector.getCollectionTime(), 0);
+        }
+        return millis;
+    }
+
+    private static long toMegabytes(final long bytes) {
+        return bytes / (1024 * 1024);
+    }
+
+    /**
+     * Counts of values in buckets of increasing powers of two: 0, 1, 2-3, 4-7 and so on.
+     */
+    public static class Histogram {
+
+        private final LongAdder[] buckets = new LongAdder[Long.SIZE + 1];
+
+        Histogram() {
+
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public void add(final long value) {
+            buckets[getBucket(value)].increment();
+        }
+
+        /**
+         * @return the number of values added that were at least the given power of two, and less than the next
+         */
+        public long getCount(final int bucket) {
+            return buckets[bucket].sum();
+        }
+
+        public static int getBucket(final long value) {
+            return value <= 0 ? 0 : Long.SIZE - Long.numberOfLeadingZeros(value);
+        }
+
+        public static long getBucketLowerBound(final int bucket) {
+            return bucket == 0 ? 0 : 1L << (bucket - 1);
+        }
+
+        String toCsv() {
+
+            final StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < buckets.length; i++) {
+                final long count = buckets[i].sum();
+                if (count > 0) {
+                    if (builder.length() > 0) builder.append('|');
+                    builder.append(getBucketLowerBound(i)).append(':').append(count);
+                }
+            }
+            return builder.toString();
+        }
+
+        String toJson() {
+
+            final StringBuilder builder = new StringBuilder("{");
+            for (int i = 0; i < buckets.length; i++) {
+                final long count = buckets[i].sum();
+                if (count > 0) {
+                    if (builder.length() > 1) builder.append(',');
+                    builder.append('"').append(getBucketLowerBound(i)).append("\":").append(count);
+                }
+            }
+            return builder.append('}').toString();
+        }
+    }
+
+    private class CountingMeasure<T> extends Measure<T> implements BoundedMeasure<T> {
+
+        private final Measure<T> measure;
+
+        CountingMeasure(final Measure<T> measure) {
+            this.measure = measure;
+        }
+
+        @Override
+        public String getMeasureName() {
+            return measure.getMeasureName();
+        }
+
+        @Override
+        public boolean maxDistanceIsOne() {
+            return measure.maxDistanceIsOne();
+        }
+
+        @Override
+        public double calculateDistance(final T x, final T y) {
+
+            countDistanceEvaluation();
+            return measure.distance(x, y);
+        }
+
+        @Override
+        public double distance(final T x, final T y, final double upper_bound) {
+
+            countDistanceEvaluation();
+            return BoundedMeasure.boundedDistance(measure, x, y, upper_bound);
+        }
+    }
+
+    private void countDistanceEvaluation() {
+
+        number_of_distance_evaluations.increment();
+
+        final QueryCounts counts = active_query.get();
+        if (counts != null) counts.distance_evaluations++;
+    }
+
+    /**
+     * The work done for a single query record, only updated by the thread searching for its matches.
+     */
+    public static class QueryCounts {
+
+        private long distance_evaluations = 0;
+        private long conversion_nanos = 0;
+
+        public long getDistanceEvaluations() {
+            return distance_evaluations;
+        }
+    }
+
+    @Name("uk.ac.standrews.cs.population_linkage.LinkageThroughput")
+    @Label("Linkage Throughput")
+    @Category("Population Linkage")
+    static class ThroughputEvent extends Event {
+
+        @Label("Phase")
+        String phase;
+
+        @Label("Queries")
+        long queries;
+
+        @Label("Queries per Second")
+        double queries_per_second;
+
+        @Label("Distance Evaluations per Query")
+        double distance_evaluations_per_query;
+
+        @Label("Conversion Time")
+        @Timespan
+        long conversion_time;
+
+        @Label("Search Time")
+        @Timespan
+        long search_time;
+
+        @Label("Viability Time")
+        @Timespan
+        long viability_time;
+
+        @Label("Persistence Time")
+        @Timespan
+        long persistence_time;
+
+        @Label("Heap Used")
+        long heap_used;
+
+        @Label("Heap Committed")
+        long heap_committed;
+
+        @Label("Garbage Collections")
+        long gc_count;
+    }
+}
@@ -23,6 +23,7 @@ import uk.ac.standrews.cs.neoStorr.util.NeoDbCypherBridge;
 import uk.ac.standrews.cs.population_linkage.characterisation.LinkStatus;
 import uk.ac.standrews.cs.population_linkage.compositeMeasures.LXPMeasure;
 import uk.ac.standrews.cs.population_linkage.compositeMeasures.SumOfFieldDistances;
+import uk.ac.standrews.cs.population_linkage.searchStructures.YearRange;
 import uk.ac.standrews.cs.population_linkage.supportClasses.Link;
 import uk.ac.standrews.cs.population_linkage.supportClasses.LinkageConfig;
 import uk.ac.standrews.cs.population_records.record_types.Birth;
@@ -104,6 +105,11 @@ public class BirthDeathIdentityLinkageRecipe extends LinkageRecipe {
         return trueMatch(record1, record2, TRUE_MATCH_ALTERNATIVES);
     }
 
+    @Override
+    public List<List<Pair>> getTrueMatchAlternatives() {
+        return TRUE_MATCH_ALTERNATIVES;
+    }
+
     @Override
     public String getLinkageType() {
         return LINKAGE_TYPE;
@@ -139,6 +145,44 @@ public class BirthDeathIdentityLinkageRecipe extends LinkageRecipe {
         return isViable(record1, record2);
     }
 
+    @Override
+    public List<Integer> getStoredRecordViabilityFields() {
+        return CommonLinkViabilityLogic.BIRTH_RECORD_DATE_FIELDS;
+    }
+
+    @Override
+    public Integer getStoredRecordYear(final LXP stored_record) {
+        return CommonLinkViabilityLogic.getYear(() -> CommonLinkViabilityLogic.getBirthDateFromBirthRecord(stored_record));
+    }
+
+    @Override
+    public List<Integer> getStoredRecordProjectionFields() {
+        return getLinkageFieldsAnd(CommonLinkViabilityLogic.BIRTH_RECORD_DATE_FIELDS);
+    }
+
+    /**
+     * The birth year must be consistent both with the maximum age at death and with the age recorded on the death record.
+     */
+    @Override
+    public YearRange getViableStoredRecordYears(final LXP death_record) {
+
+        try {
+            final int death_year = CommonLinkViabilityLogic.getDeathDateFromDeathRecord(death_record).getYear();
+            final int age_at_death = Integer.parseInt(death_record.getString(Death.AGE_AT_DEATH));
+
+            // If this can't be determined then the link is viable whatever the birth record.
+            CommonLinkViabilityLogic.getBirthDateFromDeathRecord(death_record);
+
+            final int min_age = Math.max(0, age_at_death - LinkageConfig.MAX_ALLOWABLE_AGE_DISCREPANCY);
+            final int max_age = Math.min(LinkageConfig.MAX_AGE_AT_DEATH, age_at_death + LinkageConfig.MAX_ALLOWABLE_AGE_DISCREPANCY);
+
+            return CommonLinkViabilityLogic.getViableYears(death_year, -max_age, -min_age);
+
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
     /**
      * Checks whether the birth occurs before the death, that the age at death is plausible, and that the ages at death
      * derived in three different ways are consistent (recorded on death record; difference between birth year on birth
@@ -101,6 +101,11 @@ public class BirthDeathSiblingLinkageRecipe extends LinkageRecipe {
         return trueMatch(record1, record2, TRUE_MATCH_ALTERNATIVES);
     }
 
+    @Override
+    public List<List<Pair>> getTrueMatchAlternatives() {
+        return TRUE_MATCH_ALTERNATIVES;
+    }
+
     @Override
     public String getLinkageType() {
         return LINKAGE_TYPE;
@@ -141,6 +146,11 @@ public class BirthDeathSiblingLinkageRecipe extends LinkageRecipe {
         return isViable(record1, record2);
     }
 
+    @Override
+    public List<Integer> getStoredRecordViabilityFields() {
+        return concat(List.of(Birth.FORENAME, Birth.SURNAME), CommonLinkViabilityLogic.BIRTH_RECORD_DATE_FIELDS);
+    }
+
     /**
      * Checks:
      *    1. whether the age difference between the potential siblings is plausible.
@@ -96,6 +96,11 @@ public class BirthGroomIdentityLinkageRecipe extends LinkageRecipe {
         return trueMatch(record1, record2, TRUE_MATCH_ALTERNATIVES);
     }
 
+    @Override
+    public List<List<Pair>> getTrueMatchAlternatives() {
+        return TRUE_MATCH_ALTERNATIVES;
+    }
+
     @Override
     public String getLinkageType() {
         return LINKAGE_TYPE;
@@ -131,6 +136,11 @@ public class BirthGroomIdentityLinkageRecipe extends LinkageRecipe {
         return isViable(record1, record2);
     }
 
+    @Override
+    public List<Integer> getStoredRecordViabilityFields() {
+        return CommonLinkViabilityLogic.BIRTH_RECORD_DATE_FIELDS;
+    }
+
     /**
      * Checks whether the date of marriage is sufficiently long after the date of birth for the groom to have
      * attained the minimum age for marriage, and that any discrepancy between that calculated age at marriage
@@ -93,6 +93,11 @@ public class BirthHalfSiblingLinkageRecipe extends LinkageRecipe {
         return trueMatch(record1, record2, TRUE_MATCH_ALTERNATIVES);
     }
 
+    @Override
+    public List<List<Pair>> getTrueMatchAlternatives() {
+        return TRUE_MATCH_ALTERNATIVES;
+    }
+
     @Override
     public String getLinkageType() {
         return LINKAGE_TYPE;
@@ -141,6 +146,11 @@ public class BirthHalfSiblingLinkageRecipe extends LinkageRecipe {
         return isViable(record1, record2);
     }
 
+    @Override
+    public List<Integer> getStoredRecordViabilityFields() {
+        return CommonLinkViabilityLogic.BIRTH_RECORD_DATE_FIELDS;
+    }
+
     @Override
     public List<Integer> getQueryMappingFields() {
         return getLinkageFields();
@@ -23,7 +23,9 @@ import uk.ac.standrews.cs.neoStorr.util.NeoDbCypherBridge;
 import uk.ac.standrews.cs.population_linkage.characterisation.LinkStatus;
 import uk.ac.standrews.cs.population_linkage.compositeMeasures.LXPMeasure;
 import uk.ac.standrews.cs.population_linkage.compositeMeasures.SumOfFieldDistances;
+import uk.ac.standrews.cs.population_linkage.searchStructures.YearRange;
 import uk.ac.standrews.cs.population_linkage.supportClasses.Link;
+import uk.ac.standrews.cs.population_linkage.supportClasses.LinkageConfig;
 import uk.ac.standrews.cs.population_records.record_types.Birth;
 
 import java.util.HashMap;
@@ -75,6 +77,11 @@ public class BirthMotherIdentityLinkageRecipe extends LinkageRecipe {
         return trueMatch(record1, record2, TRUE_MATCH_ALTERNATIVES);
     }
 
+    @Override
+    public List<List<Pair>> getTrueMatchAlternatives() {
+        return TRUE_MATCH_ALTERNATIVES;
+    }
+
     @Override
     public String getLinkageType() {
         return LINKAGE_TYPE;
@@ -110,6 +117,29 @@ public class BirthMotherIdentityLinkageRecipe extends LinkageRecipe {
         return isViable(record1, record2);
     }
 
+    @Override
+    public List<Integer> getStoredRecordViabilityFields() {
+        return CommonLinkViabilityLogic.BIRTH_RECORD_DATE_FIELDS;
+    }
+
+    @Override
+    public Integer getStoredRecordYear(final LXP stored_record) {
+        return CommonLinkViabilityLogic.getYear(() -> CommonLinkViabilityLogic.getBirthDateFromBirthRecord(stored_record));
+    }
+
+    @Override
+    public List<Integer> getStoredRecordProjectionFields() {
+        return getLinkageFieldsAnd(CommonLinkViabilityLogic.BIRTH_RECORD_DATE_FIELDS);
+    }
+
+    /**
+     * The stored record is the parent's birth, which must precede the child's birth by a plausible parental age.
+     */
+    @Override
+    public YearRange getViableStoredRecordYears(final LXP child_birth_record) {
+        return CommonLinkViabilityLogic.getViableYears(getStoredRecordYear(child_birth_record), -LinkageConfig.MAX_MOTHER_AGE_AT_BIRTH, -LinkageConfig.MIN_PARENT_AGE_AT_BIRTH);
+    }
+
     /**
      * Checks whether a plausible period has elapsed for the person to be the mother.
      *
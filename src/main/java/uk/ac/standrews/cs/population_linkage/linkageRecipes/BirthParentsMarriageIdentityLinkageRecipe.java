@@ -20,6 +20,7 @@ import uk.ac.standrews.cs.neoStorr.impl.LXP;
 import uk.ac.standrews.cs.population_linkage.characterisation.LinkStatus;
 import uk.ac.standrews.cs.population_linkage.compositeMeasures.LXPMeasure;
 import uk.ac.standrews.cs.population_linkage.compositeMeasures.SumOfFieldDistances;
+import uk.ac.standrews.cs.population_linkage.searchStructures.YearRange;
 import uk.ac.standrews.cs.population_linkage.helpers.RecordFiltering;
 import uk.ac.standrews.cs.population_linkage.supportClasses.Link;
 import uk.ac.standrews.cs.population_linkage.supportClasses.LinkageConfig;
@@ -98,6 +99,11 @@ public class BirthParentsMarriageIdentityLinkageRecipe extends LinkageRecipe {
         return trueMatch(birth, marriage, TRUE_MATCH_ALTERNATIVES);
     }
 
+    @Override
+    public List<List<Pair>> getTrueMatchAlternatives() {
+        return TRUE_MATCH_ALTERNATIVES;
+    }
+
     @Override
     public String getLinkageType() {
         return LINKAGE_TYPE;
@@ -133,6 +139,28 @@ public class BirthParentsMarriageIdentityLinkageRecipe extends LinkageRecipe {
         return isViable(record1, record2);
     }
 
+    @Override
+    public List<Integer> getStoredRecordViabilityFields() {
+        return CommonLinkViabilityLogic.BIRTH_RECORD_DATE_FIELDS;
+    }
+
+    @Override
+    public Integer getStoredRecordYear(final LXP stored_record) {
+        return CommonLinkViabilityLogic.getYear(() -> CommonLinkViabilityLogic.getBirthDateFromBirthRecord(stored_record));
+    }
+
+    @Override
+    public List<Integer> getStoredRecordProjectionFields() {
+        return getLinkageFieldsAnd(CommonLinkViabilityLogic.BIRTH_RECORD_DATE_FIELDS);
+    }
+
+    @Override
+    public YearRange getViableStoredRecordYears(final LXP marriage_record) {
+
+        final Integer marriage_year = CommonLinkViabilityLogic.getYear(() -> CommonLinkViabilityLogic.getMarriageDateFromMarriageRecord(marriage_record));
+        return CommonLinkViabilityLogic.getViableYears(marriage_year, LinkageConfig.MIN_MARRIAGE_BIRTH_DIFFERENCE, LinkageConfig.MAX_MARRIAGE_BIRTH_DIFFERENCE);
+    }
+
     /**
      * Checks whether a plausible period has elapsed between the marriage and the birth.
      *
@@ -23,8 +23,10 @@ import uk.ac.standrews.cs.neoStorr.util.NeoDbCypherBridge;
 import uk.ac.standrews.cs.population_linkage.characterisation.LinkStatus;
 import uk.ac.standrews.cs.population_linkage.compositeMeasures.LXPMeasure;
 import uk.ac.standrews.cs.population_linkage.compositeMeasures.SumOfFieldDistances;
+import uk.ac.standrews.cs.population_linkage.searchStructures.YearRange;
 import uk.ac.standrews.cs.population_linkage.helpers.RecordFiltering;
 import uk.ac.standrews.cs.population_linkage.supportClasses.Link;
+import uk.ac.standrews.cs.population_linkage.supportClasses.LinkageConfig;
 import uk.ac.standrews.cs.population_records.record_types.Birth;
 
 import java.time.LocalDate;
@@ -98,6 +100,11 @@ public class BirthSiblingLinkageRecipe extends LinkageRecipe {
         return trueMatch(record1, record2, TRUE_MATCH_ALTERNATIVES);
     }
 
+    @Override
+    public List<List<Pair>> getTrueMatchAlternatives() {
+        return TRUE_MATCH_ALTERNATIVES;
+    }
+
     @Override
     public String getLinkageType() {
         return LINKAGE_TYPE;
@@ -155,6 +162,26 @@ public class BirthSiblingLinkageRecipe extends LinkageRecipe {
         return isViable(record1, record2);
     }
 
+    @Override
+    public List<Integer> getStoredRecordViabilityFields() {
+        return CommonLinkViabilityLogic.BIRTH_RECORD_DATE_FIELDS;
+    }
+
+    @Override
+    public Integer getStoredRecordYear(final LXP stored_record) {
+        return CommonLinkViabilityLogic.getYear(() -> CommonLinkViabilityLogic.getBirthDateFromBirthRecord(stored_record));
+    }
+
+    @Override
+    public List<Integer> getStoredRecordProjectionFields() {
+        return getLinkageFieldsAnd(CommonLinkViabilityLogic.BIRTH_RECORD_DATE_FIELDS);
+    }
+
+    @Override
+    public YearRange getViableStoredRecordYears(final LXP query_record) {
+        return CommonLinkViabilityLogic.getViableYears(getStoredRecordYear(query_record), -LinkageConfig.MAX_SIBLING_AGE_DIFFERENCE, LinkageConfig.MAX_SIBLING_AGE_DIFFERENCE);
+    }
+
     @Override
     public List<Integer> getQueryMappingFields() {
         return getLinkageFields();
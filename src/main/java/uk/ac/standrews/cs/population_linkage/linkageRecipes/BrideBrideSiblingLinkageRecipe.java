@@ -132,6 +132,11 @@ public class BrideBrideSiblingLinkageRecipe extends LinkageRecipe {
         return isViable(record1, record2);
     }
 
+    @Override
+    public List<Integer> getStoredRecordViabilityFields() {
+        return concat(List.of(Marriage.STANDARDISED_ID), CommonLinkViabilityLogic.MARRIAGE_RECORD_BRIDE_BIRTH_DATE_FIELDS);
+    }
+
     /**
      * Checks whether the recorded or calculated dates of birth are acceptably close for siblings.
      *
@@ -100,6 +100,11 @@ public class BrideGroomSiblingLinkageRecipe extends LinkageRecipe {
         return trueMatch(record1, record2, TRUE_MATCH_ALTERNATIVES);
     }
 
+    @Override
+    public List<List<Pair>> getTrueMatchAlternatives() {
+        return TRUE_MATCH_ALTERNATIVES;
+    }
+
     @Override
     public String getLinkageType() {
         return LINKAGE_TYPE;
@@ -135,6 +140,11 @@ public class BrideGroomSiblingLinkageRecipe extends LinkageRecipe {
         return isViable(record1, record2);
     }
 
+    @Override
+    public List<Integer> getStoredRecordViabilityFields() {
+        return CommonLinkViabilityLogic.MARRIAGE_RECORD_BRIDE_BIRTH_DATE_FIELDS;
+    }
+
     public static boolean isViable(final LXP record1, final LXP record2) {
 
         try {
@@ -90,6 +90,11 @@ public class BrideMarriageParentsMarriageIdentityLinkageRecipe extends LinkageRe
         return trueMatch(marriage1, marriage2, TRUE_MATCH_ALTERNATIVES);
     }
 
+    @Override
+    public List<List<Pair>> getTrueMatchAlternatives() {
+        return TRUE_MATCH_ALTERNATIVES;
+    }
+
     @Override
     public String getLinkageType() {
         return LINKAGE_TYPE;
@@ -135,6 +140,11 @@ public class BrideMarriageParentsMarriageIdentityLinkageRecipe extends LinkageRe
         return isViable(record1, record2);
     }
 
+    @Override
+    public List<Integer> getStoredRecordViabilityFields() {
+        return CommonLinkViabilityLogic.MARRIAGE_RECORD_DATE_FIELDS;
+    }
+
     @Override
     public List<Integer> getQueryMappingFields() {
         return SEARCH_FIELDS;
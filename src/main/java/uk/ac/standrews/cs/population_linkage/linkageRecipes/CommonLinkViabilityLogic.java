@@ -17,6 +17,7 @@
 package uk.ac.standrews.cs.population_linkage.linkageRecipes;
 
 import uk.ac.standrews.cs.neoStorr.impl.LXP;
+import uk.ac.standrews.cs.population_linkage.searchStructures.YearRange;
 import uk.ac.standrews.cs.population_linkage.supportClasses.LinkageConfig;
 import uk.ac.standrews.cs.population_records.Normalisation;
 import uk.ac.standrews.cs.population_records.record_types.Birth;
@@ -27,12 +28,26 @@ import java.time.DateTimeException;
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.function.Supplier;
 
 public class CommonLinkViabilityLogic {
 
     // Default month to be used for dates if only year is recorded.
     public static final int DEFAULT_MONTH = 7;
 
+    // Fields read by getBirthDateFromBirthRecord and getBirthDateFromDeathRecord respectively.
+    public static final List<Integer> BIRTH_RECORD_DATE_FIELDS = List.of(Birth.BIRTH_DAY, Birth.BIRTH_MONTH, Birth.BIRTH_YEAR);
+    public static final List<Integer> DEATH_RECORD_BIRTH_DATE_FIELDS = List.of(Death.DATE_OF_BIRTH, Death.DEATH_YEAR, Death.AGE_AT_DEATH);
+
+    // Fields read by getDeathDateFromDeathRecord, which may fall back to the date of birth.
+    public static final List<Integer> DEATH_RECORD_DATE_FIELDS = List.of(Death.DEATH_DAY, Death.DEATH_MONTH, Death.DEATH_YEAR, Death.DATE_OF_BIRTH, Death.AGE_AT_DEATH);
+
+    // Fields read by getMarriageDateFromMarriageRecord, and by getBirthDateFromMarriageRecord for the bride and groom.
+    public static final List<Integer> MARRIAGE_RECORD_DATE_FIELDS = List.of(Marriage.MARRIAGE_DAY, Marriage.MARRIAGE_MONTH, Marriage.MARRIAGE_YEAR);
+    public static final List<Integer> MARRIAGE_RECORD_BRIDE_BIRTH_DATE_FIELDS = List.of(Marriage.BRIDE_AGE_OR_DATE_OF_BIRTH, Marriage.MARRIAGE_YEAR);
+    public static final List<Integer> MARRIAGE_RECORD_GROOM_BIRTH_DATE_FIELDS = List.of(Marriage.GROOM_AGE_OR_DATE_OF_BIRTH, Marriage.MARRIAGE_YEAR);
+
     public static String getPrimaryNameFromBirthRecord(final LXP record) {
         String forename = record.getString(Birth.FORENAME);
         String surname = record.getString(Birth.SURNAME);
@@ -204,6 +219,32 @@ public class CommonLinkViabilityLogic {
         }
     }
 
+    /**
+     * @return the year of the date given by the supplier, or null if it can't be determined from the record
+     */
+    public static Integer getYear(final Supplier<LocalDate> date_supplier) {
+
+        try {
+            return date_supplier.get().getYear();
+
+        } catch (RuntimeException e) { // Missing or invalid date fields.
+            return null;
+        }
+    }
+
+    /**
+     * Gives the years of the dates for which the whole number of years elapsed since a date in the given year is
+     * within the given limits. The whole number of years elapsed can differ by one from the difference between the
+     * calendar years, so the range is widened by one year at each end.
+     *
+     * @return the range of years, or null if the given year isn't known
+     */
+    public static YearRange getViableYears(final Integer year, final int min_years_elapsed, final int max_years_elapsed) {
+
+        if (year == null) return null;
+        return new YearRange(year + min_years_elapsed - 1, year + max_years_elapsed + 1);
+    }
+
     public static boolean siblingBirthDatesAreViable(final LocalDate date_of_birth1, final LocalDate date_of_birth2) {
 
         final long years_between_sibling_births = Math.abs(date_of_birth1.until(date_of_birth2, ChronoUnit.YEARS));
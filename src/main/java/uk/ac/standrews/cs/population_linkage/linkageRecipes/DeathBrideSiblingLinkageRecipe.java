@@ -92,6 +92,11 @@ public class DeathBrideSiblingLinkageRecipe extends LinkageRecipe {
         return trueMatch(record1, record2, TRUE_MATCH_ALTERNATIVES);
     }
 
+    @Override
+    public List<List<Pair>> getTrueMatchAlternatives() {
+        return TRUE_MATCH_ALTERNATIVES;
+    }
+
     @Override
     public String getLinkageType() {
         return LINKAGE_TYPE;
@@ -132,6 +137,11 @@ public class DeathBrideSiblingLinkageRecipe extends LinkageRecipe {
         return isViable(record1, record2);
     }
 
+    @Override
+    public List<Integer> getStoredRecordViabilityFields() {
+        return concat(List.of(Death.FORENAME, Death.SURNAME), CommonLinkViabilityLogic.DEATH_RECORD_BIRTH_DATE_FIELDS);
+    }
+
     /**
      /**
      * Checks:
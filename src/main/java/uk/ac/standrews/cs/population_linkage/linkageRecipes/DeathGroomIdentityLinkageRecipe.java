@@ -95,6 +95,11 @@ public class DeathGroomIdentityLinkageRecipe extends LinkageRecipe {
         return trueMatch(death, marriage, TRUE_MATCH_ALTERNATIVES);
     }
 
+    @Override
+    public List<List<Pair>> getTrueMatchAlternatives() {
+        return TRUE_MATCH_ALTERNATIVES;
+    }
+
     @Override
     public String getLinkageType() {
         return LINKAGE_TYPE;
@@ -130,6 +135,11 @@ public class DeathGroomIdentityLinkageRecipe extends LinkageRecipe {
         return isViable(record1, record2);
     }
 
+    @Override
+    public List<Integer> getStoredRecordViabilityFields() {
+        return CommonLinkViabilityLogic.DEATH_RECORD_DATE_FIELDS;
+    }
+
     public static boolean isViable(final LXP record1, final LXP record2) {
         return CommonLinkViabilityLogic.deathMarriageIdentityLinkIsViable(record1, record2, false);
     }
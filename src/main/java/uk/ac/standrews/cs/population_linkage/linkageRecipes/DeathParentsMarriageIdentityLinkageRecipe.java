@@ -135,6 +135,11 @@ public class DeathParentsMarriageIdentityLinkageRecipe extends LinkageRecipe {
         return isViable(record1, record2);
     }
 
+    @Override
+    public List<Integer> getStoredRecordViabilityFields() {
+        return CommonLinkViabilityLogic.DEATH_RECORD_DATE_FIELDS;
+    }
+
     /**
      * Checks whether a plausible period has elapsed between the marriage and the child's death.
      *
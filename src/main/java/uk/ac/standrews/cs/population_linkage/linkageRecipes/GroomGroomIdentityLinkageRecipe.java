@@ -75,6 +75,11 @@ public class GroomGroomIdentityLinkageRecipe extends LinkageRecipe {
         return trueMatch(record1, record2, TRUE_MATCH_ALTERNATIVES);
     }
 
+    @Override
+    public List<List<Pair>> getTrueMatchAlternatives() {
+        return TRUE_MATCH_ALTERNATIVES;
+    }
+
     @Override
     public String getLinkageType() {
         return LINKAGE_TYPE;
@@ -125,6 +130,11 @@ public class GroomGroomIdentityLinkageRecipe extends LinkageRecipe {
         return isViable(record1, record2);
     }
 
+    @Override
+    public List<Integer> getStoredRecordViabilityFields() {
+        return CommonLinkViabilityLogic.MARRIAGE_RECORD_GROOM_BIRTH_DATE_FIELDS;
+    }
+
     /**
      * Checks whether the discrepancy between the recorded or calculated dates of birth on the two records is acceptably low.
      *
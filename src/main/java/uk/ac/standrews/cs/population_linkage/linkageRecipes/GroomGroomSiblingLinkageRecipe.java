@@ -130,6 +130,11 @@ public class GroomGroomSiblingLinkageRecipe extends LinkageRecipe {
         return isViable(record1, record2);
     }
 
+    @Override
+    public List<Integer> getStoredRecordViabilityFields() {
+        return concat(List.of(Marriage.STANDARDISED_ID), CommonLinkViabilityLogic.MARRIAGE_RECORD_GROOM_BIRTH_DATE_FIELDS);
+    }
+
     public static boolean isViable(final LXP record1, final LXP record2) {
 
         if (record1.getString(Marriage.STANDARDISED_ID).equals(record2.getString(Marriage.STANDARDISED_ID))) { // avoid self links.
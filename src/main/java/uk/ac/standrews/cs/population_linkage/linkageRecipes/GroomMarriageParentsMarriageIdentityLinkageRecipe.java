@@ -88,6 +88,11 @@ public class GroomMarriageParentsMarriageIdentityLinkageRecipe extends LinkageRe
         return trueMatch(marriage1, marriage2, TRUE_MATCH_ALTERNATIVES);
     }
 
+    @Override
+    public List<List<Pair>> getTrueMatchAlternatives() {
+        return TRUE_MATCH_ALTERNATIVES;
+    }
+
     @Override
     public String getLinkageType() {
         return LINKAGE_TYPE;
@@ -123,6 +128,11 @@ public class GroomMarriageParentsMarriageIdentityLinkageRecipe extends LinkageRe
         return isViable(record1, record2);
     }
 
+    @Override
+    public List<Integer> getStoredRecordViabilityFields() {
+        return CommonLinkViabilityLogic.MARRIAGE_RECORD_DATE_FIELDS;
+    }
+
     /**
      * Checks whether a plausible period has elapsed between the marriage and the marriage of the daughter.
      *
@@ -24,8 +24,10 @@ import uk.ac.standrews.cs.neoStorr.impl.exceptions.PersistentObjectException;
 import uk.ac.standrews.cs.neoStorr.util.NeoDbCypherBridge;
 import uk.ac.standrews.cs.population_linkage.characterisation.LinkStatus;
 import uk.ac.standrews.cs.population_linkage.compositeMeasures.LXPMeasure;
+import uk.ac.standrews.cs.population_linkage.searchStructures.YearRange;
 import uk.ac.standrews.cs.population_linkage.supportClasses.Constants;
 import uk.ac.standrews.cs.population_linkage.supportClasses.Link;
+import uk.ac.standrews.cs.population_linkage.supportClasses.SharedRecords;
 import uk.ac.standrews.cs.population_linkage.supportClasses.Utilities;
 import uk.ac.standrews.cs.population_records.RecordRepository;
 import uk.ac.standrews.cs.population_records.record_types.Birth;
@@ -67,7 +69,8 @@ public abstract class LinkageRecipe implements LinkViabilityChecker, AutoCloseab
 
     protected final String source_repository_name;
     protected final String links_persistent_name;
-    private final RecordRepository record_repository;
+    private RecordRepository record_repository;
+    private SharedRecords shared_records;
 
     private Iterable<LXP> birth_records;
     private Iterable<LXP> marriage_records;
@@ -87,7 +90,6 @@ public abstract class LinkageRecipe implements LinkViabilityChecker, AutoCloseab
         this.links_persistent_name = links_persistent_name;
         setBaseMeasure(Constants.get("JENSEN_SHANNON"));
 
-        this.record_repository = new RecordRepository(source_repository_name);
         bridge = Store.getInstance().getBridge(); // lovely :)
     }
 
@@ -96,10 +98,33 @@ public abstract class LinkageRecipe implements LinkViabilityChecker, AutoCloseab
     }
 
     public void close() {
-        record_repository.close();
+        if (record_repository != null) {
+            record_repository.close();
+        }
         bridge.close();
     }
 
+    /**
+     * Takes records from those shared with other recipes, rather than reading them from the repository.
+     */
+    public void shareRecords(SharedRecords shared_records) {
+        this.shared_records = shared_records;
+    }
+
+    /**
+     * @return the records shared with other recipes, or null if this recipe reads its own
+     */
+    public SharedRecords getSharedRecords() {
+        return shared_records;
+    }
+
+    private RecordRepository getRecordRepository() {
+        if (record_repository == null) {
+            record_repository = new RecordRepository(source_repository_name);
+        }
+        return record_repository;
+    }
+
     public int getNumberOfLinkageFieldsRequired() {
         return number_of_linkage_fields_required;
     }
@@ -238,6 +263,14 @@ public abstract class LinkageRecipe implements LinkViabilityChecker, AutoCloseab
 
     public abstract LinkStatus isTrueMatch(LXP record1, LXP record2);
 
+    /**
+     * @return the alternative lists of identity field pairs used by {@link #isTrueMatch(LXP, LXP)}, or null if it
+     * decides true matches in some other way
+     */
+    public List<List<Pair>> getTrueMatchAlternatives() {
+        return null;
+    }
+
     public abstract String getLinkageType();
 
     /*
@@ -256,6 +289,70 @@ public abstract class LinkageRecipe implements LinkViabilityChecker, AutoCloseab
 
     public abstract boolean isViableLink(LXP record1, LXP record2);
 
+    /**
+     * Gives the year of the date on a stored record that is used in checking link viability, so that stored records
+     * can be partitioned by year.
+     *
+     * @return the year, or null if it is not known or the recipe doesn't partition by year
+     */
+    public Integer getStoredRecordYear(LXP stored_record) {
+        return null;
+    }
+
+    /**
+     * Gives the fields of a stored record that are read by {@link #isViableLink(LXP, LXP)}, so that link viability can
+     * be checked on projected stored records without fetching them in full.
+     *
+     * @return the fields, or null if they aren't known, in which case projected stored records are fetched in full
+     * before their links are checked
+     */
+    public List<Integer> getStoredRecordViabilityFields() {
+        return null;
+    }
+
+    /**
+     * Gives the fields of a stored record that are needed while it is held in a search structure: the linkage fields,
+     * the fields given by {@link #getStoredRecordViabilityFields()}, plus any fields used by
+     * {@link #getStoredRecordYear(LXP)}. Only these fields are retained when stored records are projected.
+     */
+    public List<Integer> getStoredRecordProjectionFields() {
+        return getLinkageFieldsAnd(List.of());
+    }
+
+    protected List<Integer> getLinkageFieldsAnd(final List<Integer> other_fields) {
+
+        final List<Integer> fields = new ArrayList<>(getLinkageFields());
+        final List<Integer> viability_fields = getStoredRecordViabilityFields();
+
+        for (int field : other_fields) {
+            if (!fields.contains(field)) fields.add(field);
+        }
+        if (viability_fields != null) {
+            for (int field : viability_fields) {
+                if (!fields.contains(field)) fields.add(field);
+            }
+        }
+        return fields;
+    }
+
+    protected static List<Integer> concat(final List<Integer> fields1, final List<Integer> fields2) {
+
+        final List<Integer> fields = new ArrayList<>(fields1);
+        fields.addAll(fields2);
+        return fields;
+    }
+
+    /**
+     * Gives the years, as returned by {@link #getStoredRecordYear(LXP)}, of the stored records with which a link from
+     * the given query record could be viable. The range must include every such year, so it is safe to search only
+     * those stored records.
+     *
+     * @return the range of years, or null if it can't be bounded
+     */
+    public YearRange getViableStoredRecordYears(LXP query_record) {
+        return null;
+    }
+
     /**
      * This identifies how to map the fields in the query records to the fields in the storage records
      *
@@ -404,7 +501,7 @@ public abstract class LinkageRecipe implements LinkViabilityChecker, AutoCloseab
 
     public Iterable<LXP> getBirthRecords() {
         if (birth_records == null) {
-            birth_records = Utilities.getBirthRecords(record_repository);
+            birth_records = shared_records != null ? shared_records.getBirthRecords() : Utilities.getBirthRecords(getRecordRepository());
         }
         return birth_records;
     }
@@ -418,7 +515,7 @@ public abstract class LinkageRecipe implements LinkViabilityChecker, AutoCloseab
 
     protected Iterable<LXP> getDeathRecords() {
         if (death_records == null) {
-            death_records = Utilities.getDeathRecords(record_repository);
+            death_records = shared_records != null ? shared_records.getDeathRecords() : Utilities.getDeathRecords(getRecordRepository());
         }
         return death_records;
     }
@@ -432,7 +529,7 @@ public abstract class LinkageRecipe implements LinkViabilityChecker, AutoCloseab
 
     protected Iterable<LXP> getMarriageRecords() {
         if (marriage_records == null) {
-            marriage_records = Utilities.getMarriageRecords(record_repository);
+            marriage_records = shared_records != null ? shared_records.getMarriageRecords() : Utilities.getMarriageRecords(getRecordRepository());
         }
         return marriage_records;
     }
@@ -500,6 +597,9 @@ public abstract class LinkageRecipe implements LinkViabilityChecker, AutoCloseab
     public abstract double getThreshold();
 
     public void setCacheSizes(int birthCacheSize, int deathCacheSize, int marriageCacheSize) {
+        if (shared_records != null) return; // Shared records are already held in memory.
+
+        RecordRepository record_repository = getRecordRepository();
         record_repository.setBirthsCacheSize(birthCacheSize);
         record_repository.setDeathsCacheSize(deathCacheSize);
         record_repository.setMarriagesCacheSize(marriageCacheSize);
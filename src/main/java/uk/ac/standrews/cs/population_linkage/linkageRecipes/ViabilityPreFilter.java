@@ -0,0 +1,118 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.linkageRecipes;
+
+import uk.ac.standrews.cs.neoStorr.impl.LXP;
+import uk.ac.standrews.cs.population_linkage.searchStructures.YearRange;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A cheap check, made before the distance between two records is calculated, that rules out pairs that can't be
+ * viably linked. Each stored record has a signature, its year, and each query record the range of stored record years
+ * with which it could be viably linked. Pairs that pass may still be found not to be viable by the full check.
+ */
+public class ViabilityPreFilter {
+
+    private final Function<LXP, Integer> stored_year_function;
+    private final Function<LXP, YearRange> viable_years_function;
+
+    private volatile Map<LXP, Integer> stored_years = new IdentityHashMap<>();
+
+    private final LongAdder number_of_pairs_checked = new LongAdder();
+    private final LongAdder number_of_pairs_pruned = new LongAdder();
+
+    /**
+     * @param stored_year_function gives the year of a stored record, or null if it is not known
+     * @param viable_years_function gives the years of the stored records with which a query record could be viably
+     *                              linked, or null if they can't be bounded
+     */
+    public ViabilityPreFilter(final Function<LXP, Integer> stored_year_function, final Function<LXP, YearRange> viable_years_function) {
+
+        this.stored_year_function = stored_year_function;
+        this.viable_years_function = viable_years_function;
+    }
+
+    public ViabilityPreFilter(final LinkageRecipe linkage_recipe) {
+
+        this(linkage_recipe::getStoredRecordYear, linkage_recipe::getViableStoredRecordYears);
+    }
+
+    /**
+     * Precomputes the signatures of the given stored records, so that they aren't recalculated for every pair.
+     */
+    public void addStoredRecords(final Iterable<LXP> stored_records) {
+
+        final Map<LXP, Integer> years = new IdentityHashMap<>();
+
+        for (LXP stored_record : stored_records) {
+            years.put(stored_record, stored_year_function.apply(stored_record));
+        }
+        stored_years = years;
+    }
+
+    public Integer getStoredSignature(final LXP stored_record) {
+
+        final Map<LXP, Integer> years = stored_years;
+        return years.containsKey(stored_record) ? years.get(stored_record) : stored_year_function.apply(stored_record);
+    }
+
+    public YearRange getQuerySignature(final LXP query_record) {
+
+        return viable_years_function.apply(query_record);
+    }
+
+    /**
+     * @return false if a link between records with the given signatures is certainly not viable
+     */
+    public boolean mayBeViable(final Integer stored_signature, final YearRange query_signature) {
+
+        number_of_pairs_checked.increment();
+
+        if (stored_signature == null || query_signature == null || query_signature.contains(stored_signature)) return true;
+
+        number_of_pairs_pruned.increment();
+        return false;
+    }
+
+    public boolean mayBeViable(final LXP stored_record, final YearRange query_signature) {
+
+        return mayBeViable(getStoredSignature(stored_record), query_signature);
+    }
+
+    public long getNumberOfPairsChecked() {
+        return number_of_pairs_checked.sum();
+    }
+
+    public long getNumberOfPairsPruned() {
+        return number_of_pairs_pruned.sum();
+    }
+
+    public double getPruningRate() {
+
+        final long checked = getNumberOfPairsChecked();
+        return checked > 0 ? (double) getNumberOfPairsPruned() / checked : 0d;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("pruned %d of %d pairs (%.1f%%)", getNumberOfPairsPruned(), getNumberOfPairsChecked(), getPruningRate() * 100);
+    }
+}
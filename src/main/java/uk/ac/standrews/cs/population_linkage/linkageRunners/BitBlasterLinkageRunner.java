@@ -29,26 +29,30 @@ import uk.ac.standrews.cs.population_linkage.datasets.Umea;
 import uk.ac.standrews.cs.population_linkage.helpers.RecordFiltering;
 import uk.ac.standrews.cs.population_linkage.linkageRecipes.BirthDeathIdentityLinkageRecipe;
 import uk.ac.standrews.cs.population_linkage.linkageRecipes.LinkageRecipe;
+import uk.ac.standrews.cs.population_linkage.linkers.LinkPipeline;
 import uk.ac.standrews.cs.population_linkage.linkers.Linker;
 import uk.ac.standrews.cs.population_linkage.linkers.SimilaritySearchLinker;
-import uk.ac.standrews.cs.population_linkage.searchStructures.BitBlasterSearchStructure;
-import uk.ac.standrews.cs.population_linkage.searchStructures.BitBlasterSearchStructureFactory;
-import uk.ac.standrews.cs.population_linkage.searchStructures.SearchStructureFactory;
+import uk.ac.standrews.cs.population_linkage.searchStructures.*;
 import uk.ac.standrews.cs.population_linkage.supportClasses.Link;
+import uk.ac.standrews.cs.population_linkage.supportClasses.LinkSpillFile;
 import uk.ac.standrews.cs.population_linkage.supportClasses.LinkageConfig;
 import uk.ac.standrews.cs.population_linkage.supportClasses.LinkageQuality;
 import uk.ac.standrews.cs.population_linkage.supportClasses.LinkageResult;
+import uk.ac.standrews.cs.population_linkage.supportClasses.ProjectedRecord;
+import uk.ac.standrews.cs.population_linkage.supportClasses.SharedRecords;
 import uk.ac.standrews.cs.population_records.RecordRepository;
 import uk.ac.standrews.cs.population_records.record_types.Birth;
 import uk.ac.standrews.cs.population_records.record_types.Death;
+import uk.ac.standrews.cs.utilities.measures.coreConcepts.Measure;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 import static uk.ac.standrews.cs.population_linkage.graph.NeoUtil.getByNeoId;
 import static uk.ac.standrews.cs.population_linkage.helpers.RecordFiltering.filter;
@@ -56,6 +60,10 @@ import static uk.ac.standrews.cs.population_linkage.supportClasses.DisplayMethod
 
 public class BitBlasterLinkageRunner extends LinkageRunner {
 
+    private static final long PIVOT_SELECTION_SEED = 34258723425L;
+    private static final int PIVOT_CANDIDATES_PER_STEP = 10;
+    private static final int PIVOT_EVALUATION_QUERIES = 100;
+
     @Override
     public LinkageRecipe getLinkageRecipe(String links_persistent_name, String source_repository_name, String results_repository_name, RecordRepository record_repository) {
         return linkage_recipe;
@@ -64,41 +72,184 @@ public class BitBlasterLinkageRunner extends LinkageRunner {
     public Linker getLinker(LinkageRecipe linkage_recipe) {
         LXPMeasure composite_measure = linkage_recipe.getCompositeMeasure();
         System.out.println( composite_measure.getMeasureName() + " : " + composite_measure.hashCode() );
-        return new SimilaritySearchLinker(getSearchFactory(composite_measure), composite_measure, linkage_recipe.getThreshold(), getNumberOfProgressUpdates(),
+        SimilaritySearchLinker linker = new SimilaritySearchLinker(getSearchFactory(composite_measure), composite_measure, linkage_recipe.getThreshold(), getNumberOfProgressUpdates(),
                 linkage_recipe.getLinkageType(), "threshold match at ", linkage_recipe.getStoredRole(), linkage_recipe.getQueryRole(), linkage_recipe);
+        linker.setQueryBatchSize(LinkageConfig.QUERY_BATCH_SIZE);
+        linker.setExecutor(getExecutor());
+        if (LinkageConfig.PIPELINED_LINKAGE) linker.setPipeline(getPipeline());
+        return linker;
     }
 
     public SearchStructureFactory<LXP> getSearchFactory(LXPMeasure composite_measure) {
-        return new BitBlasterSearchStructureFactory<>(composite_measure);
+
+        SearchStructureFactory<LXP> factory;
+
+        Path index_snapshot_directory = getIndexSnapshotDirectory();
+        Measure<LXP> measure = metrics != null ? metrics.countDistances(composite_measure) : composite_measure;
+
+        if (index_snapshot_directory == null) {
+            factory = new BitBlasterSearchStructureFactory<>(measure, getExecutor());
+        } else {
+            String index_key = linkage_recipe.getClass().getName() + "|" + composite_measure.getMeasureName() + "|" + linkage_recipe.getLinkageFields();
+            factory = new BitBlasterSearchStructureFactory<>(measure, index_snapshot_directory, index_key, ProjectedRecord::getStoredId, getExecutor());
+        }
+
+        if (LinkageConfig.SEARCH_SHARD_WIDTH_YEARS > 0) {
+            factory = new ShardedSearchStructureFactory<>(factory, linkage_recipe::getStoredRecordYear, LinkageConfig.SEARCH_SHARD_WIDTH_YEARS, getExecutor());
+        }
+        return factory;
+    }
+
+    /**
+     * Override to change the number of workers in each stage of the pipeline.
+     */
+    protected LinkPipeline getPipeline() {
+
+        return new LinkPipeline(LinkageConfig.PIPELINE_QUEUE_CAPACITY, LinkageConfig.PIPELINE_ORDERED_OUTPUT, getExecutor());
+    }
+
+    /**
+     * Override to build and search indexes in a dedicated executor rather than the one shared by the process.
+     */
+    protected SearchExecutor getExecutor() {
+        return SearchExecutor.getShared();
     }
 
     protected List<LXP> getReferencePoints() {
         List<LXP> candidates = filter(linkage_recipe.getLinkageFields().size(), LinkageRecipe.EVERYTHING, linkage_recipe.getStoredRecords(), linkage_recipe.getLinkageFields());
-        return BitBlasterSearchStructure.chooseRandomReferencePoints(candidates, LinkageConfig.NUMBER_OF_REFERENCE_OBJECTS);
+        LXPMeasure composite_measure = linkage_recipe.getCompositeMeasure();
+        PivotSelector<LXP> selector = getPivotSelector(composite_measure);
+
+        List<LXP> reference_points = selector.selectPivots(candidates, LinkageConfig.NUMBER_OF_REFERENCE_OBJECTS);
+
+        PivotStatistics statistics = PivotStatistics.evaluate(composite_measure, reference_points, candidates, PIVOT_EVALUATION_QUERIES,
+                LinkageConfig.PIVOT_SELECTION_SAMPLE_SIZE, linkage_recipe.getThreshold(), PIVOT_SELECTION_SEED, getExecutor());
+        System.out.println("Reference points chosen by " + selector.getSelectorName() + ": " + statistics);
+
+        return reference_points;
+    }
+
+    /**
+     * Override to choose reference points differently, e.g. with {@link FarthestFirstPivotSelector} or {@link MaxVariancePivotSelector},
+     * given {@link #getExecutor()} so that their work is done in the same pool as the rest of the linkage.
+     */
+    protected PivotSelector<LXP> getPivotSelector(LXPMeasure composite_measure) {
+        return new ExclusionPowerPivotSelector<>(composite_measure, LinkageConfig.PIVOT_SELECTION_SAMPLE_SIZE, PIVOT_CANDIDATES_PER_STEP, PIVOT_SELECTION_SEED, getExecutor());
     }
 
     public LinkageResult link(Linker linker, MakePersistent make_persistent, boolean evaluate_quality, long numberOfGroundTruthTrueLinks, boolean persist_links) throws Exception {
 
-        List<Link> links_as_list;
-        Iterable<Link> links = linker.getLinks();
-        links_as_list = StreamSupport.stream(links.spliterator(), false).collect(Collectors.toList());
+        if (LinkageConfig.STREAMING_PERSISTENCE) {
+            return streamLinks(linker, make_persistent, evaluate_quality, persist_links);
+        }
+
+        // The query records are processed in the executor, so that they share its limit on parallelism.
+        List<Link> links_as_list = getExecutor().call(() -> linker.links().parallel().collect(Collectors.toList()));
         return processLinks(make_persistent, evaluate_quality, persist_links, links_as_list);
     }
 
+    /**
+     * Persists and evaluates links as they are made, so that they aren't all held in memory.
+     * The links are only retained in the result if {@link LinkageConfig#LINK_SPILL_DIRECTORY} is set.
+     */
+    protected LinkageResult streamLinks(Linker linker, MakePersistent make_persistent, boolean evaluate_quality, boolean persist_links) {
+
+        System.out.println("Entering streaming persist and evaluate loop @ " + LocalDateTime.now());
+
+        final LinkSpillFile spill_file = LinkageConfig.LINK_SPILL_DIRECTORY != null ? new LinkSpillFile(Paths.get(LinkageConfig.LINK_SPILL_DIRECTORY)) : null;
+        final StreamingLinkProcessor processor = new StreamingLinkProcessor(linkage_recipe,
+                persist_links ? make_persistent : null,
+                evaluate_quality ? this::doesGTSayIsTrue : null,
+                spill_file, LinkageConfig.STREAMING_QUEUE_CAPACITY);
+
+        try (processor) {
+            getExecutor().run(() -> linker.links().parallel().forEach(processor));
+        }
+
+        if (persist_links) {
+            System.out.println("Links made: " + processor.getNumberOfLinks());
+        } else {
+            System.out.println("Persist links not requested");
+        }
+
+        System.out.println("Exiting streaming persist and evaluate loop @ " + LocalDateTime.now());
+
+        if (evaluate_quality) {
+            LinkageQuality lq = getLinkageQuality(evaluate_quality, processor.getTruePositives(), processor.getFalsePositives());
+            return new LinkageResult(lq, spill_file);
+        } else {
+            return new LinkageResult(new LinkageQuality("Linkage Quality not requested"), spill_file);
+        }
+    }
+
     public void addRecords(Linker linker) {
         System.out.println("Adding records into linker @ " + LocalDateTime.now());
-        ((SimilaritySearchLinker) linker).addRecords(linkage_recipe.getStoredRecords(), linkage_recipe.getQueryRecords(), getReferencePoints());
+
+        Iterable<LXP> stored_records = linkage_recipe.getStoredRecords();
+        final Iterable<LXP> query_records = linkage_recipe.getQueryRecords();
+
+        // Query records aren't projected, since they are converted to the stored type for searching.
+        final boolean datasets_same = stored_records == query_records;
+
+        if (projectStoredRecords()) {
+            stored_records = ProjectedRecord.project(stored_records, linkage_recipe.getStoredRecordProjectionFields());
+        }
+
+        SharedRecords shared_records = linkage_recipe.getSharedRecords();
+
+        if (shared_records != null && LinkageConfig.SHARE_SEARCH_INDEXES) {
+
+            final Iterable<LXP> records = stored_records;
+            SearchStructure<LXP> search_structure = shared_records.getSearchStructure(getSearchStructureKey(records),
+                    () -> getSearchFactory(linkage_recipe.getCompositeMeasure()).newSearchStructure(records, getProjectedReferencePoints()));
+
+            ((SimilaritySearchLinker) linker).addRecords(stored_records, query_records, search_structure);
+
+        } else {
+            ((SimilaritySearchLinker) linker).addRecords(stored_records, query_records, getProjectedReferencePoints());
+        }
+        linker.setDatasetsSame(datasets_same);
         System.out.println("Finished adding records @ " + LocalDateTime.now());
     }
 
-    private void addRecordsDummy() {
-        System.out.println("Should Add records into linker @ " + LocalDateTime.now());
-        System.exit(1);
+    private List<LXP> getProjectedReferencePoints() {
+
+        List<LXP> reference_points = getReferencePoints();
+        if (projectStoredRecords() && reference_points != null) {
+            reference_points = ProjectedRecord.project(reference_points, linkage_recipe.getStoredRecordProjectionFields());
+        }
+        return reference_points;
+    }
+
+    /**
+     * @return a key that is the same for recipes whose search structures would be the same, being built from the
+     * same stored records with the same measure
+     */
+    private String getSearchStructureKey(Iterable<LXP> stored_records) {
+
+        return linkage_recipe.getStoredType().getSimpleName() + "|" + linkage_recipe.getCompositeMeasure().getMeasureName() + "|" + linkage_recipe.getLinkageFields() +
+                "|" + (projectStoredRecords() ? linkage_recipe.getStoredRecordProjectionFields() : "unprojected") + "|shard " + LinkageConfig.SEARCH_SHARD_WIDTH_YEARS +
+                "|" + describeRecords(stored_records, ProjectedRecord::getStoredId);
+    }
+
+    /**
+     * @return true if the search structure should be built from projected stored records, holding only the fields
+     * given by {@link LinkageRecipe#getStoredRecordProjectionFields()}
+     */
+    protected boolean projectStoredRecords() {
+        return LinkageConfig.PROJECT_STORED_RECORDS;
     }
 
     @Override
     public LinkageResult linkLists(Linker linker, NeoDbCypherBridge bridge, MakePersistent make_persistent, boolean evaluate_quality, long numberOfGroundTruthTrueLinks, boolean persist_links, boolean isIdentityLinkage) throws Exception {
-        addRecordsDummy();
+
+        // The records have already been added by listsRun.
+        if (isIdentityLinkage && LinkageConfig.BEST_MATCHES_PER_QUERY > 0) {
+
+            // Only the closest matches are kept during the search, so the full lists of matches aren't needed.
+            linker.setBestMatches(LinkageConfig.BEST_MATCHES_PER_QUERY, LinkageConfig.ONE_TO_ONE_ASSIGNMENT);
+            return processLinks(make_persistent, evaluate_quality, persist_links, getExecutor().call(() -> linker.links().parallel().collect(Collectors.toList())));
+        }
 
         List<Link> linked_pairs = new ArrayList<>();
 
@@ -124,7 +275,7 @@ public class BitBlasterLinkageRunner extends LinkageRunner {
     @Override
     protected LinkageResult investigatelinkLists(Linker linker, MakePersistent make_persistent, boolean evaluateQuality, int numberOGroundTruthLinks, boolean persistLinks, boolean isIdentityLinkage, NeoDbCypherBridge
         bridge) throws Exception {
-        addRecordsDummy();
+        addRecords(linker);
 
         System.out.println("Threshold = " + linkage_recipe.getThreshold());
 //        Iterable<List<Link>> lol = linker.getListsOfLinks();
@@ -249,68 +400,22 @@ public class BitBlasterLinkageRunner extends LinkageRunner {
         System.out.println("Number of lists   = " + count);
     }
 
-    private List<Link> processListsOfLists(Iterable<List<Link>> lists_of_list_of_links, boolean isIdentityLinkage) throws BucketException, RepositoryException {
+    private List<Link> processListsOfLists(Iterable<List<Link>> lists_of_list_of_links, boolean isIdentityLinkage) {
 
         // TODO fix isIdentityLinkage if this works! - some code in other linkage linkLists
 
-        List<Link> linked_pairs = new ArrayList<>();
-        List<LXP> previously_matched = new ArrayList<>();
-
         // Link.getRecord1 is the stored record - Birth in test case - BirthBrideIdentity
         // Link.getRecord2 is the query record - Marriage in test
 
-        Map<Long, List<Link>> map_of_links = linksListToMap(lists_of_list_of_links);
+        CandidateResolver resolver = new CandidateResolver(lists_of_list_of_links, linkage_recipe.getLinkageFields(), linkage_recipe.getQueryMappingFields(),
+                this::doesGTSayIsTrue, LinkageConfig.CANDIDATE_RESOLUTION_LOGGING);
 
-//        showMap( map_of_links );
+        System.out.println("Resolving " + resolver.getNumberOfCandidates() + " candidate links @ " + LocalDateTime.now());
 
-        double max_t = linkage_recipe.getThreshold();
         int all_fields = linkage_recipe.getLinkageFields().size();
         final int half_fields = all_fields - (all_fields / 2) + 1;
 
-        for (int required_fields = all_fields; required_fields >= half_fields; required_fields--) {
-            System.out.println("Fields = " + required_fields);
-            for (double threshold = 0.0; threshold <= max_t; threshold += (max_t / 10)) {
-                List<LXP> matched_this_round = new ArrayList<>();
-                System.out.println("Thresh = " + threshold);
-                for (Long key : map_of_links.keySet()) {
-                    List<Link> list_of_links = map_of_links.get(key);
-                    System.out.println("Find closest in list of size " + list_of_links.size());
-                    int index = getClosestAcceptable(list_of_links, threshold, required_fields, previously_matched);
-                    //System.out.println( " index = " + index );
-                    if (index != -1) {
-                        addAllEqualToClosest(list_of_links, index, linked_pairs, threshold, required_fields, map_of_links, previously_matched, matched_this_round);
-                    }
-                }
-                previously_matched.addAll(matched_this_round); // All all the new matches we have made this time around
-            }
-        }
-
-        return linked_pairs;
-    }
-
-    /**
-     * @param lists_of_list_of_links
-     * @return a map of links from the list created by linker, maps from query to a list of possible matches
-     * @throws RepositoryException
-     * @throws BucketException
-     */
-    private Map<Long, List<Link>> linksListToMap(Iterable<List<Link>> lists_of_list_of_links) throws RepositoryException, BucketException {
-
-        try {
-            Map<Long, List<Link>> map_of_links = new HashMap<>();
-            for (List<Link> list_of_links : lists_of_list_of_links) {
-                if (list_of_links.size() != 0) {
-                    long query_id = list_of_links.get(0).getRecord2().getReferend().getId();
-                    map_of_links.put(query_id, list_of_links);
-                }
-            }
-            return map_of_links;
-        } catch (RuntimeException e) {
-            e.printStackTrace(System.out);
-        } catch (Exception e) {
-            e.printStackTrace(System.out);
-        }
-        return null;
+        return resolver.resolve(linkage_recipe.getThreshold(), all_fields, half_fields);
     }
 
     private void showMap(Map<Long, List<Link>> map) {
@@ -338,18 +443,6 @@ public class BitBlasterLinkageRunner extends LinkageRunner {
         }
     }
 
-    private int getClosestAcceptable(List<Link> list_of_links, double threshold, int fields, List<LXP> previously_matched) throws BucketException, RepositoryException {
-        int index = 0;
-        for (Link link : list_of_links) {
-
-            if (acceptable(link, threshold, fields, previously_matched)) {
-                return index;
-            }
-            index++;
-        }
-        return -1;
-    }
-
     /**
      * Adds all same distance as closest to the result set - some will be wrong but cannot differentiate.
      *
@@ -368,25 +461,6 @@ public class BitBlasterLinkageRunner extends LinkageRunner {
         }
     }
 
-    private boolean acceptable(Link link, double threshold, int required_fields, List<LXP> previously_matched) throws BucketException, RepositoryException {
-        LXP rec1 = link.getRecord1().getReferend();
-        LXP rec2 = link.getRecord2().getReferend();
-
-        boolean ltt = link.getDistance() <= threshold;
-
-        //  boolean f1 = passesFilter(rec1, linkage_recipe.getLinkageFields(), required_fields);
-        //  boolean f2 = passesFilter(rec2, linkage_recipe.getQueryMappingFields(), required_fields);  // Not really good enough - fields must match - see numberSamePopulated below
-
-        boolean f3 = numberSamePopulated(rec1, linkage_recipe.getLinkageFields(), rec2, linkage_recipe.getQueryMappingFields()) > required_fields;
-
-        boolean not_seen_before = !previously_matched.contains(rec1);
-
-        boolean result = ltt && f3 && not_seen_before; // ltt && f1 && f2 && not_seen_before;
-
-        System.out.println(doesGTSayIsTrue(link) + "\t" + result + "\t" + ltt + "\t" + f3 + "\t" + not_seen_before + "\t" + link.getDistance() + "\t" + threshold + "\t" + required_fields + "\t" + rec1.getId() + "\t" + rec2.getId());
-        return result;
-    }
-
     public static int numberSamePopulated(LXP record1, List<Integer> filterOn1, LXP record2, List<Integer> filterOn2) {
 
         int same_populated = 0;
@@ -404,34 +478,6 @@ public class BitBlasterLinkageRunner extends LinkageRunner {
         return same_populated;
     }
 
-    private void addResult(Link match, List<Link> linked_pairs, Map<Long, List<Link>> map, List<LXP> matched_this_round) throws BucketException, RepositoryException {
-        linked_pairs.add(match);
-        matched_this_round.add(match.getRecord1().getReferend());
-        map.remove(match.getRecord1().getReferend().getId());
-    }
-
-    /**
-     * Adds all same distance as closest to the result set - some will be wrong but cannot differentiate.
-     *
-     * @param list_of_links      - the candidates for potential addition to the results
-     * @param results            - the result set being returned by the query
-     * @param previously_matched
-     * @param matched_this_round
-     */
-    private void addAllEqualToClosest(List<Link> list_of_links, int index, List<Link> results, double threshold, int required_fields, Map<Long, List<Link>> map, List<LXP> previously_matched, List<LXP> matched_this_round) throws BucketException, RepositoryException {
-        double closest_dist = list_of_links.get(index).getDistance();
-        System.out.print("** " + list_of_links.size() + " ** ");
-        for (Link link : list_of_links.subList(index, list_of_links.size())) {
-            if (link.getDistance() == closest_dist) {
-                if (acceptable(link, threshold, required_fields, previously_matched)) {
-                    addResult(link, results, map, matched_this_round);
-                }
-            } else {
-                return;
-            }
-        }
-    }
-
     private void showAltDistances(List<Link> list_of_links) {
         StringBuilder sb = new StringBuilder();
         sb.append("Dists: ");
@@ -487,7 +533,7 @@ public class BitBlasterLinkageRunner extends LinkageRunner {
     private LinkageQuality getLinkageQuality(boolean evaluate_quality, long tp, long fp) {
         long numberOfGroundTruthTrueLinks;
         System.out.println("Evaluating ground truth @ " + LocalDateTime.now());
-        numberOfGroundTruthTrueLinks = linkage_recipe.getNumberOfGroundTruthTrueLinks();
+        numberOfGroundTruthTrueLinks = getNumberOfGroundTruthTrueLinks();
         System.out.println("Number of GroundTruth true Links = " + numberOfGroundTruthTrueLinks);
         LinkageQuality lq = getLinkageQuality(evaluate_quality, numberOfGroundTruthTrueLinks, tp, fp);
         lq.print(System.out);
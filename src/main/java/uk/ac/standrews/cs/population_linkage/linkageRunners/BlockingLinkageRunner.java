@@ -0,0 +1,56 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.linkageRunners;
+
+import uk.ac.standrews.cs.neoStorr.impl.LXP;
+import uk.ac.standrews.cs.population_linkage.compositeMeasures.LXPMeasure;
+import uk.ac.standrews.cs.population_linkage.searchStructures.BlockingKey;
+import uk.ac.standrews.cs.population_linkage.searchStructures.BlockingSearchStructureFactory;
+import uk.ac.standrews.cs.population_linkage.searchStructures.SearchStructureFactory;
+
+import java.util.List;
+
+/**
+ * Links using blocking rather than a metric index, for recipes whose measures are not metrics, such as those built
+ * from Jaro-Winkler or the phonetic comparators. Blocking keys are defined on the fields of the stored records.
+ */
+public class BlockingLinkageRunner extends BitBlasterLinkageRunner {
+
+    private final List<BlockingKey<LXP>> blocking_keys;
+
+    public BlockingLinkageRunner(final List<BlockingKey<LXP>> blocking_keys) {
+        this.blocking_keys = blocking_keys;
+    }
+
+    @Override
+    public SearchStructureFactory<LXP> getSearchFactory(final LXPMeasure composite_measure) {
+        return new BlockingSearchStructureFactory<>(metrics != null ? metrics.countDistances(composite_measure) : composite_measure, blocking_keys, getExecutor());
+    }
+
+    @Override
+    protected List<LXP> getReferencePoints() {
+        return null;
+    }
+
+    /**
+     * Blocking keys may use fields other than the linkage fields, so full records are indexed.
+     */
+    @Override
+    protected boolean projectStoredRecords() {
+        return false;
+    }
+}
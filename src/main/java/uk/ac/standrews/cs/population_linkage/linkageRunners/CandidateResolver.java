@@ -0,0 +1,225 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.linkageRunners;
+
+import uk.ac.standrews.cs.neoStorr.impl.LXP;
+import uk.ac.standrews.cs.neoStorr.impl.exceptions.BucketException;
+import uk.ac.standrews.cs.neoStorr.impl.exceptions.RepositoryException;
+import uk.ac.standrews.cs.neoStorr.interfaces.IStoreReference;
+import uk.ac.standrews.cs.population_linkage.helpers.RecordFiltering;
+import uk.ac.standrews.cs.population_linkage.supportClasses.Link;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Resolves the candidate links for each query record in rounds, from the most to the fewest required fields and,
+ * for each number of fields, from a zero threshold up to the largest. In each round each query record not yet
+ * linked is linked to its closest acceptable candidates, all of those at the same distance being taken since they
+ * can't be told apart. A candidate is acceptable if it is within the round's threshold, has more than the required
+ * number of fields populated in both records, and its stored record wasn't linked in an earlier round.
+ *
+ * The candidates are held in arrays, sorted once by distance within each query record, with the number of fields
+ * populated in both records counted once for each candidate. Each round only looks at the candidates within its
+ * threshold, so takes time linear in their number.
+ */
+public class CandidateResolver {
+
+    private static final int MAX_FIELDS = Long.SIZE;
+
+    private final Link[] links;
+    private final double[] distances;
+    private final int[] stored_indices;
+    private final int[] fields_populated;
+
+    // The candidates for query record i are those from query_starts[i] up to query_starts[i+1].
+    private final int[] query_starts;
+    private final int number_of_stored_records;
+
+    private final Predicate<Link> ground_truth_says_true;
+    private final boolean logging;
+
+    /**
+     * @param lists_of_links         the candidate links for each query record
+     * @param stored_fields          the linkage fields of the stored records
+     * @param query_fields           the corresponding fields of the query records
+     * @param ground_truth_says_true used to show whether each candidate is a true link when logging, or null
+     * @param logging                whether each candidate considered is printed
+     */
+    public CandidateResolver(final Iterable<List<Link>> lists_of_links, final List<Integer> stored_fields, final List<Integer> query_fields, final Predicate<Link> ground_truth_says_true, final boolean logging) {
+
+        if (stored_fields.size() > MAX_FIELDS) throw new IllegalArgumentException("too many linkage fields: " + stored_fields.size());
+
+        this.ground_truth_says_true = ground_truth_says_true;
+        this.logging = logging;
+
+        final List<List<Link>> lists = new ArrayList<>();
+        int number_of_candidates = 0;
+
+        for (List<Link> list : lists_of_links) {
+            if (!list.isEmpty()) {
+                final List<Link> sorted = new ArrayList<>(list);
+                sorted.sort(Comparator.comparingDouble(Link::getDistance));
+                lists.add(sorted);
+                number_of_candidates += sorted.size();
+            }
+        }
+
+        links = new Link[number_of_candidates];
+        distances = new double[number_of_candidates];
+        stored_indices = new int[number_of_candidates];
+        fields_populated = new int[number_of_candidates];
+        query_starts = new int[lists.size() + 1];
+
+        // Each record is retrieved once, to record which of its fields are populated.
+        final Map<Long, Integer> stored_index_for_id = new HashMap<>();
+        final Map<Long, Long> stored_fields_populated = new HashMap<>();
+        final Map<Long, Long> query_fields_populated = new HashMap<>();
+
+        int candidate = 0;
+        for (int query = 0; query < lists.size(); query++) {
+
+            query_starts[query] = candidate;
+
+            for (Link link : lists.get(query)) {
+
+                final long stored_id = link.getRecord1().getObjectId();
+                final long stored_populated = fieldsPopulated(link.getRecord1(), stored_fields, stored_fields_populated);
+                final long query_populated = fieldsPopulated(link.getRecord2(), query_fields, query_fields_populated);
+
+                links[candidate] = link;
+                distances[candidate] = link.getDistance();
+                stored_indices[candidate] = stored_index_for_id.computeIfAbsent(stored_id, id -> stored_index_for_id.size());
+                fields_populated[candidate] = Long.bitCount(stored_populated & query_populated);
+                candidate++;
+            }
+        }
+        query_starts[lists.size()] = candidate;
+        number_of_stored_records = stored_index_for_id.size();
+    }
+
+    public int getNumberOfCandidates() {
+        return links.length;
+    }
+
+    /**
+     * @return the links made in all rounds, in the order in which they were made
+     */
+    public List<Link> resolve(final double max_threshold, final int most_fields_required, final int fewest_fields_required) {
+
+        final List<Link> resolved = new ArrayList<>();
+
+        final BitSet previously_matched = new BitSet(number_of_stored_records);
+        final BitSet matched_this_round = new BitSet(number_of_stored_records);
+        final BitSet queries_linked = new BitSet(query_starts.length - 1);
+
+        final double step = max_threshold / 10;
+
+        for (int required_fields = most_fields_required; required_fields >= fewest_fields_required; required_fields--) {
+
+            if (logging) System.out.println("Fields = " + required_fields);
+
+            for (double threshold = 0.0; threshold <= max_threshold; threshold += step) {
+
+                if (logging) System.out.println("Thresh = " + threshold);
+
+                for (int query = queries_linked.nextClearBit(0); query < query_starts.length - 1; query = queries_linked.nextClearBit(query + 1)) {
+
+                    if (resolveQuery(query, threshold, required_fields, previously_matched, matched_this_round, resolved)) {
+                        queries_linked.set(query);
+                    }
+                }
+
+                // Stored records linked this round stay available to other query records until the round ends.
+                previously_matched.or(matched_this_round);
+                matched_this_round.clear();
+
+                if (step == 0) break;
+            }
+        }
+
+        return resolved;
+    }
+
+    /**
+     * Links the query record to all its acceptable candidates at the distance of the closest.
+     *
+     * @return whether any link was made
+     */
+    private boolean resolveQuery(final int query, final double threshold, final int required_fields, final BitSet previously_matched, final BitSet matched_this_round, final List<Link> resolved) {
+
+        final int end = query_starts[query + 1];
+
+        for (int candidate = query_starts[query]; candidate < end && distances[candidate] <= threshold; candidate++) {
+
+            if (acceptable(candidate, threshold, required_fields, previously_matched)) {
+
+                final double closest_distance = distances[candidate];
+
+                for (; candidate < end && distances[candidate] == closest_distance; candidate++) {
+                    if (acceptable(candidate, threshold, required_fields, previously_matched)) {
+                        resolved.add(links[candidate]);
+                        matched_this_round.set(stored_indices[candidate]);
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean acceptable(final int candidate, final double threshold, final int required_fields, final BitSet previously_matched) {
+
+        final boolean within_threshold = distances[candidate] <= threshold;
+        final boolean enough_fields = fields_populated[candidate] > required_fields;
+        final boolean not_seen_before = !previously_matched.get(stored_indices[candidate]);
+
+        final boolean result = within_threshold && enough_fields && not_seen_before;
+
+        if (logging) {
+            final Link link = links[candidate];
+            final String true_link = ground_truth_says_true == null ? "?" : String.valueOf(ground_truth_says_true.test(link));
+            System.out.println(true_link + "\t" + result + "\t" + within_threshold + "\t" + enough_fields + "\t" + not_seen_before + "\t" + distances[candidate] + "\t" + threshold + "\t" + required_fields + "\t" + link.getRecord1().getObjectId() + "\t" + link.getRecord2().getObjectId());
+        }
+        return result;
+    }
+
+    private static long fieldsPopulated(final IStoreReference<LXP> reference, final List<Integer> fields, final Map<Long, Long> cache) {
+
+        return cache.computeIfAbsent(reference.getObjectId(), id -> {
+            try {
+                return fieldsPopulated(reference.getReferend(), fields);
+            } catch (BucketException | RepositoryException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    private static long fieldsPopulated(final LXP record, final List<Integer> fields) {
+
+        long populated = 0;
+        for (int i = 0; i < fields.size(); i++) {
+            if (!RecordFiltering.isMissing(record.getString(fields.get(i)).toLowerCase().trim())) populated |= 1L << i;
+        }
+        return populated;
+    }
+}
@@ -21,6 +21,8 @@ import uk.ac.standrews.cs.neoStorr.impl.exceptions.BucketException;
 import uk.ac.standrews.cs.neoStorr.impl.exceptions.RepositoryException;
 import uk.ac.standrews.cs.neoStorr.util.NeoDbCypherBridge;
 import uk.ac.standrews.cs.population_linkage.compositeMeasures.LXPMeasure;
+import uk.ac.standrews.cs.population_linkage.helpers.GroundTruthOracle;
+import uk.ac.standrews.cs.population_linkage.helpers.LinkageMetrics;
 import uk.ac.standrews.cs.population_linkage.helpers.MemoryLogger;
 import uk.ac.standrews.cs.population_linkage.linkageRecipes.LinkageRecipe;
 import uk.ac.standrews.cs.population_linkage.linkers.Linker;
@@ -29,9 +31,14 @@ import uk.ac.standrews.cs.population_linkage.supportClasses.*;
 import uk.ac.standrews.cs.population_records.RecordRepository;
 import uk.ac.standrews.cs.population_records.record_types.Birth;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
 
 import static uk.ac.standrews.cs.population_linkage.characterisation.LinkStatus.TRUE_MATCH;
 
@@ -39,6 +46,12 @@ public abstract class LinkageRunner {
 
     private static final int DEFAULT_NUMBER_OF_PROGRESS_UPDATES = 100;
     protected LinkageRecipe linkage_recipe;
+    protected LinkageCheckpoint checkpoint;
+    protected LinkageMetrics metrics;
+
+    private volatile LinkageRecipe oracle_recipe;
+    private int oracle_fields_required;
+    private GroundTruthOracle ground_truth_oracle;
 
     public LinkageResult run(LinkageRecipe linkage_recipe,
                              MakePersistent make_persistent,
@@ -47,14 +60,26 @@ public abstract class LinkageRunner {
         this.linkage_recipe = linkage_recipe;
         MemoryLogger.update();
 
-        try( Linker linker = getLinker(linkage_recipe) ) {
+        // Opened before the linker is made, so that the linker can reload the search index saved with the checkpoint.
+        checkpoint = LinkageConfig.CHECKPOINT_DIRECTORY != null ?
+                new LinkageCheckpoint(Paths.get(LinkageConfig.CHECKPOINT_DIRECTORY), getRunKey(), LinkageConfig.CHECKPOINT_INTERVAL) : null;
+
+        metrics = makeMetrics();
+        make_persistent = timePersistence(make_persistent);
+
+        try( LinkageMetrics ignored = metrics; Linker linker = getLinker(linkage_recipe) ) {
+            linker.setMetrics(metrics);
             linkage_recipe.setCacheSizes(LinkageConfig.BIRTH_CACHE_SIZE, LinkageConfig.DEATH_CACHE_SIZE, LinkageConfig.MARRIAGE_CACHE_SIZE);
             int numberOGroundTruthLinks = 0;
             MemoryLogger.update();
             addRecords(linker);
+            phaseBoundary("adding records");
             System.out.println( "Linkage fields required: " + linkage_recipe.getNumberOfLinkageFieldsRequired() );
 
-            LinkageResult result = link(linker, make_persistent, evaluateQuality, numberOGroundTruthLinks, persistLinks);
+            LinkageResult result = checkpoint != null ?
+                    resumableLink(linker, make_persistent, evaluateQuality, persistLinks) :
+                    link(linker, make_persistent, evaluateQuality, numberOGroundTruthLinks, persistLinks);
+            phaseBoundary("linking");
 
             return result;
         }
@@ -67,16 +92,99 @@ public abstract class LinkageRunner {
         this.linkage_recipe = linkage_recipe;
         MemoryLogger.update();
 
-        try( Linker linker = getLinker(linkage_recipe) ) {
+        metrics = makeMetrics();
+        make_persistent = timePersistence(make_persistent);
+
+        try( LinkageMetrics ignored = metrics; Linker linker = getLinker(linkage_recipe) ) {
+            linker.setMetrics(metrics);
             addRecords(linker);
+            phaseBoundary("adding records");
             linkage_recipe.setCacheSizes(LinkageConfig.BIRTH_CACHE_SIZE, LinkageConfig.DEATH_CACHE_SIZE, LinkageConfig.MARRIAGE_CACHE_SIZE);
             int numberOGroundTruthLinks = 0;
             MemoryLogger.update();
             LinkageResult result = linkLists(linker, linkage_recipe.getBridge(), make_persistent, evaluateQuality, numberOGroundTruthLinks, persistLinks, isIdentityLinkage);
+            phaseBoundary("linking");
             return result;
         }
     }
 
+    /**
+     * Links once for all the given settings, searching with the largest threshold among the records selected for the
+     * smallest number of required fields, so that links for each setting can be given without searching again.
+     * This is refused if the recipe caps the number of records, since the records selected for larger numbers of
+     * required fields may then not have been searched.
+     */
+    public MultiThresholdLinkage multiThresholdRun(LinkageRecipe linkage_recipe, List<MultiThresholdLinkage.Setting> settings, boolean evaluateQuality) throws Exception {
+
+        final MultiThresholdLinkage.RecordSelection selection = MultiThresholdLinkage.selectRecords(linkage_recipe, settings);
+        if (selection == null) {
+            throw new RuntimeException("records selected for larger numbers of required fields aren't all selected for the smallest, as when the number of records is capped");
+        }
+        return multiThresholdRun(linkage_recipe, settings, selection, evaluateQuality);
+    }
+
+    private MultiThresholdLinkage multiThresholdRun(LinkageRecipe linkage_recipe, List<MultiThresholdLinkage.Setting> settings, MultiThresholdLinkage.RecordSelection selection, boolean evaluateQuality) throws Exception {
+
+        this.linkage_recipe = linkage_recipe;
+        MemoryLogger.update();
+
+        final double max_threshold = settings.stream().mapToDouble(setting -> setting.threshold).max().orElseThrow();
+        final int min_fields_required = settings.stream().mapToInt(setting -> setting.number_of_fields_required).min().orElseThrow();
+        final int original_fields_required = linkage_recipe.getNumberOfLinkageFieldsRequired();
+
+        linkage_recipe.setNumberOfLinkageFieldsRequired(min_fields_required);
+
+        try( Linker linker = getLinker(linkage_recipe) ) {
+            linker.setThreshold(max_threshold);
+            linkage_recipe.setCacheSizes(LinkageConfig.BIRTH_CACHE_SIZE, LinkageConfig.DEATH_CACHE_SIZE, LinkageConfig.MARRIAGE_CACHE_SIZE);
+            MemoryLogger.update();
+            addRecords(linker);
+
+            return new MultiThresholdLinkage(linkage_recipe, selection, linker.links(), evaluateQuality ? this::doesGTSayIsTrue : null);
+
+        } finally {
+            linkage_recipe.setNumberOfLinkageFieldsRequired(original_fields_required);
+        }
+    }
+
+    /**
+     * Links and persists as run would for each number of required fields from the most down to the fewest, each with
+     * the recipe's threshold for that number. If {@link LinkageConfig#REUSE_INDEX_ACROSS_FIELD_COUNTS} is set, and the
+     * recipe doesn't cap the number of records, the index is built and queried once, for the fewest fields required,
+     * and the links for each number are selected from the results.
+     */
+    public void runForRequiredFields(LinkageRecipe linkage_recipe, MakePersistent make_persistent, int most_fields_required, int fewest_fields_required) throws Exception {
+
+        if (LinkageConfig.REUSE_INDEX_ACROSS_FIELD_COUNTS) {
+
+            List<MultiThresholdLinkage.Setting> settings = new ArrayList<>();
+
+            for (int fields_required = most_fields_required; fields_required >= fewest_fields_required; fields_required--) {
+
+                linkage_recipe.setNumberLinkageFieldsRequired(fields_required);
+                settings.add(new MultiThresholdLinkage.Setting(linkage_recipe.getThreshold(), fields_required));
+            }
+
+            MultiThresholdLinkage.RecordSelection selection = MultiThresholdLinkage.selectRecords(linkage_recipe, settings);
+
+            if (selection != null) {
+                try (MultiThresholdLinkage linkage = multiThresholdRun(linkage_recipe, settings, selection, false)) {
+                    linkage.persist(make_persistent, settings);
+                }
+                return;
+            }
+            System.out.println("Number of records is capped, so linking separately for each number of required fields");
+        }
+
+        for (int fields_required = most_fields_required; fields_required >= fewest_fields_required; fields_required--) {
+
+            linkage_recipe.setNumberLinkageFieldsRequired(fields_required);
+            LinkageResult lr = run(linkage_recipe, make_persistent, false, true);
+            LinkageQuality quality = lr.getLinkageQuality();
+            quality.print(System.out);
+        }
+    }
+
     public LinkageResult investigateRun(LinkageRecipe linkage_recipe,
                                         MakePersistent make_persistent,
                                         boolean evaluateQuality, boolean persistLinks, boolean isIdentityLinkage, NeoDbCypherBridge
@@ -120,6 +228,114 @@ public abstract class LinkageRunner {
 
     public abstract LinkageResult linkLists(Linker linker, NeoDbCypherBridge bridge, MakePersistent make_persistent, boolean evaluate_quality, long numberOfGroundTruthTrueLinks, boolean persistLinks, boolean isIdentityLinkage) throws Exception;
 
+    /**
+     * Links from the point reached by a previous run with the same checkpoint, recording progress as it goes.
+     * Links aren't retained in the result, since those from the previous run aren't available.
+     */
+    protected LinkageResult resumableLink(Linker linker, MakePersistent make_persistent, boolean evaluate_quality, boolean persist_links) {
+
+        System.out.println("Entering resumable persist and evaluate loop @ " + LocalDateTime.now());
+
+        linker.linksByQuery(checkpoint.getQueriesCompleted()).parallel().forEach(query_links -> {
+
+            // Query records completed out of order by the previous run aren't linked again.
+            if (checkpoint.isQueryCompleted(query_links.query_number)) return;
+
+            for (Link link : query_links.getLinks()) {
+
+                if (checkpoint.hasProcessed(query_links.query_number, link)) continue;
+
+                final Boolean is_true_link = evaluate_quality ? doesGTSayIsTrue(link) : null;
+
+                // Recorded only after being persisted, so a link is never recorded without having been persisted.
+                if (persist_links) make_persistent.makePersistent(linkage_recipe, link);
+                checkpoint.recordProcessed(query_links.query_number, link, is_true_link);
+            }
+            checkpoint.recordQueryCompleted(query_links.query_number);
+        });
+
+        checkpoint.saveProgress();
+        System.out.println("Links made: " + checkpoint.getNumberOfLinksProcessed());
+        System.out.println("Exiting resumable persist and evaluate loop @ " + LocalDateTime.now());
+
+        final LinkageQuality linkage_quality;
+        if (evaluate_quality) {
+            long numberOfGroundTruthTrueLinks = getNumberOfGroundTruthTrueLinks();
+            linkage_quality = getLinkageQuality(true, numberOfGroundTruthTrueLinks, checkpoint.getTruePositives(), checkpoint.getFalsePositives());
+            linkage_quality.print(System.out);
+        } else {
+            linkage_quality = new LinkageQuality("Linkage Quality not requested");
+        }
+
+        checkpoint.finish();
+        return new LinkageResult(linkage_quality, null);
+    }
+
+    /**
+     * @return the directory in which the search index should be saved and reused, or null if it shouldn't be saved
+     */
+    protected Path getIndexSnapshotDirectory() {
+
+        if (LinkageConfig.INDEX_SNAPSHOT_DIRECTORY != null) return Paths.get(LinkageConfig.INDEX_SNAPSHOT_DIRECTORY);
+        return checkpoint != null ? checkpoint.getIndexDirectory() : null;
+    }
+
+    /**
+     * @return the metrics for the run, or null if they aren't requested
+     */
+    private LinkageMetrics makeMetrics() {
+
+        if (!LinkageConfig.LINKAGE_METRICS) return null;
+
+        final LinkageMetrics metrics = new LinkageMetrics();
+        if (LinkageConfig.LINKAGE_METRICS_FILE != null) {
+            metrics.startReporting(Paths.get(LinkageConfig.LINKAGE_METRICS_FILE), LinkageConfig.LINKAGE_METRICS_FORMAT, LinkageConfig.LINKAGE_METRICS_INTERVAL_SECONDS);
+        }
+        return metrics;
+    }
+
+    private MakePersistent timePersistence(final MakePersistent make_persistent) {
+
+        if (metrics == null || make_persistent == null) return make_persistent;
+
+        return (recipe, link) -> {
+            final long start = System.nanoTime();
+            make_persistent.makePersistent(recipe, link);
+            metrics.recordTime(LinkageMetrics.Phase.PERSISTENCE, System.nanoTime() - start);
+        };
+    }
+
+    protected void phaseBoundary(final String phase_name) {
+        if (metrics != null) metrics.phaseBoundary(phase_name);
+    }
+
+    private String getRunKey() {
+        return linkage_recipe.getClass().getName() + "|" + linkage_recipe.getLinksPersistentName() + "|" + linkage_recipe.getThreshold() + "|" + linkage_recipe.getLinkageFields() +
+                "|" + linkage_recipe.getNumberOfLinkageFieldsRequired() + " fields required" +
+                "|stored " + describeRecords(linkage_recipe.getStoredRecords(), LXP::getId) + "|query " + describeRecords(linkage_recipe.getQueryRecords(), LXP::getId);
+    }
+
+    /**
+     * @return the number of the given records and a fingerprint of their ids, independent of the order of the records
+     */
+    protected static String describeRecords(final Iterable<LXP> records, final ToLongFunction<LXP> id_function) {
+
+        long fingerprint = 0;
+        int count = 0;
+        for (LXP record : records) {
+            fingerprint += mix(id_function.applyAsLong(record));
+            count++;
+        }
+        return count + " records " + Long.toHexString(fingerprint);
+    }
+
+    private static long mix(long value) {
+
+        value = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL;
+        value = (value ^ (value >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return value ^ (value >>> 33);
+    }
+
     protected LinkageQuality getLinkageQuality(boolean evaluate_quality, long numberOfGroundTruthTrueLinks, long tp, long fp) {
         if(evaluate_quality) {
             if(linkage_recipe.isSymmetric()) {
@@ -135,7 +351,53 @@ public abstract class LinkageRunner {
         }
     }
 
+    protected long getNumberOfGroundTruthTrueLinks() {
+
+        final GroundTruthOracle oracle = getGroundTruthOracle();
+        return oracle != null ? oracle.getNumberOfTrueLinks() : linkage_recipe.getNumberOfGroundTruthTrueLinks();
+    }
+
+    /**
+     * The oracle counts true links among the records loaded by the recipe, rather than asking the ground truth in
+     * Neo4J, so false negatives are relative to those records.
+     *
+     * @return the ground truth oracle for the current recipe and number of required fields, made on first use, or null
+     * if it isn't wanted or the recipe has no true match alternatives, in which case each link is looked up
+     */
+    protected GroundTruthOracle getGroundTruthOracle() {
+
+        if (!LinkageConfig.GROUND_TRUTH_ORACLE) return null;
+
+        if (!isOracleCurrent()) {
+            synchronized (this) {
+                if (!isOracleCurrent()) {
+                    System.out.println("Reading ground truth @ " + LocalDateTime.now());
+                    ground_truth_oracle = GroundTruthOracle.forRecipe(linkage_recipe);
+                    oracle_fields_required = linkage_recipe.getNumberOfLinkageFieldsRequired();
+                    oracle_recipe = linkage_recipe;
+                }
+            }
+        }
+        return ground_truth_oracle;
+    }
+
+    /**
+     * @return true if the oracle was made from the records now selected by the recipe, which depend on the number of
+     * fields required
+     */
+    private boolean isOracleCurrent() {
+
+        return oracle_recipe == linkage_recipe && oracle_fields_required == linkage_recipe.getNumberOfLinkageFieldsRequired();
+    }
+
     protected boolean doesGTSayIsTrue(Link link) {
+
+        final GroundTruthOracle oracle = getGroundTruthOracle();
+        if (oracle != null) {
+            final Boolean is_true_link = oracle.isTrueLink(link);
+            if (is_true_link != null) return is_true_link;
+        }
+
         try {
             return linkage_recipe.isTrueMatch(
                     link.getRecord1().getReferend(),
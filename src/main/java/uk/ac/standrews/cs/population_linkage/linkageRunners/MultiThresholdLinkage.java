@@ -0,0 +1,291 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.linkageRunners;
+
+import uk.ac.standrews.cs.neoStorr.impl.LXP;
+import uk.ac.standrews.cs.population_linkage.linkageRecipes.LinkageRecipe;
+import uk.ac.standrews.cs.population_linkage.supportClasses.Link;
+import uk.ac.standrews.cs.population_linkage.supportClasses.LinkSpillFile;
+import uk.ac.standrews.cs.population_linkage.supportClasses.LinkageConfig;
+import uk.ac.standrews.cs.population_linkage.supportClasses.LinkageQuality;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * The links found by a single search at the largest threshold of interest, from which the links for any smaller
+ * threshold and number of required fields can be given without searching again.
+ *
+ * Before linking, the recipe is asked which records it selects for each number of required fields of interest. A
+ * candidate link holds for a threshold and number of required fields if its distance is within the threshold and both
+ * its records are selected for that number, as they would be if linking with that number. This relies on every record
+ * selected for a larger number also being selected for the smallest, from which the candidates are found; that isn't
+ * so when the recipe caps the number of records, since the cap is applied after filtering, and then
+ * {@link #selectRecords(LinkageRecipe, List)} gives null.
+ *
+ * The candidate links are held in a spill file, in {@link LinkageConfig#LINK_SPILL_DIRECTORY} or the temporary
+ * directory, with only their distances, selections and evaluations held in memory.
+ */
+public class MultiThresholdLinkage implements AutoCloseable {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final LinkageRecipe linkage_recipe;
+    private final RecordSelection selection;
+    private final boolean evaluated;
+    private final LinkSpillFile links;
+
+    // Indexed by the position of each candidate link in the spill file.
+    private double[] distances = new double[INITIAL_CAPACITY];
+    private int[] selected_for = new int[INITIAL_CAPACITY];
+    private final BitSet true_links = new BitSet();
+    private int number_of_candidates = 0;
+
+    /**
+     * @param selection              the records selected for each number of required fields
+     * @param candidate_links        links found with the largest threshold, from records filtered on the smallest number of required fields
+     * @param ground_truth_says_true used to evaluate each link once, or null if quality isn't to be evaluated
+     */
+    public MultiThresholdLinkage(final LinkageRecipe linkage_recipe, final RecordSelection selection, final Stream<Link> candidate_links, final Predicate<Link> ground_truth_says_true) {
+
+        this.linkage_recipe = linkage_recipe;
+        this.selection = selection;
+        this.evaluated = ground_truth_says_true != null;
+
+        links = new LinkSpillFile(Paths.get(LinkageConfig.LINK_SPILL_DIRECTORY != null ? LinkageConfig.LINK_SPILL_DIRECTORY : System.getProperty("java.io.tmpdir")));
+
+        candidate_links.parallel().forEach(link -> add(link, evaluated && ground_truth_says_true.test(link)));
+
+        links.finishWriting();
+
+        System.out.println("Candidate links for all thresholds: " + number_of_candidates);
+    }
+
+    /**
+     * @return the records selected by the recipe for each number of required fields in the settings, or null if some
+     * record selected for a larger number isn't selected for the smallest
+     */
+    public static RecordSelection selectRecords(final LinkageRecipe linkage_recipe, final List<Setting> settings) {
+
+        final int[] numbers_of_fields_required = settings.stream().mapToInt(setting -> setting.number_of_fields_required).distinct().sorted().toArray();
+        if (numbers_of_fields_required.length > Integer.SIZE) throw new IllegalArgumentException("too many numbers of required fields: " + numbers_of_fields_required.length);
+
+        final Map<Long, Integer> stored_records = new HashMap<>();
+        final Map<Long, Integer> query_records = new HashMap<>();
+        final int original_number_of_fields_required = linkage_recipe.getNumberOfLinkageFieldsRequired();
+
+        try {
+            for (int i = 0; i < numbers_of_fields_required.length; i++) {
+
+                linkage_recipe.setNumberOfLinkageFieldsRequired(numbers_of_fields_required[i]);
+
+                // The smallest number comes first, so any record not already seen isn't among those searched.
+                if (!select(linkage_recipe.getStoredRecords(), stored_records, i) || !select(linkage_recipe.getQueryRecords(), query_records, i)) return null;
+            }
+            return new RecordSelection(numbers_of_fields_required, stored_records, query_records);
+
+        } finally {
+            linkage_recipe.setNumberOfLinkageFieldsRequired(original_number_of_fields_required);
+        }
+    }
+
+    public int getNumberOfCandidates() {
+        return number_of_candidates;
+    }
+
+    public List<Link> getLinks(final double threshold, final int number_of_fields_required) {
+
+        final int selection_bit = selection.getBit(number_of_fields_required);
+        final List<Link> result = new ArrayList<>();
+
+        int i = 0;
+        for (Link link : links) {
+            if (holds(i++, threshold, selection_bit)) result.add(link);
+        }
+        return result;
+    }
+
+    /**
+     * @return the quality of the links for the given threshold and number of required fields, counted as
+     * {@link LinkageRunner} counts them
+     */
+    public LinkageQuality getLinkageQuality(final double threshold, final int number_of_fields_required, final long number_of_ground_truth_true_links) {
+
+        if (!evaluated) return new LinkageQuality("Evaluation not requested");
+
+        final int selection_bit = selection.getBit(number_of_fields_required);
+        long tp = 0;
+        long fp = 0;
+
+        for (int i = 0; i < number_of_candidates; i++) {
+            if (holds(i, threshold, selection_bit)) {
+                if (true_links.get(i)) tp++;
+                else fp++;
+            }
+        }
+
+        if (linkage_recipe.isSymmetric()) {
+            // Links are made in both directions when a data set is linked to itself.
+            tp = tp / 2;
+            fp = fp / 2;
+        }
+
+        return new LinkageQuality(tp, fp, number_of_ground_truth_true_links - tp);
+    }
+
+    /**
+     * Persists each link once, for the first of the settings that it holds for, with the recipe's number of required
+     * fields set as for that setting. This gives the same edges as linking with each setting in turn, if each edge
+     * is only made when it doesn't already exist.
+     *
+     * @param settings the thresholds and numbers of required fields, in the order in which they would be linked
+     */
+    public void persist(final MakePersistent make_persistent, final List<Setting> settings) {
+
+        final int original_number_of_fields_required = linkage_recipe.getNumberOfLinkageFieldsRequired();
+
+        try {
+            // One pass over the spilled links for each setting, rather than holding the links for all of them.
+            for (int s = 0; s < settings.size(); s++) {
+
+                linkage_recipe.setNumberOfLinkageFieldsRequired(settings.get(s).number_of_fields_required);
+
+                int i = 0;
+                int number_of_links = 0;
+
+                for (Link link : links) {
+                    if (getFirstSettingHeld(i++, settings) == s) {
+                        make_persistent.makePersistent(linkage_recipe, link);
+                        number_of_links++;
+                    }
+                }
+                System.out.println("Links made for " + settings.get(s) + ": " + number_of_links);
+            }
+
+        } finally {
+            linkage_recipe.setNumberOfLinkageFieldsRequired(original_number_of_fields_required);
+        }
+    }
+
+    @Override
+    public void close() {
+        links.close();
+    }
+
+    private synchronized void add(final Link link, final boolean is_true_link) {
+
+        if (number_of_candidates == distances.length) {
+            distances = Arrays.copyOf(distances, distances.length * 2);
+            selected_for = Arrays.copyOf(selected_for, selected_for.length * 2);
+        }
+
+        // Added together so that the position of the link in the spill file matches its index.
+        links.add(link);
+
+        distances[number_of_candidates] = link.getDistance();
+        selected_for[number_of_candidates] = selection.getSelectedFor(link);
+        if (is_true_link) true_links.set(number_of_candidates);
+        number_of_candidates++;
+    }
+
+    private boolean holds(final int candidate_index, final double threshold, final int selection_bit) {
+        return distances[candidate_index] <= threshold && (selected_for[candidate_index] & selection_bit) != 0;
+    }
+
+    private int getFirstSettingHeld(final int candidate_index, final List<Setting> settings) {
+
+        for (int s = 0; s < settings.size(); s++) {
+            if (holds(candidate_index, settings.get(s).threshold, selection.getBit(settings.get(s).number_of_fields_required))) return s;
+        }
+        return -1;
+    }
+
+    /**
+     * Marks each record as selected for the number of required fields with the given index.
+     *
+     * @return false if a record wasn't selected for the first number
+     */
+    private static boolean select(final Iterable<LXP> records, final Map<Long, Integer> selected_for, final int index) {
+
+        for (LXP record : records) {
+
+            if (index > 0 && !selected_for.containsKey(record.getId())) return false;
+            selected_for.merge(record.getId(), 1 << index, (bits1, bits2) -> bits1 | bits2);
+        }
+        return true;
+    }
+
+    /**
+     * The numbers of required fields for which each stored and query record is selected, each held as a bit set over
+     * the numbers of interest.
+     */
+    public static class RecordSelection {
+
+        private final int[] numbers_of_fields_required;
+        private final Map<Long, Integer> stored_records;
+        private final Map<Long, Integer> query_records;
+
+        private RecordSelection(final int[] numbers_of_fields_required, final Map<Long, Integer> stored_records, final Map<Long, Integer> query_records) {
+
+            this.numbers_of_fields_required = numbers_of_fields_required;
+            this.stored_records = stored_records;
+            this.query_records = query_records;
+        }
+
+        private int getBit(final int number_of_fields_required) {
+
+            final int index = Arrays.binarySearch(numbers_of_fields_required, number_of_fields_required);
+            if (index < 0) throw new IllegalArgumentException("records weren't selected for " + number_of_fields_required + " fields required");
+            return 1 << index;
+        }
+
+        /**
+         * @return the numbers of required fields for which both records of the link are selected
+         */
+        private int getSelectedFor(final Link link) {
+
+            return stored_records.getOrDefault(link.getRecord1().getObjectId(), 0) & query_records.getOrDefault(link.getRecord2().getObjectId(), 0);
+        }
+    }
+
+    /**
+     * A threshold and number of required fields, for which links are wanted.
+     */
+    public static class Setting {
+
+        public final double threshold;
+        public final int number_of_fields_required;
+
+        public Setting(final double threshold, final int number_of_fields_required) {
+
+            this.threshold = threshold;
+            this.number_of_fields_required = number_of_fields_required;
+        }
+
+        @Override
+        public String toString() {
+            return "threshold " + threshold + ", " + number_of_fields_required + " fields required";
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.linkageRunners;
+
+import uk.ac.standrews.cs.population_linkage.linkageRecipes.LinkageRecipe;
+import uk.ac.standrews.cs.population_linkage.supportClasses.Link;
+import uk.ac.standrews.cs.population_linkage.supportClasses.LinkSpillFile;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Consumes links as they are produced by a linker, so that the full set of links doesn't have to be held in memory.
+ *
+ * Links may be passed in from several threads. Each is checked against the ground truth, if required, by the thread
+ * passing it in, and then queued for a single writer thread that makes it persistent and adds it to the spill file,
+ * if there is one. The queue is bounded, so linking is held back if persistence falls behind.
+ */
+public class StreamingLinkProcessor implements Consumer<Link>, AutoCloseable {
+
+    private static final Link END_OF_LINKS = new Link();
+
+    private final LinkageRecipe linkage_recipe;
+    private final MakePersistent make_persistent;
+    private final Predicate<Link> ground_truth_says_true;
+    private final LinkSpillFile spill_file;
+
+    private final BlockingQueue<Link> queue;
+    private final Thread writer;
+    private final AtomicReference<RuntimeException> writer_failure = new AtomicReference<>();
+
+    private final LongAdder number_of_links = new LongAdder();
+    private final LongAdder true_positives = new LongAdder();
+    private final LongAdder false_positives = new LongAdder();
+
+    private boolean closed = false;
+
+    /**
+     * @param make_persistent        used to persist each link, or null if links aren't to be persisted
+     * @param ground_truth_says_true used to evaluate each link, or null if quality isn't to be evaluated
+     * @param spill_file             file to which each link is added, or null if links aren't to be retained
+     * @param queue_capacity         maximum number of links waiting to be persisted
+     */
+    public StreamingLinkProcessor(final LinkageRecipe linkage_recipe, final MakePersistent make_persistent, final Predicate<Link> ground_truth_says_true, final LinkSpillFile spill_file, final int queue_capacity) {
+
+        this.linkage_recipe = linkage_recipe;
+        this.make_persistent = make_persistent;
+        this.ground_truth_says_true = ground_truth_says_true;
+        this.spill_file = spill_file;
+
+        queue = new ArrayBlockingQueue<>(queue_capacity);
+        writer = new Thread(this::writeLinks, "link-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public void accept(final Link link) {
+
+        checkWriterFailure();
+        number_of_links.increment();
+
+        if (ground_truth_says_true != null) {
+            if (ground_truth_says_true.test(link)) true_positives.increment();
+            else false_positives.increment();
+        }
+
+        if (make_persistent != null || spill_file != null) put(link);
+    }
+
+    public long getNumberOfLinks() {
+        return number_of_links.sum();
+    }
+
+    public long getTruePositives() {
+        return true_positives.sum();
+    }
+
+    public long getFalsePositives() {
+        return false_positives.sum();
+    }
+
+    /**
+     * Waits for all queued links to be written.
+     */
+    @Override
+    public void close() {
+
+        if (closed) return;
+        closed = true;
+
+        put(END_OF_LINKS);
+
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+
+        if (spill_file != null) spill_file.finishWriting();
+        checkWriterFailure();
+    }
+
+    private void put(final Link link) {
+
+        try {
+            while (!queue.offer(link, 1, TimeUnit.SECONDS)) {
+
+                // Don't wait indefinitely for a writer that has stopped.
+                if (!writer.isAlive()) {
+                    checkWriterFailure();
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void writeLinks() {
+
+        try {
+            Link link;
+            while ((link = queue.take()) != END_OF_LINKS) {
+
+                if (make_persistent != null) make_persistent.makePersistent(linkage_recipe, link);
+                if (spill_file != null) spill_file.add(link);
+            }
+        } catch (InterruptedException e) {
+            writer_failure.compareAndSet(null, new RuntimeException(e));
+        } catch (RuntimeException e) {
+            writer_failure.compareAndSet(null, e);
+        }
+    }
+
+    private void checkWriterFailure() {
+
+        final RuntimeException failure = writer_failure.get();
+        if (failure != null) throw new RuntimeException("failed to write link", failure);
+    }
+}
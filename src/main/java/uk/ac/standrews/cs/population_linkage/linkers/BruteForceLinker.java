@@ -19,13 +19,35 @@ package uk.ac.standrews.cs.population_linkage.linkers;
 import uk.ac.standrews.cs.neoStorr.impl.LXP;
 import uk.ac.standrews.cs.population_linkage.compositeMeasures.LXPMeasure;
 import uk.ac.standrews.cs.population_linkage.linkageRecipes.LinkViabilityChecker;
+import uk.ac.standrews.cs.population_linkage.searchStructures.SearchExecutor;
+import uk.ac.standrews.cs.population_linkage.searchStructures.YearRange;
+import uk.ac.standrews.cs.population_linkage.supportClasses.Link;
+import uk.ac.standrews.cs.population_linkage.supportClasses.LinkageConfig;
 import uk.ac.standrews.cs.population_linkage.supportClasses.RecordPair;
 import uk.ac.standrews.cs.utilities.ProgressIndicator;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public abstract class BruteForceLinker extends Linker {
 
+    private static final long POLL_INTERVAL_MILLIS = 100;
+    private static final Link END_OF_LINKS = new Link();
+
+    private SearchExecutor executor = SearchExecutor.getShared();
+
     /**
      * @param number_of_progress_updates the number of updates to be given, zero or negative to suppress updates
      */
@@ -35,6 +57,182 @@ public abstract class BruteForceLinker extends Linker {
         super(composite_measure, threshold, number_of_progress_updates, link_type, provenance, role_type_1, role_type_2, link_viability_checker);
     }
 
+    /**
+     * @param executor the executor in which tiles of the distance matrix are processed
+     */
+    public void setExecutor(SearchExecutor executor) {
+
+        this.executor = executor;
+    }
+
+    /**
+     * Finds all the links, processing tiles of the distance matrix in parallel. For linkage of a dataset to itself with
+     * a symmetric measure, each distance is calculated once and the pair linked in both directions.
+     *
+     * @param sink receives each link, concurrently from several threads
+     */
+    public void forEachLink(final Consumer<Link> sink) {
+
+        final boolean datasets_same = records1 == records2;
+        final List<LXP> list1 = toList(records1);
+        final List<LXP> list2 = datasets_same ? list1 : toList(records2);
+
+        final TiledBruteForceEngine engine = new TiledBruteForceEngine(composite_measure, threshold, list1, list2,
+                datasets_same, composite_measure.isSymmetric(), LinkageConfig.BRUTE_FORCE_TILE_SIZE, viability_pre_filter);
+
+        linkage_progress_indicator.setTotalSteps(engine.getNumberOfTiles());
+
+        engine.run(executor, pair -> {
+            if (isLinkable(pair)) sink.accept(makeLink(pair));
+        }, () -> {
+            synchronized (linkage_progress_indicator) {
+                linkage_progress_indicator.progressStep();
+            }
+        });
+
+        if (LinkageConfig.SEARCH_STATISTICS_LOGGING && viability_pre_filter != null) System.out.println("Viability pre-filter: " + viability_pre_filter);
+    }
+
+    /**
+     * Gives the links found by {@link #forEachLink(Consumer)} as they are found, in a separate thread started when the
+     * first link is taken from the stream. At most {@link LinkageConfig#BRUTE_FORCE_QUEUE_CAPACITY} links are held
+     * waiting to be taken, so finding them is paused while the stream's consumer falls behind. Closing the stream before
+     * it is exhausted stops the search.
+     *
+     * When only the best matches are kept, the links are found for each query record in turn.
+     */
+    @Override
+    public Stream<Link> links() {
+
+        if (keepsBestMatchesOnly()) return super.links();
+
+        final LinkHandOff hand_off = new LinkHandOff(LinkageConfig.BRUTE_FORCE_QUEUE_CAPACITY, getQuerySetSize());
+        return StreamSupport.stream(hand_off, false).onClose(hand_off::cancel);
+    }
+
+    /**
+     * Passes links from the thread running {@link #forEachLink(Consumer)} to the consumer of the stream, through a
+     * bounded queue.
+     */
+    private class LinkHandOff extends Spliterators.AbstractSpliterator<Link> {
+
+        private final BlockingQueue<Link> queue;
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private volatile boolean cancelled = false;
+
+        // Only accessed by the thread advancing the spliterator.
+        private Thread producer = null;
+        private boolean finished = false;
+
+        /**
+         * @param estimated_size the estimated number of links, as for the query records in {@link Linker#links()}
+         */
+        LinkHandOff(final int queue_capacity, final long estimated_size) {
+
+            super(estimated_size, Spliterator.NONNULL);
+            queue = new ArrayBlockingQueue<>(queue_capacity);
+        }
+
+        private void start() {
+
+            if (producer != null) return;
+
+            producer = new Thread(this::produce, "brute force linker");
+            producer.setDaemon(true);
+            producer.start();
+        }
+
+        private void produce() {
+
+            try {
+                forEachLink(this::put);
+                put(END_OF_LINKS);
+
+            } catch (CancellationException e) {
+                // The stream has been closed.
+
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        }
+
+        private void put(final Link link) {
+
+            try {
+                while (!queue.offer(link, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    if (cancelled) throw new CancellationException();
+                }
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException();
+            }
+        }
+
+        @Override
+        public boolean tryAdvance(final Consumer<? super Link> action) {
+
+            if (finished || cancelled) return false;
+            start();
+
+            try {
+                while (true) {
+                    final Link link = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+                    if (link == END_OF_LINKS) {
+                        finished = true;
+                        return false;
+                    }
+                    if (link != null) {
+                        action.accept(link);
+                        return true;
+                    }
+
+                    if (failure.get() != null) {
+                        cancel();
+                        throw new RuntimeException("brute force linkage failed", failure.get());
+                    }
+                }
+
+            } catch (InterruptedException e) {
+                cancel();
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+
+        void cancel() {
+
+            cancelled = true;
+            queue.clear();
+        }
+    }
+
+    @Override
+    protected List<RecordPair> getMatchingRecordPairs(final LXP query_record) {
+
+        final List<RecordPair> pairs = new ArrayList<>();
+        forEachMatchingRecordPair(query_record, pairs::add);
+        return pairs;
+    }
+
+    @Override
+    protected void forEachMatchingRecordPair(final LXP query_record, final Consumer<RecordPair> consumer) {
+
+        final YearRange query_signature = viability_pre_filter != null ? viability_pre_filter.getQuerySignature(query_record) : null;
+
+        for (LXP record1 : records1) {
+
+            // Don't compare record with itself.
+            if (records1 == records2 && record1.getId() == query_record.getId()) continue;
+
+            if (viability_pre_filter != null && !viability_pre_filter.mayBeViable(record1, query_signature)) continue;
+
+            final double distance = composite_measure.distance(record1, query_record, threshold);
+            if (distance <= threshold) consumer.accept(new RecordPair(record1, query_record, distance));
+        }
+    }
+
     @Override
     public Iterable<RecordPair> getMatchingRecordPairs(final Iterable<LXP> records1, final Iterable<LXP> records2) {
 
@@ -81,7 +279,7 @@ public abstract class BruteForceLinker extends Linker {
 
                 void loadNextPair() {
 
-                    next_pair = (record1 == null || record2 == null) ? null : new RecordPair(record1, record2, composite_measure.distance(record1, record2));
+                    next_pair = (record1 == null || record2 == null) ? null : new RecordPair(record1, record2, composite_measure.distance(record1, record2, threshold));
                 }
 
                 void advanceIndices() {
@@ -124,4 +322,15 @@ public abstract class BruteForceLinker extends Linker {
             }
         };
     }
+
+    private static List<LXP> toList(final Iterable<LXP> records) {
+
+        if (records instanceof List) return (List<LXP>) records;
+
+        final List<LXP> list = records instanceof Collection ? new ArrayList<>(((Collection<LXP>) records).size()) : new ArrayList<>();
+        for (LXP record : records) {
+            list.add(record);
+        }
+        return list;
+    }
 }
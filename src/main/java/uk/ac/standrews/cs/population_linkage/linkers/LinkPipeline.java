@@ -0,0 +1,320 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.linkers;
+
+import uk.ac.standrews.cs.neoStorr.impl.LXP;
+import uk.ac.standrews.cs.population_linkage.searchStructures.SearchExecutor;
+import uk.ac.standrews.cs.population_linkage.supportClasses.Link;
+import uk.ac.standrews.cs.population_linkage.supportClasses.ProjectedRecord;
+import uk.ac.standrews.cs.population_linkage.supportClasses.RecordPair;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Produces the links from a similarity search linker in a pipeline of stages, each with its own worker threads:
+ * conversion of each query record to the stored record type, range search, viability filtering and link construction.
+ * The stages are connected by bounded queues, and the number of query records in the pipeline at any time is limited
+ * to the queue capacity, so memory use stays flat however large the query set.
+ *
+ * Links can be produced in query order, or in whatever order the queries complete.
+ *
+ * Each stage's workers only pass query records between the queues: the work of each step is done in the given
+ * {@link SearchExecutor}, so that it shares the executor's limit on parallelism with index building and other searches,
+ * and is included in its reported utilisation. The search stage has as many workers as the executor has threads.
+ */
+public class LinkPipeline {
+
+    public enum Stage {CONVERSION, SEARCH, VIABILITY, LINK}
+
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+    // Marks the end of the query records in each queue.
+    private static final QueryWork END = new QueryWork(-1, null);
+
+    private final int queue_capacity;
+    private final boolean ordered;
+    private final SearchExecutor executor;
+    private final Map<Stage, Integer> workers = new HashMap<>();
+
+    private Run current_run = null;
+
+    /**
+     * @param queue_capacity the capacity of each queue, and the maximum number of query records in the pipeline
+     * @param ordered true if links should be produced in the order of the query records
+     */
+    public LinkPipeline(final int queue_capacity, final boolean ordered) {
+
+        this(queue_capacity, ordered, SearchExecutor.getShared());
+    }
+
+    /**
+     * @param executor the executor in which the work of each stage is done
+     */
+    public LinkPipeline(final int queue_capacity, final boolean ordered, final SearchExecutor executor) {
+
+        this.queue_capacity = queue_capacity;
+        this.ordered = ordered;
+        this.executor = executor;
+
+        for (Stage stage : Stage.values()) {
+            workers.put(stage, 1);
+        }
+        workers.put(Stage.SEARCH, executor.getParallelism());
+    }
+
+    public void setWorkers(final Stage stage, final int number_of_workers) {
+
+        workers.put(stage, Math.max(1, number_of_workers));
+    }
+
+    public int getWorkers(final Stage stage) {
+        return workers.get(stage);
+    }
+
+    Iterable<Link> getLinks(final SimilaritySearchLinker linker) {
+
+        return () -> {
+            shutdown();
+            current_run = new Run(linker);
+            return current_run.links();
+        };
+    }
+
+    /**
+     * Stops the worker threads of the current run, if it has not finished.
+     */
+    public void shutdown() {
+
+        if (current_run != null) {
+            current_run.threads.shutdownNow();
+            current_run = null;
+        }
+    }
+
+    private static class QueryWork {
+
+        final long sequence_number;
+        final LXP query_record;
+        LXP converted_record;
+        List<RecordPair> pairs;
+        List<Link> links;
+
+        QueryWork(final long sequence_number, final LXP query_record) {
+
+            this.sequence_number = sequence_number;
+            this.query_record = query_record;
+        }
+    }
+
+    private class Run {
+
+        private final SimilaritySearchLinker linker;
+        private final boolean datasets_same;
+
+        private final ExecutorService threads;
+        private final Semaphore permits = new Semaphore(queue_capacity);
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        private final BlockingQueue<QueryWork> conversion_queue = new ArrayBlockingQueue<>(queue_capacity);
+        private final BlockingQueue<QueryWork> search_queue = new ArrayBlockingQueue<>(queue_capacity);
+        private final BlockingQueue<QueryWork> viability_queue = new ArrayBlockingQueue<>(queue_capacity);
+        private final BlockingQueue<QueryWork> link_queue = new ArrayBlockingQueue<>(queue_capacity);
+        private final BlockingQueue<QueryWork> output_queue = new ArrayBlockingQueue<>(queue_capacity);
+
+        Run(final SimilaritySearchLinker linker) {
+
+            this.linker = linker;
+            datasets_same = linker.datasetsSame();
+
+            threads = Executors.newCachedThreadPool(runnable -> {
+                final Thread thread = new Thread(runnable, "link pipeline");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            threads.submit(() -> work(this::readQueryRecords));
+            startStage(Stage.CONVERSION, conversion_queue, search_queue, work -> work.converted_record = linker.convertQueryRecord(work.query_record));
+            startStage(Stage.SEARCH, search_queue, viability_queue, work -> work.pairs = linker.search(work.query_record, work.converted_record));
+            startStage(Stage.VIABILITY, viability_queue, link_queue, work -> work.pairs = linkablePairs(work.pairs));
+            startStage(Stage.LINK, link_queue, output_queue, work -> work.links = makeLinks(work.pairs));
+        }
+
+        private void readQueryRecords() throws InterruptedException {
+
+            long sequence_number = 0;
+
+            for (LXP query_record : linker.search_set) {
+
+                permits.acquire();
+                linker.linkage_progress_indicator.progressStep();
+                conversion_queue.put(new QueryWork(sequence_number++, query_record));
+            }
+            conversion_queue.put(END);
+        }
+
+        private void startStage(final Stage stage, final BlockingQueue<QueryWork> input, final BlockingQueue<QueryWork> output, final Consumer<QueryWork> step) {
+
+            final int number_of_workers = workers.get(stage);
+            final AtomicInteger workers_running = new AtomicInteger(number_of_workers);
+
+            for (int i = 0; i < number_of_workers; i++) {
+
+                threads.submit(() -> work(() -> {
+                    while (true) {
+                        final QueryWork work = input.take();
+
+                        if (work == END) {
+                            // Leave the end marker for the other workers; the last to finish passes it on.
+                            input.put(END);
+                            if (workers_running.decrementAndGet() == 0) output.put(END);
+                            return;
+                        }
+
+                        executor.run(() -> step.accept(work));
+                        output.put(work);
+                    }
+                }));
+            }
+        }
+
+        private List<RecordPair> linkablePairs(final List<RecordPair> pairs) {
+
+            final List<RecordPair> linkable_pairs = new ArrayList<>();
+
+            for (RecordPair pair : pairs) {
+                if (!isSameRecord(pair) && linker.isLinkable(pair)) linkable_pairs.add(pair);
+            }
+            return linkable_pairs;
+        }
+
+        private boolean isSameRecord(final RecordPair pair) {
+
+            return datasets_same && ProjectedRecord.getStoredId(pair.stored_record) == ProjectedRecord.getStoredId(pair.query_record);
+        }
+
+        private List<Link> makeLinks(final List<RecordPair> pairs) {
+
+            final List<Link> links = new ArrayList<>();
+
+            for (RecordPair pair : pairs) {
+                links.add(linker.makeLink(pair));
+            }
+            return links;
+        }
+
+        private void work(final InterruptibleTask task) {
+
+            try {
+                task.run();
+
+            } catch (InterruptedException e) {
+                // The run has been shut down.
+
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+                threads.shutdownNow();
+            }
+        }
+
+        private QueryWork take() {
+
+            try {
+                while (true) {
+                    if (failure.get() != null) {
+                        throw new RuntimeException("link pipeline failed", failure.get());
+                    }
+                    final QueryWork work = output_queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (work != null) return work;
+                }
+
+            } catch (InterruptedException e) {
+                threads.shutdownNow();
+                throw new RuntimeException(e);
+            }
+        }
+
+        Iterator<Link> links() {
+
+            return new Iterator<>() {
+
+                // Completed work held back until the work preceding it has been produced, in ordered mode.
+                private final Map<Long, QueryWork> completed = new HashMap<>();
+                private long next_sequence_number = 0;
+                private boolean finished = false;
+
+                private Iterator<Link> current_links = Collections.emptyIterator();
+
+                @Override
+                public boolean hasNext() {
+
+                    while (!current_links.hasNext() && !finished) {
+
+                        final QueryWork work = nextWork();
+
+                        if (work == END) {
+                            finished = true;
+                            threads.shutdown();
+                        } else {
+                            permits.release();
+                            current_links = work.links.iterator();
+                        }
+                    }
+                    return current_links.hasNext();
+                }
+
+                @Override
+                public Link next() {
+
+                    if (!hasNext()) throw new NoSuchElementException();
+                    return current_links.next();
+                }
+
+                private QueryWork nextWork() {
+
+                    if (!ordered) return take();
+
+                    while (!completed.containsKey(next_sequence_number)) {
+
+                        final QueryWork work = take();
+                        if (work == END) return END;
+                        completed.put(work.sequence_number, work);
+                    }
+                    return completed.remove(next_sequence_number++);
+                }
+            };
+        }
+    }
+
+    private interface InterruptibleTask {
+        void run() throws InterruptedException;
+    }
+}
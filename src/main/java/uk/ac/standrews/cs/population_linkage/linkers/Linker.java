@@ -19,16 +19,29 @@ package uk.ac.standrews.cs.population_linkage.linkers;
 import uk.ac.standrews.cs.neoStorr.impl.LXP;
 import uk.ac.standrews.cs.neoStorr.impl.exceptions.PersistentObjectException;
 import uk.ac.standrews.cs.population_linkage.compositeMeasures.LXPMeasure;
+import uk.ac.standrews.cs.population_linkage.helpers.LinkageMetrics;
 import uk.ac.standrews.cs.population_linkage.linkageRecipes.LinkViabilityChecker;
+import uk.ac.standrews.cs.population_linkage.linkageRecipes.LinkageRecipe;
+import uk.ac.standrews.cs.population_linkage.linkageRecipes.ViabilityPreFilter;
+import uk.ac.standrews.cs.population_linkage.searchStructures.NearestNeighbourHeap;
 import uk.ac.standrews.cs.population_linkage.supportClasses.Link;
+import uk.ac.standrews.cs.population_linkage.supportClasses.LinkageConfig;
+import uk.ac.standrews.cs.population_linkage.supportClasses.ProjectedRecord;
 import uk.ac.standrews.cs.population_linkage.supportClasses.RecordPair;
 import uk.ac.standrews.cs.utilities.PercentageProgressIndicator;
 import uk.ac.standrews.cs.utilities.ProgressIndicator;
 
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public abstract class Linker implements AutoCloseable {
 
@@ -37,11 +50,17 @@ public abstract class Linker implements AutoCloseable {
     protected double threshold;
     protected Iterable<LXP> records1;
     protected Iterable<LXP> records2;
+    private boolean datasets_same;
     private final String link_type;
     private final String provenance;
     private final String role_type_1;
     private final String role_type_2;
     protected LinkViabilityChecker link_viability_checker;
+    protected ViabilityPreFilter viability_pre_filter;
+    private final List<Integer> stored_record_viability_fields;
+    private int best_matches_per_query = 0;
+    private OneToOneAssignment.Method assignment = OneToOneAssignment.Method.NONE;
+    protected LinkageMetrics metrics = null;
 
     public Linker(LXPMeasure composite_measure, double threshold, int number_of_progress_updates,
                   String link_type, String provenance, String role_type_1, String role_type_2, LinkViabilityChecker link_viability_checker) {
@@ -55,6 +74,13 @@ public abstract class Linker implements AutoCloseable {
         this.threshold = threshold;
         this.link_viability_checker = link_viability_checker;
 
+        stored_record_viability_fields = link_viability_checker instanceof LinkageRecipe ?
+                ((LinkageRecipe) link_viability_checker).getStoredRecordViabilityFields() : null;
+
+        if (LinkageConfig.VIABILITY_PRE_FILTER && link_viability_checker instanceof LinkageRecipe) {
+            viability_pre_filter = new ViabilityPreFilter((LinkageRecipe) link_viability_checker);
+        }
+
         linkage_progress_indicator = new PercentageProgressIndicator(number_of_progress_updates);
     }
 
@@ -62,6 +88,70 @@ public abstract class Linker implements AutoCloseable {
 
         this.records1 = records1;
         this.records2 = records2;
+        datasets_same = records1 == records2;
+
+        // Stored records that aren't already held in memory are not read again just to precompute their signatures.
+        if (viability_pre_filter != null && records1 instanceof Collection) {
+            viability_pre_filter.addStoredRecords(records1);
+        }
+    }
+
+    /**
+     * Records that the two sets of records are the same records, which can't be seen from the sets themselves when
+     * one of them has been projected, so that a record isn't linked with itself. Must be called after addRecords.
+     */
+    public void setDatasetsSame(boolean datasets_same) {
+
+        this.datasets_same = datasets_same;
+    }
+
+    /**
+     * @return true if the two sets of records are the same records
+     */
+    public boolean datasetsSame() {
+        return datasets_same;
+    }
+
+    /**
+     * @param viability_pre_filter the check used to rule out pairs before their distances are calculated, or null for none
+     */
+    public void setViabilityPreFilter(ViabilityPreFilter viability_pre_filter) {
+
+        this.viability_pre_filter = viability_pre_filter;
+    }
+
+    public ViabilityPreFilter getViabilityPreFilter() {
+        return viability_pre_filter;
+    }
+
+    /**
+     * Sets the metrics recording the time spent linking each query record, and the numbers of candidates and results.
+     * Metrics are recorded where query records are linked one by one, rather than by the pipeline or tiled engine.
+     */
+    public void setMetrics(final LinkageMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public LinkageMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the linker to keep only the closest linkable matches for each query record, held in a bounded heap while the
+     * search runs, rather than every match within the threshold. Where several matches are as close as the furthest
+     * one kept, only some of them are kept.
+     *
+     * @param best_matches_per_query the number of matches kept for each query record, or zero to keep all of them
+     * @param assignment how the links are then chosen so that each record is linked at most once
+     */
+    public void setBestMatches(int best_matches_per_query, OneToOneAssignment.Method assignment) {
+
+        this.best_matches_per_query = best_matches_per_query;
+        this.assignment = assignment;
+    }
+
+    protected boolean keepsBestMatchesOnly() {
+        return best_matches_per_query > 0 || assignment != OneToOneAssignment.Method.NONE;
     }
 
     public abstract void close();
@@ -70,79 +160,222 @@ public abstract class Linker implements AutoCloseable {
 
     public Iterable<Link> getLinks() {
 
-        final Iterator<RecordPair> matching_pairs = getMatchingRecordPairs(records1, records2).iterator();
+        if (keepsBestMatchesOnly()) return () -> links().iterator();
 
-        return new Iterable<>() {
+        return () -> new Iterator<>() {
 
+            private final Iterator<RecordPair> matching_pairs = getMatchingRecordPairs(records1, records2).iterator();
             private Link next = null;
 
             @Override
-            public Iterator<Link> iterator() {
+            public boolean hasNext() {
 
-                return new Iterator<>() {
+                while (next == null && matching_pairs.hasNext()) {
 
-                    @Override
-                    public boolean hasNext() {
+                    final RecordPair pair = matching_pairs.next();
+                    if (isLinkable(pair)) next = makeLink(pair);
+                }
+                return next != null;
+            }
 
-                        if (next == null) {
-                            try {
-                                getNextLink();
-                            } catch (NoSuchElementException e) {
-                                return false;
-                            }
-                        }
+            @Override
+            public Link next() {
 
-                        return true;
-                    }
+                if (!hasNext()) throw new NoSuchElementException();
 
-                    @Override
-                    public Link next() {
+                final Link next_link = next;
+                next = null;
 
-                        if (next == null) {
-                            getNextLink();
-                        }
+                return next_link;
+            }
+        };
+    }
+
+    /**
+     * Gives the links as a stream over the query records. When the stream is run in parallel, the query records are
+     * split between threads, with each query record's links found in a single thread.
+     *
+     * With one to one assignment, all the candidate links are found, in parallel, before the stream is returned.
+     */
+    public Stream<Link> links() {
 
-                        final Link next_link = next;
-                        next = null;
+        final long number_of_query_records = getQuerySetSize();
+        if (number_of_query_records < Integer.MAX_VALUE) linkage_progress_indicator.setTotalSteps((int) number_of_query_records);
 
-                        return next_link;
+        final Stream<RecordPair> pairs = StreamSupport.stream(getQuerySpliterator(), false)
+                .flatMap(query_record -> {
+                    synchronized (linkage_progress_indicator) {
+                        linkage_progress_indicator.progressStep();
                     }
-                };
-            }
+                    return getLinkableRecordPairs(query_record);
+                });
+
+        if (assignment == OneToOneAssignment.Method.NONE) return pairs.map(this::makeLink);
 
-            private void getNextLink() {
+        return OneToOneAssignment.assign(pairs.parallel().collect(Collectors.toList()), assignment).stream().map(this::makeLink);
+    }
+
+    /**
+     * Gives the links for each query record in turn, starting from the given position in the query set, so that an
+     * interrupted run can be resumed from the point it reached. When the stream is run in parallel, the query records
+     * are split between threads as for {@link #links()}.
+     */
+    public Stream<QueryLinks> linksByQuery(final long first_query_number) {
 
-                if (matching_pairs.hasNext()) {
+        if (assignment != OneToOneAssignment.Method.NONE) {
+            throw new UnsupportedOperationException("one to one assignment needs all the candidate links at once, so can't be resumed part way");
+        }
 
-                    RecordPair pair;
-                    do {
-                        pair = matching_pairs.next();
-                    } while (notFinished(pair));
+        final Iterator<LXP> iterator = getQueryRecords().iterator();
+        for (long i = 0; i < first_query_number && iterator.hasNext(); i++) iterator.next();
 
-                    if (pair.distance <= threshold && (link_viability_checker == null || link_viability_checker.isViableLink(pair.stored_record, pair.query_record))) {
+        final long number_of_query_records = getQuerySetSize();
+        final long estimated_remaining = number_of_query_records == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(number_of_query_records - first_query_number, 0);
+        if (estimated_remaining < Integer.MAX_VALUE) linkage_progress_indicator.setTotalSteps((int) estimated_remaining);
 
-                        try {
-                            next = new Link(pair.stored_record, getRoleType1(), pair.query_record, getRoleType2(), 1.0f,
-                                    getLinkType(), pair.distance, getProvenance() + ", distance: " + pair.distance);
-                        } catch (PersistentObjectException e) {
-                            throw new RuntimeException(e);
-                        }
-                    } else {
-                        throw new NoSuchElementException();
-                    }
-                } else {
-                    throw new NoSuchElementException();
-                }
+        final Spliterator<QueryLinks> spliterator = new Spliterators.AbstractSpliterator<>(estimated_remaining, Spliterator.ORDERED | Spliterator.NONNULL) {
+
+            // Only advanced by one thread at a time, as batches are split off sequentially.
+            private long next_query_number = first_query_number;
+
+            @Override
+            public boolean tryAdvance(final Consumer<? super QueryLinks> action) {
+
+                if (!iterator.hasNext()) return false;
+
+                final long query_number = next_query_number++;
+                final LXP query_record = iterator.next();
+
+                action.accept(new QueryLinks(query_number, query_record));
+                return true;
             }
+        };
 
-            private boolean notFinished(final RecordPair pair) {
+        return StreamSupport.stream(spliterator, false).peek(query_links -> {
+            synchronized (linkage_progress_indicator) {
+                linkage_progress_indicator.progressStep();
+            }
+        });
+    }
 
-                final boolean non_viable = link_viability_checker != null && !link_viability_checker.isViableLink(pair.stored_record, pair.query_record);
-                return (pair.distance > threshold || non_viable) && matching_pairs.hasNext();
+    /**
+     * The links for a query record, found when they are first requested.
+     */
+    public class QueryLinks {
+
+        public final long query_number;
+        private final LXP query_record;
+
+        private QueryLinks(final long query_number, final LXP query_record) {
+
+            this.query_number = query_number;
+            this.query_record = query_record;
+        }
+
+        public List<Link> getLinks() {
+            return getLinkableRecordPairs(query_record).map(Linker.this::makeLink).collect(Collectors.toList());
+        }
+    }
+
+    private Stream<RecordPair> getLinkableRecordPairs(final LXP query_record) {
+
+        if (metrics == null) return getLinkableRecordPairs(query_record, this::isLinkable);
+
+        final long[] viability_nanos = new long[1];
+        final Predicate<RecordPair> timed_is_linkable = pair -> {
+            final long start = System.nanoTime();
+            final boolean linkable = isLinkable(pair);
+            viability_nanos[0] += System.nanoTime() - start;
+            return linkable;
+        };
+
+        // Collected here so that the time taken is known; the linkable pairs for one query record are few.
+        final LinkageMetrics.QueryCounts counts = metrics.startQuery();
+        final long start = System.nanoTime();
+        final List<RecordPair> linkable_pairs;
+        try {
+            linkable_pairs = getLinkableRecordPairs(query_record, timed_is_linkable).collect(Collectors.toList());
+        } finally {
+            metrics.stopQuery(counts);
+        }
+        final long elapsed = System.nanoTime() - start;
+
+        metrics.recordTime(LinkageMetrics.Phase.VIABILITY, viability_nanos[0]);
+        metrics.recordSearchTime(counts, elapsed - viability_nanos[0]);
+        metrics.recordQuery(counts, linkable_pairs.size());
+
+        return linkable_pairs.stream();
+    }
+
+    private Stream<RecordPair> getLinkableRecordPairs(final LXP query_record, final Predicate<RecordPair> is_linkable) {
+
+        if (best_matches_per_query <= 0) return getMatchingRecordPairs(query_record).stream().filter(is_linkable);
+
+        final NearestNeighbourHeap<RecordPair> best_matches = new NearestNeighbourHeap<>(best_matches_per_query);
+
+        // Viability is only checked for pairs that would be kept, so the heap never holds a pair that can't be linked.
+        forEachMatchingRecordPair(query_record, pair -> {
+            if (pair.distance < best_matches.furthestDistance() && is_linkable.test(pair)) best_matches.offer(pair, pair.distance);
+        });
+
+        return best_matches.toSortedList().stream().map(result -> result.value);
+    }
+
+    /**
+     * @return the records for each of which the matching records are found; by default the second set of records
+     */
+    protected Iterable<LXP> getQueryRecords() {
+        return records2;
+    }
+
+    /**
+     * @return an estimate of the number of query records, used in splitting them for parallel streams, or
+     * Long.MAX_VALUE if unknown
+     */
+    protected long getQuerySetSize() {
+
+        final Iterable<LXP> query_records = getQueryRecords();
+        return query_records instanceof Collection ? ((Collection<LXP>) query_records).size() : Long.MAX_VALUE;
+    }
+
+    private Spliterator<LXP> getQuerySpliterator() {
+
+        final Iterable<LXP> query_records = getQueryRecords();
+
+        if (query_records instanceof Collection) {
+            return ((Collection<LXP>) query_records).spliterator();
+        }
+
+        final Iterator<LXP> iterator = query_records.iterator();
+
+        // Splits off batches of query records, sized according to the estimated number.
+        return new Spliterators.AbstractSpliterator<>(getQuerySetSize(), Spliterator.ORDERED | Spliterator.NONNULL) {
+
+            @Override
+            public boolean tryAdvance(final Consumer<? super LXP> action) {
+
+                if (!iterator.hasNext()) return false;
+
+                action.accept(iterator.next());
+                return true;
             }
         };
     }
 
+    /**
+     * @return the pairs of a query record with the records it matches, which may include some beyond the threshold
+     */
+    protected abstract List<RecordPair> getMatchingRecordPairs(LXP query_record);
+
+    /**
+     * Passes on the pairs given by {@link #getMatchingRecordPairs(LXP)}. Override to pass them on as they are found,
+     * without collecting them first.
+     */
+    protected void forEachMatchingRecordPair(final LXP query_record, final Consumer<RecordPair> consumer) {
+
+        getMatchingRecordPairs(query_record).forEach(consumer);
+    }
+
     /**
      * @return all the links per query rather than returning indvidual links as getLinks does.
      */
@@ -163,18 +396,36 @@ public abstract class Linker implements AutoCloseable {
             }
 
             private List<Link> toLinkList(List<RecordPair> pairs) {
-                return pairs.stream().map(pair -> {
-                    try {
-                        return new Link(pair.stored_record, getRoleType1(), pair.query_record, getRoleType2(), 1.0f,
-                                getLinkType(), pair.distance, getProvenance() + ", distance: " + pair.distance);
-                    } catch (PersistentObjectException e) {
-                        throw new RuntimeException(e);
-                    }
-                } ).collect(Collectors.toList());
+                return pairs.stream().map(Linker.this::makeLink).collect(Collectors.toList());
             }
         };
     }
 
+    /**
+     * Checks whether a pair should be linked. Link viability is checked on a projected stored record if it holds the
+     * fields the check reads, otherwise the record is fetched in full first.
+     */
+    protected boolean isLinkable(final RecordPair pair) {
+
+        if (pair.distance > threshold) return false;
+        if (link_viability_checker == null) return true;
+
+        if (!ProjectedRecord.holdsFields(pair.stored_record, stored_record_viability_fields)) {
+            pair.stored_record = ProjectedRecord.getFullRecord(pair.stored_record);
+        }
+        return link_viability_checker.isViableLink(pair.stored_record, pair.query_record);
+    }
+
+    protected Link makeLink(final RecordPair pair) {
+
+        try {
+            return new Link(pair.stored_record, getRoleType1(), pair.query_record, getRoleType2(), 1.0f,
+                    getLinkType(), pair.distance, getProvenance() + ", distance: " + pair.distance);
+        } catch (PersistentObjectException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public void setThreshold(double threshold) {
 
         this.threshold = threshold;
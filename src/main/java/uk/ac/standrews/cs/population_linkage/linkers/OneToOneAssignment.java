@@ -0,0 +1,299 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.linkers;
+
+import uk.ac.standrews.cs.population_linkage.supportClasses.LinkageConfig;
+import uk.ac.standrews.cs.population_linkage.supportClasses.ProjectedRecord;
+import uk.ac.standrews.cs.population_linkage.supportClasses.RecordPair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Chooses from candidate record pairs so that each stored record and each query record is in at most one chosen pair.
+ * The candidates form a sparse bipartite graph between stored and query records, which is divided into connected
+ * components that are assigned independently.
+ */
+public class OneToOneAssignment {
+
+    public enum Method {
+
+        /** All candidates are kept. */
+        NONE,
+
+        /** Candidates are taken in increasing order of distance, skipping any whose records are already linked. */
+        GREEDY,
+
+        /**
+         * The Hungarian algorithm is applied to each component, linking as many records as possible and then
+         * minimising the total distance. Components with more than {@link LinkageConfig#MAX_HUNGARIAN_COMPONENT_SIZE}
+         * records on either side are assigned greedily.
+         */
+        HUNGARIAN
+    }
+
+    /**
+     * @return the chosen candidates, in the order in which they were given
+     */
+    public static List<RecordPair> assign(final List<RecordPair> candidates, final Method method) {
+
+        switch (method) {
+            case GREEDY:
+                return inCandidateOrder(candidates, greedy(candidates));
+            case HUNGARIAN:
+                return inCandidateOrder(candidates, hungarian(candidates));
+            default:
+                return candidates;
+        }
+    }
+
+    private static List<RecordPair> greedy(final List<RecordPair> candidates) {
+
+        final List<RecordPair> sorted = new ArrayList<>(candidates);
+        sorted.sort(Comparator.comparingDouble(pair -> pair.distance));
+
+        final Set<Long> linked_stored_records = new HashSet<>();
+        final Set<Long> linked_query_records = new HashSet<>();
+        final List<RecordPair> chosen = new ArrayList<>();
+
+        for (RecordPair pair : sorted) {
+
+            final long stored_id = ProjectedRecord.getStoredId(pair.stored_record);
+            final long query_id = ProjectedRecord.getStoredId(pair.query_record);
+
+            if (!linked_stored_records.contains(stored_id) && !linked_query_records.contains(query_id)) {
+
+                linked_stored_records.add(stored_id);
+                linked_query_records.add(query_id);
+                chosen.add(pair);
+            }
+        }
+        return chosen;
+    }
+
+    private static List<RecordPair> hungarian(final List<RecordPair> candidates) {
+
+        final List<RecordPair> chosen = new ArrayList<>();
+
+        for (List<RecordPair> component : getComponents(candidates)) {
+
+            final List<Long> query_ids = component.stream().map(pair -> ProjectedRecord.getStoredId(pair.query_record)).distinct().collect(Collectors.toList());
+            final List<Long> stored_ids = component.stream().map(pair -> ProjectedRecord.getStoredId(pair.stored_record)).distinct().collect(Collectors.toList());
+
+            if (component.size() == 1) {
+                chosen.addAll(component);
+            }
+            else if (Math.max(query_ids.size(), stored_ids.size()) > LinkageConfig.MAX_HUNGARIAN_COMPONENT_SIZE) {
+                chosen.addAll(greedy(component));
+            }
+            else {
+                chosen.addAll(hungarian(component, query_ids, stored_ids));
+            }
+        }
+        return chosen;
+    }
+
+    private static List<RecordPair> hungarian(final List<RecordPair> component, final List<Long> query_ids, final List<Long> stored_ids) {
+
+        final Map<Long, Integer> query_indices = indices(query_ids);
+        final Map<Long, Integer> stored_indices = indices(stored_ids);
+
+        // The algorithm needs no more rows than columns, so the smaller side is used for the rows.
+        final boolean queries_are_rows = query_ids.size() <= stored_ids.size();
+        final int number_of_rows = Math.min(query_ids.size(), stored_ids.size());
+        final int number_of_columns = Math.max(query_ids.size(), stored_ids.size());
+
+        // Pairs that aren't candidates cost more than all the candidates together, so the most records are linked.
+        final double no_link_cost = component.stream().mapToDouble(pair -> pair.distance).sum() + 1d;
+
+        final double[][] cost = new double[number_of_rows][number_of_columns];
+        final RecordPair[][] pairs = new RecordPair[number_of_rows][number_of_columns];
+
+        for (double[] row : cost) {
+            Arrays.fill(row, no_link_cost);
+        }
+
+        for (RecordPair pair : component) {
+
+            final int query_index = query_indices.get(ProjectedRecord.getStoredId(pair.query_record));
+            final int stored_index = stored_indices.get(ProjectedRecord.getStoredId(pair.stored_record));
+
+            final int row = queries_are_rows ? query_index : stored_index;
+            final int column = queries_are_rows ? stored_index : query_index;
+
+            if (pairs[row][column] == null || pair.distance < cost[row][column]) {
+                cost[row][column] = pair.distance;
+                pairs[row][column] = pair;
+            }
+        }
+
+        final List<RecordPair> chosen = new ArrayList<>();
+        final int[] assignment = minimumCostAssignment(cost);
+
+        for (int row = 0; row < number_of_rows; row++) {
+            final RecordPair pair = pairs[row][assignment[row]];
+            if (pair != null) chosen.add(pair);
+        }
+        return chosen;
+    }
+
+    /**
+     * Hungarian algorithm with potentials, for a matrix with no more rows than columns.
+     *
+     * @return the column assigned to each row
+     */
+    private static int[] minimumCostAssignment(final double[][] cost) {
+
+        final int n = cost.length;
+        final int m = cost[0].length;
+
+        // Rows and columns are numbered from 1, with column 0 used as a sentinel.
+        final double[] u = new double[n + 1];
+        final double[] v = new double[m + 1];
+        final int[] row_of_column = new int[m + 1];
+        final int[] previous_column = new int[m + 1];
+
+        for (int i = 1; i <= n; i++) {
+
+            row_of_column[0] = i;
+            int column = 0;
+
+            final double[] min_slack = new double[m + 1];
+            final boolean[] visited = new boolean[m + 1];
+            Arrays.fill(min_slack, Double.POSITIVE_INFINITY);
+
+            do {
+                visited[column] = true;
+
+                final int row = row_of_column[column];
+                double delta = Double.POSITIVE_INFINITY;
+                int next_column = 0;
+
+                for (int j = 1; j <= m; j++) {
+                    if (!visited[j]) {
+
+                        final double slack = cost[row - 1][j - 1] - u[row] - v[j];
+
+                        if (slack < min_slack[j]) {
+                            min_slack[j] = slack;
+                            previous_column[j] = column;
+                        }
+                        if (min_slack[j] < delta) {
+                            delta = min_slack[j];
+                            next_column = j;
+                        }
+                    }
+                }
+
+                for (int j = 0; j <= m; j++) {
+                    if (visited[j]) {
+                        u[row_of_column[j]] += delta;
+                        v[j] -= delta;
+                    } else {
+                        min_slack[j] -= delta;
+                    }
+                }
+                column = next_column;
+
+            } while (row_of_column[column] != 0);
+
+            // Follow the augmenting path back to the sentinel.
+            do {
+                final int previous = previous_column[column];
+                row_of_column[column] = row_of_column[previous];
+                column = previous;
+
+            } while (column != 0);
+        }
+
+        final int[] assignment = new int[n];
+        for (int j = 1; j <= m; j++) {
+            if (row_of_column[j] != 0) assignment[row_of_column[j] - 1] = j - 1;
+        }
+        return assignment;
+    }
+
+    /**
+     * @return the candidates divided into the connected components of the graph between stored and query records
+     */
+    private static List<List<RecordPair>> getComponents(final List<RecordPair> candidates) {
+
+        final Map<Long, Integer> query_nodes = new HashMap<>();
+        final Map<Long, Integer> stored_nodes = new HashMap<>();
+
+        for (RecordPair pair : candidates) {
+            query_nodes.putIfAbsent(ProjectedRecord.getStoredId(pair.query_record), query_nodes.size());
+            stored_nodes.putIfAbsent(ProjectedRecord.getStoredId(pair.stored_record), stored_nodes.size());
+        }
+
+        // Union-find over all the records, with the stored records numbered after the query records.
+        final int[] parents = new int[query_nodes.size() + stored_nodes.size()];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = i;
+        }
+
+        for (RecordPair pair : candidates) {
+
+            final int root1 = find(parents, query_nodes.get(ProjectedRecord.getStoredId(pair.query_record)));
+            final int root2 = find(parents, query_nodes.size() + stored_nodes.get(ProjectedRecord.getStoredId(pair.stored_record)));
+            parents[root1] = root2;
+        }
+
+        final Map<Integer, List<RecordPair>> components = new HashMap<>();
+        for (RecordPair pair : candidates) {
+
+            final int root = find(parents, query_nodes.get(ProjectedRecord.getStoredId(pair.query_record)));
+            components.computeIfAbsent(root, ignored -> new ArrayList<>()).add(pair);
+        }
+        return new ArrayList<>(components.values());
+    }
+
+    private static int find(final int[] parents, int node) {
+
+        while (parents[node] != node) {
+            parents[node] = parents[parents[node]];
+            node = parents[node];
+        }
+        return node;
+    }
+
+    private static Map<Long, Integer> indices(final List<Long> ids) {
+
+        final Map<Long, Integer> indices = new HashMap<>();
+        for (Long id : ids) {
+            indices.put(id, indices.size());
+        }
+        return indices;
+    }
+
+    private static List<RecordPair> inCandidateOrder(final List<RecordPair> candidates, final List<RecordPair> chosen) {
+
+        final Set<RecordPair> chosen_set = Collections.newSetFromMap(new IdentityHashMap<>());
+        chosen_set.addAll(chosen);
+
+        return candidates.stream().filter(chosen_set::contains).collect(Collectors.toList());
+    }
+}
@@ -18,24 +18,42 @@ package uk.ac.standrews.cs.population_linkage.linkers;
 
 import uk.ac.standrews.cs.neoStorr.impl.LXP;
 import uk.ac.standrews.cs.population_linkage.compositeMeasures.LXPMeasure;
+import uk.ac.standrews.cs.population_linkage.helpers.LinkageMetrics;
 import uk.ac.standrews.cs.population_linkage.linkageRecipes.LinkageRecipe;
+import uk.ac.standrews.cs.population_linkage.searchStructures.SearchExecutor;
+import uk.ac.standrews.cs.population_linkage.searchStructures.SearchResultConsumer;
 import uk.ac.standrews.cs.population_linkage.searchStructures.SearchStructure;
 import uk.ac.standrews.cs.population_linkage.searchStructures.SearchStructureFactory;
+import uk.ac.standrews.cs.population_linkage.searchStructures.ShardedSearchStructure;
+import uk.ac.standrews.cs.population_linkage.searchStructures.YearRange;
+import uk.ac.standrews.cs.population_linkage.supportClasses.Link;
+import uk.ac.standrews.cs.population_linkage.supportClasses.LinkageConfig;
+import uk.ac.standrews.cs.population_linkage.supportClasses.ProjectedRecord;
 import uk.ac.standrews.cs.population_linkage.supportClasses.RecordPair;
 import uk.ac.standrews.cs.utilities.ProgressIndicator;
-import uk.ac.standrews.cs.utilities.measures.coreConcepts.DataDistance;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class SimilaritySearchLinker extends Linker {
 
     private final SearchStructureFactory<LXP> search_structure_factory;
     private final LinkageRecipe linkage_recipe;
     protected SearchStructure<LXP> search_structure;
+    private boolean search_structure_shared = false;
     protected Iterable<LXP> search_set;
+    private int query_batch_size = 1;
+    private SearchExecutor executor = SearchExecutor.getShared();
+    private LinkPipeline pipeline = null;
 
     public SimilaritySearchLinker(SearchStructureFactory<LXP> search_structure_factory, LXPMeasure distance_measure, double threshold, int number_of_progress_updates,
                                   String link_type, String provenance, String role_type_1, String role_type_2, LinkageRecipe linkage_recipe) {
@@ -60,39 +78,132 @@ public class SimilaritySearchLinker extends Linker {
         search_structure = search_structure_factory.newSearchStructure(storedSet, reference_objects);
     }
 
+    /**
+     * Searches a structure already built over the stored records, which may be shared with other linkers, so isn't
+     * terminated when this linker is closed.
+     */
+    public void addRecords(Iterable<LXP> storedSet, Iterable<LXP> searchSet, SearchStructure<LXP> shared_search_structure) {
+
+        super.addRecords(storedSet, searchSet);
+        this.search_set = searchSet;
+        search_structure = shared_search_structure;
+        search_structure_shared = true;
+    }
+
+    /**
+     * @param query_batch_size the number of query records to be searched together using the search structure's batch query;
+     *                         one or less to search for each query record in turn
+     */
+    public void setQueryBatchSize(int query_batch_size) {
+
+        this.query_batch_size = query_batch_size;
+    }
+
+    /**
+     * @param executor the executor used by the search structure, whose utilisation is reported when the linker is closed
+     *                 if {@link LinkageConfig#SEARCH_STATISTICS_LOGGING} is set
+     */
+    public void setExecutor(SearchExecutor executor) {
+
+        this.executor = executor;
+    }
+
+    /**
+     * @param pipeline the pipeline through which links are produced by {@link #getLinks()}, or null to produce them
+     *                 from the record pairs in a single thread
+     */
+    public void setPipeline(LinkPipeline pipeline) {
+
+        this.pipeline = pipeline;
+    }
+
+    @Override
+    public Iterable<Link> getLinks() {
+
+        if (pipeline == null || keepsBestMatchesOnly()) return super.getLinks();
+
+        if (linkage_recipe != null) linkage_progress_indicator.setTotalSteps(linkage_recipe.getQuerySetSize());
+        return pipeline.getLinks(this);
+    }
+
+    /**
+     * When a pipeline is set, the stream gives the pipeline's links, so its parallelism is that of the pipeline. The
+     * pipeline isn't used when only the best matches are kept.
+     */
+    @Override
+    public Stream<Link> links() {
+
+        if (pipeline == null || keepsBestMatchesOnly()) return super.links();
+
+        return StreamSupport.stream(getLinks().spliterator(), false);
+    }
+
+    @Override
+    protected long getQuerySetSize() {
+
+        return linkage_recipe != null ? linkage_recipe.getQuerySetSize() : super.getQuerySetSize();
+    }
+
+    @Override
+    protected List<RecordPair> getMatchingRecordPairs(final LXP query_record) {
+
+        final List<RecordPair> pairs = search(query_record);
+
+        // Don't link a record with itself.
+        if (datasetsSame()) {
+            final long query_id = ProjectedRecord.getStoredId(query_record);
+            pairs.removeIf(pair -> ProjectedRecord.getStoredId(pair.stored_record) == query_id);
+        }
+        return pairs;
+    }
+
+    @Override
+    protected void forEachMatchingRecordPair(final LXP query_record, final Consumer<RecordPair> consumer) {
+
+        final boolean datasets_same = datasetsSame();
+        final long query_id = ProjectedRecord.getStoredId(query_record);
+
+        search(query_record, convertQueryRecord(query_record), (stored_record, distance) -> {
+
+            // Don't link a record with itself.
+            if (!datasets_same || ProjectedRecord.getStoredId(stored_record) != query_id) {
+                consumer.accept(new RecordPair(stored_record, query_record, distance));
+            }
+        });
+    }
+
     public void close() {
-        if( search_structure != null ) { // if it were not initialised
+        if (pipeline != null) {
+            pipeline.shutdown();
+        }
+        if( search_structure != null && !search_structure_shared ) { // if it were not initialised, or belongs to others too
             search_structure.terminate();
         }
+        if (LinkageConfig.SEARCH_STATISTICS_LOGGING) {
+            System.out.println("Search executor: " + executor);
+            if (viability_pre_filter != null) System.out.println("Viability pre-filter: " + viability_pre_filter);
+        }
     }
 
     @Override
     public Iterable<List<RecordPair>> getMatchingLists() {
 
-        Iterator<LXP> search_set_iterator = search_set.iterator(); // these are the records we are using as key to search (i.e. we're searching for the nearest thing to these in the stored records)
+        Iterator<QueryResults> query_results_iterator = new QueryResultsIterator();
 
         return () -> new Iterator<>() {
             @Override
             public boolean hasNext() {
-                return search_set_iterator.hasNext();
+                return query_results_iterator.hasNext();
             }
 
             @Override
             public List<RecordPair> next() {
 
-                final LXP next_record_from_search_set = search_set_iterator.next();
-                // the next_record_from_search_set converted into the same type as the stored records
-                final LXP converted_record = linkage_recipe != null ? linkage_recipe.convertToOtherRecordType(next_record_from_search_set) : next_record_from_search_set;
-
-                return toRecordPairList(next_record_from_search_set, search_structure.findWithinThreshold(converted_record, threshold)).collect(Collectors.toList());
+                return query_results_iterator.next().pairs;
             }
         };
     }
 
-    private Stream<RecordPair> toRecordPairList(LXP search_record, List<DataDistance<LXP>> withinThreshold) {
-        return withinThreshold.stream().map( dd -> new RecordPair(dd.value, search_record, dd.distance) );
-    }
-
     @Override
     public Iterable<RecordPair> getMatchingRecordPairs(final Iterable<LXP> records1, final Iterable<LXP> records2) {
 
@@ -101,16 +212,16 @@ public class SimilaritySearchLinker extends Linker {
             class RecordPairIterator extends AbstractRecordPairIterator {
 
                 private int result_index; // this is the index into the result_records
-                private List<DataDistance<LXP>> result_records; // these are the results we get back from doing a search from findWithInThreshold
+                private List<RecordPair> result_records; // these are the results we get back from doing a search from findWithInThreshold
 
                 private LXP next_record_from_search_set; // this is the current record from the search set being processed
-                private final Iterator<LXP> search_set_iterator; // these are the records we are using as key to search (i.e. we're searching for the nearest thing to these in the stored records)
+                private final Iterator<QueryResults> search_set_iterator; // the records we are using as key to search, with their results (i.e. we're searching for the nearest thing to these in the stored records)
 
                 RecordPairIterator(final Iterable<LXP> records1, final Iterable<LXP> records2, ProgressIndicator progress_indicator) {
 
                     super(records1, records2, progress_indicator);
 
-                    search_set_iterator = search_set.iterator();
+                    search_set_iterator = new QueryResultsIterator();
 
                     loadNextSearchResults();
 
@@ -121,12 +232,11 @@ public class SimilaritySearchLinker extends Linker {
 
                 private void loadNextSearchResults() {
 
-                    next_record_from_search_set = search_set_iterator.next();
-                    // the next_record_from_search_set converted into the same type as the stored records
-                    final LXP converted_record = linkage_recipe != null ? linkage_recipe.convertToOtherRecordType(next_record_from_search_set) : next_record_from_search_set;
+                    final QueryResults query_results = search_set_iterator.next();
 
+                    next_record_from_search_set = query_results.query_record;
                     result_index = 0;
-                    result_records = search_structure.findWithinThreshold(converted_record, threshold);
+                    result_records = query_results.pairs;
                 }
 
                 @Override
@@ -157,8 +267,7 @@ public class SimilaritySearchLinker extends Linker {
                                 getNextRecordFromSearchSet();
                             }
 
-                            DataDistance<LXP> data_distance = result_records.get(result_index++);
-                            next_pair = new RecordPair(data_distance.value, next_record_from_search_set, data_distance.distance);
+                            next_pair = result_records.get(result_index++);
 
                             if (!moreResultsAvailable())
                                 getNextRecordFromSearchSet();
@@ -182,7 +291,7 @@ public class SimilaritySearchLinker extends Linker {
 
                 private boolean pairShouldBeSkipped() {
 
-                    return next_pair == null || (datasets_same && next_pair.stored_record.getId() == next_pair.query_record.getId());
+                    return next_pair == null || (datasetsSame() && ProjectedRecord.getStoredId(next_pair.stored_record) == ProjectedRecord.getStoredId(next_pair.query_record));
                 }
 
                 private void getNextRecordFromSearchSet() {
@@ -201,4 +310,144 @@ public class SimilaritySearchLinker extends Linker {
             }
         };
     }
+
+    private List<RecordPair> search(final LXP query_record) {
+
+        return search(query_record, convertQueryRecord(query_record));
+    }
+
+    /**
+     * @param converted_record the query record converted into the same type as the stored records
+     */
+    List<RecordPair> search(final LXP query_record, final LXP converted_record) {
+
+        // Results are turned straight into record pairs, without an intermediate list of results.
+        final List<RecordPair> pairs = new ArrayList<>();
+        search(query_record, converted_record, (stored_record, distance) -> pairs.add(new RecordPair(stored_record, query_record, distance)));
+        return pairs;
+    }
+
+    private void search(final LXP query_record, final LXP converted_record, final SearchResultConsumer<LXP> consumer) {
+
+        final Predicate<LXP> filter = getViabilityFilter(query_record);
+
+        if (isShardedByYear()) {
+            // The window is derived from the original query record, since converting it may drop the date fields.
+            ((ShardedSearchStructure<LXP>) search_structure).findWithinThreshold(converted_record, threshold, linkage_recipe.getViableStoredRecordYears(query_record), filter, consumer);
+        } else {
+            search_structure.findWithinThreshold(converted_record, threshold, filter, consumer);
+        }
+    }
+
+    /**
+     * @return a filter that rules out stored records that can't be viably linked to the query record, checked before
+     * their distances are calculated
+     */
+    private Predicate<LXP> getViabilityFilter(final LXP query_record) {
+
+        if (viability_pre_filter == null) return stored_record -> true;
+
+        final YearRange query_signature = viability_pre_filter.getQuerySignature(query_record);
+        return stored_record -> viability_pre_filter.mayBeViable(stored_record, query_signature);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<List<RecordPair>> search(final List<LXP> query_records) {
+
+        final List<LXP> converted_records = new ArrayList<>(query_records.size());
+        for (LXP query_record : query_records) {
+            converted_records.add(convertQueryRecord(query_record));
+        }
+
+        // Each query adds only to its own list, so results come back in query order without further synchronisation.
+        final List<RecordPair>[] results = new List[query_records.size()];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = new ArrayList<>();
+        }
+
+        final IntFunction<Predicate<LXP>> filters = i -> getViabilityFilter(query_records.get(i));
+        final IntFunction<SearchResultConsumer<LXP>> consumers = i -> (stored_record, distance) -> results[i].add(new RecordPair(stored_record, query_records.get(i), distance));
+
+        if (isShardedByYear()) {
+            ((ShardedSearchStructure<LXP>) search_structure).findWithinThreshold(converted_records, threshold, i -> linkage_recipe.getViableStoredRecordYears(query_records.get(i)), filters, consumers);
+        } else {
+            search_structure.findWithinThreshold(converted_records, threshold, filters, consumers);
+        }
+
+        return Arrays.asList(results);
+    }
+
+    private boolean isShardedByYear() {
+        return search_structure instanceof ShardedSearchStructure && linkage_recipe != null;
+    }
+
+    LXP convertQueryRecord(final LXP query_record) {
+
+        if (linkage_recipe == null) return query_record;
+
+        // the query record converted into the same type as the stored records
+        if (metrics == null) return linkage_recipe.convertToOtherRecordType(query_record);
+
+        final long start = System.nanoTime();
+        final LXP converted_record = linkage_recipe.convertToOtherRecordType(query_record);
+        metrics.recordTime(LinkageMetrics.Phase.CONVERSION, System.nanoTime() - start);
+
+        return converted_record;
+    }
+
+    private static class QueryResults {
+
+        final LXP query_record;
+        final List<RecordPair> pairs;
+
+        QueryResults(final LXP query_record, final List<RecordPair> pairs) {
+
+            this.query_record = query_record;
+            this.pairs = pairs;
+        }
+    }
+
+    /**
+     * Iterates over the search set, yielding each query record together with the stored records within threshold.
+     * In batch mode the next batch of query records is searched in parallel when the previous batch has been consumed.
+     */
+    private class QueryResultsIterator implements Iterator<QueryResults> {
+
+        private final Iterator<LXP> search_set_iterator = search_set.iterator();
+        private final Deque<QueryResults> buffered_results = new ArrayDeque<>();
+
+        @Override
+        public boolean hasNext() {
+            return !buffered_results.isEmpty() || search_set_iterator.hasNext();
+        }
+
+        @Override
+        public QueryResults next() {
+
+            if (buffered_results.isEmpty()) {
+                if (query_batch_size > 1) {
+                    searchNextBatch();
+                } else {
+                    final LXP query_record = search_set_iterator.next();
+                    buffered_results.add(new QueryResults(query_record, search(query_record)));
+                }
+            }
+            return buffered_results.removeFirst();
+        }
+
+        private void searchNextBatch() {
+
+            final List<LXP> query_records = new ArrayList<>();
+
+            while (search_set_iterator.hasNext() && query_records.size() < query_batch_size) {
+                query_records.add(search_set_iterator.next());
+            }
+
+            final List<List<RecordPair>> results = search(query_records);
+
+            for (int i = 0; i < query_records.size(); i++) {
+                buffered_results.add(new QueryResults(query_records.get(i), results.get(i)));
+            }
+        }
+    }
 }
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.linkers;
+
+import uk.ac.standrews.cs.neoStorr.impl.LXP;
+import uk.ac.standrews.cs.population_linkage.compositeMeasures.LXPMeasure;
+import uk.ac.standrews.cs.population_linkage.linkageRecipes.ViabilityPreFilter;
+import uk.ac.standrews.cs.population_linkage.searchStructures.SearchExecutor;
+import uk.ac.standrews.cs.population_linkage.searchStructures.YearRange;
+import uk.ac.standrews.cs.population_linkage.supportClasses.RecordPair;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Computes the distances between all pairs of records from two lists, dividing the distance matrix into square tiles
+ * that are processed in parallel. Each tile covers few enough records for both its rows and columns to stay in cache.
+ *
+ * When the linkage is symmetric, only the tiles on and above the diagonal are computed, and each pair within the
+ * threshold is given in both directions.
+ *
+ * If a viability pre-filter is given, the signatures of all the records are calculated in advance, and a distance is
+ * only calculated for a pair that the pre-filter doesn't rule out in at least one direction.
+ */
+class TiledBruteForceEngine {
+
+    private final LXPMeasure measure;
+    private final double threshold;
+    private final LXP[] records1;
+    private final LXP[] records2;
+    private final boolean datasets_same;
+    private final boolean symmetric;
+    private final int tile_size;
+    private final List<int[]> tiles = new ArrayList<>();
+
+    private final ViabilityPreFilter viability_pre_filter;
+    private Integer[] stored_signatures;
+    private YearRange[] query_signatures;
+
+    /**
+     * @param datasets_same whether the two lists hold the same records, in which case records are not paired with themselves
+     * @param symmetric whether the measure gives the same distance in both directions, only used if the datasets are the same
+     * @param viability_pre_filter the check used to rule out pairs before calculating their distances, or null for none
+     */
+    TiledBruteForceEngine(final LXPMeasure measure, final double threshold, final List<LXP> records1, final List<LXP> records2,
+                          final boolean datasets_same, final boolean symmetric, final int tile_size, final ViabilityPreFilter viability_pre_filter) {
+
+        this.measure = measure;
+        this.threshold = threshold;
+        this.records1 = records1.toArray(new LXP[0]);
+        this.records2 = datasets_same ? this.records1 : records2.toArray(new LXP[0]);
+        this.datasets_same = datasets_same;
+        this.symmetric = datasets_same && symmetric;
+        this.tile_size = tile_size;
+        this.viability_pre_filter = viability_pre_filter;
+
+        if (viability_pre_filter != null) {
+
+            stored_signatures = new Integer[this.records1.length];
+            query_signatures = new YearRange[this.records2.length];
+
+            for (int i = 0; i < stored_signatures.length; i++) {
+                stored_signatures[i] = viability_pre_filter.getStoredSignature(this.records1[i]);
+            }
+            for (int j = 0; j < query_signatures.length; j++) {
+                query_signatures[j] = viability_pre_filter.getQuerySignature(this.records2[j]);
+            }
+        }
+
+        final int number_of_row_tiles = numberOfTiles(this.records1.length);
+        final int number_of_column_tiles = numberOfTiles(this.records2.length);
+
+        for (int row = 0; row < number_of_row_tiles; row++) {
+            for (int column = this.symmetric ? row : 0; column < number_of_column_tiles; column++) {
+                tiles.add(new int[]{row, column});
+            }
+        }
+    }
+
+    int getNumberOfTiles() {
+        return tiles.size();
+    }
+
+    /**
+     * @param sink receives each pair within the threshold, concurrently from several threads
+     * @param tile_completed called after each tile has been processed, concurrently from several threads
+     */
+    void run(final SearchExecutor executor, final Consumer<RecordPair> sink, final Runnable tile_completed) {
+
+        executor.run(() -> tiles.parallelStream().forEach(tile -> {
+            processTile(tile[0], tile[1], sink);
+            tile_completed.run();
+        }));
+    }
+
+    private void processTile(final int row, final int column, final Consumer<RecordPair> sink) {
+
+        final int row_start = row * tile_size;
+        final int row_end = Math.min(row_start + tile_size, records1.length);
+        final int column_start = column * tile_size;
+        final int column_end = Math.min(column_start + tile_size, records2.length);
+
+        for (int i = row_start; i < row_end; i++) {
+
+            final LXP record1 = records1[i];
+
+            // In a diagonal tile of a symmetric linkage, only the pairs above the diagonal are computed.
+            for (int j = symmetric && row == column ? i + 1 : column_start; j < column_end; j++) {
+
+                final LXP record2 = records2[j];
+
+                // Don't compare record with itself.
+                if (datasets_same && record1.getId() == record2.getId()) continue;
+
+                // In a symmetric linkage the two records swap roles for the reverse link, so the pre-filter is checked both ways.
+                final boolean forward = mayBeViable(i, j);
+                final boolean backward = symmetric && mayBeViable(j, i);
+
+                if (!forward && !backward) continue;
+
+                final double distance = measure.distance(record1, record2, threshold);
+
+                if (distance <= threshold) {
+                    if (forward) sink.accept(new RecordPair(record1, record2, distance));
+                    if (backward) sink.accept(new RecordPair(record2, record1, distance));
+                }
+            }
+        }
+    }
+
+    private boolean mayBeViable(final int stored_index, final int query_index) {
+
+        return viability_pre_filter == null || viability_pre_filter.mayBeViable(stored_signatures[stored_index], query_signatures[query_index]);
+    }
+
+    private int numberOfTiles(final int number_of_records) {
+        return (number_of_records + tile_size - 1) / tile_size;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.searchStructures;
+
+import uk.ac.standrews.cs.utilities.measures.coreConcepts.DataDistance;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * Runs a set of range queries against a search structure in parallel in the given executor, using a search structure's
+ * single query method.
+ * Relies on the search structure being safe for concurrent queries once it has been built.
+ */
+class BatchSearch {
+
+    @SuppressWarnings("unchecked")
+    static <T> List<List<DataDistance<T>>> findWithinThreshold(final SearchStructure<T> search_structure, final List<T> queries, final double threshold,
+                                                               final SearchExecutor executor) {
+
+        // Each query writes only its own slot, so results come back in query order without further synchronisation.
+        final List<DataDistance<T>>[] results = new List[queries.size()];
+
+        run(queries.size(), i -> results[i] = search_structure.findWithinThreshold(queries.get(i), threshold), executor);
+
+        return Arrays.asList(results);
+    }
+
+    static <T> void findWithinThreshold(final SearchStructure<T> search_structure, final List<T> queries, final double threshold,
+                                        final IntFunction<Predicate<T>> filters, final IntFunction<SearchResultConsumer<T>> consumers, final SearchExecutor executor) {
+
+        run(queries.size(), i -> search_structure.findWithinThreshold(queries.get(i), threshold, filters.apply(i), consumers.apply(i)), executor);
+    }
+
+    /**
+     * Runs the search for each query index in parallel.
+     */
+    static void run(final int number_of_queries, final IntConsumer search, final SearchExecutor executor) {
+
+        executor.run(() -> IntStream.range(0, number_of_queries).parallel().forEach(search));
+    }
+}
@@ -23,21 +23,51 @@ import uk.al_richard.metricbitblaster.production.ParallelBitBlaster2;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
+/**
+ * Range search uses BitBlaster, alongside which a {@link PivotTable} of distances to the same reference objects is
+ * built. The pivot table is used for nearest neighbour search, and for all searches once the structure has been
+ * updated, since BitBlaster cannot be extended once built: the first update terminates BitBlaster, and the items
+ * are then appended to the pivot table.
+ *
+ * Searches may run concurrently with each other and with updates. BitBlaster is only terminated once the searches
+ * using it have finished.
+ */
 public class BitBlasterSearchStructure<T> implements SearchStructure<T> {
 
-    private static final int DEFAULT_NUMBER_OF_REFERENCE_POINTS = 70;
+    static final int DEFAULT_NUMBER_OF_REFERENCE_POINTS = 70;
     private static long SEED = 34258723425L;
+
+    // Guards bit_blaster: held for reading while BitBlaster is searched, and for writing while it is terminated.
+    private final ReadWriteLock bit_blaster_lock = new ReentrantReadWriteLock();
     private ParallelBitBlaster2<T> bit_blaster;
+    private final SearchExecutor executor;
+
+    private PivotTable<T> pivot_table;
 
     public BitBlasterSearchStructure(Measure<T> measure, Iterable<T> data) {
         this(measure, data, DEFAULT_NUMBER_OF_REFERENCE_POINTS);
     }
 
+    public BitBlasterSearchStructure(Measure<T> measure, Iterable<T> data, SearchExecutor executor) {
+        this(measure, data, DEFAULT_NUMBER_OF_REFERENCE_POINTS, executor);
+    }
+
     public BitBlasterSearchStructure(Measure<T> measure, Iterable<T> data, int number_of_reference_objects) {
+        this(measure, data, number_of_reference_objects, SearchExecutor.getShared());
+    }
+
+    /**
+     * @param executor used for building and batch searching; BitBlaster is limited to the executor's parallelism
+     */
+    public BitBlasterSearchStructure(Measure<T> measure, Iterable<T> data, int number_of_reference_objects, SearchExecutor executor) {
 
+        this.executor = executor;
         List<T> copy_of_data = copyData(data);
 
         // Keep repeating with fewer reference objects if we cannot initialise bitblaster
@@ -64,7 +94,12 @@ public class BitBlasterSearchStructure<T> implements SearchStructure<T> {
     }
 
     public BitBlasterSearchStructure(Measure<T> measure, Iterable<T> data, List<T> reference_objects) {
+        this(measure, data, reference_objects, SearchExecutor.getShared());
+    }
+
+    public BitBlasterSearchStructure(Measure<T> measure, Iterable<T> data, List<T> reference_objects, SearchExecutor executor) {
 
+        this.executor = executor;
         try {
             init(measure, copyData(data), reference_objects);
 
@@ -73,7 +108,17 @@ public class BitBlasterSearchStructure<T> implements SearchStructure<T> {
         }
     }
 
-    private static <X> List<X> copyData(final Iterable<X> data) {
+    /**
+     * Creates a search structure from a previously built pivot table, typically one restored from an index snapshot.
+     * BitBlaster itself is not built; range search uses the pivot table's distances and ball bitsets instead.
+     */
+    public BitBlasterSearchStructure(Measure<T> measure, PivotTable<T> pivot_table) {
+
+        this.pivot_table = pivot_table;
+        executor = pivot_table.getExecutor();
+    }
+
+    static <X> List<X> copyData(final Iterable<X> data) {
 
         List<X> copy_of_data = new ArrayList<>();
 
@@ -85,28 +130,25 @@ public class BitBlasterSearchStructure<T> implements SearchStructure<T> {
 
     public static <X> List<X> chooseRandomReferencePoints(final List<X> data, final int number_of_reference_objects) {
 
-        Random random = new Random(SEED);
-        List<X> reference_points = new ArrayList<>();
-
-        if (number_of_reference_objects >= data.size()) {
-            return data;
-        }
-
-        while (reference_points.size() < number_of_reference_objects) {
-            X item = data.get(random.nextInt(data.size()));
-            if (!reference_points.contains(item)) {
-                reference_points.add(item);
-            }
-        }
-
-        return reference_points;
+        return new RandomPivotSelector<X>(SEED).selectPivots(data, number_of_reference_objects);
     }
 
+    /**
+     * Stops BitBlaster's threads, after which range searches use the pivot table.
+     */
     public void terminate() {
+
+        bit_blaster_lock.writeLock().lock();
         try {
+            if (bit_blaster == null) return;
             bit_blaster.terminate();
+            bit_blaster = null;
+
         } catch (InterruptedException e) {
             System.out.println( "Terminate interrupted" );
+
+        } finally {
+            bit_blaster_lock.writeLock().unlock();
         }
     }
 
@@ -114,21 +156,132 @@ public class BitBlasterSearchStructure<T> implements SearchStructure<T> {
 
         boolean fourPoint = distance_measure.getMeasureName().equals(Constants.JENSEN_SHANNON.getMeasureName());
 
-//        System.out.println( "Creating ParallelBitBlaster2: no processors"  + Runtime.getRuntime().availableProcessors() );
-
+        // BitBlaster manages its own threads, so it can only be given the executor's limit on parallelism.
         bit_blaster = new ParallelBitBlaster2<>(distance_measure::distance, reference_objects, data, 2,
-                Runtime.getRuntime().availableProcessors(), fourPoint, true);
+                executor.getParallelism(), fourPoint, true);
+
+        pivot_table = new PivotTable<>(distance_measure, data, reference_objects, executor);
     }
 
     @Override
     public List<DataDistance<T>> findWithinThreshold(final T record, final double threshold) {
 
+        bit_blaster_lock.readLock().lock();
+        try {
+            final ParallelBitBlaster2<T> blaster = bit_blaster;
+            if (blaster == null) {
+                return pivot_table.findWithinThreshold(record, threshold);
+            }
+            return convertDataDistanceList(blaster.rangeSearch(record, threshold));
+
+        } catch (RuntimeException e) {
+            throw e;
+
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+
+        } finally {
+            bit_blaster_lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void findWithinThreshold(final T record, final double threshold, final SearchResultConsumer<T> consumer) {
+
+        findWithinThreshold(record, threshold, null, consumer);
+    }
+
+    @Override
+    public void findWithinThreshold(final T record, final double threshold, final Predicate<T> filter, final SearchResultConsumer<T> consumer) {
+
+        final List<uk.ac.standrews.cs.utilities.metrics.coreConcepts.DataDistance<T>> results;
+
+        bit_blaster_lock.readLock().lock();
         try {
-            return convertDataDistanceList(bit_blaster.rangeSearch(record, threshold));
+            final ParallelBitBlaster2<T> blaster = bit_blaster;
+            if (blaster == null) {
+                if (filter == null) pivot_table.findWithinThreshold(record, threshold, consumer);
+                else pivot_table.findWithinThreshold(record, threshold, filter, consumer);
+                return;
+            }
+            results = blaster.rangeSearch(record, threshold);
+
+        } catch (RuntimeException e) {
+            throw e;
 
         } catch (Exception e) {
             throw new RuntimeException(e);
+
+        } finally {
+            bit_blaster_lock.readLock().unlock();
         }
+
+        // Pass on BitBlaster's own results, rather than converting them into a second list. BitBlaster can't check
+        // the filter before calculating distances, so it is applied to the results.
+        for (uk.ac.standrews.cs.utilities.metrics.coreConcepts.DataDistance<T> result : results) {
+            if (filter == null || filter.test(result.value)) consumer.accept(result.value, result.distance);
+        }
+    }
+
+    @Override
+    public List<List<DataDistance<T>>> findWithinThreshold(final List<T> queries, final double threshold) {
+
+        return BatchSearch.findWithinThreshold(this, queries, threshold, executor);
+    }
+
+    @Override
+    public void findWithinThreshold(final List<T> queries, final double threshold, final IntFunction<Predicate<T>> filters, final IntFunction<SearchResultConsumer<T>> consumers) {
+
+        BatchSearch.findWithinThreshold(this, queries, threshold, filters, consumers, executor);
+    }
+
+    /**
+     * BitBlaster only supports range search, so nearest neighbour search uses the pivot table.
+     */
+    @Override
+    public List<DataDistance<T>> findNearest(final T query, final int k) {
+
+        return getPivotTable().findNearest(query, k);
+    }
+
+    /**
+     * As {@link #findNearest(Object, int)}, but only returning results within the given distance of the query.
+     */
+    public List<DataDistance<T>> findNearest(final T query, final int k, final double max_distance) {
+
+        return getPivotTable().findNearest(query, k, max_distance);
+    }
+
+    /**
+     * BitBlaster cannot be extended once built, so the first update moves all searches to the pivot table, to which
+     * the item's distances are then appended. Structures restored from a snapshot already use the pivot table.
+     */
+    @Override
+    public void add(final T item) {
+
+        getUpdatablePivotTable().add(item);
+    }
+
+    @Override
+    public void addAll(final Iterable<T> items) {
+
+        getUpdatablePivotTable().addAll(items);
+    }
+
+    @Override
+    public boolean remove(final T item) {
+
+        return getUpdatablePivotTable().remove(item);
+    }
+
+    private PivotTable<T> getUpdatablePivotTable() {
+
+        terminate();
+        return pivot_table;
+    }
+
+    public PivotTable<T> getPivotTable() {
+        return pivot_table;
     }
 
     public static <T> List<DataDistance<T>> convertDataDistanceList(List<uk.ac.standrews.cs.utilities.metrics.coreConcepts.DataDistance<T>> list) {
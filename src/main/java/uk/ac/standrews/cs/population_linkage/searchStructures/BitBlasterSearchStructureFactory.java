@@ -18,24 +18,104 @@ package uk.ac.standrews.cs.population_linkage.searchStructures;
 
 import uk.ac.standrews.cs.utilities.measures.coreConcepts.Measure;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.function.ToLongFunction;
 
 public class BitBlasterSearchStructureFactory<T> implements SearchStructureFactory<T> {
 
     private final Measure<T> composite_measure;
 
+    private final Path snapshot_directory;
+    private final String index_key;
+    private final ToLongFunction<T> id_function;
+    private final SearchExecutor executor;
+
     public BitBlasterSearchStructureFactory(Measure<T> composite_measure) {
 
+        this(composite_measure, SearchExecutor.getShared());
+    }
+
+    /**
+     * @param executor used by the search structures created; its parallelism also limits the threads used by BitBlaster
+     */
+    public BitBlasterSearchStructureFactory(Measure<T> composite_measure, SearchExecutor executor) {
+
+        this(composite_measure, null, null, null, executor);
+    }
+
+    /**
+     * Creates a factory that reuses index snapshots saved in the given directory, and saves a snapshot of each new index.
+     * The indexes are searched using their pivot tables rather than BitBlaster, so a new index behaves the same as one
+     * restored from a snapshot.
+     *
+     * @param index_key   identifies what was indexed, e.g. the recipe, measure and linkage fields
+     * @param id_function gives the persistent id of an indexed item
+     */
+    public BitBlasterSearchStructureFactory(Measure<T> composite_measure, Path snapshot_directory, String index_key, ToLongFunction<T> id_function) {
+
+        this(composite_measure, snapshot_directory, index_key, id_function, SearchExecutor.getShared());
+    }
+
+    public BitBlasterSearchStructureFactory(Measure<T> composite_measure, Path snapshot_directory, String index_key, ToLongFunction<T> id_function, SearchExecutor executor) {
+
+        this.executor = executor;
         this.composite_measure = composite_measure;
+        this.snapshot_directory = snapshot_directory;
+        this.index_key = index_key;
+        this.id_function = id_function;
     }
 
     @Override
     public SearchStructure<T> newSearchStructure(final Iterable<T> records) {
-        return new BitBlasterSearchStructure<>(composite_measure, records);
+        return newSearchStructure(records, null);
     }
 
     public SearchStructure<T> newSearchStructure(final Iterable<T> records, final List<T> reference_objects) {
-        return new BitBlasterSearchStructure<>(composite_measure, records, reference_objects);
+
+        if (snapshot_directory == null) {
+            return newBitBlaster(records, reference_objects);
+        }
+
+        final List<T> data = BitBlasterSearchStructure.copyData(records);
+        final long fingerprint = IndexSnapshot.fingerprint(data, id_function);
+        final Path snapshot_path = IndexSnapshot.getSnapshotPath(snapshot_directory, index_key, fingerprint);
+
+        try {
+            final PivotTable<T> pivot_table = IndexSnapshot.open(snapshot_path, index_key, fingerprint, composite_measure, data, id_function, executor);
+
+            if (pivot_table != null) {
+                System.out.println("Opened index snapshot: " + snapshot_path);
+                return new BitBlasterSearchStructure<>(composite_measure, pivot_table);
+            }
+        } catch (IOException e) {
+            System.out.println("Could not open index snapshot " + snapshot_path + " - rebuilding: " + e.getMessage());
+        }
+
+        // The table that is saved is the one searched, so the distances are only calculated once, and the structure
+        // is the same as one restored from the snapshot by a later run.
+        final List<T> pivots = reference_objects != null ? reference_objects :
+                BitBlasterSearchStructure.chooseRandomReferencePoints(data, BitBlasterSearchStructure.DEFAULT_NUMBER_OF_REFERENCE_POINTS);
+        final PivotTable<T> pivot_table = new PivotTable<>(composite_measure, data, pivots, executor);
+        final BitBlasterSearchStructure<T> search_structure = new BitBlasterSearchStructure<>(composite_measure, pivot_table);
+
+        try {
+            IndexSnapshot.save(snapshot_path, index_key, fingerprint, pivot_table, id_function);
+            System.out.println("Saved index snapshot: " + snapshot_path);
+
+        } catch (IOException e) {
+            System.out.println("Could not save index snapshot " + snapshot_path + ": " + e.getMessage());
+        }
+
+        return search_structure;
+    }
+
+    private BitBlasterSearchStructure<T> newBitBlaster(final Iterable<T> records, final List<T> reference_objects) {
+
+        return reference_objects == null ?
+                new BitBlasterSearchStructure<>(composite_measure, records, executor) :
+                new BitBlasterSearchStructure<>(composite_measure, records, reference_objects, executor);
     }
 
     @Override
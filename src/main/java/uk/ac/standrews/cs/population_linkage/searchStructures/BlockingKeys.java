@@ -0,0 +1,87 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.searchStructures;
+
+import uk.ac.standrews.cs.neoStorr.impl.LXP;
+import uk.ac.standrews.cs.population_linkage.helpers.RecordFiltering;
+
+/**
+ * Blocking keys derived from record fields. The field indices are those of the stored record type, since query
+ * records are converted to that type before searching.
+ */
+public class BlockingKeys {
+
+    public static BlockingKey<LXP> nysiis(final int field) {
+
+        return record -> {
+            final String value = getValue(record, field);
+            return value == null ? null : emptyToNull(PhoneticCode.nysiis(value));
+        };
+    }
+
+    public static BlockingKey<LXP> initial(final int field) {
+
+        return record -> {
+            final String value = getValue(record, field);
+            return value == null ? null : value.substring(0, 1).toUpperCase();
+        };
+    }
+
+    /**
+     * @param band_width the number of years in each band
+     */
+    public static BlockingKey<LXP> yearBand(final int field, final int band_width) {
+
+        return record -> {
+            final String value = getValue(record, field);
+            try {
+                return value == null ? null : String.valueOf(Math.floorDiv(Integer.parseInt(value), band_width));
+
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        };
+    }
+
+    /**
+     * @return a key combining all of the given keys, which is null if any of them is null
+     */
+    @SafeVarargs
+    public static <T> BlockingKey<T> and(final BlockingKey<T>... keys) {
+
+        return record -> {
+            final StringBuilder builder = new StringBuilder();
+
+            for (BlockingKey<T> key : keys) {
+                final String value = key.getKey(record);
+                if (value == null) return null;
+                builder.append(value).append('|');
+            }
+            return builder.toString();
+        };
+    }
+
+    private static String getValue(final LXP record, final int field) {
+
+        final String value = record.getString(field);
+        return RecordFiltering.isMissing(value) ? null : emptyToNull(value.trim());
+    }
+
+    private static String emptyToNull(final String value) {
+        return value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.searchStructures;
+
+import uk.ac.standrews.cs.population_linkage.compositeMeasures.BoundedMeasure;
+import uk.ac.standrews.cs.utilities.measures.coreConcepts.DataDistance;
+import uk.ac.standrews.cs.utilities.measures.coreConcepts.Measure;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+/**
+ * A search structure that makes no assumptions about the measure, so can be used with non-metric measures.
+ * Items are indexed in blocks by one or more blocking keys, and a query is compared only with the items that share
+ * at least one key with it. Items that match the query but share no key with it are missed, so the keys should be
+ * chosen to be tolerant of the variation expected between matching records.
+ *
+ * Updates must not run concurrently with searches.
+ */
+public class BlockingSearchStructure<T> implements SearchStructure<T> {
+
+    private final Measure<T> measure;
+    private final List<BlockingKey<T>> blocking_keys;
+    private final SearchExecutor executor;
+
+    private final List<T> data = new ArrayList<>();
+    private final BitSet removed = new BitSet();
+
+    // For each blocking key, the data indices of the items in each block.
+    private final List<Map<String, List<Integer>>> blocks = new ArrayList<>();
+
+    private final AtomicLong number_of_queries = new AtomicLong();
+    private final AtomicLong number_of_candidates = new AtomicLong();
+
+    public BlockingSearchStructure(final Measure<T> measure, final Iterable<T> data, final List<BlockingKey<T>> blocking_keys) {
+
+        this(measure, data, blocking_keys, SearchExecutor.getShared());
+    }
+
+    public BlockingSearchStructure(final Measure<T> measure, final Iterable<T> data, final List<BlockingKey<T>> blocking_keys, final SearchExecutor executor) {
+
+        this.measure = measure;
+        this.blocking_keys = blocking_keys;
+        this.executor = executor;
+
+        for (int k = 0; k < blocking_keys.size(); k++) {
+            blocks.add(new HashMap<>());
+        }
+        addAll(data);
+    }
+
+    @Override
+    public List<DataDistance<T>> findWithinThreshold(final T record, final double threshold) {
+
+        final List<DataDistance<T>> results = new ArrayList<>();
+        findWithinThreshold(record, threshold, (item, distance) -> results.add(new DataDistance<>(item, distance)));
+        return results;
+    }
+
+    @Override
+    public void findWithinThreshold(final T record, final double threshold, final SearchResultConsumer<T> consumer) {
+
+        findWithinThreshold(record, threshold, item -> true, consumer);
+    }
+
+    @Override
+    public void findWithinThreshold(final T record, final double threshold, final Predicate<T> filter, final SearchResultConsumer<T> consumer) {
+
+        final BitSet candidates = getQueryCandidates(record);
+
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+
+            if (!filter.test(data.get(i))) continue;
+
+            final double distance = BoundedMeasure.boundedDistance(measure, record, data.get(i), threshold);
+            if (distance <= threshold) consumer.accept(data.get(i), distance);
+        }
+    }
+
+    @Override
+    public List<List<DataDistance<T>>> findWithinThreshold(final List<T> queries, final double threshold) {
+
+        return BatchSearch.findWithinThreshold(this, queries, threshold, executor);
+    }
+
+    @Override
+    public void findWithinThreshold(final List<T> queries, final double threshold, final IntFunction<Predicate<T>> filters, final IntFunction<SearchResultConsumer<T>> consumers) {
+
+        BatchSearch.findWithinThreshold(this, queries, threshold, filters, consumers, executor);
+    }
+
+    /**
+     * @return the k nearest items among those sharing a block with the query
+     */
+    @Override
+    public List<DataDistance<T>> findNearest(final T query, final int k) {
+
+        final NearestNeighbourHeap<T> nearest = new NearestNeighbourHeap<>(k);
+        if (k <= 0) return nearest.toSortedList();
+
+        final BitSet candidates = getQueryCandidates(query);
+
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            nearest.offer(data.get(i), measure.distance(query, data.get(i)));
+        }
+        return nearest.toSortedList();
+    }
+
+    @Override
+    public synchronized void add(final T item) {
+
+        final int index = data.size();
+        data.add(item);
+
+        for (int k = 0; k < blocking_keys.size(); k++) {
+
+            final String key = blocking_keys.get(k).getKey(item);
+            if (key != null) blocks.get(k).computeIfAbsent(key, x -> new ArrayList<>()).add(index);
+        }
+    }
+
+    @Override
+    public synchronized void addAll(final Iterable<T> items) {
+
+        for (T item : items) {
+            add(item);
+        }
+    }
+
+    @Override
+    public synchronized boolean remove(final T item) {
+
+        // Only the blocks of the item need to be searched for it.
+        final BitSet candidates = getCandidates(item);
+
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            if (data.get(i).equals(item)) {
+                removed.set(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void terminate() {
+
+        System.out.println("Blocking search: " + getStatistics());
+    }
+
+    /**
+     * @return a summary of the block sizes and of the candidates compared with queries so far
+     */
+    public String getStatistics() {
+
+        final StringBuilder builder = new StringBuilder();
+        final int number_of_items = data.size() - removed.cardinality();
+
+        for (int k = 0; k < blocking_keys.size(); k++) {
+
+            final Map<String, List<Integer>> key_blocks = blocks.get(k);
+            long indexed = 0;
+            int largest = 0;
+
+            for (List<Integer> block : key_blocks.values()) {
+                indexed += block.size();
+                largest = Math.max(largest, block.size());
+            }
+
+            builder.append(String.format("key %d: %d blocks, largest %d, %d items without key; ", k, key_blocks.size(), largest, data.size() - indexed));
+        }
+
+        final long queries = number_of_queries.get();
+        final double mean_candidates = queries == 0 ? 0.0 : (double) number_of_candidates.get() / queries;
+        final double reduction = number_of_items == 0 ? 0.0 : 1.0 - mean_candidates / number_of_items;
+
+        builder.append(String.format("%d queries, mean %.1f candidates per query of %d items (reduction ratio %.4f)", queries, mean_candidates, number_of_items, reduction));
+
+        return builder.toString();
+    }
+
+    private BitSet getQueryCandidates(final T query) {
+
+        final BitSet candidates = getCandidates(query);
+
+        number_of_queries.incrementAndGet();
+        number_of_candidates.addAndGet(candidates.cardinality());
+        return candidates;
+    }
+
+    private BitSet getCandidates(final T query) {
+
+        final BitSet candidates = new BitSet();
+
+        for (int k = 0; k < blocking_keys.size(); k++) {
+
+            final String key = blocking_keys.get(k).getKey(query);
+            if (key == null) continue;
+
+            final List<Integer> block = blocks.get(k).get(key);
+            if (block != null) {
+                for (int i : block) candidates.set(i);
+            }
+        }
+        candidates.andNot(removed);
+        return candidates;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.searchStructures;
+
+import uk.ac.standrews.cs.utilities.measures.coreConcepts.Measure;
+
+import java.util.List;
+
+public class BlockingSearchStructureFactory<T> implements SearchStructureFactory<T> {
+
+    private final Measure<T> composite_measure;
+    private final List<BlockingKey<T>> blocking_keys;
+    private final SearchExecutor executor;
+
+    public BlockingSearchStructureFactory(final Measure<T> composite_measure, final List<BlockingKey<T>> blocking_keys) {
+
+        this(composite_measure, blocking_keys, SearchExecutor.getShared());
+    }
+
+    public BlockingSearchStructureFactory(final Measure<T> composite_measure, final List<BlockingKey<T>> blocking_keys, final SearchExecutor executor) {
+
+        this.composite_measure = composite_measure;
+        this.blocking_keys = blocking_keys;
+        this.executor = executor;
+    }
+
+    @Override
+    public SearchStructure<T> newSearchStructure(final Iterable<T> records) {
+
+        return new BlockingSearchStructure<>(composite_measure, records, blocking_keys, executor);
+    }
+
+    /**
+     * Blocking doesn't use reference objects, so they are ignored.
+     */
+    @Override
+    public SearchStructure<T> newSearchStructure(final Iterable<T> records, final List<T> reference_objects) {
+
+        return newSearchStructure(records);
+    }
+
+    @Override
+    public String getSearchStructureType() {
+        return "Blocking";
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.searchStructures;
+
+import uk.ac.standrews.cs.utilities.measures.coreConcepts.Measure;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Chooses pivots incrementally by their measured exclusion power on a sample of item pairs. At each step several
+ * random candidates are tried, and the one that most increases the mean pivot lower bound over the sample pairs is
+ * kept. A larger lower bound means that more pairs can be excluded without computing their distances.
+ */
+public class ExclusionPowerPivotSelector<T> implements PivotSelector<T> {
+
+    private final Measure<T> measure;
+    private final int number_of_pairs;
+    private final int candidates_per_step;
+    private final long seed;
+    private final SearchExecutor executor;
+
+    public ExclusionPowerPivotSelector(final Measure<T> measure, final int number_of_pairs, final int candidates_per_step, final long seed) {
+
+        this(measure, number_of_pairs, candidates_per_step, seed, SearchExecutor.getShared());
+    }
+
+    /**
+     * @param executor the executor in which the candidates tried at each step are evaluated
+     */
+    public ExclusionPowerPivotSelector(final Measure<T> measure, final int number_of_pairs, final int candidates_per_step, final long seed, final SearchExecutor executor) {
+
+        this.executor = executor;
+        this.measure = measure;
+        this.number_of_pairs = number_of_pairs;
+        this.candidates_per_step = candidates_per_step;
+        this.seed = seed;
+    }
+
+    @Override
+    public List<T> selectPivots(final List<T> candidates, final int number_of_pivots) {
+
+        if (number_of_pivots >= candidates.size()) {
+            return candidates;
+        }
+
+        final Random random = new Random(seed);
+        final List<T> left = RandomPivotSelector.sample(candidates, number_of_pairs, random);
+        final List<T> right = RandomPivotSelector.sample(candidates, number_of_pairs, random);
+
+        // Current lower bound on the distance between each sample pair, given the pivots chosen so far.
+        final double[] lower_bounds = new double[left.size()];
+
+        final List<T> pivots = new ArrayList<>();
+        final Set<Integer> chosen = new HashSet<>();
+
+        while (pivots.size() < number_of_pivots) {
+
+            final List<Integer> trial_indices = new ArrayList<>();
+            for (int i : RandomPivotSelector.sampleIndices(candidates.size(), candidates_per_step, random)) {
+                if (!chosen.contains(i)) trial_indices.add(i);
+            }
+            if (trial_indices.isEmpty()) continue;
+
+            final List<T> trial_pivots = trial_indices.stream().map(candidates::get).collect(Collectors.toList());
+            final double[][] trial_bounds = new double[trial_pivots.size()][];
+
+            executor.run(() -> IntStream.range(0, trial_pivots.size()).parallel().forEach(c -> trial_bounds[c] = lowerBounds(trial_pivots.get(c), left, right, lower_bounds)));
+
+            int best = 0;
+            for (int c = 1; c < trial_pivots.size(); c++) {
+                if (mean(trial_bounds[c]) > mean(trial_bounds[best])) best = c;
+            }
+
+            pivots.add(trial_pivots.get(best));
+            chosen.add(trial_indices.get(best));
+            System.arraycopy(trial_bounds[best], 0, lower_bounds, 0, lower_bounds.length);
+        }
+
+        return pivots;
+    }
+
+    @Override
+    public String getSelectorName() {
+        return "exclusion-power";
+    }
+
+    private double[] lowerBounds(final T pivot, final List<T> left, final List<T> right, final double[] current_lower_bounds) {
+
+        final double[] bounds = new double[current_lower_bounds.length];
+
+        for (int i = 0; i < bounds.length; i++) {
+            final double bound = Math.abs(measure.distance(left.get(i), pivot) - measure.distance(right.get(i), pivot));
+            bounds[i] = Math.max(current_lower_bounds[i], bound);
+        }
+        return bounds;
+    }
+
+    private static double mean(final double[] values) {
+
+        double sum = 0.0;
+        for (double value : values) sum += value;
+        return sum / values.length;
+    }
+}
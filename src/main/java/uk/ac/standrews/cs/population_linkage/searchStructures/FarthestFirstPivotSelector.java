@@ -0,0 +1,102 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.searchStructures;
+
+import uk.ac.standrews.cs.utilities.measures.coreConcepts.Measure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Chooses pivots by farthest-first traversal of a sample of the candidates: each pivot is the sample item furthest
+ * from all the pivots already chosen, so that the pivots are well spread over the data.
+ */
+public class FarthestFirstPivotSelector<T> implements PivotSelector<T> {
+
+    private final Measure<T> measure;
+    private final int sample_size;
+    private final long seed;
+    private final SearchExecutor executor;
+
+    public FarthestFirstPivotSelector(final Measure<T> measure, final int sample_size, final long seed) {
+
+        this(measure, sample_size, seed, SearchExecutor.getShared());
+    }
+
+    /**
+     * @param executor the executor in which distances from the sample to each new pivot are calculated
+     */
+    public FarthestFirstPivotSelector(final Measure<T> measure, final int sample_size, final long seed, final SearchExecutor executor) {
+
+        this.executor = executor;
+        this.measure = measure;
+        this.sample_size = sample_size;
+        this.seed = seed;
+    }
+
+    @Override
+    public List<T> selectPivots(final List<T> candidates, final int number_of_pivots) {
+
+        if (number_of_pivots >= candidates.size()) {
+            return candidates;
+        }
+
+        final Random random = new Random(seed);
+        final List<T> sample = RandomPivotSelector.sample(candidates, Math.max(sample_size, number_of_pivots), random);
+
+        // Distance from each sample item to its nearest chosen pivot.
+        final double[] nearest_pivot_distances = new double[sample.size()];
+        Arrays.fill(nearest_pivot_distances, Double.POSITIVE_INFINITY);
+
+        final List<T> pivots = new ArrayList<>();
+        int next = random.nextInt(sample.size());
+
+        while (pivots.size() < number_of_pivots) {
+
+            final T pivot = sample.get(next);
+            pivots.add(pivot);
+            nearest_pivot_distances[next] = -1.0;
+
+            executor.run(() -> IntStream.range(0, sample.size()).parallel().forEach(i -> {
+                if (nearest_pivot_distances[i] >= 0.0) {
+                    nearest_pivot_distances[i] = Math.min(nearest_pivot_distances[i], measure.distance(pivot, sample.get(i)));
+                }
+            }));
+
+            next = indexOfMaximum(nearest_pivot_distances);
+        }
+
+        return pivots;
+    }
+
+    @Override
+    public String getSelectorName() {
+        return "farthest-first";
+    }
+
+    static int indexOfMaximum(final double[] values) {
+
+        int index = 0;
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] > values[index]) index = i;
+        }
+        return index;
+    }
+}
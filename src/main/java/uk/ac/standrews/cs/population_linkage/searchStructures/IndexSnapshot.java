@@ -0,0 +1,265 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.searchStructures;
+
+import uk.ac.standrews.cs.utilities.measures.coreConcepts.Measure;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Saves a built pivot table (reference object ids, distance table and ball bitsets) to a versioned binary file,
+ * and reopens it by memory mapping so that a later run over the same data can skip computing the distances. The file
+ * is mapped a part at a time, so snapshots larger than 2GB can be opened.
+ *
+ * Snapshots are identified by a key, describing the recipe, measure and linkage fields, together with a fingerprint
+ * of the ids of the indexed records. Items are referred to in the file by id, and resolved against the records
+ * supplied when the snapshot is opened.
+ *
+ * File layout: magic, version, key, fingerprint, number of data items n, number of reference objects m,
+ * m reference object ids, n data ids, n * m distances, m ball radii, m * ceil(n / 64) ball bitset words.
+ */
+public class IndexSnapshot {
+
+    private static final int MAGIC = 0x504C4958; // "PLIX"
+    private static final int VERSION = 1;
+    private static final String FILE_SUFFIX = ".idx";
+
+    public static Path getSnapshotPath(final Path directory, final String key, final long fingerprint) {
+
+        return directory.resolve(String.format("%08x-%016x%s", key.hashCode(), fingerprint, FILE_SUFFIX));
+    }
+
+    /**
+     * @return a fingerprint of the ids of the given data, independent of their order
+     */
+    public static <T> long fingerprint(final List<T> data, final ToLongFunction<T> id_function) {
+
+        final long[] ids = data.stream().mapToLong(id_function).sorted().toArray();
+
+        // 64-bit FNV-1a over the sorted ids.
+        long hash = 0xcbf29ce484222325L;
+        for (long id : ids) {
+            for (int b = 0; b < 8; b++) {
+                hash ^= (id >>> (b * 8)) & 0xff;
+                hash *= 0x100000001b3L;
+            }
+        }
+        return hash ^ ids.length;
+    }
+
+    public static <T> void save(final Path file, final String key, final long fingerprint, final PivotTable<T> table, final ToLongFunction<T> id_function) throws IOException {
+
+        // Removed items are left out, so the saved table is compacted.
+        final int[] live = IntStream.range(0, table.getData().size()).filter(i -> !table.isRemoved(i)).toArray();
+        final List<T> reference_objects = table.getReferenceObjects();
+        final int number_of_reference_objects = reference_objects.size();
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        final Path temp_file = Files.createTempFile(file.toAbsolutePath().getParent(), "snapshot", ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp_file)))) {
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            final byte[] key_bytes = key.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(key_bytes.length);
+            out.write(key_bytes);
+
+            out.writeLong(fingerprint);
+            out.writeInt(live.length);
+            out.writeInt(number_of_reference_objects);
+
+            for (T reference_object : reference_objects) out.writeLong(id_function.applyAsLong(reference_object));
+            for (int i : live) out.writeLong(id_function.applyAsLong(table.getData().get(i)));
+
+            for (int i : live) {
+                for (int j = 0; j < number_of_reference_objects; j++) {
+                    out.writeFloat(table.getDistance(i, j));
+                }
+            }
+
+            for (int j = 0; j < number_of_reference_objects; j++) out.writeFloat(table.getBallRadius(j));
+
+            for (int j = 0; j < number_of_reference_objects; j++) {
+                for (int w = 0; w < PivotTable.wordsPerBall(live.length); w++) {
+
+                    long word = 0L;
+                    for (int b = 0; b < 64 && w * 64 + b < live.length; b++) {
+                        if (table.isInBall(j, live[w * 64 + b])) word |= 1L << b;
+                    }
+                    out.writeLong(word);
+                }
+            }
+        }
+
+        // Readers never see a partially written snapshot.
+        Files.move(temp_file, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @param data the records that were indexed, in any order
+     * @param executor used for later updates to the restored table
+     * @return the restored table, or null if there is no snapshot or it does not match the key, fingerprint or data
+     */
+    public static <T> PivotTable<T> open(final Path file, final String key, final long fingerprint, final Measure<T> measure, final List<T> data, final ToLongFunction<T> id_function,
+                                        final SearchExecutor executor) throws IOException {
+
+        if (!Files.exists(file)) return null;
+
+        // The mappings remain valid after the channel is closed.
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+            final MappedReader reader = new MappedReader(channel);
+
+            if (reader.getInt() != MAGIC) throw new IOException("not an index snapshot: " + file);
+            if (reader.getInt() != VERSION) return null;
+
+            final byte[] key_bytes = new byte[reader.getInt()];
+            reader.get(key_bytes);
+
+            if (!key.equals(new String(key_bytes, StandardCharsets.UTF_8)) || reader.getLong() != fingerprint) return null;
+
+            final int number_of_data_items = reader.getInt();
+            final int number_of_reference_objects = reader.getInt();
+
+            if (number_of_data_items != data.size()) return null;
+
+            final Map<Long, T> items_by_id = new HashMap<>();
+            for (T item : data) items_by_id.put(id_function.applyAsLong(item), item);
+
+            final List<T> reference_objects = resolve(reader, number_of_reference_objects, items_by_id);
+            final List<T> ordered_data = resolve(reader, number_of_data_items, items_by_id);
+
+            if (reference_objects == null || ordered_data == null) return null;
+
+            // Each chunk of rows is mapped separately, so the table isn't limited to the 2GB of a single mapping.
+            final int rows_per_chunk = PivotTable.rowsPerChunk(number_of_reference_objects);
+            final FloatBuffer[] distance_chunks = new FloatBuffer[(int) (((long) number_of_data_items + rows_per_chunk - 1) / rows_per_chunk)];
+
+            for (int c = 0; c < distance_chunks.length; c++) {
+
+                final int rows = Math.min(rows_per_chunk, number_of_data_items - c * rows_per_chunk);
+                distance_chunks[c] = reader.map((long) rows * number_of_reference_objects * Float.BYTES).asFloatBuffer();
+            }
+
+            final float[] ball_radii = new float[number_of_reference_objects];
+            for (int j = 0; j < number_of_reference_objects; j++) ball_radii[j] = reader.getFloat();
+
+            final LongBuffer[] balls = new LongBuffer[number_of_reference_objects];
+            for (int j = 0; j < number_of_reference_objects; j++) {
+                balls[j] = reader.map((long) PivotTable.wordsPerBall(number_of_data_items) * Long.BYTES).asLongBuffer();
+            }
+
+            return new PivotTable<>(measure, ordered_data, reference_objects, distance_chunks, ball_radii, balls, executor);
+        }
+    }
+
+    private static <T> List<T> resolve(final MappedReader reader, final int number_of_ids, final Map<Long, T> items_by_id) throws IOException {
+
+        final List<T> items = new ArrayList<>(number_of_ids);
+        boolean all_found = true;
+
+        for (int i = 0; i < number_of_ids; i++) {
+
+            final T item = items_by_id.get(reader.getLong());
+            if (item == null) all_found = false;
+            items.add(item);
+        }
+        return all_found ? items : null;
+    }
+
+    /**
+     * Reads a file through a window that is mapped a part at a time, with positions held as longs.
+     */
+    private static class MappedReader {
+
+        private static final long WINDOW_SIZE = 1 << 26;
+
+        private final FileChannel channel;
+
+        // Position in the file of the start of the window.
+        private long window_start = 0;
+        private ByteBuffer window = ByteBuffer.allocate(0);
+
+        MappedReader(final FileChannel channel) {
+            this.channel = channel;
+        }
+
+        int getInt() throws IOException {
+            return ensureRemaining(Integer.BYTES).getInt();
+        }
+
+        long getLong() throws IOException {
+            return ensureRemaining(Long.BYTES).getLong();
+        }
+
+        float getFloat() throws IOException {
+            return ensureRemaining(Float.BYTES).getFloat();
+        }
+
+        void get(final byte[] bytes) throws IOException {
+            ensureRemaining(bytes.length).get(bytes);
+        }
+
+        /**
+         * Maps the next part of the file as a single buffer, and moves past it.
+         */
+        ByteBuffer map(final long length) throws IOException {
+
+            final long position = window_start + window.position();
+            if (position + length > channel.size()) throw new EOFException("index snapshot is truncated");
+
+            final ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+            window_start = position + length;
+            window = ByteBuffer.allocate(0);
+            return mapped;
+        }
+
+        private ByteBuffer ensureRemaining(final int length) throws IOException {
+
+            if (window.remaining() < length) {
+
+                window_start += window.position();
+                final long window_length = Math.min(Math.max(WINDOW_SIZE, length), channel.size() - window_start);
+                if (window_length < length) throw new EOFException("index snapshot is truncated");
+
+                window = channel.map(FileChannel.MapMode.READ_ONLY, window_start, window_length);
+            }
+            return window;
+        }
+    }
+}
@@ -20,14 +20,30 @@ import uk.ac.standrews.cs.utilities.m_tree.MTree;
 import uk.ac.standrews.cs.utilities.measures.coreConcepts.DataDistance;
 import uk.ac.standrews.cs.utilities.measures.coreConcepts.Measure;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 public class MTreeSearchStructure<T> implements SearchStructure<T> {
 
     private MTree<T> m_tree;
+    private final SearchExecutor executor;
+
+    // The M-tree doesn't support deletion, so removed items remain in the tree and are filtered from results.
+    private final Set<T> removed = ConcurrentHashMap.newKeySet();
 
     public MTreeSearchStructure(Measure<T> measure, Iterable<T> records) {
+        this(measure, records, SearchExecutor.getShared());
+    }
+
+    public MTreeSearchStructure(Measure<T> measure, Iterable<T> records, SearchExecutor executor) {
 
+        this.executor = executor;
         m_tree = new MTree<>(measure);
         for (T record : records) {
             m_tree.add(record);
@@ -37,7 +53,66 @@ public class MTreeSearchStructure<T> implements SearchStructure<T> {
     @Override
     public List<DataDistance<T>> findWithinThreshold(final T record, final double threshold) {
 
-        return m_tree.rangeSearch(record, threshold);
+        return withoutRemoved(m_tree.rangeSearch(record, threshold));
+    }
+
+    @Override
+    public void findWithinThreshold(final T record, final double threshold, final SearchResultConsumer<T> consumer) {
+
+        for (DataDistance<T> result : m_tree.rangeSearch(record, threshold)) {
+            if (!removed.contains(result.value)) consumer.accept(result.value, result.distance);
+        }
+    }
+
+    @Override
+    public List<List<DataDistance<T>>> findWithinThreshold(final List<T> queries, final double threshold) {
+
+        return BatchSearch.findWithinThreshold(this, queries, threshold, executor);
+    }
+
+    @Override
+    public void findWithinThreshold(final List<T> queries, final double threshold, final IntFunction<Predicate<T>> filters, final IntFunction<SearchResultConsumer<T>> consumers) {
+
+        BatchSearch.findWithinThreshold(this, queries, threshold, filters, consumers, executor);
+    }
+
+    @Override
+    public List<DataDistance<T>> findNearest(final T query, final int k) {
+
+        if (k <= 0) return new ArrayList<>();
+
+        // Ask for enough extra neighbours to cover any removed items that may be among them.
+        final List<DataDistance<T>> result = withoutRemoved(m_tree.nearestN(query, k + removed.size()));
+        result.sort(Comparator.comparingDouble(dd -> dd.distance));
+        return result.size() > k ? new ArrayList<>(result.subList(0, k)) : result;
+    }
+
+    @Override
+    public synchronized void add(final T item) {
+
+        if (!removed.remove(item)) {
+            m_tree.add(item);
+        }
+    }
+
+    @Override
+    public synchronized void addAll(final Iterable<T> items) {
+
+        for (T item : items) {
+            add(item);
+        }
+    }
+
+    @Override
+    public synchronized boolean remove(final T item) {
+
+        return m_tree.contains(item) && removed.add(item);
+    }
+
+    private List<DataDistance<T>> withoutRemoved(final List<DataDistance<T>> results) {
+
+        if (removed.isEmpty()) return new ArrayList<>(results);
+        return results.stream().filter(dd -> !removed.contains(dd.value)).collect(Collectors.toList());
     }
 
     public void terminate() {}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.searchStructures;
+
+import uk.ac.standrews.cs.utilities.measures.coreConcepts.Measure;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Chooses the pivots whose distances to a sample of witness items vary most. A pivot whose distances are spread out
+ * separates items well, whereas one roughly equidistant from everything gives lower bounds close to zero.
+ */
+public class MaxVariancePivotSelector<T> implements PivotSelector<T> {
+
+    private final Measure<T> measure;
+    private final int sample_size;
+    private final int number_of_witnesses;
+    private final long seed;
+    private final SearchExecutor executor;
+
+    public MaxVariancePivotSelector(final Measure<T> measure, final int sample_size, final int number_of_witnesses, final long seed) {
+
+        this(measure, sample_size, number_of_witnesses, seed, SearchExecutor.getShared());
+    }
+
+    /**
+     * @param executor the executor in which the variance of each sampled item's distances is calculated
+     */
+    public MaxVariancePivotSelector(final Measure<T> measure, final int sample_size, final int number_of_witnesses, final long seed, final SearchExecutor executor) {
+
+        this.executor = executor;
+        this.measure = measure;
+        this.sample_size = sample_size;
+        this.number_of_witnesses = number_of_witnesses;
+        this.seed = seed;
+    }
+
+    @Override
+    public List<T> selectPivots(final List<T> candidates, final int number_of_pivots) {
+
+        if (number_of_pivots >= candidates.size()) {
+            return candidates;
+        }
+
+        final Random random = new Random(seed);
+        final List<T> sample = RandomPivotSelector.sample(candidates, Math.max(sample_size, number_of_pivots), random);
+        final List<T> witnesses = RandomPivotSelector.sample(candidates, number_of_witnesses, random);
+
+        final double[] variances = new double[sample.size()];
+
+        executor.run(() -> IntStream.range(0, sample.size()).parallel().forEach(i -> {
+
+            double sum = 0.0;
+            double sum_of_squares = 0.0;
+
+            for (T witness : witnesses) {
+                final double distance = measure.distance(sample.get(i), witness);
+                sum += distance;
+                sum_of_squares += distance * distance;
+            }
+
+            final double mean = sum / witnesses.size();
+            variances[i] = sum_of_squares / witnesses.size() - mean * mean;
+        }));
+
+        final List<T> pivots = new ArrayList<>();
+
+        while (pivots.size() < number_of_pivots) {
+
+            final int best = FarthestFirstPivotSelector.indexOfMaximum(variances);
+            pivots.add(sample.get(best));
+            variances[best] = Double.NEGATIVE_INFINITY;
+        }
+
+        return pivots;
+    }
+
+    @Override
+    public String getSelectorName() {
+        return "max-variance";
+    }
+}
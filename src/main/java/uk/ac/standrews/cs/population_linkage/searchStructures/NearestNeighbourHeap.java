@@ -0,0 +1,87 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.searchStructures;
+
+import uk.ac.standrews.cs.utilities.measures.coreConcepts.DataDistance;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the k closest items offered to it, using a max-heap so that the current furthest of the k can be replaced cheaply.
+ * Memory use is bounded by k however many items are offered.
+ */
+public class NearestNeighbourHeap<T> {
+
+    private static final Comparator<DataDistance<?>> FURTHEST_FIRST = (dd1, dd2) -> Double.compare(dd2.distance, dd1.distance);
+
+    private final int k;
+    private final PriorityQueue<DataDistance<T>> heap;
+
+    public NearestNeighbourHeap(final int k) {
+
+        this.k = k;
+        heap = new PriorityQueue<>(Math.max(k, 1), FURTHEST_FIRST);
+    }
+
+    /**
+     * @return true if the item is currently one of the k closest
+     */
+    public boolean offer(final T value, final double distance) {
+
+        if (k <= 0) return false;
+
+        if (heap.size() < k) {
+            heap.add(new DataDistance<>(value, distance));
+            return true;
+        }
+
+        if (distance < heap.peek().distance) {
+            heap.poll();
+            heap.add(new DataDistance<>(value, distance));
+            return true;
+        }
+        return false;
+    }
+
+    public boolean isFull() {
+        return heap.size() >= k;
+    }
+
+    public int size() {
+        return heap.size();
+    }
+
+    /**
+     * @return the distance that a new item must beat to be kept, or infinity if fewer than k items are held
+     */
+    public double furthestDistance() {
+        return isFull() && k > 0 ? heap.peek().distance : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @return the items held, in increasing order of distance
+     */
+    public List<DataDistance<T>> toSortedList() {
+
+        final List<DataDistance<T>> result = new ArrayList<>(heap);
+        result.sort(Comparator.comparingDouble(dd -> dd.distance));
+        return result;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.searchStructures;
+
+/**
+ * Phonetic codes used to derive blocking keys from names. Names that sound alike, such as variant spellings of a
+ * surname, usually have the same code.
+ */
+class PhoneticCode {
+
+    private static final int MAX_CODE_LENGTH = 6;
+
+    /**
+     * @return the NYSIIS code of the name, or the empty string if it contains no letters
+     */
+    static String nysiis(final String name) {
+
+        final StringBuilder letters = new StringBuilder();
+        for (char c : name.toUpperCase().toCharArray()) {
+            if (c >= 'A' && c <= 'Z') letters.append(c);
+        }
+
+        if (letters.length() == 0) return "";
+
+        String word = letters.toString();
+
+        word = replacePrefix(word, "MAC", "MCC");
+        word = replacePrefix(word, "KN", "NN");
+        word = replacePrefix(word, "K", "C");
+        word = replacePrefix(word, "PH", "FF");
+        word = replacePrefix(word, "PF", "FF");
+        word = replacePrefix(word, "SCH", "SSS");
+
+        word = replaceSuffix(word, "EE", "Y");
+        word = replaceSuffix(word, "IE", "Y");
+        for (String suffix : new String[]{"DT", "RT", "RD", "NT", "ND"}) {
+            word = replaceSuffix(word, suffix, "D");
+        }
+
+        // Translations are applied in place, so that later letters see the effect of earlier ones.
+        final char[] chars = word.toCharArray();
+        final StringBuilder code = new StringBuilder().append(chars[0]);
+
+        for (int i = 1; i < chars.length; i++) {
+
+            if (chars[i] == 'E' && i + 1 < chars.length && chars[i + 1] == 'V') {
+                chars[i] = 'A';
+                chars[i + 1] = 'F';
+            } else if (isVowel(chars[i])) {
+                chars[i] = 'A';
+            } else if (chars[i] == 'Q') {
+                chars[i] = 'G';
+            } else if (chars[i] == 'Z') {
+                chars[i] = 'S';
+            } else if (chars[i] == 'M') {
+                chars[i] = 'N';
+            } else if (chars[i] == 'K') {
+                chars[i] = i + 1 < chars.length && chars[i + 1] == 'N' ? 'N' : 'C';
+            } else if (chars[i] == 'S' && i + 2 < chars.length && chars[i + 1] == 'C' && chars[i + 2] == 'H') {
+                chars[i + 1] = 'S';
+                chars[i + 2] = 'S';
+            } else if (chars[i] == 'P' && i + 1 < chars.length && chars[i + 1] == 'H') {
+                chars[i] = 'F';
+                chars[i + 1] = 'F';
+            } else if (chars[i] == 'H' && (!isVowel(chars[i - 1]) || (i + 1 < chars.length && !isVowel(chars[i + 1])))) {
+                chars[i] = chars[i - 1];
+            } else if (chars[i] == 'W' && isVowel(chars[i - 1])) {
+                chars[i] = chars[i - 1];
+            }
+
+            if (chars[i] != code.charAt(code.length() - 1)) code.append(chars[i]);
+        }
+
+        if (code.length() > 1 && code.charAt(code.length() - 1) == 'S') code.setLength(code.length() - 1);
+        if (code.length() > 2 && code.substring(code.length() - 2).equals("AY")) code.replace(code.length() - 2, code.length(), "Y");
+        if (code.length() > 1 && code.charAt(code.length() - 1) == 'A') code.setLength(code.length() - 1);
+
+        return code.length() > MAX_CODE_LENGTH ? code.substring(0, MAX_CODE_LENGTH) : code.toString();
+    }
+
+    private static boolean isVowel(final char c) {
+        return c == 'A' || c == 'E' || c == 'I' || c == 'O' || c == 'U';
+    }
+
+    private static String replacePrefix(final String word, final String prefix, final String replacement) {
+        return word.startsWith(prefix) ? replacement + word.substring(prefix.length()) : word;
+    }
+
+    private static String replaceSuffix(final String word, final String suffix, final String replacement) {
+        return word.endsWith(suffix) ? word.substring(0, word.length() - suffix.length()) + replacement : word;
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.searchStructures;
+
+import java.util.List;
+
+/**
+ * Chooses the reference objects (pivots) used by a metric search structure.
+ */
+public interface PivotSelector<T> {
+
+    /**
+     * @param candidates the items from which pivots may be chosen
+     * @param number_of_pivots the number of pivots required
+     * @return distinct items from candidates, or all of them if there are no more than the number required
+     */
+    List<T> selectPivots(List<T> candidates, int number_of_pivots);
+
+    String getSelectorName();
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.searchStructures;
+
+import uk.ac.standrews.cs.utilities.measures.coreConcepts.Measure;
+
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Measures how well a set of pivots excludes candidates in range search, on a sample of queries and data items.
+ * A candidate is excluded if its pivot lower bound exceeds the threshold, so that its distance to the query need
+ * not be computed. Only candidates actually outside the threshold can ever be excluded, so the efficiency is the
+ * proportion of those that the pivots do exclude.
+ */
+public class PivotStatistics {
+
+    private final long number_of_pairs;
+    private final long number_outside_threshold;
+    private final long number_excluded;
+
+    private PivotStatistics(final long number_of_pairs, final long number_outside_threshold, final long number_excluded) {
+
+        this.number_of_pairs = number_of_pairs;
+        this.number_outside_threshold = number_outside_threshold;
+        this.number_excluded = number_excluded;
+    }
+
+    public static <T> PivotStatistics evaluate(final Measure<T> measure, final List<T> pivots, final List<T> data, final int number_of_queries, final int number_of_candidates, final double threshold, final long seed) {
+
+        return evaluate(measure, pivots, data, number_of_queries, number_of_candidates, threshold, seed, SearchExecutor.getShared());
+    }
+
+    /**
+     * @param executor the executor in which the sample distances are calculated
+     */
+    public static <T> PivotStatistics evaluate(final Measure<T> measure, final List<T> pivots, final List<T> data, final int number_of_queries, final int number_of_candidates, final double threshold, final long seed,
+                                               final SearchExecutor executor) {
+
+        final Random random = new Random(seed);
+        final List<T> queries = RandomPivotSelector.sample(data, number_of_queries, random);
+        final List<T> candidates = RandomPivotSelector.sample(data, number_of_candidates, random);
+
+        final double[][] candidate_distances = new double[candidates.size()][];
+        executor.run(() -> IntStream.range(0, candidates.size()).parallel().forEach(i -> candidate_distances[i] = pivotDistances(measure, pivots, candidates.get(i))));
+
+        final long[][] counts = new long[queries.size()][];
+
+        executor.run(() -> IntStream.range(0, queries.size()).parallel().forEach(q -> {
+
+            final double[] query_distances = pivotDistances(measure, pivots, queries.get(q));
+            long outside = 0;
+            long excluded = 0;
+
+            for (int i = 0; i < candidates.size(); i++) {
+
+                if (measure.distance(queries.get(q), candidates.get(i)) > threshold) outside++;
+                if (lowerBound(query_distances, candidate_distances[i]) > threshold) excluded++;
+            }
+            counts[q] = new long[]{outside, excluded};
+        }));
+
+        long outside = 0;
+        long excluded = 0;
+
+        for (long[] count : counts) {
+            outside += count[0];
+            excluded += count[1];
+        }
+
+        return new PivotStatistics((long) queries.size() * candidates.size(), outside, excluded);
+    }
+
+    /**
+     * @return the proportion of all sampled candidates excluded by the pivots
+     */
+    public double getExclusionRate() {
+        return number_of_pairs == 0 ? 0.0 : (double) number_excluded / number_of_pairs;
+    }
+
+    /**
+     * @return the proportion of sampled candidates outside the threshold that are excluded by the pivots
+     */
+    public double getExclusionEfficiency() {
+        return number_outside_threshold == 0 ? 1.0 : (double) number_excluded / number_outside_threshold;
+    }
+
+    @Override
+    public String toString() {
+
+        return String.format("pivots excluded %.1f%% of candidates (%.1f%% of those outside threshold); %d of %d sampled candidates need exact distances",
+                getExclusionRate() * 100, getExclusionEfficiency() * 100, number_of_pairs - number_excluded, number_of_pairs);
+    }
+
+    private static <T> double[] pivotDistances(final Measure<T> measure, final List<T> pivots, final T item) {
+
+        final double[] distances = new double[pivots.size()];
+
+        for (int j = 0; j < distances.length; j++) {
+            distances[j] = measure.distance(item, pivots.get(j));
+        }
+        return distances;
+    }
+
+    private static double lowerBound(final double[] query_distances, final double[] candidate_distances) {
+
+        double bound = 0.0;
+
+        for (int j = 0; j < query_distances.length; j++) {
+            bound = Math.max(bound, Math.abs(query_distances[j] - candidate_distances[j]));
+        }
+        return bound;
+    }
+}
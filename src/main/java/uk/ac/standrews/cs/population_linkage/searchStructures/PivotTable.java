@@ -0,0 +1,607 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.searchStructures;
+
+import uk.ac.standrews.cs.population_linkage.compositeMeasures.BoundedMeasure;
+import uk.ac.standrews.cs.utilities.measures.coreConcepts.DataDistance;
+import uk.ac.standrews.cs.utilities.measures.coreConcepts.Measure;
+
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * Holds the distance from every data item to every reference object (pivot).
+ * By the triangle inequality, |d(q,r) - d(x,r)| is a lower bound on d(q,x) for any reference object r,
+ * so for nearest neighbour search a candidate's distance needn't be computed once its bound exceeds the current k-th
+ * nearest distance. Candidates are visited in increasing order of bound, so the search stops at the first such bound.
+ *
+ * For range search, each reference object also has a ball, with radius the median of its distances, and a bitset
+ * recording which data items lie inside the ball. As in BitBlaster, whole balls (or their complements) are excluded
+ * with bitwise operations before the remaining candidates are checked.
+ *
+ * The distances and bitsets are held in buffers so that a table can be memory mapped from an index snapshot. The
+ * distances are split into chunks of whole rows, so that the table isn't limited to the 2^31 entries of one buffer.
+ *
+ * Items can be added after the table is built: their distances and ball bits are appended, using the existing balls,
+ * with storage grown geometrically. Removed items are marked rather than deleted, and skipped by searches.
+ * Searches may run concurrently with each other; an update waits for the searches in progress to finish, and holds
+ * back new ones until it is complete. An update must not be made from within a search's filter or consumer.
+ */
+public class PivotTable<T> {
+
+    // Distances are held as floats to halve the size of the table; the tolerance covers the rounding error in the bounds.
+    private static final double BOUND_TOLERANCE = 1E-5;
+
+    private final Measure<T> measure;
+    private final SearchExecutor executor;
+    private List<T> data;
+    private final List<T> reference_objects;
+    private final int number_of_reference_objects;
+
+    // Largest number of distances held in one chunk; a chunk of floats can then be mapped as a single buffer.
+    static int max_distance_chunk_size = 1 << 28;
+
+    // Number of data items for which space is allocated in the distances and balls.
+    private int capacity;
+    private int words_per_ball;
+
+    // Row per data item, column per reference object, with rows_per_chunk rows in each chunk.
+    private FloatBuffer[] distance_chunks;
+    private final int rows_per_chunk;
+
+    private final float[] ball_radii;
+
+    // A bitset of words_per_ball words for each reference object.
+    private LongBuffer[] balls;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final BitSet removed = new BitSet();
+    private int number_removed = 0;
+
+    // Data indices of each item, built on first removal.
+    private Map<T, List<Integer>> indices = null;
+    private boolean data_copied = false;
+
+    // Candidate bitsets for range searches, reused so that a search doesn't allocate space proportional to the table.
+    private final ThreadLocal<long[]> candidate_buffers = ThreadLocal.withInitial(() -> new long[0]);
+
+    // Lower bounds of the candidates for nearest neighbour searches, reused in the same way.
+    private final ThreadLocal<long[]> bound_buffers = ThreadLocal.withInitial(() -> new long[0]);
+
+    public PivotTable(final Measure<T> measure, final List<T> data, final List<T> reference_objects) {
+
+        this(measure, data, reference_objects, SearchExecutor.getShared());
+    }
+
+    public PivotTable(final Measure<T> measure, final List<T> data, final List<T> reference_objects, final SearchExecutor executor) {
+
+        this.measure = measure;
+        this.executor = executor;
+        this.data = data;
+        this.reference_objects = reference_objects;
+        number_of_reference_objects = reference_objects.size();
+        rows_per_chunk = rowsPerChunk(number_of_reference_objects);
+        capacity = data.size();
+        words_per_ball = wordsPerBall(capacity);
+
+        distance_chunks = new FloatBuffer[numberOfChunks(capacity)];
+        for (int c = 0; c < distance_chunks.length; c++) {
+            distance_chunks[c] = FloatBuffer.wrap(new float[rowsInChunk(c, capacity) * number_of_reference_objects]);
+        }
+
+        executor.run(() -> IntStream.range(0, data.size()).parallel().forEach(this::computeDistances));
+
+        ball_radii = new float[number_of_reference_objects];
+        balls = new LongBuffer[number_of_reference_objects];
+        for (int j = 0; j < number_of_reference_objects; j++) {
+            balls[j] = LongBuffer.wrap(new long[words_per_ball]);
+        }
+
+        executor.run(() -> IntStream.range(0, number_of_reference_objects).parallel().forEach(this::makeBall));
+    }
+
+    /**
+     * Creates a table from previously computed distances and balls, for example those restored from an index snapshot.
+     *
+     * @param distance_chunks the rows of distances, split as given by {@link #rowsPerChunk(int)}
+     * @param balls the bitset for each reference object
+     */
+    PivotTable(final Measure<T> measure, final List<T> data, final List<T> reference_objects, final FloatBuffer[] distance_chunks, final float[] ball_radii, final LongBuffer[] balls,
+               final SearchExecutor executor) {
+
+        this.measure = measure;
+        this.executor = executor;
+        this.data = data;
+        this.reference_objects = reference_objects;
+        number_of_reference_objects = reference_objects.size();
+        rows_per_chunk = rowsPerChunk(number_of_reference_objects);
+        capacity = data.size();
+        words_per_ball = wordsPerBall(capacity);
+
+        this.distance_chunks = distance_chunks;
+        this.ball_radii = ball_radii;
+        this.balls = balls;
+    }
+
+    public List<DataDistance<T>> findWithinThreshold(final T query, final double threshold) {
+
+        final List<DataDistance<T>> results = new ArrayList<>();
+        findWithinThreshold(query, threshold, (item, distance) -> results.add(new DataDistance<>(item, distance)));
+        return results;
+    }
+
+    public void findWithinThreshold(final T query, final double threshold, final SearchResultConsumer<T> consumer) {
+
+        findWithinThreshold(query, threshold, item -> true, consumer);
+    }
+
+    /**
+     * @param filter checked for each candidate that isn't excluded by the reference objects, before its distance is calculated
+     */
+    public void findWithinThreshold(final T query, final double threshold, final Predicate<T> filter, final SearchResultConsumer<T> consumer) {
+
+        final double[] query_distances = referenceDistances(query);
+
+        lock.readLock().lock();
+        try {
+            findCandidatesWithinThreshold(query, query_distances, threshold, filter, consumer);
+
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void findCandidatesWithinThreshold(final T query, final double[] query_distances, final double threshold, final Predicate<T> filter, final SearchResultConsumer<T> consumer) {
+
+        final int number_of_words = wordsPerBall(data.size());
+        final long[] candidates = getBuffer(candidate_buffers, number_of_words);
+
+        Arrays.fill(candidates, 0, number_of_words, -1L);
+        if (data.size() % 64 != 0) candidates[number_of_words - 1] = (1L << (data.size() % 64)) - 1;
+
+        for (int i = removed.nextSetBit(0); i >= 0; i = removed.nextSetBit(i + 1)) {
+            candidates[i / 64] &= ~(1L << (i % 64));
+        }
+
+        for (int j = 0; j < number_of_reference_objects; j++) {
+
+            if (query_distances[j] > ball_radii[j] + threshold + BOUND_TOLERANCE) {
+                // The query ball doesn't reach the reference object's ball, so nothing inside it can be within threshold.
+                intersectBall(candidates, number_of_words, j, true);
+
+            } else if (query_distances[j] < ball_radii[j] - threshold - BOUND_TOLERANCE) {
+                // The query ball is inside the reference object's ball, so nothing outside it can be within threshold.
+                intersectBall(candidates, number_of_words, j, false);
+            }
+        }
+
+        for (int w = 0; w < number_of_words; w++) {
+
+            long word = candidates[w];
+
+            while (word != 0) {
+
+                final int i = w * 64 + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+
+                if (lowerBound(query_distances, i) <= threshold + BOUND_TOLERANCE && filter.test(data.get(i))) {
+
+                    final double distance = BoundedMeasure.boundedDistance(measure, query, data.get(i), threshold);
+                    if (distance <= threshold) consumer.accept(data.get(i), distance);
+                }
+            }
+        }
+    }
+
+    public List<DataDistance<T>> findNearest(final T query, final int k) {
+
+        return findNearest(query, k, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Finds the k items nearest to the query among those within the given distance of it. Each item's lower bound is
+     * calculated once, into a buffer reused by later searches in the same thread.
+     *
+     * @return at most k results, in increasing order of distance
+     */
+    public List<DataDistance<T>> findNearest(final T query, final int k, final double max_distance) {
+
+        final NearestNeighbourHeap<T> nearest = new NearestNeighbourHeap<>(k);
+        if (k <= 0) return nearest.toSortedList();
+
+        final double[] query_distances = referenceDistances(query);
+
+        lock.readLock().lock();
+        try {
+            findNearestCandidates(nearest, query, query_distances, max_distance);
+
+        } finally {
+            lock.readLock().unlock();
+        }
+        return nearest.toSortedList();
+    }
+
+    private void findNearestCandidates(final NearestNeighbourHeap<T> nearest, final T query, final double[] query_distances, final double max_distance) {
+
+        final long[] candidates = getBuffer(bound_buffers, data.size());
+        int number_of_candidates = 0;
+
+        for (int i = 0; i < data.size(); i++) {
+
+            if (removed.get(i)) continue;
+
+            final double lower_bound = lowerBound(query_distances, i);
+            if (lower_bound <= max_distance + BOUND_TOLERANCE) candidates[number_of_candidates++] = encode((float) lower_bound, i);
+        }
+
+        // Visit the candidates in increasing order of lower bound, from a heap built in linear time. Only the candidates
+        // visited are ordered, and the search stops at the first bound beyond the current k-th nearest distance.
+        for (int i = number_of_candidates / 2 - 1; i >= 0; i--) {
+            siftDown(candidates, i, number_of_candidates);
+        }
+
+        while (number_of_candidates > 0) {
+
+            final long candidate = candidates[0];
+            final double radius = Math.min(nearest.furthestDistance(), max_distance);
+
+            if (lowerBound(candidate) > radius + BOUND_TOLERANCE) break;
+            offer(nearest, query, index(candidate), radius);
+
+            candidates[0] = candidates[--number_of_candidates];
+            siftDown(candidates, 0, number_of_candidates);
+        }
+    }
+
+    public void add(final T item) {
+
+        addAll(Collections.singletonList(item));
+    }
+
+    public void addAll(final Iterable<T> items) {
+
+        final List<T> new_items = BitBlasterSearchStructure.copyData(items);
+
+        lock.writeLock().lock();
+        try {
+            append(new_items);
+
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void append(final List<T> new_items) {
+
+        final int first = data.size();
+        final int end = first + new_items.size();
+
+        if (!data_copied) {
+            data = new ArrayList<>(data);
+            data_copied = true;
+        }
+
+        ensureCapacity(end);
+        data.addAll(new_items);
+
+        if (indices != null) {
+            for (int i = first; i < end; i++) addIndex(i);
+        }
+
+        executor.run(() -> IntStream.range(first, end).parallel().forEach(this::computeDistances));
+
+        // Each reference object's ball occupies separate words, so the balls can be extended in parallel.
+        executor.run(() -> IntStream.range(0, number_of_reference_objects).parallel().forEach(j -> {
+            for (int i = first; i < end; i++) {
+                if (getDistance(i, j) <= ball_radii[j]) setBallBit(j, i);
+            }
+        }));
+    }
+
+    /**
+     * Removes one item equal to the given item, if present.
+     *
+     * @return true if an item was removed
+     */
+    public boolean remove(final T item) {
+
+        lock.writeLock().lock();
+        try {
+            return removeIndex(item);
+
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean removeIndex(final T item) {
+
+        if (indices == null) {
+            indices = new HashMap<>();
+            for (int i = 0; i < data.size(); i++) addIndex(i);
+        }
+
+        final List<Integer> item_indices = indices.get(item);
+        if (item_indices == null) return false;
+
+        final int i = item_indices.remove(item_indices.size() - 1);
+        if (item_indices.isEmpty()) indices.remove(item);
+
+        removed.set(i);
+        number_removed++;
+        return true;
+    }
+
+    /**
+     * @return the number of items in the table, not counting removed items
+     */
+    public int size() {
+
+        lock.readLock().lock();
+        try {
+            return data.size() - number_removed;
+
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return all items added to the table, including any removed items, in index order
+     */
+    public List<T> getData() {
+        return data;
+    }
+
+    public boolean isRemoved(final int data_index) {
+        return removed.get(data_index);
+    }
+
+    public SearchExecutor getExecutor() {
+        return executor;
+    }
+
+    public List<T> getReferenceObjects() {
+        return reference_objects;
+    }
+
+    public float getDistance(final int data_index, final int reference_object_index) {
+        return distance_chunks[data_index / rows_per_chunk].get(rowOffset(data_index) + reference_object_index);
+    }
+
+    float getBallRadius(final int reference_object_index) {
+        return ball_radii[reference_object_index];
+    }
+
+    long getBallWord(final int reference_object_index, final int word_index) {
+        return balls[reference_object_index].get(word_index);
+    }
+
+    boolean isInBall(final int reference_object_index, final int data_index) {
+        return (getBallWord(reference_object_index, data_index / 64) & (1L << (data_index % 64))) != 0;
+    }
+
+    static int wordsPerBall(final int number_of_data_items) {
+        return (int) (((long) number_of_data_items + 63) / 64);
+    }
+
+    /**
+     * @return the number of rows of distances held in each chunk
+     */
+    static int rowsPerChunk(final int number_of_reference_objects) {
+        return Math.max(1, max_distance_chunk_size / Math.max(1, number_of_reference_objects));
+    }
+
+    private int numberOfChunks(final int number_of_rows) {
+        return (int) (((long) number_of_rows + rows_per_chunk - 1) / rows_per_chunk);
+    }
+
+    private int rowsInChunk(final int chunk_index, final int number_of_rows) {
+        return Math.min(rows_per_chunk, number_of_rows - chunk_index * rows_per_chunk);
+    }
+
+    private int rowOffset(final int data_index) {
+        return (data_index % rows_per_chunk) * number_of_reference_objects;
+    }
+
+    private void computeDistances(final int data_index) {
+
+        final FloatBuffer chunk = distance_chunks[data_index / rows_per_chunk];
+        final int row = rowOffset(data_index);
+
+        for (int j = 0; j < number_of_reference_objects; j++) {
+            chunk.put(row + j, (float) measure.distance(data.get(data_index), reference_objects.get(j)));
+        }
+    }
+
+    private void makeBall(final int reference_object_index) {
+
+        final float[] column = new float[data.size()];
+
+        for (int i = 0; i < column.length; i++) {
+            column[i] = getDistance(i, reference_object_index);
+        }
+
+        final float[] sorted = column.clone();
+        Arrays.sort(sorted);
+        final float radius = sorted.length > 0 ? sorted[sorted.length / 2] : 0f;
+
+        ball_radii[reference_object_index] = radius;
+
+        for (int i = 0; i < column.length; i++) {
+            if (column[i] <= radius) setBallBit(reference_object_index, i);
+        }
+    }
+
+    private void setBallBit(final int reference_object_index, final int data_index) {
+
+        final LongBuffer ball = balls[reference_object_index];
+        final int word_index = data_index / 64;
+        ball.put(word_index, ball.get(word_index) | (1L << (data_index % 64)));
+    }
+
+    private void ensureCapacity(final int required_capacity) {
+
+        if (required_capacity <= capacity) return;
+
+        final int new_capacity = (int) Math.min(Integer.MAX_VALUE, Math.max(required_capacity, capacity * 2L));
+        final int new_words_per_ball = wordsPerBall(new_capacity);
+
+        // Full chunks are kept as they are. Other existing distances and ball words are copied, not recomputed,
+        // into new chunks, since the old ones may be read-only mapped snapshots.
+        final FloatBuffer[] new_distance_chunks = new FloatBuffer[numberOfChunks(new_capacity)];
+
+        for (int c = 0; c < new_distance_chunks.length; c++) {
+
+            final int chunk_size = rowsInChunk(c, new_capacity) * number_of_reference_objects;
+
+            if (c < distance_chunks.length && distance_chunks[c].capacity() == chunk_size) {
+                new_distance_chunks[c] = distance_chunks[c];
+
+            } else {
+                final float[] new_chunk = new float[chunk_size];
+                if (c < distance_chunks.length) {
+                    final FloatBuffer old_chunk = distance_chunks[c].duplicate();
+                    old_chunk.clear();
+                    old_chunk.get(new_chunk, 0, old_chunk.capacity());
+                }
+                new_distance_chunks[c] = FloatBuffer.wrap(new_chunk);
+            }
+        }
+
+        final LongBuffer[] new_balls = new LongBuffer[number_of_reference_objects];
+        for (int j = 0; j < number_of_reference_objects; j++) {
+
+            final long[] new_ball = new long[new_words_per_ball];
+            for (int w = 0; w < words_per_ball; w++) {
+                new_ball[w] = getBallWord(j, w);
+            }
+            new_balls[j] = LongBuffer.wrap(new_ball);
+        }
+
+        distance_chunks = new_distance_chunks;
+        balls = new_balls;
+        capacity = new_capacity;
+        words_per_ball = new_words_per_ball;
+    }
+
+    private void addIndex(final int data_index) {
+
+        if (!removed.get(data_index)) {
+            indices.computeIfAbsent(data.get(data_index), k -> new ArrayList<>()).add(data_index);
+        }
+    }
+
+    private void intersectBall(final long[] candidates, final int number_of_words, final int reference_object_index, final boolean exclude_inside) {
+
+        final LongBuffer ball = balls[reference_object_index];
+
+        for (int w = 0; w < number_of_words; w++) {
+
+            final long ball_word = ball.get(w);
+            candidates[w] &= exclude_inside ? ~ball_word : ball_word;
+        }
+    }
+
+    /**
+     * @return a buffer of at least the given length, reused by later searches in the same thread
+     */
+    private static long[] getBuffer(final ThreadLocal<long[]> buffers, final int length) {
+
+        long[] buffer = buffers.get();
+        if (buffer.length < length) {
+            buffer = new long[length];
+            buffers.set(buffer);
+        }
+        return buffer;
+    }
+
+    private void offer(final NearestNeighbourHeap<T> nearest, final T query, final int data_index, final double radius) {
+
+        // Distances beyond the radius can't be kept, so their calculation may be abandoned.
+        final double distance = BoundedMeasure.boundedDistance(measure, query, data.get(data_index), radius);
+        if (distance <= radius) nearest.offer(data.get(data_index), distance);
+    }
+
+    private double[] referenceDistances(final T query) {
+
+        final double[] query_distances = new double[number_of_reference_objects];
+
+        for (int j = 0; j < number_of_reference_objects; j++) {
+            query_distances[j] = measure.distance(query, reference_objects.get(j));
+        }
+        return query_distances;
+    }
+
+    private double lowerBound(final double[] query_distances, final int data_index) {
+
+        double bound = 0.0;
+        final FloatBuffer chunk = distance_chunks[data_index / rows_per_chunk];
+        final int row = rowOffset(data_index);
+
+        for (int j = 0; j < number_of_reference_objects; j++) {
+            bound = Math.max(bound, Math.abs(query_distances[j] - chunk.get(row + j)));
+        }
+        return bound;
+    }
+
+    /**
+     * Moves the candidate at the given position of a min-heap down to its place among the first size candidates.
+     */
+    private static void siftDown(final long[] heap, int position, final int size) {
+
+        final long candidate = heap[position];
+
+        while (true) {
+
+            int child = 2 * position + 1;
+            if (child >= size) break;
+            if (child + 1 < size && heap[child + 1] < heap[child]) child++;
+            if (heap[child] >= candidate) break;
+
+            heap[position] = heap[child];
+            position = child;
+        }
+        heap[position] = candidate;
+    }
+
+    // Bounds are non-negative, so the ordering of their bit patterns is the same as the ordering of the values,
+    // allowing candidates to be ordered as primitive longs.
+    private static long encode(final float lower_bound, final int index) {
+        return ((long) Float.floatToIntBits(lower_bound) << 32) | index;
+    }
+
+    private static float lowerBound(final long candidate) {
+        return Float.intBitsToFloat((int) (candidate >>> 32));
+    }
+
+    private static int index(final long candidate) {
+        return (int) candidate;
+    }
+}
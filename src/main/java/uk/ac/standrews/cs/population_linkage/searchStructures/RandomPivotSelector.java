@@ -0,0 +1,82 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.searchStructures;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class RandomPivotSelector<T> implements PivotSelector<T> {
+
+    private final long seed;
+
+    public RandomPivotSelector(final long seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public List<T> selectPivots(final List<T> candidates, final int number_of_pivots) {
+
+        if (number_of_pivots >= candidates.size()) {
+            return candidates;
+        }
+
+        final List<T> pivots = new ArrayList<>();
+        for (int i : sampleIndices(candidates.size(), number_of_pivots, new Random(seed))) {
+            pivots.add(candidates.get(i));
+        }
+        return pivots;
+    }
+
+    @Override
+    public String getSelectorName() {
+        return "random";
+    }
+
+    /**
+     * Chooses distinct indices in [0, n) uniformly at random, in time proportional to the sample size.
+     */
+    static int[] sampleIndices(final int n, final int sample_size, final Random random) {
+
+        if (sample_size >= n) {
+            final int[] all = new int[n];
+            for (int i = 0; i < n; i++) all[i] = i;
+            return all;
+        }
+
+        // Floyd's algorithm: each step adds exactly one new index, so no retries are needed.
+        final Set<Integer> chosen = new LinkedHashSet<>();
+
+        for (int j = n - sample_size; j < n; j++) {
+            final int i = random.nextInt(j + 1);
+            chosen.add(chosen.contains(i) ? j : i);
+        }
+
+        return chosen.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    static <T> List<T> sample(final List<T> data, final int sample_size, final Random random) {
+
+        final List<T> sample = new ArrayList<>();
+        for (int i : sampleIndices(data.size(), sample_size, random)) {
+            sample.add(data.get(i));
+        }
+        return sample;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.searchStructures;
+
+import uk.ac.standrews.cs.population_linkage.supportClasses.LinkageConfig;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A pool of threads for building and searching indexes, with a limit on parallelism. Sharing one pool between the
+ * search structures in a process, and the linkers using them, stops several indexes from each claiming every processor.
+ *
+ * Parallel streams started within {@link #run(Runnable)} or {@link #call(Supplier)} execute in this pool rather than the
+ * common pool. Utilisation is measured by periodically sampling the number of active threads while tasks are running.
+ */
+public class SearchExecutor {
+
+    private static final long SAMPLE_INTERVAL_MILLIS = 100;
+
+    private static SearchExecutor shared = null;
+
+    private final ForkJoinPool pool;
+    private final ScheduledExecutorService sampler;
+
+    private final AtomicInteger number_of_running_tasks = new AtomicInteger();
+    private final AtomicLong number_of_tasks = new AtomicLong();
+    private final AtomicLong number_of_samples = new AtomicLong();
+    private final AtomicLong total_active_threads = new AtomicLong();
+
+    /**
+     * @param parallelism the maximum number of threads, or zero for the number of available processors
+     */
+    public SearchExecutor(final int parallelism) {
+
+        pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+
+        sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "search executor sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(this::sample, SAMPLE_INTERVAL_MILLIS, SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the executor shared by the whole process, with parallelism given by {@link LinkageConfig#SEARCH_PARALLELISM}
+     */
+    public static synchronized SearchExecutor getShared() {
+
+        if (shared == null) {
+            shared = new SearchExecutor(LinkageConfig.SEARCH_PARALLELISM);
+        }
+        return shared;
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    public void run(final Runnable task) {
+
+        call(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs the given task in the pool and waits for its result. A task started from within the pool runs directly,
+     * so nested parallel work doesn't block pool threads waiting for each other.
+     */
+    public <R> R call(final Supplier<R> task) {
+
+        if (ForkJoinTask.getPool() == pool) {
+            return task.get();
+        }
+
+        number_of_tasks.incrementAndGet();
+        number_of_running_tasks.incrementAndGet();
+        try {
+            return pool.submit((Callable<R>) task::get).join();
+
+        } finally {
+            number_of_running_tasks.decrementAndGet();
+        }
+    }
+
+    private void sample() {
+
+        if (number_of_running_tasks.get() > 0) {
+            number_of_samples.incrementAndGet();
+            total_active_threads.addAndGet(pool.getActiveThreadCount());
+        }
+    }
+
+    /**
+     * @return the mean proportion of the pool's threads that were active while tasks were running
+     */
+    public double getUtilisation() {
+
+        final long samples = number_of_samples.get();
+        return samples == 0 ? 0.0 : (double) total_active_threads.get() / (samples * getParallelism());
+    }
+
+    public long getNumberOfTasks() {
+        return number_of_tasks.get();
+    }
+
+    /**
+     * Stops the pool; the shared executor should not be shut down.
+     */
+    public void shutdown() {
+
+        sampler.shutdownNow();
+        pool.shutdown();
+    }
+
+    @Override
+    public String toString() {
+
+        return String.format("parallelism: %d, tasks: %d, utilisation: %.1f%%, steals: %d",
+                getParallelism(), getNumberOfTasks(), getUtilisation() * 100, pool.getStealCount());
+    }
+}
@@ -19,9 +19,66 @@ package uk.ac.standrews.cs.population_linkage.searchStructures;
 import uk.ac.standrews.cs.utilities.measures.coreConcepts.DataDistance;
 
 import java.util.List;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
 
 public interface SearchStructure<T> {
 
     List<DataDistance<T>> findWithinThreshold(T record, double threshold);
+
+    /**
+     * Performs a range search, passing each result to the consumer as it is found rather than collecting them in a list.
+     */
+    void findWithinThreshold(T record, double threshold, SearchResultConsumer<T> consumer);
+
+    /**
+     * Performs a range search over only the stored items accepted by the filter. Structures that verify candidates
+     * themselves apply the filter before calculating distances; by default it is applied to the results.
+     */
+    default void findWithinThreshold(T record, double threshold, Predicate<T> filter, SearchResultConsumer<T> consumer) {
+
+        findWithinThreshold(record, threshold, (item, distance) -> {
+            if (filter.test(item)) consumer.accept(item, distance);
+        });
+    }
+
+    /**
+     * Performs a range search for each of the given queries, spreading the queries across the available cores.
+     *
+     * @return the results for each query, in the same order as the queries
+     */
+    List<List<DataDistance<T>>> findWithinThreshold(List<T> queries, double threshold);
+
+    /**
+     * Performs a range search for each of the given queries, spreading the queries across the available cores. The
+     * search for the query at index i only considers the stored items accepted by the i-th filter, and passes its
+     * results to the i-th consumer.
+     */
+    void findWithinThreshold(List<T> queries, double threshold, IntFunction<Predicate<T>> filters, IntFunction<SearchResultConsumer<T>> consumers);
+
+    /**
+     * Finds the k stored items nearest to the query, without needing a distance threshold.
+     *
+     * @return at most k results, in increasing order of distance
+     */
+    List<DataDistance<T>> findNearest(T query, int k);
+
+    /**
+     * Adds an item without rebuilding the structure.
+     */
+    void add(T item);
+
+    /**
+     * Adds several items, amortising the work of extending the structure over all of them.
+     */
+    void addAll(Iterable<T> items);
+
+    /**
+     * Removes an item, so that it is no longer returned by searches.
+     *
+     * @return true if the item was present
+     */
+    boolean remove(T item);
+
     void terminate();
 }
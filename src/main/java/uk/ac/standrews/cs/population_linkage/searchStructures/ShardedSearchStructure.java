@@ -0,0 +1,262 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.searchStructures;
+
+import uk.ac.standrews.cs.utilities.measures.coreConcepts.DataDistance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Partitions the stored items into shards covering fixed-width ranges of years, each with its own search structure.
+ * Items whose year is not known are held in a separate shard, which is always searched.
+ *
+ * The standard search methods search every shard. The methods taking a window search only the shards that overlap
+ * it, so a query can be restricted to the years in which a link with it could be viable.
+ */
+public class ShardedSearchStructure<T> implements SearchStructure<T> {
+
+    private final SearchStructureFactory<T> shard_factory;
+    private final Function<T, Integer> year_function;
+    private final int shard_width_years;
+    private final List<T> reference_objects;
+    private final SearchExecutor executor;
+
+    // Shards by first year; the unknown year shard is held separately.
+    private final TreeMap<Integer, SearchStructure<T>> shards = new TreeMap<>();
+    private SearchStructure<T> unknown_year_shard;
+
+    private final AtomicLong number_of_queries = new AtomicLong();
+    private final AtomicLong number_of_shards_searched = new AtomicLong();
+
+    /**
+     * @param year_function gives the year of an item, or null if it is not known
+     * @param reference_objects passed to the factory for each shard; may be null
+     */
+    public ShardedSearchStructure(final SearchStructureFactory<T> shard_factory, final Iterable<T> data, final List<T> reference_objects,
+                                  final Function<T, Integer> year_function, final int shard_width_years) {
+
+        this(shard_factory, data, reference_objects, year_function, shard_width_years, SearchExecutor.getShared());
+    }
+
+    /**
+     * @param executor used for building shards in parallel and for batch searches
+     */
+    public ShardedSearchStructure(final SearchStructureFactory<T> shard_factory, final Iterable<T> data, final List<T> reference_objects,
+                                  final Function<T, Integer> year_function, final int shard_width_years, final SearchExecutor executor) {
+
+        this.shard_factory = shard_factory;
+        this.executor = executor;
+        this.year_function = year_function;
+        this.shard_width_years = shard_width_years;
+        this.reference_objects = reference_objects;
+
+        final Map<Integer, List<T>> shard_data = new TreeMap<>();
+        final List<T> unknown_year_data = new ArrayList<>();
+
+        for (T item : data) {
+
+            final Integer year = year_function.apply(item);
+            if (year == null) unknown_year_data.add(item);
+            else shard_data.computeIfAbsent(getShardStart(year), x -> new ArrayList<>()).add(item);
+        }
+
+        // Shards are independent, so they are built in parallel.
+        final Map<Integer, SearchStructure<T>> built = executor.call(() -> shard_data.entrySet().parallelStream()
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> newShard(entry.getValue()))));
+
+        shards.putAll(built);
+        if (!unknown_year_data.isEmpty()) unknown_year_shard = newShard(unknown_year_data);
+
+        System.out.println("Sharded search structure: " + shards.size() + " shards of " + shard_width_years + " years, " + unknown_year_data.size() + " items with unknown year");
+    }
+
+    @Override
+    public List<DataDistance<T>> findWithinThreshold(final T record, final double threshold) {
+
+        return findWithinThreshold(record, threshold, (YearRange) null);
+    }
+
+    /**
+     * @param window the years of the items that may be returned, or null to search all years
+     */
+    public List<DataDistance<T>> findWithinThreshold(final T record, final double threshold, final YearRange window) {
+
+        final List<DataDistance<T>> results = new ArrayList<>();
+        findWithinThreshold(record, threshold, window, (item, distance) -> results.add(new DataDistance<>(item, distance)));
+        return results;
+    }
+
+    @Override
+    public void findWithinThreshold(final T record, final double threshold, final SearchResultConsumer<T> consumer) {
+
+        findWithinThreshold(record, threshold, (YearRange) null, consumer);
+    }
+
+    public void findWithinThreshold(final T record, final double threshold, final YearRange window, final SearchResultConsumer<T> consumer) {
+
+        for (SearchStructure<T> shard : getShards(window)) {
+            shard.findWithinThreshold(record, threshold, consumer);
+        }
+    }
+
+    @Override
+    public void findWithinThreshold(final T record, final double threshold, final Predicate<T> filter, final SearchResultConsumer<T> consumer) {
+
+        findWithinThreshold(record, threshold, null, filter, consumer);
+    }
+
+    public void findWithinThreshold(final T record, final double threshold, final YearRange window, final Predicate<T> filter, final SearchResultConsumer<T> consumer) {
+
+        for (SearchStructure<T> shard : getShards(window)) {
+            shard.findWithinThreshold(record, threshold, filter, consumer);
+        }
+    }
+
+    @Override
+    public List<List<DataDistance<T>>> findWithinThreshold(final List<T> queries, final double threshold) {
+
+        return BatchSearch.findWithinThreshold(this, queries, threshold, executor);
+    }
+
+    @Override
+    public void findWithinThreshold(final List<T> queries, final double threshold, final IntFunction<Predicate<T>> filters, final IntFunction<SearchResultConsumer<T>> consumers) {
+
+        BatchSearch.findWithinThreshold(this, queries, threshold, filters, consumers, executor);
+    }
+
+    /**
+     * @param windows the window for each query, as for {@link #findWithinThreshold(Object, double, YearRange)}
+     */
+    @SuppressWarnings("unchecked")
+    public List<List<DataDistance<T>>> findWithinThreshold(final List<T> queries, final double threshold, final List<YearRange> windows) {
+
+        final List<DataDistance<T>>[] results = new List[queries.size()];
+
+        BatchSearch.run(queries.size(), i -> results[i] = findWithinThreshold(queries.get(i), threshold, windows.get(i)), executor);
+
+        return Arrays.asList(results);
+    }
+
+    /**
+     * @param windows gives the window for the query at each index, as for {@link #findWithinThreshold(Object, double, YearRange)}
+     */
+    public void findWithinThreshold(final List<T> queries, final double threshold, final IntFunction<YearRange> windows,
+                                    final IntFunction<Predicate<T>> filters, final IntFunction<SearchResultConsumer<T>> consumers) {
+
+        BatchSearch.run(queries.size(), i -> findWithinThreshold(queries.get(i), threshold, windows.apply(i), filters.apply(i), consumers.apply(i)), executor);
+    }
+
+    @Override
+    public List<DataDistance<T>> findNearest(final T query, final int k) {
+
+        return findNearest(query, k, null);
+    }
+
+    public List<DataDistance<T>> findNearest(final T query, final int k, final YearRange window) {
+
+        final List<DataDistance<T>> results = new ArrayList<>();
+
+        for (SearchStructure<T> shard : getShards(window)) {
+            results.addAll(shard.findNearest(query, k));
+        }
+
+        results.sort(Comparator.comparingDouble(dd -> dd.distance));
+        return results.size() > k ? new ArrayList<>(results.subList(0, k)) : results;
+    }
+
+    @Override
+    public synchronized void add(final T item) {
+
+        final Integer year = year_function.apply(item);
+
+        if (year == null) {
+            if (unknown_year_shard == null) unknown_year_shard = newShard(List.of(item));
+            else unknown_year_shard.add(item);
+
+        } else {
+            final SearchStructure<T> shard = shards.get(getShardStart(year));
+            if (shard == null) shards.put(getShardStart(year), newShard(List.of(item)));
+            else shard.add(item);
+        }
+    }
+
+    @Override
+    public synchronized void addAll(final Iterable<T> items) {
+
+        for (T item : items) {
+            add(item);
+        }
+    }
+
+    @Override
+    public synchronized boolean remove(final T item) {
+
+        final Integer year = year_function.apply(item);
+        final SearchStructure<T> shard = year == null ? unknown_year_shard : shards.get(getShardStart(year));
+
+        return shard != null && shard.remove(item);
+    }
+
+    @Override
+    public void terminate() {
+
+        final long queries = number_of_queries.get();
+        System.out.println(String.format("Sharded search: mean %.1f of %d shards searched per query", queries == 0 ? 0.0 : (double) number_of_shards_searched.get() / queries,
+                shards.size() + (unknown_year_shard == null ? 0 : 1)));
+
+        for (SearchStructure<T> shard : shards.values()) shard.terminate();
+        if (unknown_year_shard != null) unknown_year_shard.terminate();
+    }
+
+    private List<SearchStructure<T>> getShards(final YearRange window) {
+
+        final List<SearchStructure<T>> selected = new ArrayList<>();
+
+        if (window == null) {
+            selected.addAll(shards.values());
+
+        } else if (window.first_year <= window.last_year) {
+            // Shards are keyed by first year, so the candidates start with the shard containing the window's first year.
+            selected.addAll(shards.subMap(getShardStart(window.first_year), true, window.last_year, true).values());
+        }
+
+        if (unknown_year_shard != null) selected.add(unknown_year_shard);
+
+        number_of_queries.incrementAndGet();
+        number_of_shards_searched.addAndGet(selected.size());
+        return selected;
+    }
+
+    private int getShardStart(final int year) {
+        return Math.floorDiv(year, shard_width_years) * shard_width_years;
+    }
+
+    private SearchStructure<T> newShard(final List<T> shard_data) {
+
+        return reference_objects == null ? shard_factory.newSearchStructure(shard_data) : shard_factory.newSearchStructure(shard_data, reference_objects);
+    }
+}
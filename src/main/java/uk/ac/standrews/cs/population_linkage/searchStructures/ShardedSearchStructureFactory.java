@@ -0,0 +1,63 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.searchStructures;
+
+import java.util.List;
+import java.util.function.Function;
+
+public class ShardedSearchStructureFactory<T> implements SearchStructureFactory<T> {
+
+    private final SearchStructureFactory<T> shard_factory;
+    private final Function<T, Integer> year_function;
+    private final int shard_width_years;
+    private final SearchExecutor executor;
+
+    /**
+     * @param shard_factory creates the search structure for each shard
+     * @param year_function gives the year of an item, or null if it is not known
+     */
+    public ShardedSearchStructureFactory(final SearchStructureFactory<T> shard_factory, final Function<T, Integer> year_function, final int shard_width_years) {
+
+        this(shard_factory, year_function, shard_width_years, SearchExecutor.getShared());
+    }
+
+    public ShardedSearchStructureFactory(final SearchStructureFactory<T> shard_factory, final Function<T, Integer> year_function, final int shard_width_years,
+                                         final SearchExecutor executor) {
+
+        this.shard_factory = shard_factory;
+        this.year_function = year_function;
+        this.shard_width_years = shard_width_years;
+        this.executor = executor;
+    }
+
+    @Override
+    public SearchStructure<T> newSearchStructure(final Iterable<T> records) {
+
+        return new ShardedSearchStructure<>(shard_factory, records, null, year_function, shard_width_years, executor);
+    }
+
+    @Override
+    public SearchStructure<T> newSearchStructure(final Iterable<T> records, final List<T> reference_objects) {
+
+        return new ShardedSearchStructure<>(shard_factory, records, reference_objects, year_function, shard_width_years, executor);
+    }
+
+    @Override
+    public String getSearchStructureType() {
+        return "Sharded " + shard_factory.getSearchStructureType();
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.searchStructures;
+
+/**
+ * An inclusive range of years.
+ */
+public class YearRange {
+
+    public final int first_year;
+    public final int last_year;
+
+    public YearRange(final int first_year, final int last_year) {
+
+        this.first_year = first_year;
+        this.last_year = last_year;
+    }
+
+    public boolean contains(final int year) {
+        return first_year <= year && year <= last_year;
+    }
+
+    public boolean overlaps(final YearRange other) {
+        return first_year <= other.last_year && other.first_year <= last_year;
+    }
+
+    @Override
+    public String toString() {
+        return first_year + "-" + last_year;
+    }
+}
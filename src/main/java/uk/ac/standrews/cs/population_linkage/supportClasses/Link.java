@@ -68,6 +68,25 @@ public class Link extends JPO {
         this.distance = distance;
     }
 
+    /**
+     * Makes a link between records given by reference, without needing to retrieve the records themselves.
+     */
+    public static Link fromReferences(IStoreReference<LXP> record1, String role1, IStoreReference<LXP> record2, String role2, double confidence, String link_type, double distance, List<String> provenance) {
+
+        final Link link = new Link();
+
+        link.record1 = (LXPReference<LXP>) record1;
+        link.role1 = role1;
+        link.record2 = (LXPReference<LXP>) record2;
+        link.role2 = role2;
+        link.confidence = confidence;
+        link.link_type = link_type;
+        link.provenance = provenance;
+        link.distance = distance;
+
+        return link;
+    }
+
     public IStoreReference<LXP> getRecord1() {
         return record1;
     }
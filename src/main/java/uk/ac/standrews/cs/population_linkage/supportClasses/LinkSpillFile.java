@@ -0,0 +1,194 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.supportClasses;
+
+import uk.ac.standrews.cs.neoStorr.impl.LXP;
+import uk.ac.standrews.cs.neoStorr.impl.LXPReference;
+import uk.ac.standrews.cs.neoStorr.interfaces.IStoreReference;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Holds links in a temporary file rather than in memory, for passes that need the full set of links after they have
+ * been produced. Links are written as references to their records, so reading them back doesn't retrieve the records.
+ *
+ * Links may be added from several threads. Once writing has finished the links can be iterated any number of times.
+ */
+public class LinkSpillFile implements Iterable<Link>, AutoCloseable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path path;
+    private DataOutputStream output;
+    private long number_of_links = 0;
+
+    public LinkSpillFile(final Path directory) {
+
+        try {
+            path = Files.createTempFile(directory, "links", ".spill");
+            path.toFile().deleteOnExit();
+            output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), BUFFER_SIZE));
+
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public synchronized void add(final Link link) {
+
+        if (output == null) throw new IllegalStateException("writing has finished");
+
+        try {
+            writeReference(link.getRecord1());
+            output.writeUTF(link.getRole1());
+            writeReference(link.getRecord2());
+            output.writeUTF(link.getRole2());
+            output.writeDouble(link.getConfidence());
+            output.writeUTF(link.getLinkType());
+            output.writeDouble(link.getDistance());
+
+            output.writeInt(link.getProvenance().size());
+            for (String provenance : link.getProvenance()) {
+                output.writeUTF(provenance);
+            }
+            number_of_links++;
+
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Flushes the links written so far; no more links can be added after this.
+     */
+    public synchronized void finishWriting() {
+
+        if (output == null) return;
+
+        try {
+            output.close();
+            output = null;
+
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public synchronized long size() {
+        return number_of_links;
+    }
+
+    @Override
+    public Iterator<Link> iterator() {
+
+        finishWriting();
+
+        try {
+            final DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE));
+            final long number_to_read = size();
+
+            return new Iterator<>() {
+
+                private long number_read = 0;
+
+                @Override
+                public boolean hasNext() {
+
+                    if (number_read < number_to_read) return true;
+
+                    closeQuietly(input);
+                    return false;
+                }
+
+                @Override
+                public Link next() {
+
+                    if (!hasNext()) throw new NoSuchElementException();
+
+                    try {
+                        final IStoreReference<LXP> record1 = readReference(input);
+                        final String role1 = input.readUTF();
+                        final IStoreReference<LXP> record2 = readReference(input);
+                        final String role2 = input.readUTF();
+                        final double confidence = input.readDouble();
+                        final String link_type = input.readUTF();
+                        final double distance = input.readDouble();
+
+                        final int number_of_provenance_entries = input.readInt();
+                        final List<String> provenance = new ArrayList<>(number_of_provenance_entries);
+                        for (int i = 0; i < number_of_provenance_entries; i++) {
+                            provenance.add(input.readUTF());
+                        }
+                        number_read++;
+
+                        return Link.fromReferences(record1, role1, record2, role2, confidence, link_type, distance, provenance);
+
+                    } catch (IOException e) {
+                        closeQuietly(input);
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+
+        finishWriting();
+
+        try {
+            Files.deleteIfExists(path);
+
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void writeReference(final IStoreReference<LXP> reference) throws IOException {
+
+        output.writeUTF(reference.getRepoName());
+        output.writeUTF(reference.getBucketName());
+        output.writeLong(reference.getObjectId());
+    }
+
+    private static IStoreReference<LXP> readReference(final DataInputStream input) throws IOException {
+
+        return new LXPReference<>(input.readUTF(), input.readUTF(), input.readLong());
+    }
+
+    private static void closeQuietly(final DataInputStream input) {
+
+        try {
+            input.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.supportClasses;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Records the progress of a linkage run, so that a run that is stopped part way can be resumed without repeating
+ * finished work. The checkpoint holds:
+ *
+ * - a log of the links processed for each query record, with whether the ground truth said each was true, and of the
+ *   query records for which all links have been processed;
+ * - the directory in which the search index is saved, so it can be reloaded rather than rebuilt.
+ *
+ * Progress is tracked by query number: the number of query records completed from the start of the query set, and the
+ * query records completed beyond that, out of order, when linking in parallel. Links are only remembered individually
+ * for query records that were part way through when a run stopped, so the memory needed doesn't grow with the number
+ * of links made.
+ */
+public class LinkageCheckpoint {
+
+    private static final String PROGRESS_FILE_NAME = "progress.properties";
+    private static final String LOG_FILE_NAME = "links.log";
+    private static final String INDEX_DIRECTORY_NAME = "index";
+
+    private static final String RUN_KEY = "run";
+    private static final String QUERIES_COMPLETED_KEY = "queries_completed";
+
+    private static final byte LINK_ENTRY = 0;
+    private static final byte QUERY_COMPLETED_ENTRY = 1;
+
+    private static final byte NOT_EVALUATED = -1;
+    private static final byte FALSE_LINK = 0;
+    private static final byte TRUE_LINK = 1;
+
+    // Entry type, query number, stored and query record ids, evaluation.
+    private static final int LOG_ENTRY_SIZE = 1 + Long.BYTES * 3 + 1;
+
+    private final Path directory;
+    private final String run_key;
+    private final int save_interval;
+
+    private long queries_completed = 0;
+    private long queries_completed_when_saved = 0;
+    private final TreeSet<Long> queries_completed_out_of_order = new TreeSet<>();
+
+    // The links already processed for query records that weren't completed when the previous run stopped.
+    private final Map<Long, Set<String>> links_of_unfinished_queries = new HashMap<>();
+
+    private long number_of_links_processed = 0;
+    private long true_positives = 0;
+    private long false_positives = 0;
+
+    private final DataOutputStream log;
+    private final FileOutputStream log_file;
+
+    /**
+     * Opens the checkpoint in the given directory, resuming from it if it was made by a run with the same key.
+     *
+     * @param run_key       identifies the linkage run, so that a checkpoint isn't resumed by a different run
+     * @param save_interval number of query records completed between saves of the progress made
+     */
+    public LinkageCheckpoint(final Path directory, final String run_key, final int save_interval) {
+
+        this.directory = directory;
+        this.run_key = run_key;
+        this.save_interval = save_interval;
+
+        try {
+            Files.createDirectories(directory);
+
+            final Path progress_path = directory.resolve(PROGRESS_FILE_NAME);
+
+            if (Files.exists(progress_path)) {
+
+                final Properties progress = new Properties();
+                try (InputStream input = Files.newInputStream(progress_path)) {
+                    progress.load(input);
+                }
+
+                if (!run_key.equals(progress.getProperty(RUN_KEY))) {
+                    throw new RuntimeException("checkpoint in " + directory + " was made by a different run: " + progress.getProperty(RUN_KEY));
+                }
+
+                loadLog();
+                queries_completed_when_saved = queries_completed;
+
+                System.out.println("Resuming from checkpoint: " + queries_completed + " query records completed, " + number_of_links_processed + " links processed");
+
+            } else {
+                Files.deleteIfExists(directory.resolve(LOG_FILE_NAME));
+            }
+
+            log_file = new FileOutputStream(directory.resolve(LOG_FILE_NAME).toFile(), true);
+            log = new DataOutputStream(new BufferedOutputStream(log_file));
+
+            saveProgress();
+
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return the directory in which the search index for the run is saved
+     */
+    public Path getIndexDirectory() {
+        return directory.resolve(INDEX_DIRECTORY_NAME);
+    }
+
+    /**
+     * @return the number of query records, from the start of the query set, that need not be linked again
+     */
+    public synchronized long getQueriesCompleted() {
+        return queries_completed;
+    }
+
+    /**
+     * @return true if all the links for the given query record have been processed
+     */
+    public synchronized boolean isQueryCompleted(final long query_number) {
+        return query_number < queries_completed || queries_completed_out_of_order.contains(query_number);
+    }
+
+    /**
+     * @return true if the given link, for the given query record, was processed by a previous run
+     */
+    public synchronized boolean hasProcessed(final long query_number, final Link link) {
+
+        final Set<String> links = links_of_unfinished_queries.get(query_number);
+        return links != null && links.contains(getLinkKey(link.getRecord1().getObjectId(), link.getRecord2().getObjectId()));
+    }
+
+    /**
+     * Records that a link has been processed, once it has been made persistent if required.
+     *
+     * @param is_true_link whether the ground truth says the link is true, or null if not evaluated
+     */
+    public synchronized void recordProcessed(final long query_number, final Link link, final Boolean is_true_link) {
+
+        final byte evaluation = is_true_link == null ? NOT_EVALUATED : is_true_link ? TRUE_LINK : FALSE_LINK;
+
+        writeLogEntry(LINK_ENTRY, query_number, link.getRecord1().getObjectId(), link.getRecord2().getObjectId(), evaluation);
+        countLink(evaluation);
+    }
+
+    /**
+     * Records that all links for a query record have been processed, saving the progress made periodically.
+     */
+    public synchronized void recordQueryCompleted(final long query_number) {
+
+        writeLogEntry(QUERY_COMPLETED_ENTRY, query_number, 0, 0, NOT_EVALUATED);
+        completeQuery(query_number);
+
+        if (queries_completed - queries_completed_when_saved >= save_interval) saveProgress();
+    }
+
+    public synchronized long getNumberOfLinksProcessed() {
+        return number_of_links_processed;
+    }
+
+    public synchronized long getTruePositives() {
+        return true_positives;
+    }
+
+    public synchronized long getFalsePositives() {
+        return false_positives;
+    }
+
+    /**
+     * Saves the progress made, by flushing the log to disk. The number of query records completed is also saved,
+     * for information, with the key identifying the run.
+     */
+    public synchronized void saveProgress() {
+
+        try {
+            log.flush();
+            log_file.getFD().sync();
+
+            final Properties progress = new Properties();
+            progress.setProperty(RUN_KEY, run_key);
+            progress.setProperty(QUERIES_COMPLETED_KEY, String.valueOf(queries_completed));
+
+            final Path temporary_path = directory.resolve(PROGRESS_FILE_NAME + ".tmp");
+            try (OutputStream output = Files.newOutputStream(temporary_path)) {
+                progress.store(output, "Linkage checkpoint");
+            }
+            Files.move(temporary_path, directory.resolve(PROGRESS_FILE_NAME), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            queries_completed_when_saved = queries_completed;
+
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Removes the record of progress once the run has finished, so that the next run starts from the beginning.
+     * The saved search index is kept for reuse.
+     */
+    public synchronized void finish() {
+
+        try {
+            log.close();
+            Files.deleteIfExists(directory.resolve(PROGRESS_FILE_NAME));
+            Files.deleteIfExists(directory.resolve(LOG_FILE_NAME));
+
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void writeLogEntry(final byte type, final long query_number, final long stored_id, final long query_id, final byte evaluation) {
+
+        try {
+            log.writeByte(type);
+            log.writeLong(query_number);
+            log.writeLong(stored_id);
+            log.writeLong(query_id);
+            log.writeByte(evaluation);
+
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void countLink(final byte evaluation) {
+
+        number_of_links_processed++;
+        if (evaluation == TRUE_LINK) true_positives++;
+        if (evaluation == FALSE_LINK) false_positives++;
+    }
+
+    private void completeQuery(final long query_number) {
+
+        links_of_unfinished_queries.remove(query_number);
+        queries_completed_out_of_order.add(query_number);
+
+        while (!queries_completed_out_of_order.isEmpty() && queries_completed_out_of_order.first() == queries_completed) {
+            queries_completed_out_of_order.pollFirst();
+            queries_completed++;
+        }
+    }
+
+    private void loadLog() throws IOException {
+
+        final Path log_path = directory.resolve(LOG_FILE_NAME);
+        if (!Files.exists(log_path)) return;
+
+        // Drops any entry only partly written when the run stopped, so that new entries are appended after whole ones.
+        final long number_of_entries = Files.size(log_path) / LOG_ENTRY_SIZE;
+        try (FileChannel channel = FileChannel.open(log_path, StandardOpenOption.WRITE)) {
+            channel.truncate(number_of_entries * LOG_ENTRY_SIZE);
+        }
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(log_path)))) {
+
+            for (long i = 0; i < number_of_entries; i++) {
+
+                final byte type = input.readByte();
+                final long query_number = input.readLong();
+                final long stored_id = input.readLong();
+                final long query_id = input.readLong();
+                final byte evaluation = input.readByte();
+
+                if (type == QUERY_COMPLETED_ENTRY) {
+                    completeQuery(query_number);
+                } else {
+                    // Only kept until the query record is seen to be completed, so few are held at once.
+                    links_of_unfinished_queries.computeIfAbsent(query_number, k -> new HashSet<>()).add(getLinkKey(stored_id, query_id));
+                    countLink(evaluation);
+                }
+            }
+        }
+    }
+
+    private static String getLinkKey(final long stored_id, final long query_id) {
+        return stored_id + "-" + query_id;
+    }
+}
@@ -16,6 +16,9 @@
  */
 package uk.ac.standrews.cs.population_linkage.supportClasses;
 
+import uk.ac.standrews.cs.population_linkage.helpers.LinkageMetrics;
+import uk.ac.standrews.cs.population_linkage.linkers.OneToOneAssignment;
+
 public class LinkageConfig {
 
     public static final int BIRTH_CACHE_SIZE = 10000;
@@ -23,6 +26,44 @@ public class LinkageConfig {
     public static final int MARRIAGE_CACHE_SIZE = 10000;
 
     public static final int NUMBER_OF_REFERENCE_OBJECTS = 70;
+    public static final int PIVOT_SELECTION_SAMPLE_SIZE = 1000;        // Number of records sampled when choosing reference objects and measuring their exclusion.
+    public static final int QUERY_BATCH_SIZE = 10000;                  // Number of query records searched in parallel by the similarity search linker.
+    public static int SEARCH_SHARD_WIDTH_YEARS = 0;                    // Width of the year ranges into which stored records are sharded; zero for a single search structure.
+    public static String INDEX_SNAPSHOT_DIRECTORY = null;              // Directory in which search index snapshots are saved and reused; null disables snapshots.
+    public static boolean PROJECT_STORED_RECORDS = true;               // Whether search structures hold only the stored record fields needed for linkage, rather than full records.
+    public static int SEARCH_PARALLELISM = 0;                          // Maximum number of threads used to build and search indexes, shared across the process; zero for all processors.
+    public static boolean PIPELINED_LINKAGE = false;                   // Whether links are produced by a pipeline of concurrent stages, rather than a single thread.
+    public static boolean PIPELINE_ORDERED_OUTPUT = true;              // Whether the pipeline produces links in query order.
+    public static int PIPELINE_QUEUE_CAPACITY = 1000;                  // Capacity of the queues between pipeline stages, and the number of query records in the pipeline.
+    public static int BRUTE_FORCE_TILE_SIZE = 256;                     // Number of records on each side of the tiles into which the brute force distance matrix is divided.
+    public static int BRUTE_FORCE_QUEUE_CAPACITY = 10000;              // Maximum number of links found by the brute force linker but not yet taken from its stream.
+    public static boolean VIABILITY_PRE_FILTER = true;                 // Whether pairs that can't be viable, judged by record years, are ruled out before their distances are calculated.
+
+    public static int BEST_MATCHES_PER_QUERY = 0;                      // Number of closest matches kept for each query in identity linkage; zero to keep all those equal to the closest.
+    public static OneToOneAssignment.Method ONE_TO_ONE_ASSIGNMENT = OneToOneAssignment.Method.NONE; // How best matches are chosen so that each record is linked at most once.
+    public static int MAX_HUNGARIAN_COMPONENT_SIZE = 500;              // Maximum number of records on either side of a group of linked candidates assigned by the Hungarian algorithm, rather than greedily.
+
+    public static boolean STREAMING_PERSISTENCE = true;                // Whether links are persisted and evaluated as they are made, rather than after all have been collected.
+    public static int STREAMING_QUEUE_CAPACITY = 10000;                // Maximum number of links made but not yet persisted, when streaming.
+    public static String LINK_SPILL_DIRECTORY = null;                  // Directory in which streamed links are kept for the linkage result; null to not retain them.
+
+    public static String CHECKPOINT_DIRECTORY = null;                  // Directory in which the progress of a linkage run is recorded, so it can be resumed; null disables checkpoints.
+    public static int CHECKPOINT_INTERVAL = 10000;                     // Number of query records linked between checkpoints.
+
+    public static boolean LINKAGE_METRICS = false;                     // Whether throughput metrics are recorded for linkage runs.
+    public static String LINKAGE_METRICS_FILE = null;                  // File to which metrics are written periodically; null to only print them at the end of each phase.
+    public static LinkageMetrics.Format LINKAGE_METRICS_FORMAT = LinkageMetrics.Format.CSV; // Format in which metrics are written.
+    public static long LINKAGE_METRICS_INTERVAL_SECONDS = 60;          // Interval between metrics written to file.
+
+    public static boolean REUSE_INDEX_ACROSS_FIELD_COUNTS = false;     // Whether builders search once for all numbers of required fields, rather than once for each.
+    public static int LINK_WRITER_BATCH_SIZE = 1000;                   // Number of links written to Neo4J in each batch by builders that batch them; 1 to write each link separately.
+    public static boolean CANDIDATE_RESOLUTION_LOGGING = false;        // Whether each candidate link considered when resolving lists of candidates is printed.
+    public static boolean SEARCH_STATISTICS_LOGGING = false;           // Whether the search executor and viability pre-filter statistics are printed when a linker finishes.
+    public static boolean GROUND_TRUTH_ORACLE = false;                 // Whether ground truth is read into memory to evaluate links. True links are then counted among the loaded records only, which changes FN and recall. Recipes without true match alternatives still look up each link.
+
+    public static boolean SHARE_SEARCH_INDEXES = true;                 // Whether recipes sharing records also share search indexes built over the same stored records.
+    public static int ORCHESTRATOR_MAX_CONCURRENT_STAGES = 4;          // Maximum number of linkage stages run at once by the orchestrator.
+    public static String ORCHESTRATOR_REPORT_FILE = null;              // File to which the orchestrator writes its stage timings, if not null.
 
     public static final double AVERAGE_DAYS_IN_YEAR = 365.25;
     public static final double AVERAGE_DAYS_IN_MONTH = 30.4;
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.supportClasses;
+
+import uk.ac.standrews.cs.neoStorr.impl.LXP;
+import uk.ac.standrews.cs.neoStorr.impl.LXPMetaData;
+import uk.ac.standrews.cs.neoStorr.impl.LXPReference;
+import uk.ac.standrews.cs.neoStorr.impl.StaticLXP;
+import uk.ac.standrews.cs.neoStorr.impl.exceptions.BucketException;
+import uk.ac.standrews.cs.neoStorr.impl.exceptions.RepositoryException;
+import uk.ac.standrews.cs.neoStorr.interfaces.IStoreReference;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact stand-in for a stored record, holding only the fields needed for linkage, in the same slots as the original
+ * record, together with the storr id of the original. Equal field values are shared between projected records.
+ *
+ * A reference to the original record can be obtained without accessing the repository, so links can be created directly
+ * from projected records; the full record is fetched only when its other fields are needed.
+ */
+public class ProjectedRecord extends StaticLXP {
+
+    private final long stored_id;
+    private final String repository_name;
+    private final String bucket_name;
+    private final LXPMetaData meta_data;
+    private final List<Integer> fields;
+
+    private ProjectedRecord(final LXP record, final List<Integer> fields, final Map<String, String> shared_values) {
+
+        final IStoreReference<LXP> reference = record.getThisRef();
+
+        stored_id = reference.getObjectId();
+        repository_name = share(reference.getRepoName(), shared_values);
+        bucket_name = share(reference.getBucketName(), shared_values);
+        meta_data = record.getMetaData();
+        this.fields = fields;
+
+        for (int field : fields) {
+
+            final String value = record.getString(field);
+            if (value != null) put(field, share(value, shared_values));
+        }
+    }
+
+    /**
+     * Projects the given records onto the given fields.
+     *
+     * @param records the records to be projected, which must be persistent
+     * @param fields the slots of the fields to be retained
+     * @return the projected records, in the same order
+     */
+    public static List<LXP> project(final Iterable<LXP> records, final List<Integer> fields) {
+
+        final Map<String, String> shared_values = new HashMap<>();
+        final List<LXP> projected_records = new ArrayList<>();
+
+        // Shared by all the projected records.
+        final List<Integer> projected_fields = List.copyOf(fields);
+
+        for (LXP record : records) {
+            projected_records.add(project(record, projected_fields, shared_values));
+        }
+        return projected_records;
+    }
+
+    private static LXP project(final LXP record, final List<Integer> fields, final Map<String, String> shared_values) {
+
+        return record instanceof ProjectedRecord ? record : new ProjectedRecord(record, fields, shared_values);
+    }
+
+    private static String share(final String value, final Map<String, String> shared_values) {
+
+        return value == null ? null : shared_values.computeIfAbsent(value, v -> v);
+    }
+
+    /**
+     * @return the full record if the given record is projected, otherwise the record itself
+     */
+    public static LXP getFullRecord(final LXP record) {
+
+        return record instanceof ProjectedRecord ? ((ProjectedRecord) record).getFullRecord() : record;
+    }
+
+    /**
+     * @return true if the given record isn't projected, or is projected onto all the given fields, so that they can be
+     * read from it without fetching the full record
+     */
+    public static boolean holdsFields(final LXP record, final List<Integer> fields) {
+
+        if (!(record instanceof ProjectedRecord)) return true;
+        return fields != null && ((ProjectedRecord) record).fields.containsAll(fields);
+    }
+
+    /**
+     * @return the storr id of the original record if the given record is projected, otherwise the record's own id
+     */
+    public static long getStoredId(final LXP record) {
+
+        return record instanceof ProjectedRecord ? ((ProjectedRecord) record).stored_id : record.getId();
+    }
+
+    public LXP getFullRecord() {
+
+        try {
+            return getThisRef().getReferend();
+
+        } catch (BucketException | RepositoryException e) {
+            throw new RuntimeException("could not fetch projected record " + stored_id + " from bucket " + bucket_name, e);
+        }
+    }
+
+    @Override
+    public IStoreReference<LXP> getThisRef() {
+
+        return new LXPReference<>(repository_name, bucket_name, stored_id);
+    }
+
+    @Override
+    public LXPMetaData getMetaData() {
+        return meta_data;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        return o instanceof ProjectedRecord && ((ProjectedRecord) o).stored_id == stored_id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(stored_id);
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.supportClasses;
+
+import uk.ac.standrews.cs.neoStorr.impl.LXP;
+import uk.ac.standrews.cs.population_linkage.searchStructures.SearchStructure;
+import uk.ac.standrews.cs.population_records.RecordRepository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Supplier;
+
+/**
+ * The records of a repository, each type read into memory once and shared by the recipes given it, and the search
+ * structures built over them, each built once and shared by the linkers whose stored records and measure are the same.
+ * The records and structures must not be changed by those using them.
+ */
+public class SharedRecords implements AutoCloseable {
+
+    private final String source_repository_name;
+    private RecordRepository record_repository;
+
+    private List<LXP> birth_records;
+    private List<LXP> death_records;
+    private List<LXP> marriage_records;
+
+    private final Map<String, FutureTask<SearchStructure<LXP>>> search_structures = new ConcurrentHashMap<>();
+    private final Map<String, Duration> timings = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    public SharedRecords(final String source_repository_name) {
+
+        this.source_repository_name = source_repository_name;
+    }
+
+    public synchronized List<LXP> getBirthRecords() {
+
+        if (birth_records == null) {
+            birth_records = load("births", Utilities.getBirthRecords(getRecordRepository()));
+        }
+        return birth_records;
+    }
+
+    public synchronized List<LXP> getDeathRecords() {
+
+        if (death_records == null) {
+            death_records = load("deaths", Utilities.getDeathRecords(getRecordRepository()));
+        }
+        return death_records;
+    }
+
+    public synchronized List<LXP> getMarriageRecords() {
+
+        if (marriage_records == null) {
+            marriage_records = load("marriages", Utilities.getMarriageRecords(getRecordRepository()));
+        }
+        return marriage_records;
+    }
+
+    /**
+     * Gives the search structure for the key, building it if this is the first request for the key. Concurrent
+     * requests for the same key wait for the one structure to be built; those for different keys don't wait.
+     *
+     * @param key   identifies the stored records, measure and any other settings on which the structure depends
+     * @param build builds the structure
+     */
+    public SearchStructure<LXP> getSearchStructure(final String key, final Supplier<SearchStructure<LXP>> build) {
+
+        final FutureTask<SearchStructure<LXP>> task = new FutureTask<>(() -> {
+            final long start = System.nanoTime();
+            final SearchStructure<LXP> search_structure = build.get();
+            timings.put("index " + key, Duration.ofNanos(System.nanoTime() - start));
+            return search_structure;
+        });
+
+        final FutureTask<SearchStructure<LXP>> existing = search_structures.putIfAbsent(key, task);
+
+        if (existing == null) {
+            task.run();
+        } else {
+            System.out.println("Reusing search structure: " + key);
+        }
+
+        try {
+            return (existing == null ? task : existing).get();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+
+        } catch (ExecutionException e) {
+            // Let a later request try again.
+            search_structures.remove(key, task);
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    public int getNumberOfSearchStructures() {
+        return search_structures.size();
+    }
+
+    /**
+     * @return the time taken to load each type of record and to build each search structure, in the order they finished
+     */
+    public Map<String, Duration> getTimings() {
+
+        synchronized (timings) {
+            return new LinkedHashMap<>(timings);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+
+        for (FutureTask<SearchStructure<LXP>> task : search_structures.values()) {
+            try {
+                if (task.isDone()) task.get().terminate();
+            } catch (InterruptedException | ExecutionException e) {
+                // Not built, so nothing to terminate.
+            }
+        }
+        search_structures.clear();
+
+        if (record_repository != null) {
+            record_repository.close();
+            record_repository = null;
+        }
+    }
+
+    private RecordRepository getRecordRepository() {
+
+        if (record_repository == null) {
+            record_repository = new RecordRepository(source_repository_name);
+        }
+        return record_repository;
+    }
+
+    private List<LXP> load(final String record_type, final Iterable<LXP> records) {
+
+        final long start = System.nanoTime();
+
+        final List<LXP> loaded = new ArrayList<>();
+        for (LXP record : records) {
+            loaded.add(record);
+        }
+
+        final Duration duration = Duration.ofNanos(System.nanoTime() - start);
+        timings.put("load " + record_type, duration);
+        System.out.println("Loaded " + loaded.size() + " " + record_type + " in " + duration.toMillis() + "ms");
+
+        return Collections.unmodifiableList(loaded);
+    }
+}
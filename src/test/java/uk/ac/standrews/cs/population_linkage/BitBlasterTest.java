@@ -16,12 +16,18 @@
  */
 package uk.ac.standrews.cs.population_linkage;
 
+import org.junit.Test;
 import uk.ac.standrews.cs.population_linkage.searchStructures.BitBlasterSearchStructure;
 import uk.ac.standrews.cs.population_linkage.searchStructures.SearchStructure;
 import uk.ac.standrews.cs.utilities.measures.coreConcepts.Measure;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertTrue;
 
 public class BitBlasterTest extends SimilaritySearchTest {
 
@@ -53,4 +59,42 @@ public class BitBlasterTest extends SimilaritySearchTest {
 
         return result;
     }
+
+    @Test
+    public void searchesRunConcurrentlyWithUpdates() throws Exception {
+
+        final List<Point> data_points = generatePointGrid(MAX_SIDE_OF_SQUARE);
+        final List<Point> initial_points = data_points.subList(0, data_points.size() / 2);
+        final List<Point> added_points = data_points.subList(data_points.size() / 2, data_points.size());
+
+        final BitBlasterSearchStructure<Point> search_structure = new BitBlasterSearchStructure<>(measure, initial_points, getReferencePoints(initial_points, 10));
+
+        final AtomicBoolean updating = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Point query = new Point(0.1, 0.0);
+
+        final List<Thread> searchers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            searchers.add(new Thread(() -> {
+                try {
+                    while (updating.get()) {
+                        search_structure.findWithinThreshold(query, 3.0);
+                        search_structure.findNearest(query, 5);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+        for (Thread searcher : searchers) searcher.start();
+
+        // The first update terminates BitBlaster while it may be being searched.
+        for (Point point : added_points) search_structure.add(point);
+
+        updating.set(false);
+        for (Thread searcher : searchers) searcher.join();
+
+        assertNull(failure.get());
+        assertTrue(checkSamePoints(bruteForceQuery(data_points, query, 3.0), getPoints(search_structure.findWithinThreshold(query, 3.0))));
+    }
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage;
+
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.standrews.cs.population_linkage.searchStructures.BlockingKey;
+import uk.ac.standrews.cs.population_linkage.searchStructures.BlockingSearchStructure;
+import uk.ac.standrews.cs.utilities.measures.coreConcepts.DataDistance;
+import uk.ac.standrews.cs.utilities.measures.coreConcepts.Measure;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static junit.framework.TestCase.*;
+
+public class BlockingSearchStructureTest {
+
+    private static final List<String> NAMES = List.of("smith", "smyth", "smithe", "brown", "browne", "braun", "", "black", "blake", "schmidt");
+
+    // Blocks by first letter.
+    private static final BlockingKey<String> INITIAL = name -> name.isEmpty() ? null : name.substring(0, 1);
+
+    private Measure<String> measure;
+
+    @Before
+    public void setup() {
+
+        measure = new Measure<>() {
+
+            @Override
+            public String getMeasureName() {
+                return "length difference";
+            }
+
+            @Override
+            public boolean maxDistanceIsOne() {
+                return false;
+            }
+
+            @Override
+            public double calculateDistance(final String s1, final String s2) {
+                return Math.abs(s1.length() - s2.length());
+            }
+        };
+    }
+
+    @Test
+    public void onlyItemsInSameBlockAreFound() {
+
+        final BlockingSearchStructure<String> search_structure = new BlockingSearchStructure<>(measure, NAMES, List.of(INITIAL));
+
+        for (String query : NAMES) {
+            for (double threshold = 0.0; threshold <= 3.0; threshold++) {
+                assertEquals(bruteForceQuery(NAMES, query, threshold), getValues(search_structure.findWithinThreshold(query, threshold)));
+            }
+        }
+    }
+
+    @Test
+    public void itemsCanBeFoundThroughAnyKey() {
+
+        final BlockingKey<String> last_letter = name -> name.isEmpty() ? null : name.substring(name.length() - 1);
+        final BlockingSearchStructure<String> search_structure = new BlockingSearchStructure<>(measure, NAMES, List.of(INITIAL, last_letter));
+
+        final List<String> results = getValues(search_structure.findWithinThreshold("xxxxxh", 10.0));
+
+        assertTrue(results.contains("smith"));
+        assertTrue(results.contains("smyth"));
+        assertFalse(results.contains("smithe"));
+    }
+
+    @Test
+    public void removedItemsAreNotFound() {
+
+        final BlockingSearchStructure<String> search_structure = new BlockingSearchStructure<>(measure, NAMES, List.of(INITIAL));
+
+        assertTrue(search_structure.remove("smyth"));
+        assertFalse(search_structure.remove("smyth"));
+        search_structure.add("sm");
+
+        final List<String> remaining = new ArrayList<>(NAMES);
+        remaining.remove("smyth");
+        remaining.add("sm");
+
+        assertEquals(bruteForceQuery(remaining, "smith", 3.0), getValues(search_structure.findWithinThreshold("smith", 3.0)));
+        assertEquals(2, search_structure.findNearest("smith", 2).size());
+    }
+
+    private List<String> bruteForceQuery(final List<String> names, final String query, final double threshold) {
+
+        return names.stream().filter(name -> INITIAL.getKey(query) != null && INITIAL.getKey(query).equals(INITIAL.getKey(name)) && measure.distance(query, name) <= threshold).collect(Collectors.toList());
+    }
+
+    private List<String> getValues(final List<DataDistance<String>> results) {
+
+        return results.stream().map(result -> result.value).collect(Collectors.toList());
+    }
+}
@@ -16,14 +16,26 @@
  */
 package uk.ac.standrews.cs.population_linkage;
 
+import org.junit.Test;
+import uk.ac.standrews.cs.neoStorr.impl.LXP;
 import uk.ac.standrews.cs.neoStorr.interfaces.IStoreReference;
 import uk.ac.standrews.cs.population_linkage.compositeMeasures.LXPMeasure;
+import uk.ac.standrews.cs.population_linkage.linkageRecipes.ViabilityPreFilter;
 import uk.ac.standrews.cs.population_linkage.linkers.BruteForceLinker;
 import uk.ac.standrews.cs.population_linkage.linkers.Linker;
+import uk.ac.standrews.cs.population_linkage.searchStructures.YearRange;
 import uk.ac.standrews.cs.population_linkage.supportClasses.Link;
+import uk.ac.standrews.cs.population_linkage.supportClasses.LinkageConfig;
 import uk.ac.standrews.cs.population_linkage.supportClasses.RecordPair;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
 
 public class BruteForceLinkageTest extends LinkageTest {
 
@@ -45,6 +57,117 @@ public class BruteForceLinkageTest extends LinkageTest {
         return (link_id1.equals(id1) && link_id2.equals(id2) || link_id2.equals(id1) && link_id1.equals(id2) );
     }
 
+    @Test
+    public void tiledLinksSameAsIterableLinks() throws Exception {
+
+        final int tile_size = LinkageConfig.BRUTE_FORCE_TILE_SIZE;
+
+        try {
+            // Tiles smaller than the datasets, with a partial tile at the edge of the matrix.
+            LinkageConfig.BRUTE_FORCE_TILE_SIZE = 3;
+
+            for (double threshold : new double[]{0.0, 1.0, 2.0, 4.0, Double.MAX_VALUE}) {
+
+                linker.setThreshold(threshold);
+                checkTiledLinks(birth_records, birth_records);
+                checkTiledLinks(birth_records, death_records);
+            }
+        }
+        finally {
+            LinkageConfig.BRUTE_FORCE_TILE_SIZE = tile_size;
+        }
+    }
+
+    @Test
+    public void viabilityPreFilterRulesOutPairsBeforeLinking() throws Exception {
+
+        // Treat the id as the stored record's year, with only years 1 and 2 viable for any query record.
+        final ViabilityPreFilter pre_filter = new ViabilityPreFilter(record -> Integer.parseInt(record.getString(2)), record -> new YearRange(1, 2));
+
+        linker.setViabilityPreFilter(pre_filter);
+        linker.setThreshold(Double.MAX_VALUE);
+        linker.addRecords(birth_records, birth_records);
+
+        final List<Link> links = ((BruteForceLinker) linker).links().collect(Collectors.toList());
+
+        assertEquals(6, links.size());
+        for (Link link : links) {
+            assertTrue(pre_filter.getStoredSignature(link.getRecord1().getReferend()) <= 2);
+        }
+
+        assertEquals(12, pre_filter.getNumberOfPairsChecked());
+        assertEquals(6, pre_filter.getNumberOfPairsPruned());
+    }
+
+    @Test
+    public void streamedLinksSameAsIterableLinksThroughSmallQueue() throws Exception {
+
+        final int queue_capacity = LinkageConfig.BRUTE_FORCE_QUEUE_CAPACITY;
+
+        try {
+            // The search has to wait for the stream's consumer after every link.
+            LinkageConfig.BRUTE_FORCE_QUEUE_CAPACITY = 1;
+
+            linker.setThreshold(Double.MAX_VALUE);
+            linker.addRecords(birth_records, death_records);
+
+            final List<Link> links = ((BruteForceLinker) linker).links().collect(Collectors.toList());
+
+            assertEquals(count(linker.getLinks()), links.size());
+            for (Link link : linker.getLinks()) {
+                assertTrue(containsPair(links, link.getRecord1().getReferend(), link.getRecord2().getReferend()));
+            }
+
+            // Closing the stream part way through stops the search rather than leaving it waiting.
+            try (Stream<Link> stream = ((BruteForceLinker) linker).links()) {
+                assertEquals(1, stream.limit(1).count());
+            }
+        }
+        finally {
+            LinkageConfig.BRUTE_FORCE_QUEUE_CAPACITY = queue_capacity;
+        }
+    }
+
+    @Test
+    public void streamedLinksAreFoundWhenStreamIsConsumed() throws Exception {
+
+        final ViabilityPreFilter pre_filter = new ViabilityPreFilter(record -> Integer.parseInt(record.getString(2)), record -> new YearRange(1, 2));
+
+        linker.setViabilityPreFilter(pre_filter);
+        linker.setThreshold(Double.MAX_VALUE);
+        linker.addRecords(birth_records, death_records);
+
+        try (Stream<Link> stream = ((BruteForceLinker) linker).links()) {
+
+            final Spliterator<Link> spliterator = stream.spliterator();
+
+            // The size is estimated from the query records, and nothing is searched until a link is taken.
+            assertEquals(death_records.size(), spliterator.estimateSize());
+            assertEquals(0, pre_filter.getNumberOfPairsChecked());
+
+            assertTrue(spliterator.tryAdvance(link -> {}));
+            assertTrue(pre_filter.getNumberOfPairsChecked() > 0);
+        }
+    }
+
+    private void checkTiledLinks(final List<LXP> records1, final List<LXP> records2) throws Exception {
+
+        linker.addRecords(records1, records2);
+
+        final List<Link> tiled_links = new ArrayList<>();
+        ((BruteForceLinker) linker).forEachLink(link -> {
+            synchronized (tiled_links) {
+                tiled_links.add(link);
+            }
+        });
+
+        assertEquals(count(linker.getLinks()), tiled_links.size());
+
+        for (Link link : linker.getLinks()) {
+            assertTrue(containsPair(tiled_links, link.getRecord1().getReferend(), link.getRecord2().getReferend()));
+        }
+    }
+
     class TestLinker extends BruteForceLinker {
 
         TestLinker(double threshold, final LXPMeasure measure) {
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.standrews.cs.population_linkage.supportClasses.Link;
+import uk.ac.standrews.cs.population_linkage.supportClasses.LinkageCheckpoint;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class LinkageCheckpointTest {
+
+    private static final String RUN_KEY = "test run";
+
+    private Path directory;
+    private Link link1;
+    private Link link2;
+    private Link link3;
+
+    @Before
+    public void setup() throws Exception {
+
+        directory = Files.createTempDirectory("checkpoint");
+
+        final LinkageTest.DummyLXP stored1 = new LinkageTest.DummyLXP("a");
+        final LinkageTest.DummyLXP stored2 = new LinkageTest.DummyLXP("b");
+        final LinkageTest.DummyLXP query1 = new LinkageTest.DummyLXP("c");
+        final LinkageTest.DummyLXP query2 = new LinkageTest.DummyLXP("d");
+
+        link1 = new Link(stored1, "stored", query1, "query", 1.0f, "test", 0.1);
+        link2 = new Link(stored2, "stored", query1, "query", 1.0f, "test", 0.2);
+        link3 = new Link(stored1, "stored", query2, "query", 1.0f, "test", 0.3);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) Files.delete(file);
+        }
+    }
+
+    @Test
+    public void resumedCheckpointSkipsCompletedQueriesAndProcessedLinks() {
+
+        final LinkageCheckpoint checkpoint = new LinkageCheckpoint(directory, RUN_KEY, 100);
+
+        // Query 0 is completed, query 2 is completed out of order, and query 1 is part way through.
+        checkpoint.recordProcessed(0, link3, true);
+        checkpoint.recordQueryCompleted(0);
+        checkpoint.recordProcessed(2, link3, false);
+        checkpoint.recordQueryCompleted(2);
+        checkpoint.recordProcessed(1, link1, true);
+        checkpoint.saveProgress();
+
+        final LinkageCheckpoint resumed = new LinkageCheckpoint(directory, RUN_KEY, 100);
+
+        assertEquals(1, resumed.getQueriesCompleted());
+        assertTrue(resumed.isQueryCompleted(0));
+        assertFalse(resumed.isQueryCompleted(1));
+        assertTrue(resumed.isQueryCompleted(2));
+        assertFalse(resumed.isQueryCompleted(3));
+
+        assertTrue(resumed.hasProcessed(1, link1));
+        assertFalse(resumed.hasProcessed(1, link2));
+
+        assertEquals(3, resumed.getNumberOfLinksProcessed());
+        assertEquals(2, resumed.getTruePositives());
+        assertEquals(1, resumed.getFalsePositives());
+
+        // Completing query 1 moves the position past query 2, which was already completed.
+        resumed.recordProcessed(1, link2, null);
+        resumed.recordQueryCompleted(1);
+
+        assertEquals(3, resumed.getQueriesCompleted());
+        assertFalse(resumed.hasProcessed(1, link1));
+        assertEquals(4, resumed.getNumberOfLinksProcessed());
+        resumed.finish();
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void checkpointOfDifferentRunIsRefused() {
+
+        new LinkageCheckpoint(directory, RUN_KEY, 100).saveProgress();
+        new LinkageCheckpoint(directory, "other run", 100);
+    }
+
+    @Test
+    public void finishedCheckpointStartsFromBeginning() {
+
+        final LinkageCheckpoint checkpoint = new LinkageCheckpoint(directory, RUN_KEY, 100);
+        checkpoint.recordProcessed(0, link1, true);
+        checkpoint.recordQueryCompleted(0);
+        checkpoint.finish();
+
+        final LinkageCheckpoint restarted = new LinkageCheckpoint(directory, "other run", 100);
+
+        assertEquals(0, restarted.getQueriesCompleted());
+        assertEquals(0, restarted.getNumberOfLinksProcessed());
+        restarted.finish();
+    }
+}
@@ -28,13 +28,17 @@ import uk.ac.standrews.cs.neoStorr.interfaces.IStoreReference;
 import uk.ac.standrews.cs.population_linkage.compositeMeasures.LXPMeasure;
 import uk.ac.standrews.cs.population_linkage.compositeMeasures.SumOfFieldDistances;
 import uk.ac.standrews.cs.population_linkage.linkers.Linker;
+import uk.ac.standrews.cs.population_linkage.linkers.OneToOneAssignment;
 import uk.ac.standrews.cs.population_linkage.supportClasses.Constants;
 import uk.ac.standrews.cs.population_linkage.supportClasses.Link;
 import uk.ac.standrews.cs.population_linkage.supportClasses.RecordPair;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static junit.framework.TestCase.*;
 
@@ -85,6 +89,68 @@ public abstract class LinkageTest {
         assertEquals(0.0, linker.getMeasure().distance(birth3, birth3), DELTA);
     }
 
+    @Test
+    public void boundedDistancesExactWithinBound() {
+
+        for (LXP record1 : birth_records) {
+            for (LXP record2 : birth_records) {
+                for (double bound : new double[]{0.0, 1.0, 2.0, 4.0}) {
+
+                    final double distance = linker.getMeasure().distance(record1, record2);
+                    final double bounded_distance = linker.getMeasure().distance(record1, record2, bound);
+
+                    if (distance <= bound) assertEquals(distance, bounded_distance);
+                    else assertTrue(bounded_distance > bound);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void bestMatchIsClosestForEachQuery() throws Exception {
+
+        linker.setThreshold(Double.MAX_VALUE);
+        linker.setBestMatches(1, OneToOneAssignment.Method.NONE);
+        linker.addRecords(birth_records, death_records);
+
+        assertEquals(death_records.size(), count(linker.getLinks()));
+
+        for (Link link : linker.getLinks()) {
+            for (LXP birth_record : birth_records) {
+                assertTrue(link.getDistance() <= linker.getMeasure().distance(birth_record, link.getRecord2().getReferend()) + DELTA);
+            }
+        }
+    }
+
+    @Test
+    public void oneToOneAssignmentLinksEachRecordOnce() throws Exception {
+
+        double greedy_total_distance = 0.0;
+
+        for (OneToOneAssignment.Method method : Arrays.asList(OneToOneAssignment.Method.GREEDY, OneToOneAssignment.Method.HUNGARIAN)) {
+
+            linker = getLinker();
+            linker.setThreshold(Double.MAX_VALUE);
+            linker.setBestMatches(0, method);
+            linker.addRecords(birth_records, death_records);
+
+            final Set<IStoreReference<LXP>> linked_records = new HashSet<>();
+            double total_distance = 0.0;
+
+            for (Link link : linker.getLinks()) {
+                assertTrue(linked_records.add(link.getRecord1()));
+                assertTrue(linked_records.add(link.getRecord2()));
+                total_distance += link.getDistance();
+            }
+
+            // Every birth record can be linked to a distinct death record.
+            assertEquals(birth_records.size() * 2, linked_records.size());
+
+            if (method == OneToOneAssignment.Method.GREEDY) greedy_total_distance = total_distance;
+            else assertTrue(total_distance <= greedy_total_distance + DELTA);
+        }
+    }
+
     @Test
     public void checkAllRecordPairsWithSingleDataSet() throws Exception {
 
@@ -135,6 +201,40 @@ public abstract class LinkageTest {
         assertFalse(containsPair(linker.getLinks(), death1, death1));
     }
 
+    @Test
+    public void parallelLinkStreamGivesSameLinksAsIterable() throws Exception {
+
+        linker.setThreshold(Double.MAX_VALUE);
+        linker.addRecords(birth_records, birth_records);
+
+        final List<Link> links = linker.links().parallel().collect(Collectors.toList());
+
+        assertEquals(count(linker.getLinks()), links.size());
+
+        for (Link link : linker.getLinks()) {
+            assertTrue(containsPair(links, link.getRecord1().getReferend(), link.getRecord2().getReferend()));
+        }
+    }
+
+    @Test
+    public void linksByQueryResumeFromGivenQuery() throws Exception {
+
+        linker.setThreshold(Double.MAX_VALUE);
+        linker.addRecords(birth_records, birth_records);
+
+        final LXP first_query = birth_records.get(0);
+        final List<Link> resumed_links = linker.linksByQuery(1).parallel().flatMap(query_links -> query_links.getLinks().stream()).collect(Collectors.toList());
+
+        int expected_number_of_links = 0;
+        for (Link link : linker.getLinks()) {
+            if (link.getRecord2().getReferend() != first_query) {
+                expected_number_of_links++;
+                assertTrue(containsPair(resumed_links, link.getRecord1().getReferend(), link.getRecord2().getReferend()));
+            }
+        }
+        assertEquals(expected_number_of_links, resumed_links.size());
+    }
+
     @Test
     public void checkRecordPairsWithinDistanceZeroWithSingleDataSet() throws Exception {
 
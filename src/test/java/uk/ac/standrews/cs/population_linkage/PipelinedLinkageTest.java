@@ -0,0 +1,113 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage;
+
+import org.junit.Test;
+import uk.ac.standrews.cs.population_linkage.linkers.LinkPipeline;
+import uk.ac.standrews.cs.population_linkage.linkers.Linker;
+import uk.ac.standrews.cs.population_linkage.linkers.SimilaritySearchLinker;
+import uk.ac.standrews.cs.population_linkage.searchStructures.SearchExecutor;
+import uk.ac.standrews.cs.population_linkage.supportClasses.Link;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+
+/**
+ * Runs the linkage tests with links produced by a pipeline, with small queues so that stages block on each other.
+ */
+public class PipelinedLinkageTest extends MTreeLinkageTest {
+
+    private static final int QUEUE_CAPACITY = 2;
+
+    @Override
+    public Linker getLinker() {
+
+        return withPipeline((SimilaritySearchLinker) super.getLinker(), false);
+    }
+
+    private SimilaritySearchLinker withPipeline(final SimilaritySearchLinker linker, final boolean ordered) {
+
+        final LinkPipeline pipeline = new LinkPipeline(QUEUE_CAPACITY, ordered);
+
+        for (LinkPipeline.Stage stage : LinkPipeline.Stage.values()) {
+            pipeline.setWorkers(stage, 3);
+        }
+        linker.setPipeline(pipeline);
+        return linker;
+    }
+
+    @Test
+    public void orderedPipelineGivesLinksInQueryOrder() throws Exception {
+
+        final SimilaritySearchLinker unpipelined = (SimilaritySearchLinker) super.getLinker();
+        final SimilaritySearchLinker pipelined = withPipeline((SimilaritySearchLinker) super.getLinker(), true);
+
+        for (SimilaritySearchLinker linker : List.of(unpipelined, pipelined)) {
+            linker.setThreshold(Double.MAX_VALUE);
+            linker.addRecords(birth_records, death_records);
+        }
+
+        final List<Link> expected = toList(unpipelined.getLinks());
+        final List<Link> actual = toList(pipelined.getLinks());
+
+        assertEquals(expected.size(), actual.size());
+
+        // Links for each query record are produced together, in the order of the query records.
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getRecord2().getReferend(), actual.get(i).getRecord2().getReferend());
+        }
+    }
+
+    @Test
+    public void pipelineWorkIsDoneInGivenExecutor() throws Exception {
+
+        final SearchExecutor executor = new SearchExecutor(2);
+
+        try {
+            final LinkPipeline pipeline = new LinkPipeline(QUEUE_CAPACITY, true, executor);
+            assertEquals(2, pipeline.getWorkers(LinkPipeline.Stage.SEARCH));
+
+            final SimilaritySearchLinker linker = (SimilaritySearchLinker) super.getLinker();
+            linker.setPipeline(pipeline);
+            linker.setThreshold(Double.MAX_VALUE);
+            linker.addRecords(birth_records, death_records);
+
+            final long tasks_before = executor.getNumberOfTasks();
+            final List<Link> links = toList(linker.getLinks());
+
+            assertTrue(links.size() > 0);
+
+            // Each of the four steps is run in the executor for each query record.
+            assertEquals(tasks_before + 4L * death_records.size(), executor.getNumberOfTasks());
+
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static List<Link> toList(final Iterable<Link> links) {
+
+        final List<Link> list = new ArrayList<>();
+        for (Link link : links) {
+            list.add(link);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage;
+
+import org.junit.Test;
+import uk.ac.standrews.cs.population_linkage.searchStructures.*;
+import uk.ac.standrews.cs.utilities.measures.coreConcepts.Measure;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+
+public class PivotSelectorTest {
+
+    private static final int NUMBER_OF_DATA_ITEMS = 500;
+    private static final int NUMBER_OF_PIVOTS = 20;
+    private static final long SEED = 2352345L;
+
+    private final Measure<Double> measure = new Measure<>() {
+
+        @Override
+        public String getMeasureName() {
+            return "1D Euclidean";
+        }
+
+        @Override
+        public boolean maxDistanceIsOne() {
+            return false;
+        }
+
+        @Override
+        public double calculateDistance(final Double x1, final Double x2) {
+            return Math.abs(x1 - x2);
+        }
+    };
+
+    @Test
+    public void selectorsChooseDistinctPivotsFromCandidates() {
+
+        final List<Double> data = makeData();
+
+        for (PivotSelector<Double> selector : getSelectors()) {
+
+            final List<Double> pivots = selector.selectPivots(data, NUMBER_OF_PIVOTS);
+
+            assertEquals(selector.getSelectorName(), NUMBER_OF_PIVOTS, pivots.size());
+            assertEquals(selector.getSelectorName(), NUMBER_OF_PIVOTS, new HashSet<>(pivots).size());
+            assertTrue(selector.getSelectorName(), data.containsAll(pivots));
+        }
+    }
+
+    @Test
+    public void allCandidatesChosenIfTooFew() {
+
+        final List<Double> data = makeData().subList(0, NUMBER_OF_PIVOTS - 1);
+
+        for (PivotSelector<Double> selector : getSelectors()) {
+            assertEquals(data, selector.selectPivots(data, NUMBER_OF_PIVOTS));
+        }
+    }
+
+    @Test
+    public void pivotsNeverExcludeCandidatesWithinThreshold() {
+
+        final List<Double> data = makeData();
+
+        for (PivotSelector<Double> selector : getSelectors()) {
+
+            final PivotStatistics statistics = PivotStatistics.evaluate(measure, selector.selectPivots(data, NUMBER_OF_PIVOTS), data, 50, 200, 5.0, SEED);
+
+            assertTrue(statistics.getExclusionRate() > 0.0);
+            assertTrue(statistics.getExclusionEfficiency() <= 1.0);
+        }
+    }
+
+    private List<Double> makeData() {
+
+        final List<Double> data = new ArrayList<>();
+
+        for (int i = 0; i < NUMBER_OF_DATA_ITEMS; i++) {
+            data.add((double) i);
+        }
+        return data;
+    }
+
+    private List<PivotSelector<Double>> getSelectors() {
+
+        return List.of(
+                new RandomPivotSelector<>(SEED),
+                new FarthestFirstPivotSelector<>(measure, 100, SEED),
+                new MaxVariancePivotSelector<>(measure, 100, 20, SEED),
+                new ExclusionPowerPivotSelector<>(measure, 100, 5, SEED));
+    }
+}
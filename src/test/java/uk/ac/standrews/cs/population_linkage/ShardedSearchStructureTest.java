@@ -0,0 +1,121 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage;
+
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.standrews.cs.population_linkage.searchStructures.*;
+import uk.ac.standrews.cs.utilities.measures.coreConcepts.DataDistance;
+import uk.ac.standrews.cs.utilities.measures.coreConcepts.Measure;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+
+public class ShardedSearchStructureTest {
+
+    private static final int SHARD_WIDTH = 10;
+    private static final int UNKNOWN_YEAR = -1;
+
+    private Measure<Integer> measure;
+    private SearchStructureFactory<Integer> shard_factory;
+    private List<Integer> years;
+
+    @Before
+    public void setup() {
+
+        measure = new Measure<>() {
+
+            @Override
+            public String getMeasureName() {
+                return "year difference";
+            }
+
+            @Override
+            public boolean maxDistanceIsOne() {
+                return false;
+            }
+
+            @Override
+            public double calculateDistance(final Integer y1, final Integer y2) {
+                return Math.abs(y1 - y2);
+            }
+        };
+
+        // A single block, so each shard is searched exhaustively.
+        shard_factory = new BlockingSearchStructureFactory<>(measure, List.of(year -> ""));
+
+        years = new ArrayList<>();
+        for (int year = 1850; year < 1950; year += 3) years.add(year);
+        years.add(UNKNOWN_YEAR);
+    }
+
+    @Test
+    public void unrestrictedSearchFindsAllItems() {
+
+        final ShardedSearchStructure<Integer> search_structure = makeSearchStructure();
+
+        for (int query : List.of(1849, 1875, 1923)) {
+            assertEquals(bruteForceQuery(query, 20, null), getValues(search_structure.findWithinThreshold(query, 20)));
+        }
+    }
+
+    @Test
+    public void windowRestrictsSearchToOverlappingShards() {
+
+        final ShardedSearchStructure<Integer> search_structure = makeSearchStructure();
+        final YearRange window = new YearRange(1872, 1885);
+
+        final List<Integer> results = getValues(search_structure.findWithinThreshold(1880, 10000, window));
+
+        // Whole shards are searched, so items outside the window but in an overlapping shard may be found.
+        assertTrue(results.containsAll(bruteForceQuery(1880, 10000, window)));
+        assertTrue(results.contains(UNKNOWN_YEAR));
+        assertTrue(results.stream().allMatch(year -> year == UNKNOWN_YEAR || (year >= 1870 && year < 1890)));
+    }
+
+    @Test
+    public void addedItemsAreFoundInTheirShard() {
+
+        final ShardedSearchStructure<Integer> search_structure = makeSearchStructure();
+
+        search_structure.add(2001);
+        assertTrue(getValues(search_structure.findWithinThreshold(2000, 1, new YearRange(2000, 2005))).contains(2001));
+
+        assertTrue(search_structure.remove(2001));
+        assertEquals(List.of(UNKNOWN_YEAR), getValues(search_structure.findWithinThreshold(2000, 10000, new YearRange(2000, 2005))));
+    }
+
+    private ShardedSearchStructure<Integer> makeSearchStructure() {
+
+        return new ShardedSearchStructure<>(shard_factory, years, null, year -> year == UNKNOWN_YEAR ? null : year, SHARD_WIDTH);
+    }
+
+    private List<Integer> bruteForceQuery(final int query, final double threshold, final YearRange window) {
+
+        return years.stream().filter(year -> measure.distance(query, year) <= threshold)
+                .filter(year -> window == null || year == UNKNOWN_YEAR || window.overlaps(new YearRange(year, year))).sorted().collect(Collectors.toList());
+    }
+
+    private List<Integer> getValues(final List<DataDistance<Integer>> results) {
+
+        return results.stream().map(result -> result.value).sorted().collect(Collectors.toList());
+    }
+}
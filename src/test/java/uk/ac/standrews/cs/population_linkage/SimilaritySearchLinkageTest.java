@@ -16,12 +16,27 @@
  */
 package uk.ac.standrews.cs.population_linkage;
 
+import org.junit.Test;
 import uk.ac.standrews.cs.neoStorr.impl.LXP;
+import uk.ac.standrews.cs.neoStorr.impl.exceptions.BucketException;
+import uk.ac.standrews.cs.neoStorr.impl.exceptions.RepositoryException;
 import uk.ac.standrews.cs.neoStorr.interfaces.IStoreReference;
 import uk.ac.standrews.cs.population_linkage.compositeMeasures.LXPMeasure;
+import uk.ac.standrews.cs.population_linkage.linkageRunners.BitBlasterLinkageRunner;
+import uk.ac.standrews.cs.population_linkage.linkageRunners.CandidateResolver;
 import uk.ac.standrews.cs.population_linkage.linkers.SimilaritySearchLinker;
 import uk.ac.standrews.cs.population_linkage.searchStructures.SearchStructureFactory;
 import uk.ac.standrews.cs.population_linkage.supportClasses.Link;
+import uk.ac.standrews.cs.population_linkage.supportClasses.LinkageConfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
 
 public abstract class SimilaritySearchLinkageTest extends LinkageTest {
 
@@ -37,6 +52,94 @@ public abstract class SimilaritySearchLinkageTest extends LinkageTest {
         return (link_id1.equals(id1) && link_id2.equals(id2)) || (link_id1.equals(id2) && link_id2.equals(id1));
     }
 
+    @Test
+    public void candidateResolutionLinksStoredRecordsInOneRoundOnly() throws Exception {
+
+        linker.setThreshold(4.0);
+        linker.addRecords(birth_records, death_records);
+
+        final CandidateResolver resolver = new CandidateResolver(linker.getListsOfLinks(), Arrays.asList(0, 1), Arrays.asList(0, 1), null, false);
+        final List<Link> links = resolver.resolve(4.0, 1, 1);
+
+        // Death3 is identical to birth3, so they are linked in the first round, after which birth3 isn't available.
+        assertTrue(containsPair(links, birth3, death3));
+        for (Link link : links) {
+            if (involves(link, birth3) || involves(link, death3)) {
+                assertEquals(0.0, link.getDistance());
+            }
+        }
+
+        // Each query record is linked only to candidates at a single distance.
+        for (LXP death_record : death_records) {
+            final Set<Double> distances = new HashSet<>();
+            for (Link link : links) {
+                if (involves(link, death_record)) distances.add(link.getDistance());
+            }
+            assertTrue(distances.size() <= 1);
+        }
+    }
+
+    @Test
+    public void identityListsRunKeepsBestMatchOnly() throws Exception {
+
+        final int original_best_matches = LinkageConfig.BEST_MATCHES_PER_QUERY;
+        LinkageConfig.BEST_MATCHES_PER_QUERY = 1;
+
+        try {
+            linker.setThreshold(4.0);
+            linker.addRecords(birth_records, death_records);
+
+            final List<Link> links = new ArrayList<>();
+            new BitBlasterLinkageRunner().linkLists(linker, null, (recipe, link) -> links.add(link), false, 0, true, true);
+
+            for (LXP death_record : death_records) {
+                assertTrue(numberOfLinksInvolving(links, death_record) <= 1);
+            }
+
+            // Death1 is as close to birth2 as to birth4, but only one of them is linked.
+            assertEquals(1, numberOfLinksInvolving(links, death1));
+
+        } finally {
+            LinkageConfig.BEST_MATCHES_PER_QUERY = original_best_matches;
+        }
+    }
+
+    @Test
+    public void batchedSearchGivesSameLinksAsSingleQueries() throws Exception {
+
+        linker.setThreshold(4.0);
+        linker.addRecords(birth_records, death_records);
+
+        final List<Link> single_query_links = new ArrayList<>();
+        for (Link link : linker.getLinks()) {
+            single_query_links.add(link);
+        }
+
+        // Smaller than the number of query records, so that more than one batch is searched.
+        ((SimilaritySearchLinker) linker).setQueryBatchSize(2);
+
+        int number_of_batched_links = 0;
+        for (Link link : linker.getLinks()) {
+            number_of_batched_links++;
+            assertTrue(containsPair(single_query_links, link.getRecord1().getReferend(), link.getRecord2().getReferend()));
+        }
+        assertEquals(single_query_links.size(), number_of_batched_links);
+    }
+
+    private static int numberOfLinksInvolving(final List<Link> links, final LXP record) throws BucketException, RepositoryException {
+
+        int count = 0;
+        for (Link link : links) {
+            if (involves(link, record)) count++;
+        }
+        return count;
+    }
+
+    private static boolean involves(final Link link, final LXP record) throws BucketException, RepositoryException {
+
+        return link.getRecord1().getReferend().equals(record) || link.getRecord2().getReferend().equals(record);
+    }
+
      class TestLinker extends SimilaritySearchLinker {
 
         TestLinker(SearchStructureFactory<LXP> search_structure_factory, double threshold, LXPMeasure measure, int number_of_progress_updates) {
@@ -23,16 +23,18 @@ import uk.ac.standrews.cs.utilities.measures.coreConcepts.DataDistance;
 import uk.ac.standrews.cs.utilities.measures.coreConcepts.Measure;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
-import static junit.framework.TestCase.fail;
+import static junit.framework.TestCase.*;
 
 public abstract class SimilaritySearchTest {
 
-    private static final double MAX_SIDE_OF_SQUARE = 10.0;
+    static final double MAX_SIDE_OF_SQUARE = 10.0;
     private static final double MAX_THRESHOLD = 12.0;
+    private static final double DELTA = 0.0000001;
 
-    private Measure<Point> measure;
+    Measure<Point> measure;
 
     @Before
     public void setup() {
@@ -86,6 +88,159 @@ public abstract class SimilaritySearchTest {
         }
     }
 
+    @Test
+    public void batchSimilaritySearchGivesSameResultsAsSingleQueries() {
+
+        final List<Point> data_points = generatePointGrid(MAX_SIDE_OF_SQUARE);
+        final List<Point> queries = getQueryPoints();
+
+        for (int number_of_reference_points : getReferencePointsOptions(data_points.size())) {
+
+            final SearchStructure<Point> search_structure = getSearchStructure(measure, data_points, getReferencePoints(data_points, number_of_reference_points));
+
+            for (double threshold = 0.0; threshold <= MAX_THRESHOLD; threshold += 3) {
+
+                final List<List<DataDistance<Point>>> batch_results = search_structure.findWithinThreshold(queries, threshold);
+
+                assertEquals(queries.size(), batch_results.size());
+
+                for (int i = 0; i < queries.size(); i++) {
+                    final List<Point> expected = getPoints(search_structure.findWithinThreshold(queries.get(i), threshold));
+                    assertTrue(checkSamePoints(expected, getPoints(batch_results.get(i))));
+                }
+            }
+
+            search_structure.terminate();
+        }
+    }
+
+    @Test
+    public void filteredBatchSearchGivesSameResultsAsFilteredSingleQueries() {
+
+        final List<Point> data_points = generatePointGrid(MAX_SIDE_OF_SQUARE);
+        final List<Point> queries = getQueryPoints();
+
+        for (int number_of_reference_points : getReferencePointsOptions(data_points.size())) {
+
+            final SearchStructure<Point> search_structure = getSearchStructure(measure, data_points, getReferencePoints(data_points, number_of_reference_points));
+
+            for (double threshold = 0.0; threshold <= MAX_THRESHOLD; threshold += 3) {
+
+                final List<List<Point>> batch_results = new ArrayList<>();
+                for (int i = 0; i < queries.size(); i++) {
+                    batch_results.add(Collections.synchronizedList(new ArrayList<>()));
+                }
+
+                // Each query only accepts points to its left.
+                search_structure.findWithinThreshold(queries, threshold, i -> point -> point.x <= queries.get(i).x, i -> (point, distance) -> batch_results.get(i).add(point));
+
+                for (int i = 0; i < queries.size(); i++) {
+
+                    final Point query = queries.get(i);
+                    final List<Point> expected = new ArrayList<>();
+                    for (Point point : getPoints(search_structure.findWithinThreshold(query, threshold))) {
+                        if (point.x <= query.x) expected.add(point);
+                    }
+                    assertTrue(checkSamePoints(expected, batch_results.get(i)));
+                }
+            }
+
+            search_structure.terminate();
+        }
+    }
+
+    @Test
+    public void consumerSearchGivesSameResultsAsListSearch() {
+
+        final List<Point> data_points = generatePointGrid(MAX_SIDE_OF_SQUARE);
+
+        for (int number_of_reference_points : getReferencePointsOptions(data_points.size())) {
+
+            final SearchStructure<Point> search_structure = getSearchStructure(measure, data_points, getReferencePoints(data_points, number_of_reference_points));
+
+            for (Point query : getQueryPoints()) {
+                for (double threshold = 0.0; threshold <= MAX_THRESHOLD; threshold += 3) {
+
+                    final List<Point> consumed = new ArrayList<>();
+                    search_structure.findWithinThreshold(query, threshold, (point, distance) -> {
+                        assertEquals(measure.distance(query, point), distance, DELTA);
+                        consumed.add(point);
+                    });
+
+                    assertTrue(checkSamePoints(getPoints(search_structure.findWithinThreshold(query, threshold)), consumed));
+                }
+            }
+
+            search_structure.terminate();
+        }
+    }
+
+    @Test
+    public void nearestNeighbourSearchGivesCorrectResults() {
+
+        final List<Point> data_points = generatePointGrid(MAX_SIDE_OF_SQUARE);
+
+        for (int number_of_reference_points : getReferencePointsOptions(data_points.size())) {
+
+            final SearchStructure<Point> search_structure = getSearchStructure(measure, data_points, getReferencePoints(data_points, number_of_reference_points));
+
+            for (Point query : getQueryPoints()) {
+                for (int k : new int[]{1, 5, 20, data_points.size() + 1}) {
+
+                    final List<DataDistance<Point>> results = search_structure.findNearest(query, k);
+                    final List<Double> expected = bruteForceNearestDistances(data_points, query, k);
+
+                    assertEquals(expected.size(), results.size());
+                    for (int i = 0; i < results.size(); i++) {
+                        assertEquals(expected.get(i), results.get(i).distance, DELTA);
+                    }
+                }
+            }
+
+            search_structure.terminate();
+        }
+    }
+
+    @Test
+    public void searchesReflectAddedAndRemovedPoints() {
+
+        final List<Point> data_points = generatePointGrid(MAX_SIDE_OF_SQUARE);
+        final List<Point> initial_points = data_points.subList(0, data_points.size() / 2);
+        final List<Point> added_points = data_points.subList(data_points.size() / 2, data_points.size());
+
+        for (int number_of_reference_points : getReferencePointsOptions(initial_points.size())) {
+
+            final SearchStructure<Point> search_structure = getSearchStructure(measure, initial_points, getReferencePoints(initial_points, number_of_reference_points));
+
+            search_structure.add(added_points.get(0));
+            search_structure.addAll(added_points.subList(1, added_points.size()));
+
+            final List<Point> remaining_points = new ArrayList<>();
+            for (int i = 0; i < data_points.size(); i++) {
+                if (i % 3 == 0) assertTrue(search_structure.remove(data_points.get(i)));
+                else remaining_points.add(data_points.get(i));
+            }
+            assertFalse(search_structure.remove(new Point(MAX_SIDE_OF_SQUARE * 10, 0)));
+
+            for (Point query : getQueryPoints()) {
+
+                for (double threshold = 0.0; threshold <= MAX_THRESHOLD; threshold += 3) {
+                    assertTrue(checkSamePoints(bruteForceQuery(remaining_points, query, threshold), getPoints(search_structure.findWithinThreshold(query, threshold))));
+                }
+
+                final List<DataDistance<Point>> nearest = search_structure.findNearest(query, 5);
+                final List<Double> expected = bruteForceNearestDistances(remaining_points, query, 5);
+
+                assertEquals(expected.size(), nearest.size());
+                for (int i = 0; i < nearest.size(); i++) {
+                    assertEquals(expected.get(i), nearest.get(i).distance, DELTA);
+                }
+            }
+
+            search_structure.terminate();
+        }
+    }
+
     private List<Point> getQueryPoints() {
 
         List<Point> results = generatePointGrid(MAX_SIDE_OF_SQUARE);
@@ -124,7 +279,7 @@ public abstract class SimilaritySearchTest {
         }
     }
 
-    private List<Point> getPoints(final List<DataDistance<Point>> data_distances) {
+    List<Point> getPoints(final List<DataDistance<Point>> data_distances) {
 
         List<Point> results = new ArrayList<>();
         for (DataDistance<Point> data_distance : data_distances) results.add(data_distance.value);
@@ -144,7 +299,7 @@ public abstract class SimilaritySearchTest {
         return builder.toString();
     }
 
-    private List<Point> bruteForceQuery(final List<Point> points, final Point query, final double threshold) {
+    List<Point> bruteForceQuery(final List<Point> points, final Point query, final double threshold) {
 
         List<Point> results = new ArrayList<>();
 
@@ -158,7 +313,19 @@ public abstract class SimilaritySearchTest {
         return results;
     }
 
-    private boolean checkSamePoints(final List<Point> ground_truth, final List<Point> results) {
+    private List<Double> bruteForceNearestDistances(final List<Point> points, final Point query, final int k) {
+
+        List<Double> distances = new ArrayList<>();
+
+        for (Point point : points) {
+            distances.add(measure.distance(point, query));
+        }
+        Collections.sort(distances);
+
+        return distances.subList(0, Math.min(k, distances.size()));
+    }
+
+    boolean checkSamePoints(final List<Point> ground_truth, final List<Point> results) {
 
         if (ground_truth.size() != results.size()) return false;
 
@@ -172,7 +339,7 @@ public abstract class SimilaritySearchTest {
         return true;
     }
 
-    private List<Point> generatePointGrid(final double side_of_square) {
+    List<Point> generatePointGrid(final double side_of_square) {
 
         List<Point> points = new ArrayList<>();
 
@@ -198,9 +365,15 @@ public abstract class SimilaritySearchTest {
             this.y = y;
         }
 
+        // Exact, so as to be consistent with hashCode; search results are the data points themselves, not copies.
         @Override
         public boolean equals(final Object obj) {
-            return obj instanceof Point && Math.abs(((Point) obj).x - x) < DELTA && Math.abs(((Point) obj).y - y) < DELTA;
+            return obj instanceof Point && Double.compare(((Point) obj).x, x) == 0 && Double.compare(((Point) obj).y, y) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Double.hashCode(x) * 31 + Double.hashCode(y);
         }
 
         @Override
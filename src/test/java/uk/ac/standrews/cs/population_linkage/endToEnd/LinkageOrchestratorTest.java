@@ -0,0 +1,91 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.endToEnd;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.standrews.cs.population_linkage.supportClasses.LinkageConfig;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LinkageOrchestratorTest {
+
+    private LinkageOrchestrator orchestrator;
+    private int tile_size;
+
+    @Before
+    public void setup() {
+
+        orchestrator = new LinkageOrchestrator("test", 2);
+        tile_size = LinkageConfig.BRUTE_FORCE_TILE_SIZE;
+    }
+
+    @After
+    public void tearDown() {
+
+        orchestrator.close();
+        LinkageConfig.BRUTE_FORCE_TILE_SIZE = tile_size;
+    }
+
+    @Test
+    public void dependentStageSkippedWhenStageFails() {
+
+        orchestrator.addTask("first", () -> {});
+        orchestrator.addTask("second", () -> { throw new RuntimeException("failed"); }, "first");
+        orchestrator.addTask("third", () -> {}, "second");
+
+        assertFalse(orchestrator.run());
+
+        assertEquals(LinkageOrchestrator.Status.SUCCEEDED, orchestrator.getStatus("first"));
+        assertEquals(LinkageOrchestrator.Status.FAILED, orchestrator.getStatus("second"));
+        assertEquals(LinkageOrchestrator.Status.SKIPPED, orchestrator.getStatus("third"));
+    }
+
+    @Test
+    public void stageThrowingErrorFails() {
+
+        orchestrator.addTask("first", () -> { throw new AssertionError("failed"); });
+        orchestrator.addTask("second", () -> {}, "first");
+
+        assertFalse(orchestrator.run());
+
+        assertEquals(LinkageOrchestrator.Status.FAILED, orchestrator.getStatus("first"));
+        assertEquals(LinkageOrchestrator.Status.SKIPPED, orchestrator.getStatus("second"));
+    }
+
+    @Test
+    public void stageChangingSettingFails() {
+
+        orchestrator.addTask("first", () -> LinkageConfig.BRUTE_FORCE_TILE_SIZE = tile_size + 1);
+
+        assertFalse(orchestrator.run());
+        assertEquals(LinkageOrchestrator.Status.FAILED, orchestrator.getStatus("first"));
+    }
+
+    @Test
+    public void settingsMayChangeBetweenRuns() {
+
+        orchestrator.addTask("first", () -> {});
+        assertTrue(orchestrator.run());
+
+        LinkageConfig.BRUTE_FORCE_TILE_SIZE = tile_size + 1;
+        assertTrue(orchestrator.run());
+    }
+}
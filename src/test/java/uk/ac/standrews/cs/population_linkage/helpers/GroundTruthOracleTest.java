@@ -0,0 +1,192 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.helpers;
+
+import org.junit.Test;
+import uk.ac.standrews.cs.neoStorr.impl.LXP;
+import uk.ac.standrews.cs.neoStorr.impl.LXPReference;
+import uk.ac.standrews.cs.neoStorr.interfaces.IStoreReference;
+import uk.ac.standrews.cs.population_linkage.characterisation.LinkStatus;
+import uk.ac.standrews.cs.population_linkage.linkageRecipes.LinkageRecipe;
+import uk.ac.standrews.cs.population_linkage.supportClasses.Link;
+import uk.ac.standrews.cs.population_records.record_types.Birth;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static uk.ac.standrews.cs.population_linkage.linkageRecipes.LinkageRecipe.pair;
+
+public class GroundTruthOracleTest {
+
+    // The fields given values in the test records, in order.
+    private static final int[] FIELDS = {Birth.MOTHER_IDENTITY, Birth.FATHER_IDENTITY, Birth.CHILD_IDENTITY, Birth.MOTHER_BIRTH_RECORD_IDENTITY};
+
+    // Matching on the first two fields of both records, or on the third field of the stored record and the fourth of
+    // the query record.
+    private static final List<List<LinkageRecipe.Pair>> TRUE_MATCH_ALTERNATIVES = List.of(
+            List.of(pair(Birth.MOTHER_IDENTITY, Birth.MOTHER_IDENTITY), pair(Birth.FATHER_IDENTITY, Birth.FATHER_IDENTITY)),
+            List.of(pair(Birth.CHILD_IDENTITY, Birth.MOTHER_BIRTH_RECORD_IDENTITY)));
+
+    private static final String[] VALUES = {"", "", "a", "b", "c"};
+
+    @Test
+    public void emptyIdentityFieldsDontMatch() throws Exception {
+
+        final LXP stored_record = new TestRecord("", "", "", "");
+        final LXP query_record = new TestRecord("", "", "", "");
+        final LXP partly_empty_query_record = new TestRecord("", "b", "", "");
+        final LXP partly_empty_stored_record = new TestRecord("", "b", "", "");
+
+        final GroundTruthOracle oracle = new GroundTruthOracle(TRUE_MATCH_ALTERNATIVES,
+                List.of(stored_record, partly_empty_stored_record), List.of(query_record, partly_empty_query_record), false);
+
+        assertFalse(oracle.isTrueLink(link(stored_record, query_record)));
+        assertFalse(oracle.isTrueLink(link(partly_empty_stored_record, partly_empty_query_record)));
+        assertEquals(0, oracle.getNumberOfTrueLinks());
+
+        assertFalse(isTrueMatch(partly_empty_stored_record, partly_empty_query_record));
+    }
+
+    @Test
+    public void pairMatchingOnBothAlternativesIsCountedOnce() throws Exception {
+
+        final LXP stored_record = new TestRecord("a", "b", "c", "");
+        final LXP query_record = new TestRecord("a", "b", "", "c");
+
+        final GroundTruthOracle oracle = new GroundTruthOracle(TRUE_MATCH_ALTERNATIVES, List.of(stored_record), List.of(query_record), false);
+
+        assertTrue(oracle.isTrueLink(link(stored_record, query_record)));
+        assertEquals(1, oracle.getNumberOfTrueLinks());
+    }
+
+    @Test
+    public void symmetricPairIsCountedOnceAndNotWithItself() throws Exception {
+
+        final LXP record1 = new TestRecord("a", "b", "c", "c");
+        final LXP record2 = new TestRecord("a", "b", "c", "c");
+        final List<LXP> records = List.of(record1, record2);
+
+        final GroundTruthOracle oracle = new GroundTruthOracle(TRUE_MATCH_ALTERNATIVES, records, records, true);
+
+        assertTrue(oracle.isTrueLink(link(record1, record2)));
+        assertTrue(oracle.isTrueLink(link(record2, record1)));
+        assertEquals(1, oracle.getNumberOfTrueLinks());
+    }
+
+    @Test
+    public void recordsNotKnownToOracleGiveNoAnswer() throws Exception {
+
+        final LXP stored_record = new TestRecord("a", "b", "c", "c");
+        final LXP query_record = new TestRecord("a", "b", "c", "c");
+        final LXP other_record = new TestRecord("a", "b", "c", "c");
+
+        final GroundTruthOracle oracle = new GroundTruthOracle(TRUE_MATCH_ALTERNATIVES, List.of(stored_record), List.of(query_record), false);
+
+        assertNull(oracle.isTrueLink(link(other_record, query_record)));
+        assertNull(oracle.isTrueLink(link(stored_record, other_record)));
+
+        // The records the wrong way round.
+        assertNull(oracle.isTrueLink(link(query_record, stored_record)));
+    }
+
+    @Test
+    public void sameAnswersAsTrueMatch() throws Exception {
+
+        for (int seed = 0; seed < 100; seed++) {
+
+            final Random random = new Random(seed);
+            final List<LXP> stored_records = randomRecords(random, 15);
+            final List<LXP> query_records = randomRecords(random, 15);
+
+            final GroundTruthOracle oracle = new GroundTruthOracle(TRUE_MATCH_ALTERNATIVES, stored_records, query_records, false);
+
+            long count = 0;
+            for (LXP stored_record : stored_records) {
+                for (LXP query_record : query_records) {
+
+                    final boolean true_match = isTrueMatch(stored_record, query_record);
+                    assertEquals("seed " + seed, true_match, oracle.isTrueLink(link(stored_record, query_record)));
+                    if (true_match) count++;
+                }
+            }
+            assertEquals("seed " + seed, count, oracle.getNumberOfTrueLinks());
+        }
+    }
+
+    @Test
+    public void sameSymmetricCountAsTrueMatch() throws Exception {
+
+        for (int seed = 0; seed < 100; seed++) {
+
+            final List<LXP> records = randomRecords(new Random(seed), 20);
+            final GroundTruthOracle oracle = new GroundTruthOracle(TRUE_MATCH_ALTERNATIVES, records, records, true);
+
+            // As the recipes count symmetric ground truth links, each pair once with the earlier record first.
+            long count = 0;
+            for (int i = 0; i < records.size() - 1; i++) {
+                for (int j = i + 1; j < records.size(); j++) {
+
+                    final boolean true_match = isTrueMatch(records.get(i), records.get(j));
+                    assertEquals("seed " + seed, true_match, oracle.isTrueLink(link(records.get(i), records.get(j))));
+                    if (true_match) count++;
+                }
+            }
+            assertEquals("seed " + seed, count, oracle.getNumberOfTrueLinks());
+        }
+    }
+
+    private static boolean isTrueMatch(final LXP record1, final LXP record2) {
+
+        return LinkageRecipe.trueMatch(record1, record2, TRUE_MATCH_ALTERNATIVES) == LinkStatus.TRUE_MATCH;
+    }
+
+    private static List<LXP> randomRecords(final Random random, final int number_of_records) {
+
+        final List<LXP> records = new ArrayList<>();
+        for (int i = 0; i < number_of_records; i++) {
+            records.add(new TestRecord(randomValue(random), randomValue(random), randomValue(random), randomValue(random)));
+        }
+        return records;
+    }
+
+    private static String randomValue(final Random random) {
+
+        return VALUES[random.nextInt(VALUES.length)];
+    }
+
+    private static Link link(final LXP record1, final LXP record2) throws Exception {
+
+        return new Link(record1, "stored", record2, "query", 1.0f, "test", 0.0, "test");
+    }
+
+    private static class TestRecord extends Birth {
+
+        TestRecord(final String... values) {
+
+            for (int i = 0; i < values.length; i++) {
+                put(FIELDS[i], values[i]);
+            }
+        }
+
+        @Override
+        public IStoreReference<LXP> getThisRef() {
+            return new LXPReference<>("test-repo", "test-bucket", getId());
+        }
+    }
+}
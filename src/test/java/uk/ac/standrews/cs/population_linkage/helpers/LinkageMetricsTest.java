@@ -0,0 +1,101 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.helpers;
+
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.standrews.cs.utilities.measures.coreConcepts.Measure;
+
+import static org.junit.Assert.assertEquals;
+
+public class LinkageMetricsTest {
+
+    private LinkageMetrics metrics;
+    private Measure<Integer> measure;
+
+    @Before
+    public void setup() {
+
+        metrics = new LinkageMetrics();
+
+        measure = metrics.countDistances(new Measure<>() {
+
+            @Override
+            public String getMeasureName() {
+                return "difference";
+            }
+
+            @Override
+            public boolean maxDistanceIsOne() {
+                return false;
+            }
+
+            @Override
+            public double calculateDistance(final Integer i1, final Integer i2) {
+                return Math.abs(i1 - i2);
+            }
+        });
+    }
+
+    @Test
+    public void onlyDistancesDuringQueryAreChargedToIt() {
+
+        // As when building an index before linking.
+        evaluateDistances(5);
+
+        final LinkageMetrics.QueryCounts counts = metrics.startQuery();
+        evaluateDistances(3);
+        metrics.stopQuery(counts);
+
+        evaluateDistances(2);
+        metrics.recordQuery(counts, 1);
+
+        assertEquals(3, counts.getDistanceEvaluations());
+        assertEquals(1, metrics.getCandidatesPerQuery().getCount(LinkageMetrics.Histogram.getBucket(3)));
+        assertEquals(10.0, metrics.getDistanceEvaluationsPerQuery(), 0.0);
+    }
+
+    @Test
+    public void queriesRecordedInOtherThreadsAreChargedCorrectly() throws InterruptedException {
+
+        // Searched in one thread and recorded in another, as when query records are searched in batches.
+        final LinkageMetrics.QueryCounts counts1 = metrics.startQuery();
+        evaluateDistances(2);
+        metrics.stopQuery(counts1);
+
+        final LinkageMetrics.QueryCounts counts2 = metrics.startQuery();
+        evaluateDistances(9);
+        metrics.stopQuery(counts2);
+
+        final Thread recorder = new Thread(() -> {
+            metrics.recordQuery(counts2, 0);
+            metrics.recordQuery(counts1, 0);
+        });
+        recorder.start();
+        recorder.join();
+
+        assertEquals(1, metrics.getCandidatesPerQuery().getCount(LinkageMetrics.Histogram.getBucket(2)));
+        assertEquals(1, metrics.getCandidatesPerQuery().getCount(LinkageMetrics.Histogram.getBucket(9)));
+    }
+
+    private void evaluateDistances(final int number_of_evaluations) {
+
+        for (int i = 0; i < number_of_evaluations; i++) {
+            measure.distance(i, i + 1);
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.linkageRunners;
+
+import org.junit.Test;
+import uk.ac.standrews.cs.neoStorr.impl.LXP;
+import uk.ac.standrews.cs.neoStorr.impl.LXPMetaData;
+import uk.ac.standrews.cs.neoStorr.impl.LXPReference;
+import uk.ac.standrews.cs.neoStorr.impl.StaticLXP;
+import uk.ac.standrews.cs.neoStorr.interfaces.IStoreReference;
+import uk.ac.standrews.cs.population_linkage.helpers.RecordFiltering;
+import uk.ac.standrews.cs.population_linkage.supportClasses.Link;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class CandidateResolverTest {
+
+    private static final List<Integer> FIELDS = List.of(0, 1, 2);
+    private static final double[] DISTANCES = {0.0, 0.05, 0.1, 0.1, 0.2, 0.3, 0.45};
+
+    @Test
+    public void closestCandidatesWithMostFieldsAreLinkedFirst() throws Exception {
+
+        final LXP stored1 = new TestRecord("a", "b", "c");
+        final LXP stored2 = new TestRecord("a", "b", "");
+        final LXP query1 = new TestRecord("a", "b", "c");
+        final LXP query2 = new TestRecord("a", "b", "c");
+
+        // Query 1's closer candidate has only two fields populated, so its further candidate with three is linked in
+        // the first round over fields, at a higher threshold than query 2's link.
+        final Link link1 = link(stored2, query1, 0.1);
+        final Link link2 = link(stored1, query1, 0.3);
+        final Link link3 = link(stored1, query2, 0.0);
+
+        final List<List<Link>> candidates = List.of(List.of(link1, link2), List.of(link3));
+
+        assertEquals(List.of(link3, link2), resolve(candidates, 0.5, 2, 1));
+        assertEquals(oldResolve(candidates, 0.5, 2, 1), resolve(candidates, 0.5, 2, 1));
+    }
+
+    @Test
+    public void candidatesAtSameDistanceAsClosestAreAllLinked() throws Exception {
+
+        final LXP stored1 = new TestRecord("a", "b", "c");
+        final LXP stored2 = new TestRecord("a", "b", "c");
+        final LXP stored3 = new TestRecord("a", "b", "c");
+        final LXP query = new TestRecord("a", "b", "c");
+
+        final Link link1 = link(stored1, query, 0.2);
+        final Link link2 = link(stored2, query, 0.2);
+        final Link link3 = link(stored3, query, 0.25);
+
+        final List<List<Link>> candidates = List.of(List.of(link3, link2, link1));
+
+        assertEquals(List.of(link2, link1), resolve(candidates, 0.5, 2, 2));
+        assertEquals(oldResolve(candidates, 0.5, 2, 2), resolve(sorted(candidates), 0.5, 2, 2));
+    }
+
+    @Test
+    public void storedRecordIsUnavailableOnlyFromNextRound() throws Exception {
+
+        final LXP stored1 = new TestRecord("a", "b", "c");
+        final LXP stored2 = new TestRecord("a", "b", "c");
+        final LXP query1 = new TestRecord("a", "b", "c");
+        final LXP query2 = new TestRecord("a", "b", "c");
+        final LXP query3 = new TestRecord("a", "b", "c");
+
+        // Stored record 1 is linked to queries 1 and 2 in the same round, but not to query 3 in a later one.
+        final Link link1 = link(stored1, query1, 0.0);
+        final Link link2 = link(stored1, query2, 0.0);
+        final Link link3 = link(stored1, query3, 0.1);
+        final Link link4 = link(stored2, query3, 0.3);
+
+        final List<List<Link>> candidates = List.of(List.of(link1), List.of(link2), List.of(link3, link4));
+
+        assertEquals(List.of(link1, link2, link4), resolve(candidates, 0.5, 2, 2));
+        assertEquals(oldResolve(candidates, 0.5, 2, 2), resolve(candidates, 0.5, 2, 2));
+    }
+
+    @Test(timeout = 10000)
+    public void zeroThresholdGivesOneRoundPerNumberOfFields() throws Exception {
+
+        final LXP stored1 = new TestRecord("a", "b", "c");
+        final LXP stored2 = new TestRecord("a", "b", "");
+        final LXP query1 = new TestRecord("a", "b", "c");
+        final LXP query2 = new TestRecord("a", "b", "c");
+
+        final Link link1 = link(stored1, query1, 0.0);
+        final Link link2 = link(stored1, query2, 0.1);
+        final Link link3 = link(stored2, query2, 0.0);
+
+        final List<List<Link>> candidates = List.of(List.of(link1), List.of(link3, link2));
+
+        assertEquals(List.of(link1, link3), resolve(candidates, 0.0, 2, 1));
+        assertEquals(oldResolve(candidates, 0.0, 2, 1), resolve(candidates, 0.0, 2, 1));
+    }
+
+    @Test
+    public void sameLinksAsOldResolution() throws Exception {
+
+        for (int seed = 0; seed < 200; seed++) {
+
+            final List<List<Link>> candidates = randomCandidates(new Random(seed));
+
+            for (double max_threshold : new double[]{0.0, 0.3, 0.5}) {
+                assertEquals("seed " + seed, oldResolve(candidates, max_threshold, 2, 0), resolve(candidates, max_threshold, 2, 0));
+            }
+        }
+    }
+
+    private static List<Link> resolve(final List<List<Link>> candidates, final double max_threshold, final int most_fields_required, final int fewest_fields_required) {
+
+        return new CandidateResolver(candidates, FIELDS, FIELDS, null, false).resolve(max_threshold, most_fields_required, fewest_fields_required);
+    }
+
+    /**
+     * The resolution done by processListsOfLists before CandidateResolver replaced it, given candidate lists sorted by
+     * distance. Two differences are deliberate: a linked query record is removed by its own id, as was intended,
+     * rather than by that of its stored record, and a zero threshold gives one round rather than looping forever.
+     */
+    private static List<Link> oldResolve(final List<List<Link>> candidates, final double max_t, final int most_fields_required, final int fewest_fields_required) throws Exception {
+
+        final List<Link> linked_pairs = new ArrayList<>();
+        final List<LXP> previously_matched = new ArrayList<>();
+
+        final Map<Long, List<Link>> map_of_links = new LinkedHashMap<>();
+        for (List<Link> list_of_links : candidates) {
+            if (!list_of_links.isEmpty()) map_of_links.put(list_of_links.get(0).getRecord2().getReferend().getId(), list_of_links);
+        }
+
+        for (int required_fields = most_fields_required; required_fields >= fewest_fields_required; required_fields--) {
+            for (double threshold = 0.0; threshold <= max_t; threshold += (max_t / 10)) {
+
+                final List<LXP> matched_this_round = new ArrayList<>();
+
+                for (Long key : new ArrayList<>(map_of_links.keySet())) {
+
+                    final List<Link> list_of_links = map_of_links.get(key);
+                    final int index = getClosestAcceptable(list_of_links, threshold, required_fields, previously_matched);
+
+                    if (index != -1) {
+                        final double closest_dist = list_of_links.get(index).getDistance();
+                        for (Link link : list_of_links.subList(index, list_of_links.size())) {
+                            if (link.getDistance() != closest_dist) break;
+                            if (acceptable(link, threshold, required_fields, previously_matched)) {
+                                linked_pairs.add(link);
+                                matched_this_round.add(link.getRecord1().getReferend());
+                            }
+                        }
+                        map_of_links.remove(key);
+                    }
+                }
+                previously_matched.addAll(matched_this_round);
+
+                if (max_t == 0) break;
+            }
+        }
+        return linked_pairs;
+    }
+
+    private static int getClosestAcceptable(final List<Link> list_of_links, final double threshold, final int fields, final List<LXP> previously_matched) throws Exception {
+
+        int index = 0;
+        for (Link link : list_of_links) {
+            if (acceptable(link, threshold, fields, previously_matched)) return index;
+            index++;
+        }
+        return -1;
+    }
+
+    private static boolean acceptable(final Link link, final double threshold, final int required_fields, final List<LXP> previously_matched) throws Exception {
+
+        final LXP rec1 = link.getRecord1().getReferend();
+        final LXP rec2 = link.getRecord2().getReferend();
+
+        return link.getDistance() <= threshold && numberSamePopulated(rec1, rec2) > required_fields && !previously_matched.contains(rec1);
+    }
+
+    private static int numberSamePopulated(final LXP record1, final LXP record2) {
+
+        int same_populated = 0;
+        for (int field : FIELDS) {
+            if (!RecordFiltering.isMissing(record1.getString(field)) && !RecordFiltering.isMissing(record2.getString(field))) same_populated++;
+        }
+        return same_populated;
+    }
+
+    private static List<List<Link>> randomCandidates(final Random random) throws Exception {
+
+        final List<LXP> stored_records = randomRecords(random, 6);
+        final List<LXP> query_records = randomRecords(random, 8);
+
+        final List<List<Link>> candidates = new ArrayList<>();
+
+        for (LXP query_record : query_records) {
+
+            final List<Link> links = new ArrayList<>();
+            for (LXP stored_record : stored_records) {
+                if (random.nextInt(3) > 0) links.add(link(stored_record, query_record, DISTANCES[random.nextInt(DISTANCES.length)]));
+            }
+            candidates.add(links);
+        }
+        return sorted(candidates);
+    }
+
+    private static List<LXP> randomRecords(final Random random, final int number_of_records) {
+
+        final List<LXP> records = new ArrayList<>();
+        for (int i = 0; i < number_of_records; i++) {
+            records.add(new TestRecord(randomValue(random), randomValue(random), randomValue(random)));
+        }
+        return records;
+    }
+
+    private static String randomValue(final Random random) {
+
+        return random.nextInt(4) == 0 ? "" : "x";
+    }
+
+    private static List<List<Link>> sorted(final List<List<Link>> candidates) {
+
+        final List<List<Link>> sorted = new ArrayList<>();
+        for (List<Link> links : candidates) {
+            final List<Link> list = new ArrayList<>(links);
+            list.sort(Comparator.comparingDouble(Link::getDistance));
+            sorted.add(list);
+        }
+        return sorted;
+    }
+
+    private static Link link(final LXP stored_record, final LXP query_record, final double distance) throws Exception {
+
+        return new Link(stored_record, "stored", query_record, "query", 1.0f, "test", distance, "test");
+    }
+
+    private static class TestRecord extends StaticLXP {
+
+        private final IStoreReference<LXP> reference;
+
+        TestRecord(final String... values) {
+
+            for (int i = 0; i < values.length; i++) {
+                put(i, values[i]);
+            }
+
+            final LXP this_record = this;
+            reference = new LXPReference<>("test-repo", "test-bucket", getId()) {
+                @Override
+                public LXP getReferend() {
+                    return this_record;
+                }
+            };
+        }
+
+        @Override
+        public LXPMetaData getMetaData() {
+            return null;
+        }
+
+        @Override
+        public IStoreReference<LXP> getThisRef() {
+            return reference;
+        }
+    }
+}
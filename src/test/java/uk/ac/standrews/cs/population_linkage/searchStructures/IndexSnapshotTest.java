@@ -0,0 +1,137 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.searchStructures;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.standrews.cs.utilities.measures.coreConcepts.DataDistance;
+import uk.ac.standrews.cs.utilities.measures.coreConcepts.Measure;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class IndexSnapshotTest {
+
+    private static final String KEY = "test index";
+
+    private final int original_chunk_size = PivotTable.max_distance_chunk_size;
+
+    private Measure<Integer> measure;
+    private List<Integer> data;
+    private Path directory;
+
+    @Before
+    public void setup() throws IOException {
+
+        measure = new Measure<>() {
+
+            @Override
+            public String getMeasureName() {
+                return "difference";
+            }
+
+            @Override
+            public boolean maxDistanceIsOne() {
+                return false;
+            }
+
+            @Override
+            public double calculateDistance(final Integer i1, final Integer i2) {
+                return Math.abs(i1 - i2);
+            }
+        };
+
+        data = new ArrayList<>();
+        for (int i = 0; i < 200; i += 3) data.add(i);
+
+        // Three rows in each chunk, so that the distances are split over many chunks.
+        PivotTable.max_distance_chunk_size = 10;
+        directory = Files.createTempDirectory("snapshots");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+
+        PivotTable.max_distance_chunk_size = original_chunk_size;
+
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) Files.delete(file);
+        }
+    }
+
+    @Test
+    public void restoredTableMatchesSavedTable() throws IOException {
+
+        final PivotTable<Integer> table = new PivotTable<>(measure, data, List.of(0, 99, 198));
+        final PivotTable<Integer> restored = saveAndOpen(table, data);
+
+        assertNotNull(restored);
+        assertEquals(data.size(), restored.size());
+
+        for (int i = 0; i < data.size(); i++) {
+            for (int j = 0; j < 3; j++) {
+                assertEquals(table.getDistance(i, j), restored.getDistance(i, j), 0.0);
+            }
+        }
+
+        for (int query : List.of(-5, 50, 101, 250)) {
+            assertEquals(values(table.findWithinThreshold(query, 10)), values(restored.findWithinThreshold(query, 10)));
+        }
+    }
+
+    @Test
+    public void restoredTableCanBeExtended() throws IOException {
+
+        final PivotTable<Integer> restored = saveAndOpen(new PivotTable<>(measure, data, List.of(0, 99, 198)), data);
+
+        restored.addAll(List.of(1, 2, 4));
+
+        assertEquals(List.of(0, 1, 2, 3, 4), values(restored.findWithinThreshold(2, 2)));
+        assertEquals(data.size() + 3, restored.size());
+    }
+
+    @Test
+    public void snapshotOfOtherDataIsNotOpened() throws IOException {
+
+        final List<Integer> other_data = data.stream().map(i -> i + 1).collect(Collectors.toList());
+
+        assertNull(saveAndOpen(new PivotTable<>(measure, data, List.of(0, 99, 198)), other_data));
+    }
+
+    private PivotTable<Integer> saveAndOpen(final PivotTable<Integer> table, final List<Integer> data_to_open) throws IOException {
+
+        final long fingerprint = IndexSnapshot.fingerprint(data, i -> i);
+        final Path file = IndexSnapshot.getSnapshotPath(directory, KEY, fingerprint);
+
+        IndexSnapshot.save(file, KEY, fingerprint, table, i -> i);
+        return IndexSnapshot.open(file, KEY, fingerprint, measure, data_to_open, i -> i, SearchExecutor.getShared());
+    }
+
+    private static List<Integer> values(final List<DataDistance<Integer>> results) {
+
+        return results.stream().map(result -> result.value).sorted().collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2022 Systems Research Group, University of St Andrews:
+ * <https://github.com/stacs-srg>
+ *
+ * This file is part of the module population-linkage.
+ *
+ * population-linkage is free software: you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * population-linkage is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with population-linkage. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.standrews.cs.population_linkage.supportClasses;
+
+import org.junit.Test;
+import uk.ac.standrews.cs.neoStorr.impl.LXP;
+import uk.ac.standrews.cs.neoStorr.impl.LXPMetaData;
+import uk.ac.standrews.cs.neoStorr.impl.LXPReference;
+import uk.ac.standrews.cs.neoStorr.impl.StaticLXP;
+import uk.ac.standrews.cs.neoStorr.interfaces.IStoreReference;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ProjectedRecordTest {
+
+    private final LXP record1 = new TestRecord("john", "smith", "1861", "kilmarnock");
+    private final LXP record2 = new TestRecord("janet", "smith", "1863", "ayr");
+
+    @Test
+    public void onlyProjectedFieldsAreRetained() {
+
+        final LXP projected = project(record1, List.of(0, 2));
+
+        assertTrue(projected instanceof ProjectedRecord);
+        assertEquals("john", projected.getString(0));
+        assertEquals("1861", projected.getString(2));
+        assertNull(projected.getString(1));
+        assertNull(projected.getString(3));
+    }
+
+    @Test
+    public void equalValuesAreShared() {
+
+        // Distinct but equal strings in the original records.
+        final LXP record3 = new TestRecord("jane", new String("smith"), "1865", "ayr");
+        final List<LXP> projected = ProjectedRecord.project(List.of(record2, record3), List.of(1, 3));
+
+        assertNotSame(record2.getString(1), record3.getString(1));
+        assertSame(projected.get(0).getString(1), projected.get(1).getString(1));
+        assertSame(projected.get(0).getString(3), projected.get(1).getString(3));
+    }
+
+    @Test
+    public void storedIdAndReferenceAreThoseOfOriginal() {
+
+        final LXP projected = project(record1, List.of(0, 1));
+
+        final IStoreReference<LXP> original_reference = record1.getThisRef();
+        final IStoreReference<LXP> projected_reference = projected.getThisRef();
+
+        assertEquals(record1.getId(), ProjectedRecord.getStoredId(projected));
+        assertEquals(original_reference.getObjectId(), projected_reference.getObjectId());
+        assertEquals(original_reference.getRepoName(), projected_reference.getRepoName());
+        assertEquals(original_reference.getBucketName(), projected_reference.getBucketName());
+
+        // The projected record's own id is that of a new object.
+        assertNotEquals(record1.getId(), projected.getId());
+    }
+
+    @Test
+    public void storedIdOfUnprojectedRecordIsItsOwn() {
+
+        assertEquals(record1.getId(), ProjectedRecord.getStoredId(record1));
+        assertSame(record1, ProjectedRecord.getFullRecord(record1));
+    }
+
+    @Test
+    public void projectionsOfSameRecordAreEqual() {
+
+        final LXP projected1 = project(record1, List.of(0, 1));
+        final LXP projected2 = project(record1, List.of(2, 3));
+
+        assertEquals(projected1, projected2);
+        assertEquals(projected1.hashCode(), projected2.hashCode());
+        assertNotEquals(projected1, project(record2, List.of(0, 1)));
+    }
+
+    @Test
+    public void projectedRecordsAreNotProjectedAgain() {
+
+        final LXP projected = project(record1, List.of(0, 1));
+
+        assertSame(projected, project(projected, List.of(0)));
+    }
+
+    @Test
+    public void projectedRecordHoldsOnlyProjectedFields() {
+
+        final LXP projected = project(record1, List.of(0, 2));
+
+        assertTrue(ProjectedRecord.holdsFields(projected, List.of()));
+        assertTrue(ProjectedRecord.holdsFields(projected, List.of(2)));
+        assertTrue(ProjectedRecord.holdsFields(projected, List.of(2, 0)));
+        assertFalse(ProjectedRecord.holdsFields(projected, List.of(0, 1)));
+
+        // Unknown fields can't be assumed to be held.
+        assertFalse(ProjectedRecord.holdsFields(projected, null));
+    }
+
+    @Test
+    public void projectedRecordHoldsFieldMissingFromOriginal() {
+
+        final LXP record = new TestRecord("john", null, "1861", "ayr");
+        final LXP projected = project(record, List.of(0, 1));
+
+        assertNull(projected.getString(1));
+        assertTrue(ProjectedRecord.holdsFields(projected, List.of(1)));
+    }
+
+    @Test
+    public void unprojectedRecordHoldsAllFields() {
+
+        assertTrue(ProjectedRecord.holdsFields(record1, List.of(0, 1, 2, 3)));
+        assertTrue(ProjectedRecord.holdsFields(record1, null));
+    }
+
+    private static LXP project(final LXP record, final List<Integer> fields) {
+
+        return ProjectedRecord.project(List.of(record), fields).get(0);
+    }
+
+    private static class TestRecord extends StaticLXP {
+
+        TestRecord(final String... values) {
+
+            for (int i = 0; i < values.length; i++) {
+                put(i, values[i]);
+            }
+        }
+
+        @Override
+        public LXPMetaData getMetaData() {
+            return null;
+        }
+
+        @Override
+        public IStoreReference<LXP> getThisRef() {
+            return new LXPReference<>("test-repo", "test-bucket", getId());
+        }
+    }
+}